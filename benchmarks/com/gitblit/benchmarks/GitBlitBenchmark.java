@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.gitblit.ConfigUserService;
+import com.gitblit.FileSettings;
+import com.gitblit.GitBlit;
+import com.gitblit.models.RepositoryModel;
+import com.gitblit.models.UserModel;
+
+/**
+ * Benchmarks the GitBlit singleton and the user service against a synthetic
+ * server of many repositories, users, and teams.
+ *
+ * <pre>
+ * ant benchmark -Dbenchmark.args=GitBlitBenchmark
+ * </pre>
+ *
+ * @author James Moger
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GitBlitBenchmark {
+
+	@Param({ "100", "1000" })
+	public int repositories;
+
+	@Param({ "500" })
+	public int users;
+
+	private File folder;
+
+	private File usersConf;
+
+	private UserModel admin;
+
+	private UserModel user;
+
+	private UserModel anonymous;
+
+	private List<RepositoryModel> models;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		SyntheticData data = new SyntheticData();
+		folder = SyntheticData.createFolder("benchmark");
+		File repositoriesFolder = new File(folder, "git");
+		usersConf = new File(folder, "users.conf");
+		List<String> names = data.createRepositories(repositoriesFolder, repositories, 5, 10);
+		data.createUsers(usersConf, users, Math.max(1, users / 20), names);
+		File properties = data.createSettings(folder, repositoriesFolder, usersConf);
+
+		GitBlit.self().configureContext(new FileSettings(properties.getAbsolutePath()), false);
+		admin = GitBlit.self().getUserModel("admin");
+		user = GitBlit.self().getUserModel("user0");
+		anonymous = UserModel.ANONYMOUS;
+
+		// prime the repository list and model caches
+		models = new ArrayList<RepositoryModel>();
+		for (String name : GitBlit.self().getRepositoryList()) {
+			models.add(GitBlit.self().getRepositoryModel(name));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown() throws Exception {
+		GitBlit.self().contextDestroyed(null);
+		SyntheticData.deleteFolder(folder);
+	}
+
+	@Benchmark
+	public List<RepositoryModel> getRepositoryModelsAdmin() {
+		return GitBlit.self().getRepositoryModels(admin);
+	}
+
+	@Benchmark
+	public List<RepositoryModel> getRepositoryModelsUser() {
+		return GitBlit.self().getRepositoryModels(user);
+	}
+
+	@Benchmark
+	public List<RepositoryModel> getRepositoryModelsAnonymous() {
+		return GitBlit.self().getRepositoryModels(anonymous);
+	}
+
+	@Benchmark
+	public void getRepositoryPermission(Blackhole blackhole) {
+		for (RepositoryModel model : models) {
+			blackhole.consume(user.getRepositoryPermission(model));
+		}
+	}
+
+	@Benchmark
+	public List<String> readUsersConf() {
+		// a new service reads and parses the whole users.conf
+		return new ConfigUserService(usersConf).getAllUsernames();
+	}
+}
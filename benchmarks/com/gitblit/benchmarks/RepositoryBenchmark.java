@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gitblit.FileSettings;
+import com.gitblit.LuceneExecutor;
+import com.gitblit.models.RefModel;
+import com.gitblit.models.RepositoryModel;
+import com.gitblit.models.SearchResult;
+import com.gitblit.utils.DiffUtils;
+import com.gitblit.utils.DiffUtils.DiffOutputType;
+import com.gitblit.utils.JGitUtils;
+
+/**
+ * Benchmarks log paging, diffs, and Lucene searches of a single synthetic
+ * repository with a long history.
+ *
+ * <pre>
+ * ant benchmark -Dbenchmark.args=RepositoryBenchmark
+ * </pre>
+ *
+ * @author James Moger
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+
+	private static final String NAME = "benchmark.git";
+
+	@Param({ "0", "1000", "4900" })
+	public int offset;
+
+	private File folder;
+
+	private Repository repository;
+
+	private RevCommit commit;
+
+	private LuceneExecutor lucene;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		SyntheticData data = new SyntheticData();
+		folder = SyntheticData.createFolder("benchmark");
+		File repositoriesFolder = new File(folder, "git");
+		repository = JGitUtils.createRepository(repositoriesFolder, NAME);
+		data.populate(repository, 5000, 200);
+		commit = JGitUtils.getCommit(repository, null);
+
+		File properties = data.createSettings(folder, repositoriesFolder, new File(folder,
+				"users.conf"));
+		lucene = new LuceneExecutor(new FileSettings(properties.getAbsolutePath()),
+				repositoriesFolder);
+		RepositoryModel model = new RepositoryModel();
+		model.name = NAME;
+		model.hasCommits = true;
+		model.indexedBranches = new ArrayList<String>();
+		for (RefModel ref : JGitUtils.getLocalBranches(repository, true, -1)) {
+			model.indexedBranches.add(ref.getName());
+		}
+		lucene.reindex(model, repository);
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown() throws Exception {
+		lucene.close();
+		repository.close();
+		SyntheticData.deleteFolder(folder);
+	}
+
+	@Benchmark
+	public List<RevCommit> getRevLog() {
+		return JGitUtils.getRevLog(repository, null, offset, 50);
+	}
+
+	@Benchmark
+	public String getCommitDiff() {
+		return DiffUtils.getCommitDiff(repository, commit, DiffOutputType.PLAIN);
+	}
+
+	@Benchmark
+	public List<SearchResult> search() {
+		return lucene.search("permission AND cache", 1, 50, NAME);
+	}
+}
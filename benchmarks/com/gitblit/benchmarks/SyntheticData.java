@@ -0,0 +1,262 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FileUtils;
+
+import com.gitblit.ConfigUserService;
+import com.gitblit.Constants.AccessPermission;
+import com.gitblit.Keys;
+import com.gitblit.models.TeamModel;
+import com.gitblit.models.UserModel;
+import com.gitblit.utils.JGitUtils;
+
+/**
+ * Generates deterministic synthetic repositories, users, and teams for the
+ * benchmarks.
+ *
+ * @author James Moger
+ *
+ */
+public class SyntheticData {
+
+	private static final String[] AUTHORS = { "alice", "bob", "carol", "dave", "erin", "frank" };
+
+	private static final String[] WORDS = { "repository", "commit", "branch", "merge", "index",
+			"ticket", "review", "permission", "cache", "lucene", "federation", "metrics" };
+
+	private final Random random = new Random(42);
+
+	/**
+	 * Creates an empty temporary folder.
+	 *
+	 * @param name
+	 * @return a folder
+	 * @throws IOException
+	 */
+	public static File createFolder(String name) throws IOException {
+		File folder = File.createTempFile("gitblit-" + name, "");
+		folder.delete();
+		folder.mkdirs();
+		return folder;
+	}
+
+	/**
+	 * Deletes a folder created by the benchmark.
+	 *
+	 * @param folder
+	 * @throws IOException
+	 */
+	public static void deleteFolder(File folder) throws IOException {
+		if (folder != null && folder.exists()) {
+			FileUtils.delete(folder, FileUtils.RECURSIVE);
+		}
+	}
+
+	/**
+	 * Writes a gitblit.properties file for the generated data.
+	 *
+	 * @param folder
+	 * @param repositoriesFolder
+	 * @param usersConf
+	 * @return the properties file
+	 * @throws IOException
+	 */
+	public File createSettings(File folder, File repositoriesFolder, File usersConf)
+			throws IOException {
+		Properties properties = new Properties();
+		properties.put(Keys.git.repositoriesFolder, repositoriesFolder.getAbsolutePath());
+		properties.put(Keys.git.cacheRepositoryList, "true");
+		properties.put(Keys.git.searchRepositoriesSubfolders, "true");
+		properties.put(Keys.realm.userService, usersConf.getAbsolutePath());
+		properties.put(Keys.web.allowLuceneIndexing, "false");
+		properties.put(Keys.web.projectsFile, new File(folder, "projects.conf").getAbsolutePath());
+		File file = new File(folder, "gitblit.properties");
+		FileOutputStream os = new FileOutputStream(file);
+		try {
+			properties.store(os, "benchmark settings");
+		} finally {
+			os.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Creates bare repositories in a two-level project structure.
+	 *
+	 * @param folder
+	 * @param count
+	 *            the number of repositories
+	 * @param commits
+	 *            the number of commits per repository
+	 * @param files
+	 *            the number of files per repository
+	 * @return the repository names
+	 * @throws IOException
+	 */
+	public List<String> createRepositories(File folder, int count, int commits, int files)
+			throws IOException {
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			String name = "project" + (i % 10) + "/repository" + i + ".git";
+			Repository repository = JGitUtils.createRepository(folder, name);
+			try {
+				populate(repository, commits, files);
+			} finally {
+				repository.close();
+			}
+			names.add(name);
+		}
+		return names;
+	}
+
+	/**
+	 * Commits a history of changes to the master branch of the repository.
+	 * Each commit modifies a few files of a tree of folders.
+	 *
+	 * @param repository
+	 * @param commits
+	 * @param files
+	 * @throws IOException
+	 */
+	public void populate(Repository repository, int commits, int files) throws IOException {
+		byte[][] contents = new byte[files][];
+		for (int i = 0; i < files; i++) {
+			contents[i] = text(40).getBytes("UTF-8");
+		}
+		ObjectInserter inserter = repository.newObjectInserter();
+		try {
+			ObjectId parent = null;
+			long time = 1325376000000L; // 2012-01-01
+			for (int c = 0; c < commits; c++) {
+				// modify a few files
+				for (int n = 0; n < 3; n++) {
+					int f = random.nextInt(files);
+					contents[f] = (new String(contents[f], "UTF-8") + "\n" + text(5))
+							.getBytes("UTF-8");
+				}
+
+				DirCache index = DirCache.newInCore();
+				DirCacheBuilder builder = index.builder();
+				for (int i = 0; i < files; i++) {
+					DirCacheEntry entry = new DirCacheEntry("folder" + (i % 8) + "/file" + i
+							+ ".txt");
+					entry.setFileMode(FileMode.REGULAR_FILE);
+					entry.setObjectId(inserter.insert(Constants.OBJ_BLOB, contents[i]));
+					builder.add(entry);
+				}
+				builder.finish();
+
+				String author = AUTHORS[random.nextInt(AUTHORS.length)];
+				PersonIdent ident = new PersonIdent(author, author + "@gitblit.com",
+						time + c * 3600 * 1000L, 0);
+				CommitBuilder commit = new CommitBuilder();
+				commit.setTreeId(index.writeTree(inserter));
+				if (parent != null) {
+					commit.setParentId(parent);
+				}
+				commit.setAuthor(ident);
+				commit.setCommitter(ident);
+				commit.setMessage(text(8));
+				parent = inserter.insert(commit);
+			}
+			inserter.flush();
+
+			RefUpdate ru = repository.updateRef(Constants.R_HEADS + "master");
+			ru.setNewObjectId(parent);
+			ru.setForceUpdate(true);
+			ru.update();
+		} finally {
+			inserter.release();
+		}
+	}
+
+	/**
+	 * Writes a users.conf with users and teams holding explicit and regex
+	 * repository permissions.
+	 *
+	 * @param file
+	 * @param users
+	 * @param teams
+	 * @param repositories
+	 * @return the user service
+	 */
+	public ConfigUserService createUsers(File file, int users, int teams,
+			List<String> repositories) {
+		ConfigUserService service = new ConfigUserService(file);
+		List<TeamModel> teamModels = new ArrayList<TeamModel>();
+		for (int i = 0; i < teams; i++) {
+			TeamModel team = new TeamModel("team" + i);
+			team.setRepositoryPermission("project" + (i % 10) + "/.*", AccessPermission.PUSH);
+			for (int r = 0; r < 5; r++) {
+				String repository = repositories.get(random.nextInt(repositories.size()));
+				team.setRepositoryPermission(repository, AccessPermission.REWIND);
+			}
+			teamModels.add(team);
+		}
+
+		List<UserModel> userModels = new ArrayList<UserModel>();
+		UserModel admin = new UserModel("admin");
+		admin.password = "admin";
+		admin.canAdmin = true;
+		userModels.add(admin);
+		for (int i = 0; i < users; i++) {
+			UserModel user = new UserModel("user" + i);
+			user.password = "password" + i;
+			for (int r = 0; r < 10; r++) {
+				String repository = repositories.get(random.nextInt(repositories.size()));
+				user.setRepositoryPermission(repository, AccessPermission.CLONE);
+			}
+			TeamModel team = teamModels.get(i % teamModels.size());
+			team.addUser(user.username);
+			user.teams.add(team);
+			userModels.add(user);
+		}
+		service.updateUserModels(userModels);
+		service.updateTeamModels(teamModels);
+		return service;
+	}
+
+	private String text(int words) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				sb.append(i % 12 == 0 ? '\n' : ' ');
+			}
+			sb.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return sb.toString();
+	}
+}
@@ -64,6 +64,12 @@ import org.slf4j.Logger
  *	url				Base url for Gitblit		String
  *  logger			Logs messages to Gitblit 	org.slf4j.Logger
  *  clientLogger	Logs messages to Git client	com.gitblit.utils.ClientLogger
+ *  repositoryName	Name of the repository		String
+ *
+ * Post-receive scripts run after the push has completed if
+ * groovy.postReceiveThreads is greater than 0.  Then receivePack is null,
+ * commands is a snapshot of the pushed commands, and clientLogger messages
+ * are logged by Gitblit instead of being sent to the Git client.
  *
  * Accessing Gitblit Custom Fields:
  *   def myCustomField = repository.customFields.myCustomField
@@ -65,6 +65,7 @@ import org.slf4j.Logger
  *	url				Base url for Gitblit		String
  *  logger			Logs messages to Gitblit 	org.slf4j.Logger
  *  clientLogger	Logs messages to Git client	com.gitblit.utils.ClientLogger
+ *  repositoryName	Name of the repository		String
  *
  * Accessing Gitblit Custom Fields:
  *   def myCustomField = repository.customFields.myCustomField
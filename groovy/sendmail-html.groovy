@@ -80,6 +80,12 @@ import java.security.MessageDigest
  *  url             Base url for Gitblit         java.lang.String
  *  logger          Logs messages to Gitblit     org.slf4j.Logger
  *  clientLogger    Logs messages to Git client  com.gitblit.utils.ClientLogger
+ *  repositoryName  Name of the repository       java.lang.String
+ *
+ * Post-receive scripts run after the push has completed if
+ * groovy.postReceiveThreads is greater than 0.  Then receivePack is null,
+ * commands is a snapshot of the pushed commands, and clientLogger messages
+ * are logged by Gitblit instead of being sent to the Git client.
  *
  * Accessing Gitblit Custom Fields:
  *   def myCustomField = repository.customFields.myCustomField
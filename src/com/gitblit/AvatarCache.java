@@ -0,0 +1,510 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gitblit.models.CacheStats;
+import com.gitblit.models.GravatarProfile;
+import com.gitblit.utils.ActivityUtils;
+import com.gitblit.utils.ConnectionUtils;
+import com.gitblit.utils.HttpUtils;
+import com.gitblit.utils.ICache;
+import com.gitblit.utils.IdenticonUtils;
+import com.gitblit.utils.MemoryCache;
+
+/**
+ * Caches Gravatar avatars and profiles so that pages load their avatars from
+ * this server instead of from Gravatar.
+ *
+ * Avatars are kept in memory and in the avatar folder. An expired avatar is
+ * served while it is refreshed in the background. An avatar which has not
+ * been fetched yet is served as a locally generated identicon until the fetch
+ * completes so a page never waits for Gravatar. Addresses without a Gravatar
+ * are recorded as empty files and are served as identicons until they expire.
+ *
+ * Requested sizes are snapped to a small set of sizes so that the number of
+ * cached images per address is bounded. Fetches run on a small pool with a
+ * bounded queue and the avatar folder is pruned, oldest files first, when it
+ * exceeds its size limit.
+ *
+ * @author James Moger
+ *
+ */
+public class AvatarCache {
+
+	public static final int DEFAULT_SIZE = 50;
+
+	public static final int MAX_SIZE = 512;
+
+	/**
+	 * The sizes which are served, a requested size is rounded up to the next
+	 * of these sizes.
+	 */
+	private static final int[] SIZES = { 16, 20, 24, 32, 40, 50, 60, 80, 100, 128, 160, 210,
+			256, MAX_SIZE };
+
+	private static final int FETCH_THREADS = 2;
+
+	private static final int FETCH_QUEUE_SIZE = 100;
+
+	/**
+	 * The number of avatar writes between checks of the avatar folder size.
+	 */
+	private static final int PRUNE_INTERVAL = 100;
+
+	/**
+	 * The approximate maximum number of bytes of avatars held in memory.
+	 */
+	private static final long MAX_WEIGHT = 4 * 1024 * 1024L;
+
+	private static final int MAX_PROFILES = 1000;
+
+	private static final int TIMEOUT = (int) TimeUnit.SECONDS.toMillis(5);
+
+	/**
+	 * The lifetime of an identicon which is served while the avatar is
+	 * fetched for the first time.
+	 */
+	private static final long PENDING_TTL = TimeUnit.MINUTES.toMillis(1);
+
+	/**
+	 * The delay before an avatar which failed to fetch is fetched again.
+	 */
+	private static final long RETRY_TTL = TimeUnit.HOURS.toMillis(1);
+
+	private static final GravatarProfile NO_PROFILE = new GravatarProfile();
+
+	private final Logger logger = LoggerFactory.getLogger(AvatarCache.class);
+
+	private final File folder;
+
+	private final long ttl;
+
+	private final long maxFolderSize;
+
+	private final Executor executor;
+
+	private final AtomicInteger writes = new AtomicInteger();
+
+	private final ICache<String, Avatar> avatars;
+
+	private final ICache<String, GravatarProfile> profiles;
+
+	private final Set<String> refreshing = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * An avatar image.
+	 */
+	public static class Avatar {
+
+		public final String hash;
+
+		public final int size;
+
+		public final byte[] content;
+
+		public final String contentType;
+
+		public final long lastModified;
+
+		public final long expires;
+
+		/**
+		 * True if the avatar is a locally generated identicon.
+		 */
+		public final boolean identicon;
+
+		Avatar(String hash, int size, byte[] content, long lastModified, long expires,
+				boolean identicon) {
+			this.hash = hash;
+			this.size = size;
+			this.content = content;
+			this.contentType = getContentType(content);
+			this.lastModified = lastModified;
+			this.expires = expires;
+			this.identicon = identicon;
+		}
+
+		public boolean isExpired() {
+			return System.currentTimeMillis() >= expires;
+		}
+
+		public String getETag() {
+			return HttpUtils.getETag(hash, String.valueOf(size), Long.toHexString(lastModified));
+		}
+
+		long weigh() {
+			return content.length + 2L * hash.length() + 64;
+		}
+	}
+
+	/**
+	 * Creates an avatar cache.
+	 *
+	 * @param folder
+	 *            the folder of the cached avatars
+	 * @param ttl
+	 *            the time in milliseconds until an avatar is refreshed
+	 * @param maxFolderSize
+	 *            the approximate maximum number of bytes of the avatar folder,
+	 *            if <= 0 the folder is not pruned
+	 */
+	public AvatarCache(File folder, long ttl, long maxFolderSize) {
+		this(folder, ttl, maxFolderSize, newFetchExecutor());
+	}
+
+	/**
+	 * Creates an avatar cache.
+	 *
+	 * @param folder
+	 *            the folder of the cached avatars
+	 * @param ttl
+	 *            the time in milliseconds until an avatar is refreshed
+	 * @param maxFolderSize
+	 *            the approximate maximum number of bytes of the avatar folder,
+	 *            if <= 0 the folder is not pruned
+	 * @param executor
+	 *            the executor of the background fetches
+	 */
+	public AvatarCache(File folder, long ttl, long maxFolderSize, Executor executor) {
+		this.folder = folder;
+		this.ttl = ttl;
+		this.maxFolderSize = maxFolderSize;
+		this.executor = executor;
+		this.avatars = new MemoryCache<String, Avatar>("avatars", 0, MAX_WEIGHT, 0,
+				new ICache.Weigher<String, Avatar>() {
+					@Override
+					public long weigh(String key, Avatar avatar) {
+						return avatar.weigh();
+					}
+				});
+		this.profiles = new MemoryCache<String, GravatarProfile>("gravatarProfiles",
+				MAX_PROFILES, ttl);
+	}
+
+	/**
+	 * Returns the avatar of the hash. This method does not block on Gravatar.
+	 * If the avatar is not cached, an identicon is returned and the avatar is
+	 * fetched in the background.
+	 *
+	 * @param hash
+	 *            the md5 hash of the lowercase email address
+	 * @param size
+	 *            the width of the avatar, it is rounded up to a served size
+	 * @return an avatar
+	 */
+	public Avatar get(String hash, int size) {
+		size = getSize(size);
+		String key = getKey(hash, size);
+		Avatar avatar = avatars.get(key);
+		if (avatar == null) {
+			avatar = read(hash, size);
+			if (avatar == null) {
+				// not fetched yet
+				long now = System.currentTimeMillis();
+				avatar = new Avatar(hash, size, IdenticonUtils.render(hash, size), now, now
+						+ PENDING_TTL, true);
+				avatars.put(key, avatar);
+				refresh(hash, size);
+				return avatar;
+			}
+			avatars.put(key, avatar);
+		}
+		if (avatar.isExpired()) {
+			refresh(hash, size);
+		}
+		return avatar;
+	}
+
+	/**
+	 * Returns the Gravatar profile of the hash. Profiles, and the absence of
+	 * a profile, are cached in memory until they expire.
+	 *
+	 * @param hash
+	 * @return the profile or null if there is no profile for the hash
+	 * @throws IOException
+	 */
+	public GravatarProfile getProfile(String hash) throws IOException {
+		GravatarProfile profile = profiles.get(hash);
+		if (profile == null) {
+			profile = ActivityUtils.getGravatarProfile(hash);
+			profiles.put(hash, profile == null ? NO_PROFILE : profile);
+		}
+		return profile == NO_PROFILE ? null : profile;
+	}
+
+	/**
+	 * Returns the served size for the requested size.
+	 *
+	 * @param size
+	 *            the requested width, if <= 0 the default size is used
+	 * @return the smallest served size which is not smaller than the
+	 *         requested size
+	 */
+	public static int getSize(int size) {
+		if (size <= 0) {
+			return DEFAULT_SIZE;
+		}
+		for (int served : SIZES) {
+			if (served >= size) {
+				return served;
+			}
+		}
+		return MAX_SIZE;
+	}
+
+	public void clear() {
+		avatars.clear();
+		profiles.clear();
+	}
+
+	/**
+	 * Stops the background fetches.
+	 */
+	public void close() {
+		if (executor instanceof ExecutorService) {
+			((ExecutorService) executor).shutdownNow();
+		}
+	}
+
+	private static ThreadPoolExecutor newFetchExecutor() {
+		// fetches which do not fit the queue are skipped and retried on a
+		// later request of the avatar
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(FETCH_THREADS, FETCH_THREADS, 60,
+				TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(FETCH_QUEUE_SIZE));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	public CacheStats getStats() {
+		return avatars.getStats();
+	}
+
+	/**
+	 * Fetches the avatar in the background unless it is already being
+	 * fetched.
+	 *
+	 * @param hash
+	 * @param size
+	 */
+	private void refresh(final String hash, final int size) {
+		final String key = getKey(hash, size);
+		if (!refreshing.add(key)) {
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						avatars.put(key, fetch(hash, size));
+					} finally {
+						refreshing.remove(key);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			refreshing.remove(key);
+		}
+	}
+
+	/**
+	 * Fetches the avatar from Gravatar and writes it to the avatar folder. If
+	 * the fetch fails the previous avatar, or an identicon, is returned and
+	 * the fetch is retried later.
+	 *
+	 * @param hash
+	 * @param size
+	 * @return an avatar
+	 */
+	Avatar fetch(String hash, int size) {
+		long now = System.currentTimeMillis();
+		try {
+			String url = MessageFormat.format(
+					"https://www.gravatar.com/avatar/{0}?s={1,number,0}&d=404", hash, size);
+			HttpURLConnection conn = (HttpURLConnection) ConnectionUtils.openConnection(url, null,
+					null);
+			conn.setConnectTimeout(TIMEOUT);
+			conn.setReadTimeout(TIMEOUT);
+			byte[] content;
+			int status = conn.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+				// no Gravatar for this address
+				content = new byte[0];
+			} else if (status == HttpURLConnection.HTTP_OK) {
+				content = readContent(conn.getInputStream());
+			} else {
+				throw new IOException(MessageFormat.format("Gravatar responded {0}", status));
+			}
+			write(hash, size, content);
+			return toAvatar(hash, size, content, now, now + ttl);
+		} catch (IOException e) {
+			logger.warn(MessageFormat.format("Failed to fetch avatar {0}: {1}", hash,
+					e.getMessage()));
+			Avatar previous = avatars.get(getKey(hash, size));
+			if (previous != null && !previous.identicon) {
+				return new Avatar(hash, size, previous.content, previous.lastModified, now
+						+ RETRY_TTL, false);
+			}
+			return new Avatar(hash, size, IdenticonUtils.render(hash, size), now, now + RETRY_TTL,
+					true);
+		}
+	}
+
+	private Avatar read(String hash, int size) {
+		File file = getFile(hash, size);
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			long lastModified = file.lastModified();
+			byte[] content = readContent(new FileInputStream(file));
+			return toAvatar(hash, size, content, lastModified, lastModified + ttl);
+		} catch (IOException e) {
+			logger.error(MessageFormat.format("Failed to read avatar {0}", file), e);
+			return null;
+		}
+	}
+
+	private void write(String hash, int size, byte[] content) {
+		File file = getFile(hash, size);
+		file.getParentFile().mkdirs();
+		try {
+			FileOutputStream os = new FileOutputStream(file);
+			try {
+				os.write(content);
+			} finally {
+				os.close();
+			}
+		} catch (IOException e) {
+			logger.error(MessageFormat.format("Failed to write avatar {0}", file), e);
+		}
+		if (maxFolderSize > 0 && writes.incrementAndGet() % PRUNE_INTERVAL == 0) {
+			prune();
+		}
+	}
+
+	/**
+	 * Deletes the least recently written avatars until the avatar folder is
+	 * below 90% of its size limit.
+	 */
+	public void prune() {
+		List<File> files = new ArrayList<File>();
+		long size = 0;
+		File[] dirs = folder.listFiles();
+		if (dirs == null) {
+			return;
+		}
+		for (File dir : dirs) {
+			File[] list = dir.listFiles();
+			if (list == null) {
+				continue;
+			}
+			for (File file : list) {
+				files.add(file);
+				size += file.length();
+			}
+		}
+		if (size <= maxFolderSize) {
+			return;
+		}
+		Collections.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				long d = o1.lastModified() - o2.lastModified();
+				return d < 0 ? -1 : (d > 0 ? 1 : 0);
+			}
+		});
+		long target = maxFolderSize - maxFolderSize / 10;
+		int deleted = 0;
+		for (File file : files) {
+			if (size <= target) {
+				break;
+			}
+			long length = file.length();
+			if (file.delete()) {
+				size -= length;
+				deleted++;
+			}
+		}
+		logger.info(MessageFormat.format("Pruned {0} avatars from {1}", deleted, folder));
+	}
+
+	private Avatar toAvatar(String hash, int size, byte[] content, long lastModified,
+			long expires) {
+		if (content.length == 0) {
+			return new Avatar(hash, size, IdenticonUtils.render(hash, size), lastModified,
+					expires, true);
+		}
+		return new Avatar(hash, size, content, lastModified, expires, false);
+	}
+
+	private File getFile(String hash, int size) {
+		return new File(folder, hash.substring(0, 2) + "/" + getKey(hash, size));
+	}
+
+	private static String getKey(String hash, int size) {
+		return hash + "_" + size;
+	}
+
+	private static byte[] readContent(InputStream is) throws IOException {
+		try {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int n;
+			while ((n = is.read(buffer)) > -1) {
+				os.write(buffer, 0, n);
+			}
+			return os.toByteArray();
+		} finally {
+			is.close();
+		}
+	}
+
+	private static String getContentType(byte[] content) {
+		if (content.length > 2 && (content[0] & 0xff) == 0xff && (content[1] & 0xff) == 0xd8) {
+			return "image/jpeg";
+		} else if (content.length > 2 && content[0] == 'G' && content[1] == 'I') {
+			return "image/gif";
+		}
+		return "image/png";
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Enumeration;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import com.gitblit.models.UserModel;
+import com.gitblit.wicket.GitBlitWebSession;
+
+/**
+ * The AvatarFilter is a servlet filter that secures the AvatarServlet.
+ *
+ * Avatars are only served if Gravatar images are allowed. If the web pages
+ * require authentication, avatars are only served to users who have signed
+ * in to the web pages or who supply credentials. Avatars are requested by
+ * images so an unauthenticated request is refused without a basic
+ * authentication challenge.
+ *
+ * @author James Moger
+ *
+ */
+public class AvatarFilter extends AuthenticationFilter {
+
+	/**
+	 * doFilter does the actual work of preprocessing the request to ensure that
+	 * the user may proceed.
+	 *
+	 * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest,
+	 *      javax.servlet.ServletResponse, javax.servlet.FilterChain)
+	 */
+	@Override
+	public void doFilter(final ServletRequest request, final ServletResponse response,
+			final FilterChain chain) throws IOException, ServletException {
+
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+		// conditionally reject all avatar requests
+		if (!GitBlit.getBoolean(Keys.web.allowGravatar, true)) {
+			httpResponse.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		if (!GitBlit.getBoolean(Keys.web.authenticateViewPages, false)) {
+			// unauthenticated request permitted.
+			chain.doFilter(request, response);
+			return;
+		}
+
+		UserModel user = getSessionUser(httpRequest);
+		if (user == null) {
+			user = getUser(httpRequest);
+		}
+		if (user == null) {
+			user = GitBlit.self().authenticate(httpRequest.getCookies());
+		}
+		if (user == null) {
+			// do not challenge, avatars are requested by images
+			if (GitBlit.isDebugMode()) {
+				logger.info(MessageFormat.format("AVATAR: unauthenticated request for {0}",
+						getFullUrl(httpRequest)));
+			}
+			httpResponse.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+
+		// authenticated request permitted.
+		AuthenticatedRequest authenticatedRequest = new AuthenticatedRequest(httpRequest);
+		authenticatedRequest.setUser(user);
+		chain.doFilter(authenticatedRequest, httpResponse);
+	}
+
+	/**
+	 * Returns the user who has signed in to the web pages in the session of
+	 * the request.
+	 *
+	 * @param httpRequest
+	 * @return the user or null
+	 */
+	private UserModel getSessionUser(HttpServletRequest httpRequest) {
+		HttpSession session = httpRequest.getSession(false);
+		if (session == null) {
+			return null;
+		}
+		Enumeration<?> names = session.getAttributeNames();
+		while (names.hasMoreElements()) {
+			Object value = session.getAttribute(names.nextElement().toString());
+			if (value instanceof GitBlitWebSession) {
+				GitBlitWebSession webSession = (GitBlitWebSession) value;
+				return webSession.isLoggedIn() ? webSession.getUser() : null;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.gitblit.AvatarCache.Avatar;
+import com.gitblit.utils.HttpUtils;
+import com.gitblit.utils.StringUtils;
+
+/**
+ * Serves Gravatar avatars from the avatar cache of this server. Access is
+ * controlled by the AvatarFilter.
+ *
+ * <pre>
+ * /avatar/&lt;md5 hash of email address&gt;?s=&lt;size&gt;
+ * </pre>
+ *
+ * @author James Moger
+ *
+ */
+public class AvatarServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	public AvatarServlet() {
+		super();
+	}
+
+	/**
+	 * Returns an url to this servlet for the specified avatar.
+	 *
+	 * @param baseURL
+	 * @param hash
+	 *            the md5 hash of the lowercase email address
+	 * @param size
+	 *            the width of the avatar, if <= 0 the default is used
+	 * @return an url
+	 */
+	public static String asLink(String baseURL, String hash, int size) {
+		if (baseURL.length() > 0 && baseURL.charAt(baseURL.length() - 1) == '/') {
+			baseURL = baseURL.substring(0, baseURL.length() - 1);
+		}
+		return baseURL + Constants.AVATAR_PATH + hash + "?s=" + AvatarCache.getSize(size);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		String hash = request.getPathInfo();
+		if (hash != null && hash.startsWith("/")) {
+			hash = hash.substring(1);
+		}
+		if (hash == null || !hash.matches("[0-9a-f]{32}")) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		int size = AvatarCache.DEFAULT_SIZE;
+		String s = request.getParameter("s");
+		if (!StringUtils.isEmpty(s)) {
+			try {
+				size = Integer.parseInt(s);
+			} catch (NumberFormatException e) {
+				// use default size
+			}
+		}
+
+		Avatar avatar = GitBlit.self().getAvatarCache().get(hash, size);
+		long maxAge = Math.max(0, (avatar.expires - System.currentTimeMillis()) / 1000);
+		response.setHeader("Cache-Control", "public, max-age=" + maxAge);
+		if (HttpUtils.checkNotModified(request, response, avatar.getETag(), avatar.lastModified)) {
+			return;
+		}
+		response.setContentType(avatar.contentType);
+		response.setContentLength(avatar.content.length);
+		response.getOutputStream().write(avatar.content);
+	}
+}
@@ -68,6 +68,10 @@ public class Constants {
 	
 	public static final String PAGES= "/pages/";
 
+	public static final String METRICS_PATH = "/prometheus/";
+
+	public static final String AVATAR_PATH = "/avatar/";
+
 	public static final String BORDER = "***********************************************************";
 
 	public static final String FEDERATION_USER = "$gitblit";
@@ -166,7 +170,7 @@ public class Constants {
 	 * Enumeration representing the types of federation requests.
 	 */
 	public static enum FederationRequest {
-		POKE, PROPOSAL, PULL_REPOSITORIES, PULL_USERS, PULL_TEAMS, PULL_SETTINGS, PULL_SCRIPTS, STATUS;
+		POKE, PROPOSAL, PULL_REPOSITORIES, PULL_USERS, PULL_TEAMS, PULL_SETTINGS, PULL_SCRIPTS, STATUS, PULL_CHANGES, SUBSCRIBE, NOTIFY;
 
 		public static FederationRequest fromName(String name) {
 			for (FederationRequest type : values()) {
@@ -252,10 +256,11 @@ public class Constants {
 	public static enum RpcRequest {
 		// Order is important here.  anything above LIST_SETTINGS requires
 		// administrator privileges and web.allowRpcManagement.
-		CLEAR_REPOSITORY_CACHE, GET_PROTOCOL, LIST_REPOSITORIES, LIST_BRANCHES, LIST_SETTINGS,
+		CLEAR_REPOSITORY_CACHE, GET_PROTOCOL, LIST_REPOSITORIES, LIST_BRANCHES,
+		LIST_REPOSITORIES_PAGE, LIST_BRANCHES_PAGE, LIST_CHANGES, LIST_SETTINGS,
 		CREATE_REPOSITORY, EDIT_REPOSITORY, DELETE_REPOSITORY, 
-		LIST_USERS, CREATE_USER, EDIT_USER, DELETE_USER, 
-		LIST_TEAMS, CREATE_TEAM, EDIT_TEAM, DELETE_TEAM,
+		LIST_USERS, LIST_USERS_PAGE, CREATE_USER, EDIT_USER, DELETE_USER, 
+		LIST_TEAMS, LIST_TEAMS_PAGE, CREATE_TEAM, EDIT_TEAM, DELETE_TEAM,
 		LIST_REPOSITORY_MEMBERS, SET_REPOSITORY_MEMBERS, LIST_REPOSITORY_TEAMS, SET_REPOSITORY_TEAMS, 
 		LIST_REPOSITORY_MEMBER_PERMISSIONS, SET_REPOSITORY_MEMBER_PERMISSIONS, LIST_REPOSITORY_TEAM_PERMISSIONS, SET_REPOSITORY_TEAM_PERMISSIONS, 
 		LIST_FEDERATION_REGISTRATIONS, LIST_FEDERATION_RESULTS, LIST_FEDERATION_PROPOSALS, LIST_FEDERATION_SETS,
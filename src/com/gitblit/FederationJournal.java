@@ -0,0 +1,171 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.gitblit.utils.StringUtils;
+
+/**
+ * The FederationJournal assigns a monotonic change sequence to the
+ * repositories, users, and teams of this Gitblit instance so that pulling
+ * instances may request only the changes since their last pull.
+ *
+ * The journal is kept in memory. Its version is composed of an epoch, which
+ * identifies this journal instance, and the sequence. A version from another
+ * epoch can not be resolved and requires a full pull.
+ *
+ * @author James Moger
+ *
+ */
+public class FederationJournal {
+
+	public static enum ObjectType {
+		REPOSITORY, USER, TEAM;
+	}
+
+	/**
+	 * The latest change of an object.
+	 */
+	public static class Change {
+
+		public final String name;
+
+		public final long sequence;
+
+		public final boolean deleted;
+
+		Change(String name, long sequence, boolean deleted) {
+			this.name = name;
+			this.sequence = sequence;
+			this.deleted = deleted;
+		}
+	}
+
+	private final String epoch;
+
+	private final Map<ObjectType, Map<String, Change>> changes;
+
+	private long sequence;
+
+	public FederationJournal() {
+		this.epoch = Long.toString(System.currentTimeMillis(), 36);
+		this.changes = new HashMap<ObjectType, Map<String, Change>>();
+		for (ObjectType type : ObjectType.values()) {
+			changes.put(type, new HashMap<String, Change>());
+		}
+	}
+
+	/**
+	 * Returns the current version of the journal.
+	 *
+	 * @return epoch:sequence
+	 */
+	public synchronized String getVersion() {
+		return epoch + ":" + sequence;
+	}
+
+	/**
+	 * Returns the sequence of the version, if the version was issued by this
+	 * journal.
+	 *
+	 * @param version
+	 * @return the sequence or -1 if the version is unknown
+	 */
+	public synchronized long getSequence(String version) {
+		if (StringUtils.isEmpty(version) || !version.startsWith(epoch + ":")) {
+			return -1;
+		}
+		try {
+			long value = Long.parseLong(version.substring(epoch.length() + 1));
+			return value <= sequence ? value : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Records that an object has been created or updated.
+	 *
+	 * @param type
+	 * @param name
+	 */
+	public synchronized void changed(ObjectType type, String name) {
+		String key = name.toLowerCase();
+		changes.get(type).put(key, new Change(name, ++sequence, false));
+	}
+
+	/**
+	 * Records that an object has been deleted.
+	 *
+	 * @param type
+	 * @param name
+	 */
+	public synchronized void deleted(ObjectType type, String name) {
+		String key = name.toLowerCase();
+		changes.get(type).put(key, new Change(name, ++sequence, true));
+	}
+
+	/**
+	 * Reconciles the journal with the current names of the objects. This
+	 * records objects which were created or deleted outside of Gitblit, e.g.
+	 * a repository copied into the repositories folder.
+	 *
+	 * @param type
+	 * @param names
+	 */
+	public synchronized void reconcile(ObjectType type, Collection<String> names) {
+		Map<String, Change> map = changes.get(type);
+		Set<String> keys = new HashSet<String>();
+		for (String name : names) {
+			String key = name.toLowerCase();
+			keys.add(key);
+			Change change = map.get(key);
+			if (change == null || change.deleted) {
+				map.put(key, new Change(name, ++sequence, false));
+			}
+		}
+		for (Change change : map.values().toArray(new Change[0])) {
+			if (!change.deleted && !keys.contains(change.name.toLowerCase())) {
+				deleted(type, change.name);
+			}
+		}
+	}
+
+	/**
+	 * Returns the changes of the objects of the specified type after the
+	 * specified sequence.
+	 *
+	 * @param type
+	 * @param since
+	 * @return the changes
+	 */
+	public synchronized List<Change> getChanges(ObjectType type, long since) {
+		List<Change> list = new ArrayList<Change>();
+		for (Change change : changes.get(type).values()) {
+			if (change.sequence > since) {
+				list.add(change);
+			}
+		}
+		return list;
+	}
+}
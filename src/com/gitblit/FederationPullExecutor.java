@@ -21,6 +21,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,7 +34,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
@@ -46,7 +53,9 @@ import com.gitblit.Constants.AccessPermission;
 import com.gitblit.Constants.FederationPullStatus;
 import com.gitblit.Constants.FederationStrategy;
 import com.gitblit.GitBlitException.ForbiddenException;
+import com.gitblit.models.FederationChanges;
 import com.gitblit.models.FederationModel;
+import com.gitblit.models.FederationSubscription;
 import com.gitblit.models.RefModel;
 import com.gitblit.models.RepositoryModel;
 import com.gitblit.models.TeamModel;
@@ -67,10 +76,35 @@ public class FederationPullExecutor implements Runnable {
 
 	private final Logger logger = LoggerFactory.getLogger(FederationPullExecutor.class);
 
+	/**
+	 * The origin lastChange of each pulled repository, keyed by registration
+	 * and local repository name.
+	 */
+	private static final Map<String, Date> lastChanges = new ConcurrentHashMap<String, Date>();
+
+	/**
+	 * Limits the concurrent clones and fetches from each origin host.
+	 */
+	private static final Map<String, Semaphore> hostConnections = new HashMap<String, Semaphore>();
+
+	/**
+	 * Serializes the pulls of each local repository, e.g. the pull of a push
+	 * notification and the periodic pull of the registration.
+	 */
+	private static final ConcurrentHashMap<String, Object> repositoryLocks = new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * The origin change version of the previous complete pull of each
+	 * registration.
+	 */
+	private static final Map<String, String> versions = new ConcurrentHashMap<String, String>();
+
 	private final List<FederationModel> registrations;
 
 	private final boolean isDaemon;
 
+	private final Set<String> repositoryNames;
+
 	/**
 	 * Constructor for specifying a single federation registration. This
 	 * constructor is used to schedule the next pull execution.
@@ -94,6 +128,22 @@ public class FederationPullExecutor implements Runnable {
 	public FederationPullExecutor(List<FederationModel> registrations, boolean isDaemon) {
 		this.registrations = registrations;
 		this.isDaemon = isDaemon;
+		this.repositoryNames = null;
+	}
+
+	/**
+	 * Constructor to pull only the specified repositories of a registration,
+	 * e.g. in response to a push notification of the origin Gitblit instance.
+	 * Users, teams, settings, and scripts are not pulled.
+	 * 
+	 * @param registration
+	 * @param repositoryNames
+	 *            the names of the repositories at the origin
+	 */
+	public FederationPullExecutor(FederationModel registration, Collection<String> repositoryNames) {
+		this.registrations = Arrays.asList(registration);
+		this.isDaemon = false;
+		this.repositoryNames = new HashSet<String>(repositoryNames);
 	}
 
 	/**
@@ -101,36 +151,66 @@ public class FederationPullExecutor implements Runnable {
 	 */
 	@Override
 	public void run() {
-		for (FederationModel registration : registrations) {
-			FederationPullStatus was = registration.getLowestStatus();
-			try {
-				Date now = new Date(System.currentTimeMillis());
-				pull(registration);
+		if (registrations.size() == 1) {
+			pullRegistration(registrations.get(0));
+			return;
+		}
+
+		// pull the registrations concurrently
+		ExecutorService pool = Executors.newFixedThreadPool(registrations.size());
+		for (final FederationModel registration : registrations) {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					pullRegistration(registration);
+				}
+			});
+		}
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			logger.warn("Federation pull interrupted");
+		}
+	}
+
+	/**
+	 * Pulls a registration and, if this is a daemon, schedules its next pull.
+	 * 
+	 * @param registration
+	 */
+	private void pullRegistration(FederationModel registration) {
+		FederationPullStatus was = registration.getLowestStatus();
+		try {
+			Date now = new Date(System.currentTimeMillis());
+			pull(registration);
+			if (repositoryNames == null) {
 				sendStatusAcknowledgment(registration);
 				registration.lastPull = now;
-				FederationPullStatus is = registration.getLowestStatus();
-				if (is.ordinal() < was.ordinal()) {
-					// the status for this registration has downgraded
-					logger.warn("Federation pull status of {0} is now {1}", registration.name,
-							is.name());
-					if (registration.notifyOnError) {
-						String message = "Federation pull of " + registration.name + " @ "
-								+ registration.url + " is now at " + is.name();
-						GitBlit.self()
-								.sendMailToAdministrators(
-										"Pull Status of " + registration.name + " is " + is.name(),
-										message);
-					}
-				}
-			} catch (Throwable t) {
-				logger.error(MessageFormat.format(
-						"Failed to pull from federated gitblit ({0} @ {1})", registration.name,
-						registration.url), t);
-			} finally {
-				if (isDaemon) {
-					schedule(registration);
+				subscribe(registration);
+			}
+			FederationPullStatus is = registration.getLowestStatus();
+			if (is.ordinal() < was.ordinal()) {
+				// the status for this registration has downgraded
+				logger.warn("Federation pull status of {0} is now {1}", registration.name,
+						is.name());
+				if (registration.notifyOnError) {
+					String message = "Federation pull of " + registration.name + " @ "
+							+ registration.url + " is now at " + is.name();
+					GitBlit.self()
+							.sendMailToAdministrators(
+									"Pull Status of " + registration.name + " is " + is.name(),
+									message);
 				}
 			}
+		} catch (Throwable t) {
+			logger.error(MessageFormat.format(
+					"Failed to pull from federated gitblit ({0} @ {1})", registration.name,
+					registration.url), t);
+		} finally {
+			if (isDaemon) {
+				schedule(registration);
+			}
 		}
 	}
 
@@ -141,10 +221,28 @@ public class FederationPullExecutor implements Runnable {
 	 * @param registration
 	 * @throws Exception
 	 */
-	private void pull(FederationModel registration) throws Exception {
-		Map<String, RepositoryModel> repositories = FederationUtils.getRepositories(registration,
-				true);
-		String registrationFolder = registration.folder.toLowerCase().trim();
+	private void pull(final FederationModel registration) throws Exception {
+		// request the changes since the previous pull
+		FederationChanges changes = FederationUtils.getChanges(registration,
+				versions.get(registration.name));
+		Map<String, RepositoryModel> repositories;
+		if (changes == null || changes.version == null) {
+			// origin does not support change requests
+			changes = null;
+			repositories = FederationUtils.getRepositories(registration, true);
+		} else {
+			repositories = new HashMap<String, RepositoryModel>();
+			for (Map.Entry<String, RepositoryModel> entry : changes.repositories.entrySet()) {
+				if (registration.isIncluded(entry.getValue())) {
+					repositories.put(entry.getKey(), entry.getValue());
+				}
+			}
+			logger.info(MessageFormat.format(
+					"Pulling {0} of {1} @ {2}, {3} changed repositories",
+					changes.full ? "all" : "changes", registration.name, registration.url,
+					repositories.size()));
+		}
+		final String registrationFolder = registration.folder.toLowerCase().trim();
 		// confirm valid characters in server alias
 		Character c = StringUtils.findInvalidCharacter(registrationFolder);
 		if (c != null) {
@@ -153,171 +251,54 @@ public class FederationPullExecutor implements Runnable {
 							c, registrationFolder, registration.name));
 			return;
 		}
+		if (repositoryNames != null) {
+			// pull only the specified repositories
+			Map<String, RepositoryModel> specified = new HashMap<String, RepositoryModel>();
+			for (Map.Entry<String, RepositoryModel> entry : repositories.entrySet()) {
+				if (repositoryNames.contains(entry.getValue().name)) {
+					specified.put(entry.getKey(), entry.getValue());
+				}
+			}
+			repositories = specified;
+		}
 		File repositoriesFolder = new File(GitBlit.getString(Keys.git.repositoriesFolder, "git"));
-		File registrationFolderFile = new File(repositoriesFolder, registrationFolder);
+		final File registrationFolderFile = new File(repositoriesFolder, registrationFolder);
 		registrationFolderFile.mkdirs();
 
-		// Clone/Pull the repository
+		// Clone/Pull the repositories with a pool of workers
+		int threads = Math.max(1, GitBlit.getInteger(Keys.federation.pullThreads, 4));
+		ExecutorService workers = Executors.newFixedThreadPool(Math.min(threads,
+				Math.max(1, repositories.size())));
+		final AtomicBoolean incomplete = new AtomicBoolean(false);
 		for (Map.Entry<String, RepositoryModel> entry : repositories.entrySet()) {
-			String cloneUrl = entry.getKey();
-			RepositoryModel repository = entry.getValue();
-			if (!repository.hasCommits) {
-				logger.warn(MessageFormat.format(
-						"Skipping federated repository {0} from {1} @ {2}. Repository is EMPTY.",
-						repository.name, registration.name, registration.url));
-				registration.updateStatus(repository, FederationPullStatus.SKIPPED);
-				continue;
-			}
-
-			// Determine local repository name
-			String repositoryName;
-			if (StringUtils.isEmpty(registrationFolder)) {
-				repositoryName = repository.name;
-			} else {
-				repositoryName = registrationFolder + "/" + repository.name;
-			}
-
-			if (registration.bare) {
-				// bare repository, ensure .git suffix
-				if (!repositoryName.toLowerCase().endsWith(DOT_GIT_EXT)) {
-					repositoryName += DOT_GIT_EXT;
-				}
-			} else {
-				// normal repository, strip .git suffix
-				if (repositoryName.toLowerCase().endsWith(DOT_GIT_EXT)) {
-					repositoryName = repositoryName.substring(0,
-							repositoryName.indexOf(DOT_GIT_EXT));
-				}
-			}
-			
-			// confirm that the origin of any pre-existing repository matches
-			// the clone url
-			String fetchHead = null;
-			Repository existingRepository = GitBlit.self().getRepository(repositoryName);
-			
-			if (existingRepository == null && GitBlit.self().isCollectingGarbage(repositoryName)) {
-				logger.warn(MessageFormat.format("Skipping local repository {0}, busy collecting garbage", repositoryName));
-				continue;
-			}
-
-			if (existingRepository != null) {
-				StoredConfig config = existingRepository.getConfig();
-				config.load();
-				String origin = config.getString("remote", "origin", "url");
-				RevCommit commit = JGitUtils.getCommit(existingRepository,
-						org.eclipse.jgit.lib.Constants.FETCH_HEAD);
-				if (commit != null) {
-					fetchHead = commit.getName();
-				}
-				existingRepository.close();
-				if (!origin.startsWith(registration.url)) {
-					logger.warn(MessageFormat
-							.format("Skipping federated repository {0} from {1} @ {2}. Origin does not match, consider EXCLUDING.",
-									repository.name, registration.name, registration.url));
-					registration.updateStatus(repository, FederationPullStatus.SKIPPED);
-					continue;
-				}
-			}
-
-			// clone/pull this repository
-			CredentialsProvider credentials = new UsernamePasswordCredentialsProvider(
-					Constants.FEDERATION_USER, registration.token);
-			logger.info(MessageFormat.format("Pulling federated repository {0} from {1} @ {2}",
-					repository.name, registration.name, registration.url));
-
-			CloneResult result = JGitUtils.cloneRepository(registrationFolderFile, repository.name,
-					cloneUrl, registration.bare, credentials);
-			Repository r = GitBlit.self().getRepository(repositoryName);
-			RepositoryModel rm = GitBlit.self().getRepositoryModel(repositoryName);
-			repository.isFrozen = registration.mirror;
-			if (result.createdRepository) {
-				// default local settings
-				repository.federationStrategy = FederationStrategy.EXCLUDE;
-				repository.isFrozen = registration.mirror;
-				repository.showRemoteBranches = !registration.mirror;
-				logger.info(MessageFormat.format("     cloning {0}", repository.name));
-				registration.updateStatus(repository, FederationPullStatus.MIRRORED);
-			} else {
-				// fetch and update
-				boolean fetched = false;
-				RevCommit commit = JGitUtils.getCommit(r, org.eclipse.jgit.lib.Constants.FETCH_HEAD);
-				String newFetchHead = commit.getName();
-				fetched = fetchHead == null || !fetchHead.equals(newFetchHead);
-
-				if (registration.mirror) {
-					// mirror
-					if (fetched) {
-						// update local branches to match the remote tracking branches
-						for (RefModel ref : JGitUtils.getRemoteBranches(r, false, -1)) {
-							if (ref.displayName.startsWith("origin/")) {
-								String branch = org.eclipse.jgit.lib.Constants.R_HEADS
-										+ ref.displayName.substring(ref.displayName.indexOf('/') + 1);
-								String hash = ref.getReferencedObjectId().getName();
-								
-								JGitUtils.setBranchRef(r, branch, hash);
-								logger.info(MessageFormat.format("     resetting {0} of {1} to {2}", branch,
-										repository.name, hash));
+			final String cloneUrl = entry.getKey();
+			final RepositoryModel repository = entry.getValue();
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						synchronized (getRepositoryLock(registrationFolder, repository)) {
+							if (!pullRepository(registration, registrationFolder,
+									registrationFolderFile, cloneUrl, repository)) {
+								incomplete.set(true);
 							}
 						}
-						
-						String newHead;
-						if (StringUtils.isEmpty(repository.HEAD)) {
-							newHead = newFetchHead;
-						} else {
-							newHead = repository.HEAD;
-						}
-						JGitUtils.setHEADtoRef(r, newHead);
-						logger.info(MessageFormat.format("     resetting HEAD of {0} to {1}",
-								repository.name, newHead));
-						registration.updateStatus(repository, FederationPullStatus.MIRRORED);
-					} else {
-						// indicate no commits pulled
-						registration.updateStatus(repository, FederationPullStatus.NOCHANGE);
-					}
-				} else {
-					// non-mirror
-					if (fetched) {
-						// indicate commits pulled to origin/master
-						registration.updateStatus(repository, FederationPullStatus.PULLED);
-					} else {
-						// indicate no commits pulled
-						registration.updateStatus(repository, FederationPullStatus.NOCHANGE);
+					} catch (Throwable t) {
+						incomplete.set(true);
+						registration.updateStatus(repository, FederationPullStatus.FAILED);
+						logger.error(MessageFormat.format(
+								"Failed to pull federated repository {0} from {1} @ {2}",
+								repository.name, registration.name, registration.url), t);
 					}
 				}
+			});
+		}
+		workers.shutdown();
+		workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
 
-				// preserve local settings
-				repository.isFrozen = rm.isFrozen;
-				repository.federationStrategy = rm.federationStrategy;
-
-				// merge federation sets
-				Set<String> federationSets = new HashSet<String>();
-				if (rm.federationSets != null) {
-					federationSets.addAll(rm.federationSets);
-				}
-				if (repository.federationSets != null) {
-					federationSets.addAll(repository.federationSets);
-				}
-				repository.federationSets = new ArrayList<String>(federationSets);
-				
-				// merge indexed branches
-				Set<String> indexedBranches = new HashSet<String>();
-				if (rm.indexedBranches != null) {
-					indexedBranches.addAll(rm.indexedBranches);
-				}
-				if (repository.indexedBranches != null) {
-					indexedBranches.addAll(repository.indexedBranches);
-				}
-				repository.indexedBranches = new ArrayList<String>(indexedBranches);
-
-			}
-			// only repositories that are actually _cloned_ from the origin
-			// Gitblit repository are marked as federated. If the origin
-			// is from somewhere else, these repositories are not considered
-			// "federated" repositories.
-			repository.isFederated = cloneUrl.startsWith(registration.url);
-
-			GitBlit.self().updateConfiguration(r, repository);
-			r.close();
+		if (repositoryNames != null) {
+			// the changes of the other repositories have not been pulled
+			return;
 		}
 
 		IUserService userService = null;
@@ -327,11 +308,24 @@ public class FederationPullExecutor implements Runnable {
 			// TeamModels are automatically pulled because they are contained
 			// within the UserModel. The UserService creates unknown teams
 			// and updates existing teams.
-			Collection<UserModel> users = FederationUtils.getUsers(registration);
-			if (users != null && users.size() > 0) {
-				File realmFile = new File(registrationFolderFile, registration.name + "_users.conf");
+			Collection<UserModel> users;
+			if (changes == null) {
+				users = FederationUtils.getUsers(registration);
+			} else {
+				users = changes.users;
+			}
+			File realmFile = new File(registrationFolderFile, registration.name + "_users.conf");
+			if (changes != null && !changes.full && users != null) {
+				// update the realm with the changed and deleted users
+				userService = new ConfigUserService(realmFile);
+				for (String username : changes.deletedUsers) {
+					userService.deleteUser(username);
+				}
+			} else if (users != null && users.size() > 0) {
 				realmFile.delete();
 				userService = new ConfigUserService(realmFile);
+			}
+			if (userService != null) {
 				for (UserModel user : users) {
 					userService.updateUserModel(user.username, user);
 
@@ -427,7 +421,15 @@ public class FederationPullExecutor implements Runnable {
 			// UserModels because it is possible to use teams to specify
 			// mailing lists or push scripts without specifying users.
 			if (userService != null) {
-				Collection<TeamModel> teams = FederationUtils.getTeams(registration);
+				Collection<TeamModel> teams;
+				if (changes == null) {
+					teams = FederationUtils.getTeams(registration);
+				} else {
+					teams = changes.teams;
+					for (String teamname : changes.deletedTeams) {
+						userService.deleteTeam(teamname);
+					}
+				}
 				if (teams != null && teams.size() > 0) {
 					for (TeamModel team : teams) {
 						userService.updateTeamModel(team);
@@ -482,6 +484,219 @@ public class FederationPullExecutor implements Runnable {
 					"Failed to retrieve SCRIPTS from federated gitblit ({0} @ {1})",
 					registration.name, registration.url), e);
 		}
+
+		if (changes != null) {
+			if (incomplete.get()) {
+				// request the same changes again on the next pull
+				versions.remove(registration.name);
+			} else {
+				versions.put(registration.name, changes.version);
+			}
+		}
+	}
+
+	/**
+	 * Clones or fetches a repository from the origin Gitblit instance.
+	 * 
+	 * @param registration
+	 * @param registrationFolder
+	 * @param registrationFolderFile
+	 * @param cloneUrl
+	 * @param repository
+	 *            the origin repository model
+	 * @return false if the local repository is busy and was skipped
+	 * @throws Exception
+	 */
+	private boolean pullRepository(FederationModel registration, String registrationFolder,
+			File registrationFolderFile, String cloneUrl, RepositoryModel repository)
+			throws Exception {
+		if (!repository.hasCommits) {
+			logger.warn(MessageFormat.format(
+					"Skipping federated repository {0} from {1} @ {2}. Repository is EMPTY.",
+					repository.name, registration.name, registration.url));
+			registration.updateStatus(repository, FederationPullStatus.SKIPPED);
+			return true;
+		}
+
+		// Determine local repository name
+		String repositoryName;
+		if (StringUtils.isEmpty(registrationFolder)) {
+			repositoryName = repository.name;
+		} else {
+			repositoryName = registrationFolder + "/" + repository.name;
+		}
+
+		if (registration.bare) {
+			// bare repository, ensure .git suffix
+			if (!repositoryName.toLowerCase().endsWith(DOT_GIT_EXT)) {
+				repositoryName += DOT_GIT_EXT;
+			}
+		} else {
+			// normal repository, strip .git suffix
+			if (repositoryName.toLowerCase().endsWith(DOT_GIT_EXT)) {
+				repositoryName = repositoryName.substring(0,
+						repositoryName.indexOf(DOT_GIT_EXT));
+			}
+		}
+		
+		// confirm that the origin of any pre-existing repository matches
+		// the clone url
+		String fetchHead = null;
+		Repository existingRepository = GitBlit.self().getRepository(repositoryName);
+		
+		if (existingRepository == null && GitBlit.self().isCollectingGarbage(repositoryName)) {
+			logger.warn(MessageFormat.format("Skipping local repository {0}, busy collecting garbage", repositoryName));
+			return false;
+		}
+
+		if (existingRepository != null && GitBlit.self().isRepacking(repositoryName)) {
+			existingRepository.close();
+			logger.warn(MessageFormat.format("Skipping local repository {0}, busy collecting garbage", repositoryName));
+			return false;
+		}
+
+		if (existingRepository != null) {
+			StoredConfig config = existingRepository.getConfig();
+			config.load();
+			String origin = config.getString("remote", "origin", "url");
+			RevCommit commit = JGitUtils.getCommit(existingRepository,
+					org.eclipse.jgit.lib.Constants.FETCH_HEAD);
+			if (commit != null) {
+				fetchHead = commit.getName();
+			}
+			existingRepository.close();
+			if (!origin.startsWith(registration.url)) {
+				logger.warn(MessageFormat
+						.format("Skipping federated repository {0} from {1} @ {2}. Origin does not match, consider EXCLUDING.",
+								repository.name, registration.name, registration.url));
+				registration.updateStatus(repository, FederationPullStatus.SKIPPED);
+				return true;
+			}
+		}
+
+		// skip the fetch if the origin repository has not changed since the
+		// previous pull, unless the origin notified of a push
+		String pullKey = registration.name + ":" + repositoryName.toLowerCase();
+		Date pulledChange = lastChanges.get(pullKey);
+		boolean unchanged = repositoryNames == null && existingRepository != null
+				&& pulledChange != null && repository.lastChange != null
+				&& pulledChange.equals(repository.lastChange);
+
+		CloneResult result = null;
+		if (unchanged) {
+			logger.debug(MessageFormat.format("Skipping fetch of unchanged federated repository {0} from {1} @ {2}",
+					repository.name, registration.name, registration.url));
+		} else {
+			// clone/pull this repository
+			CredentialsProvider credentials = new UsernamePasswordCredentialsProvider(
+					Constants.FEDERATION_USER, registration.token);
+			logger.info(MessageFormat.format("Pulling federated repository {0} from {1} @ {2}",
+					repository.name, registration.name, registration.url));
+
+			Semaphore connections = getConnections(cloneUrl);
+			connections.acquire();
+			try {
+				result = JGitUtils.cloneRepository(registrationFolderFile, repository.name,
+						cloneUrl, registration.bare, credentials);
+			} finally {
+				connections.release();
+			}
+		}
+		Repository r = GitBlit.self().getRepository(repositoryName);
+		RepositoryModel rm = GitBlit.self().getRepositoryModel(repositoryName);
+		repository.isFrozen = registration.mirror;
+		if (result != null && result.createdRepository) {
+			// default local settings
+			repository.federationStrategy = FederationStrategy.EXCLUDE;
+			repository.isFrozen = registration.mirror;
+			repository.showRemoteBranches = !registration.mirror;
+			logger.info(MessageFormat.format("     cloning {0}", repository.name));
+			registration.updateStatus(repository, FederationPullStatus.MIRRORED);
+		} else {
+			// fetch and update
+			boolean fetched = false;
+			RevCommit commit = JGitUtils.getCommit(r, org.eclipse.jgit.lib.Constants.FETCH_HEAD);
+			String newFetchHead = commit.getName();
+			fetched = !unchanged && (fetchHead == null || !fetchHead.equals(newFetchHead));
+
+			if (registration.mirror) {
+				// mirror
+				if (fetched) {
+					// update local branches to match the remote tracking branches
+					for (RefModel ref : JGitUtils.getRemoteBranches(r, false, -1)) {
+						if (ref.displayName.startsWith("origin/")) {
+							String branch = org.eclipse.jgit.lib.Constants.R_HEADS
+									+ ref.displayName.substring(ref.displayName.indexOf('/') + 1);
+							String hash = ref.getReferencedObjectId().getName();
+							
+							JGitUtils.setBranchRef(r, branch, hash);
+							logger.info(MessageFormat.format("     resetting {0} of {1} to {2}", branch,
+									repository.name, hash));
+						}
+					}
+					
+					String newHead;
+					if (StringUtils.isEmpty(repository.HEAD)) {
+						newHead = newFetchHead;
+					} else {
+						newHead = repository.HEAD;
+					}
+					JGitUtils.setHEADtoRef(r, newHead);
+					logger.info(MessageFormat.format("     resetting HEAD of {0} to {1}",
+							repository.name, newHead));
+					registration.updateStatus(repository, FederationPullStatus.MIRRORED);
+				} else {
+					// indicate no commits pulled
+					registration.updateStatus(repository, FederationPullStatus.NOCHANGE);
+				}
+			} else {
+				// non-mirror
+				if (fetched) {
+					// indicate commits pulled to origin/master
+					registration.updateStatus(repository, FederationPullStatus.PULLED);
+				} else {
+					// indicate no commits pulled
+					registration.updateStatus(repository, FederationPullStatus.NOCHANGE);
+				}
+			}
+
+			// preserve local settings
+			repository.isFrozen = rm.isFrozen;
+			repository.federationStrategy = rm.federationStrategy;
+
+			// merge federation sets
+			Set<String> federationSets = new HashSet<String>();
+			if (rm.federationSets != null) {
+				federationSets.addAll(rm.federationSets);
+			}
+			if (repository.federationSets != null) {
+				federationSets.addAll(repository.federationSets);
+			}
+			repository.federationSets = new ArrayList<String>(federationSets);
+			
+			// merge indexed branches
+			Set<String> indexedBranches = new HashSet<String>();
+			if (rm.indexedBranches != null) {
+				indexedBranches.addAll(rm.indexedBranches);
+			}
+			if (repository.indexedBranches != null) {
+				indexedBranches.addAll(repository.indexedBranches);
+			}
+			repository.indexedBranches = new ArrayList<String>(indexedBranches);
+
+		}
+		// only repositories that are actually _cloned_ from the origin
+		// Gitblit repository are marked as federated. If the origin
+		// is from somewhere else, these repositories are not considered
+		// "federated" repositories.
+		repository.isFederated = cloneUrl.startsWith(registration.url);
+
+		GitBlit.self().updateConfiguration(r, repository);
+		r.close();
+		if (repository.lastChange != null) {
+			lastChanges.put(pullKey, repository.lastChange);
+		}
+		return true;
 	}
 
 	/**
@@ -505,6 +720,72 @@ public class FederationPullExecutor implements Runnable {
 		logger.info(MessageFormat.format("Pull status sent to {0}", registration.url));
 	}
 
+	/**
+	 * Subscribes to the push notifications of the origin Gitblit instance, if
+	 * the notification url of this Gitblit instance is set.
+	 * 
+	 * @param registration
+	 */
+	private void subscribe(FederationModel registration) {
+		String notificationUrl = GitBlit.getString(Keys.federation.notificationUrl, "");
+		if (StringUtils.isEmpty(notificationUrl)) {
+			return;
+		}
+		FederationSubscription subscription = new FederationSubscription(notificationUrl,
+				registration.name, GitBlit.self().getFederationSubscriptionKey(registration.name));
+		try {
+			if (FederationUtils.subscribe(registration, subscription)) {
+				logger.debug(MessageFormat.format("Subscribed to notifications of {0} @ {1}",
+						registration.name, registration.url));
+			}
+		} catch (Exception e) {
+			logger.warn(MessageFormat.format(
+					"Failed to subscribe to notifications of federated gitblit ({0} @ {1})",
+					registration.name, registration.url), e);
+		}
+	}
+
+	/**
+	 * Returns the lock of the local repository of an origin repository.
+	 * 
+	 * @param registrationFolder
+	 * @param repository
+	 *            the origin repository model
+	 * @return the lock
+	 */
+	private Object getRepositoryLock(String registrationFolder, RepositoryModel repository) {
+		String name = StringUtils.isEmpty(registrationFolder) ? repository.name
+				: (registrationFolder + "/" + repository.name);
+		Object lock = new Object();
+		Object previous = repositoryLocks.putIfAbsent(name.toLowerCase(), lock);
+		return previous == null ? lock : previous;
+	}
+
+	/**
+	 * Returns the connection permits of the host of the clone url.
+	 * 
+	 * @param cloneUrl
+	 * @return the connection permits of the host
+	 */
+	private Semaphore getConnections(String cloneUrl) {
+		String host;
+		try {
+			URL url = new URL(cloneUrl);
+			host = url.getHost().toLowerCase() + ":" + url.getPort();
+		} catch (MalformedURLException e) {
+			host = cloneUrl;
+		}
+		synchronized (hostConnections) {
+			Semaphore connections = hostConnections.get(host);
+			if (connections == null) {
+				int permits = Math.max(1, GitBlit.getInteger(Keys.federation.maxConnectionsPerHost, 4));
+				connections = new Semaphore(permits);
+				hostConnections.put(host, connections);
+			}
+			return connections;
+		}
+	}
+
 	/**
 	 * Schedules the next check of the federated Gitblit instance.
 	 * 
@@ -30,6 +30,7 @@ import javax.servlet.http.HttpServletResponse;
 import com.gitblit.Constants.FederationRequest;
 import com.gitblit.models.FederationModel;
 import com.gitblit.models.FederationProposal;
+import com.gitblit.models.FederationSubscription;
 import com.gitblit.models.TeamModel;
 import com.gitblit.models.UserModel;
 import com.gitblit.utils.FederationUtils;
@@ -75,6 +76,22 @@ public class FederationServlet extends JsonServlet {
 			return;
 		}
 
+		if (FederationRequest.NOTIFY.equals(reqType)) {
+			// an origin Gitblit instance notifies of a pushed repository
+			String name = request.getParameter("name");
+			String key = request.getParameter("key");
+			String repository = request.getParameter("repository");
+			if (!GitBlit.self().receiveFederationNotification(name, key, repository)) {
+				logger.warn(MessageFormat.format(
+						"Rejected federation notification for registration ''{0}'' from {1}",
+						name, request.getRemoteAddr()));
+				response.sendError(HttpServletResponse.SC_FORBIDDEN);
+				return;
+			}
+			response.setStatus(HttpServletResponse.SC_OK);
+			return;
+		}
+
 		if (!GitBlit.getBoolean(Keys.git.enableGitServlet, true)) {
 			logger.warn(Keys.git.enableGitServlet + " must be set TRUE for federation requests.");
 			response.sendError(HttpServletResponse.SC_FORBIDDEN);
@@ -163,10 +180,37 @@ public class FederationServlet extends JsonServlet {
 			return;
 		}
 
+		if (FederationRequest.SUBSCRIBE.equals(reqType)) {
+			// a pulling Gitblit instance subscribes to push notifications
+			FederationSubscription subscription = deserialize(request, response,
+					FederationSubscription.class);
+			if (subscription == null) {
+				return;
+			}
+			if (!GitBlit.self().isAllowedFederationSubscription(subscription,
+					request.getRemoteAddr())) {
+				logger.warn(MessageFormat.format(
+						"Federation subscription of {0} from {1} is not allowed",
+						subscription.url, request.getRemoteAddr()));
+				response.sendError(HttpServletResponse.SC_FORBIDDEN);
+				return;
+			}
+			subscription.token = token;
+			subscription.subscribed = new Date();
+			GitBlit.self().subscribeFederation(subscription);
+			response.setStatus(HttpServletResponse.SC_OK);
+			return;
+		}
+
 		Object result = null;
 		if (FederationRequest.PULL_REPOSITORIES.equals(reqType)) {
 			String gitblitUrl = HttpUtils.getGitblitURL(request);
 			result = GitBlit.self().getRepositories(gitblitUrl, token);
+		} else if (FederationRequest.PULL_CHANGES.equals(reqType)) {
+			// pull the repositories, users, and teams changed since a version
+			String gitblitUrl = HttpUtils.getGitblitURL(request);
+			String since = request.getParameter("since");
+			result = GitBlit.self().getFederationChanges(gitblitUrl, token, since);
 		} else {
 			if (FederationRequest.PULL_SETTINGS.equals(reqType)) {
 				// pull settings
@@ -259,6 +303,6 @@ public class FederationServlet extends JsonServlet {
 		}
 
 		// send the result of the request
-		serialize(response, result);
+		serialize(request, response, result);
 	}
 }
@@ -100,6 +100,7 @@ public class FileSettings extends IStoredSettings {
 		// manually set the forceReload flag because not all JVMs support real
 		// millisecond resolution of lastModified. (issue-55)		
 		forceReload = true;
+		refresh();
 		return true;
 	}
 	
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.util.FS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gitblit.utils.StringUtils;
+
+/**
+ * The ForkGraph records the origin of each fork, the forks of each
+ * repository, and the forks of each user so that fork networks can be
+ * resolved without loading the models of all repositories.
+ *
+ * The graph is derived from the origin urls of the repositories and is
+ * persisted so that it is available before the repository list has been
+ * loaded. Repository names are matched case-insensitively.
+ *
+ * @author James Moger
+ *
+ */
+public class ForkGraph {
+
+	private static final String FORK = "fork";
+
+	private static final String ORIGIN = "origin";
+
+	private final Logger logger = LoggerFactory.getLogger(ForkGraph.class);
+
+	private final File file;
+
+	// lowercase name -> name
+	private final Map<String, String> names = new HashMap<String, String>();
+
+	// lowercase fork -> lowercase origin
+	private final Map<String, String> origins = new HashMap<String, String>();
+
+	// lowercase origin -> lowercase forks
+	private final Map<String, Set<String>> forks = new HashMap<String, Set<String>>();
+
+	// lowercase username -> lowercase forks
+	private final Map<String, Set<String>> userForks = new HashMap<String, Set<String>>();
+
+	private boolean dirty;
+
+	/**
+	 * Creates a fork graph.
+	 *
+	 * @param file
+	 *            the file of the persisted graph, if null the graph is not
+	 *            persisted
+	 */
+	public ForkGraph(File file) {
+		this.file = file;
+		load();
+	}
+
+	/**
+	 * Sets the origin of a repository.
+	 *
+	 * @param repository
+	 * @param origin
+	 *            if null, the repository is not a fork
+	 * @return true if the graph changed
+	 */
+	public synchronized boolean setOrigin(String repository, String origin) {
+		String key = repository.toLowerCase();
+		if (names.containsKey(key)) {
+			// keep the case of the repository name
+			names.put(key, repository);
+		}
+		String current = origins.get(key);
+		if (origin == null ? current == null : origin.equalsIgnoreCase(current)) {
+			return false;
+		}
+		if (current != null) {
+			unlink(key, current);
+		}
+		if (origin != null) {
+			String originKey = origin.toLowerCase();
+			names.put(key, repository);
+			if (!names.containsKey(originKey)) {
+				names.put(originKey, origin);
+			}
+			origins.put(key, originKey);
+			add(forks, originKey, key);
+			String username = getUsername(key);
+			if (username != null) {
+				add(userForks, username, key);
+			}
+		}
+		dirty = true;
+		return true;
+	}
+
+	/**
+	 * Renames a repository. The forks of the repository are retained.
+	 *
+	 * @param oldName
+	 * @param newName
+	 */
+	public synchronized void rename(String oldName, String newName) {
+		String origin = getOrigin(oldName);
+		List<String> children = getForks(oldName);
+		remove(oldName);
+		setOrigin(newName, origin);
+		for (String child : children) {
+			setOrigin(child, newName);
+		}
+		names.put(newName.toLowerCase(), newName);
+	}
+
+	/**
+	 * Removes a repository. The forks of the repository become roots.
+	 *
+	 * @param repository
+	 */
+	public synchronized void remove(String repository) {
+		String key = repository.toLowerCase();
+		String origin = origins.get(key);
+		if (origin != null) {
+			unlink(key, origin);
+		}
+		Set<String> children = forks.remove(key);
+		if (children != null) {
+			for (String child : children) {
+				origins.remove(child);
+				removeUserFork(child);
+			}
+		}
+		names.remove(key);
+		dirty = true;
+	}
+
+	/**
+	 * Removes all repositories which are not in the specified list.
+	 *
+	 * @param repositories
+	 */
+	public synchronized void retainAll(Collection<String> repositories) {
+		Set<String> keys = new HashSet<String>();
+		for (String repository : repositories) {
+			keys.add(repository.toLowerCase());
+		}
+		for (String key : new ArrayList<String>(names.keySet())) {
+			if (!keys.contains(key)) {
+				remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Returns the origin of the repository.
+	 *
+	 * @param repository
+	 * @return the origin or null if the repository is not a fork
+	 */
+	public synchronized String getOrigin(String repository) {
+		return getName(origins.get(repository.toLowerCase()));
+	}
+
+	/**
+	 * Returns the direct forks of the repository.
+	 *
+	 * @param repository
+	 * @return the forks
+	 */
+	public synchronized List<String> getForks(String repository) {
+		List<String> list = new ArrayList<String>();
+		Set<String> children = forks.get(repository.toLowerCase());
+		if (children != null) {
+			for (String child : children) {
+				list.add(getName(child));
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the root of the fork network of the repository.
+	 *
+	 * @param repository
+	 * @return the root, which is the repository itself if it is not a fork
+	 */
+	public synchronized String getRoot(String repository) {
+		String key = repository.toLowerCase();
+		// the step limit protects against cyclic origins
+		for (int i = 0; i <= origins.size() && origins.containsKey(key); i++) {
+			key = origins.get(key);
+		}
+		String name = getName(key);
+		return name == null ? repository : name;
+	}
+
+	/**
+	 * Returns a fork of the user in the fork network of the repository.
+	 *
+	 * @param username
+	 * @param repository
+	 * @return the name of the user's fork or null
+	 */
+	public synchronized String getFork(String username, String repository) {
+		Set<String> candidates = userForks.get(username.toLowerCase());
+		if (candidates == null) {
+			return null;
+		}
+		String root = getRoot(repository).toLowerCase();
+		for (String fork : candidates) {
+			if (getRoot(fork).equalsIgnoreCase(root)) {
+				return getName(fork);
+			}
+		}
+		return null;
+	}
+
+	public synchronized int size() {
+		return origins.size();
+	}
+
+	public synchronized void clear() {
+		names.clear();
+		origins.clear();
+		forks.clear();
+		userForks.clear();
+		dirty = true;
+	}
+
+	/**
+	 * Writes the graph, if it has changed since it was loaded or saved.
+	 */
+	public synchronized void save() {
+		if (file == null || !dirty) {
+			return;
+		}
+		FileBasedConfig config = new FileBasedConfig(file, FS.detect());
+		for (Map.Entry<String, String> entry : origins.entrySet()) {
+			config.setString(FORK, getName(entry.getKey()), ORIGIN, getName(entry.getValue()));
+		}
+		try {
+			config.save();
+			dirty = false;
+		} catch (Exception e) {
+			logger.error(MessageFormat.format("Failed to save fork graph {0}", file), e);
+		}
+	}
+
+	private void load() {
+		if (file == null || !file.exists()) {
+			return;
+		}
+		FileBasedConfig config = new FileBasedConfig(file, FS.detect());
+		try {
+			config.load();
+		} catch (Exception e) {
+			logger.error(MessageFormat.format("Failed to load fork graph {0}", file), e);
+			return;
+		}
+		for (String repository : config.getSubsections(FORK)) {
+			String origin = config.getString(FORK, repository, ORIGIN);
+			if (!StringUtils.isEmpty(origin)) {
+				setOrigin(repository, origin);
+			}
+		}
+		dirty = false;
+	}
+
+	private void unlink(String key, String origin) {
+		origins.remove(key);
+		Set<String> siblings = forks.get(origin);
+		if (siblings != null) {
+			siblings.remove(key);
+			if (siblings.isEmpty()) {
+				forks.remove(origin);
+			}
+		}
+		removeUserFork(key);
+	}
+
+	private void removeUserFork(String key) {
+		String username = getUsername(key);
+		if (username != null && userForks.containsKey(username)) {
+			userForks.get(username).remove(key);
+			if (userForks.get(username).isEmpty()) {
+				userForks.remove(username);
+			}
+		}
+	}
+
+	private String getName(String key) {
+		if (key == null) {
+			return null;
+		}
+		String name = names.get(key);
+		return name == null ? key : name;
+	}
+
+	private static void add(Map<String, Set<String>> map, String key, String value) {
+		Set<String> set = map.get(key);
+		if (set == null) {
+			set = new HashSet<String>();
+			map.put(key, set);
+		}
+		set.add(value);
+	}
+
+	private static String getUsername(String repository) {
+		String project = StringUtils.getFirstPathElement(repository);
+		if (project.length() > 1 && project.charAt(0) == '~') {
+			return project.substring(1);
+		}
+		return null;
+	}
+}
@@ -15,15 +15,25 @@
  */
 package com.gitblit;
 
+import java.io.File;
 import java.lang.reflect.Field;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.storage.file.FileRepository;
 import org.eclipse.jgit.storage.file.GC;
@@ -33,17 +43,30 @@ import org.slf4j.LoggerFactory;
 
 import com.gitblit.models.RepositoryModel;
 import com.gitblit.utils.FileUtils;
+import com.gitblit.utils.MetricsRegistry;
 
 /**
  * The GC executor handles periodic garbage collection in repositories.
  * 
+ * A scan only computes the storage statistics of repositories which have
+ * received a push or whose object folders have been modified since they were
+ * last collected or scanned, or whose GC period has elapsed. The object
+ * folders reveal writes which are not pushes, e.g. federation pulls, and
+ * writes which happened before a restart. The statistics are computed by a
+ * configurable number of concurrent scanners. Repositories with garbage are
+ * queued by the size of their loose objects and their number of pack files
+ * and the queue is drained by the same number of concurrent collectors.
+ * 
+ * A non-blocking collection repacks a repository while it remains readable
+ * and only locks it to pack the refs.
+ * 
  * @author James Moger
  * 
  */
 public class GCExecutor implements Runnable {
 
 	public static enum GCStatus {
-		READY, COLLECTING;
+		READY, REPACKING, COLLECTING;
 		
 		public boolean exceeds(GCStatus s) {
 			return ordinal() > s.ordinal();
@@ -59,6 +82,18 @@ public class GCExecutor implements Runnable {
 	
 	private final Map<String, GCStatus> gcCache = new ConcurrentHashMap<String, GCStatus>();
 
+	private final ConcurrentMap<String, AtomicInteger> pushes = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private final Map<String, Date> lastScan = new ConcurrentHashMap<String, Date>();
+
+	private final PriorityBlockingQueue<GCCandidate> queue = new PriorityBlockingQueue<GCCandidate>();
+
+	private final Map<String, GCCandidate> active = new ConcurrentHashMap<String, GCCandidate>();
+
+	private final AtomicInteger collected = new AtomicInteger();
+
+	private volatile ExecutorService collectors;
+
 	public GCExecutor(IStoredSettings settings) {
 		this.settings = settings;
 	}
@@ -87,12 +122,29 @@ public class GCExecutor implements Runnable {
 	 * @return true if the status has been set
 	 */
 	private boolean setGCStatus(String repositoryName, GCStatus status) {
+		return setGCStatus(repositoryName, GCStatus.READY, status);
+	}
+
+	/**
+	 * Tries to change the GCStatus of the specified repository from the
+	 * expected status.
+	 * 
+	 * @param repositoryName
+	 * @param expected
+	 *            the current status of the repository
+	 * @param status
+	 * @return true if the status has been set
+	 */
+	private synchronized boolean setGCStatus(String repositoryName, GCStatus expected,
+			GCStatus status) {
 		String key = repositoryName.toLowerCase();
-		if (gcCache.containsKey(key)) {
-			if (gcCache.get(key).exceeds(GCStatus.READY)) {
-				// already collecting or blocked
-				return false;
-			}
+		GCStatus current = gcCache.get(key);
+		if (current == null) {
+			current = GCStatus.READY;
+		}
+		if (!current.equals(expected)) {
+			// already collecting or blocked
+			return false;
 		}
 		gcCache.put(key, status);
 		return true;
@@ -109,6 +161,18 @@ public class GCExecutor implements Runnable {
 		return gcCache.containsKey(key) && GCStatus.COLLECTING.equals(gcCache.get(key));
 	}
 
+	/**
+	 * Returns true if Gitblit is repacking this repository. The repository may
+	 * be read but must not be modified.
+	 * 
+	 * @param repositoryName
+	 * @return true if repacking
+	 */
+	public boolean isRepacking(String repositoryName) {
+		String key = repositoryName.toLowerCase();
+		return gcCache.containsKey(key) && GCStatus.REPACKING.equals(gcCache.get(key));
+	}
+
 	/**
 	 * Resets the GC status to ready.
 	 * 
@@ -117,9 +181,64 @@ public class GCExecutor implements Runnable {
 	public void releaseLock(String repositoryName) {
 		gcCache.put(repositoryName.toLowerCase(), GCStatus.READY);
 	}
-	
+
+	/**
+	 * Records a push to the repository. The repository will be examined by
+	 * the next scan.
+	 * 
+	 * @param repositoryName
+	 */
+	public void onPush(String repositoryName) {
+		String key = repositoryName.toLowerCase();
+		AtomicInteger count = pushes.get(key);
+		if (count == null) {
+			AtomicInteger newCount = new AtomicInteger();
+			count = pushes.putIfAbsent(key, newCount);
+			if (count == null) {
+				count = newCount;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of repositories waiting for garbage collection.
+	 * 
+	 * @return the number of queued repositories
+	 */
+	public int getQueuedCount() {
+		return queue.size();
+	}
+
+	/**
+	 * Returns the repositories which are being garbage collected.
+	 * 
+	 * @return the names of the repositories being collected
+	 */
+	public List<String> getActiveRepositories() {
+		List<String> list = new ArrayList<String>();
+		for (GCCandidate candidate : active.values()) {
+			list.add(candidate.repositoryName);
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the number of repositories collected by the current or last scan.
+	 * 
+	 * @return the number of collected repositories
+	 */
+	public int getCollectedCount() {
+		return collected.get();
+	}
+
 	public void close() {
 		forceClose.set(true);
+		queue.clear();
+		ExecutorService pool = collectors;
+		if (pool != null) {
+			pool.shutdown();
+		}
 	}
 
 	@Override
@@ -128,95 +247,288 @@ public class GCExecutor implements Runnable {
 			return;
 		}
 		
-		running.set(true);		
-		Date now = new Date();
-
-		for (String repositoryName : GitBlit.self().getRepositoryList()) {
-			if (forceClose.get()) {
-				break;
-			}
-			if (isCollectingGarbage(repositoryName)) {
-				logger.warn(MessageFormat.format("Already collecting garbage from {0}?!?", repositoryName));
-				continue;
-			}
-			boolean garbageCollected = false;
-			RepositoryModel model = null;
-			FileRepository repository = null;
-			try {
-				model = GitBlit.self().getRepositoryModel(repositoryName);
-				repository = (FileRepository) GitBlit.self().getRepository(repositoryName);
-				if (repository == null) {
-					logger.warn(MessageFormat.format("GCExecutor is missing repository {0}?!?", repositoryName));
-					continue;
-				}
-				
-				if (!isRepositoryIdle(repository)) {
-					logger.debug(MessageFormat.format("GCExecutor is skipping {0} because it is not idle", repositoryName));
-					continue;
-				}
+		running.set(true);
+		collected.set(0);
+		MetricsRegistry metrics = GitBlit.self().getMetrics();
+		metrics.counter("gitblit_gc_scans_total", "Repository scans of the GC executor").inc();
+
+		try {
+			int threads = Math.max(1, settings.getInteger(Keys.git.garbageCollectionThreads, 2));
+			scan(threads);
 
-				// By setting the GCStatus to COLLECTING we are
-				// disabling *all* access to this repository from Gitblit.
-				// Think of this as a clutch in a manual transmission vehicle.
-				if (!setGCStatus(repositoryName, GCStatus.COLLECTING)) {
-					logger.warn(MessageFormat.format("Can not acquire GC lock for {0}, skipping", repositoryName));
-					continue;
+			int n = Math.min(threads, queue.size());
+			if (n > 0 && !forceClose.get()) {
+				logger.info(MessageFormat.format("GCExecutor collecting garbage from {0} repositories with {1} threads",
+						queue.size(), n));
+				collectors = Executors.newFixedThreadPool(n);
+				for (int i = 0; i < n; i++) {
+					collectors.execute(new Runnable() {
+						@Override
+						public void run() {
+							GCCandidate candidate;
+							while (!forceClose.get() && (candidate = queue.poll()) != null) {
+								collect(candidate);
+							}
+						}
+					});
 				}
-				
-				logger.debug(MessageFormat.format("GCExecutor locked idle repository {0}", repositoryName));
-				
-				GC gc = new GC(repository);
-				RepoStatistics stats = gc.getStatistics();
-				
-				// determine if this is a scheduled GC
-				Calendar cal = Calendar.getInstance();
-				cal.setTime(model.lastGC);
-				cal.set(Calendar.HOUR_OF_DAY, 0);
-				cal.set(Calendar.MINUTE, 0);
-				cal.set(Calendar.SECOND, 0);
-				cal.set(Calendar.MILLISECOND, 0);
-				cal.add(Calendar.DATE, model.gcPeriod);
-				Date gcDate = cal.getTime();
-				boolean shouldCollectGarbage = now.after(gcDate);
-
-				// determine if filesize triggered GC
-				long gcThreshold = FileUtils.convertSizeToLong(model.gcThreshold, 500*1024L);
-				boolean hasEnoughGarbage = stats.sizeOfLooseObjects >= gcThreshold;
-
-				// if we satisfy one of the requirements, GC
-				boolean hasGarbage = stats.sizeOfLooseObjects > 0;
-				if (hasGarbage && (hasEnoughGarbage || shouldCollectGarbage)) {
-					long looseKB = stats.sizeOfLooseObjects/1024L;
-					logger.info(MessageFormat.format("Collecting {1} KB of loose objects from {0}", repositoryName, looseKB));
-					
-					// do the deed
-					gc.gc();
-					
-					garbageCollected = true;
+				collectors.shutdown();
+				collectors.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			logger.warn("GCExecutor interrupted");
+		} finally {
+			collectors = null;
+			queue.clear();
+			running.set(false);
+		}
+	}
+
+	/**
+	 * Computes the storage statistics of the repositories that may have
+	 * garbage and queues those which should be collected.
+	 * 
+	 * @param threads
+	 *            the number of concurrent scanners
+	 * @throws InterruptedException
+	 */
+	private void scan(int threads) throws InterruptedException {
+		final Date now = new Date();
+		ExecutorService scanners = Executors.newFixedThreadPool(threads);
+		try {
+			for (final String repositoryName : GitBlit.self().getRepositoryList()) {
+				if (forceClose.get()) {
+					break;
 				}
-			} catch (Exception e) {
-				logger.error("Error collecting garbage in " + repositoryName, e);
-			} finally {
-				// cleanup
-				if (repository != null) {
-					if (garbageCollected) {
-						// update the last GC date
-						model.lastGC = new Date();
-						GitBlit.self().updateConfiguration(repository, model);
+				scanners.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (!forceClose.get()) {
+							scan(repositoryName, now);
+						}
 					}
-				
-					repository.close();
+				});
+			}
+		} finally {
+			scanners.shutdown();
+			scanners.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Computes the storage statistics of a repository, if it may have garbage,
+	 * and queues the repository if it should be collected.
+	 * 
+	 * @param repositoryName
+	 * @param now
+	 *            the date of the scan
+	 */
+	private void scan(String repositoryName, Date now) {
+		String key = repositoryName.toLowerCase();
+		RepositoryModel model = GitBlit.self().getRepositoryModel(repositoryName);
+		if (model == null) {
+			return;
+		}
+
+		Repository repository = GitBlit.self().getRepository(repositoryName);
+		if (repository == null) {
+			logger.warn(MessageFormat.format("GCExecutor is missing repository {0}?!?", repositoryName));
+			return;
+		}
+		try {
+			// skip repositories which have not been changed and which have
+			// been collected or scanned within their GC period
+			boolean pushed = pushes.remove(key) != null;
+			Date lastChecked = model.lastGC;
+			Date scanned = lastScan.get(key);
+			if (scanned != null && scanned.after(lastChecked)) {
+				lastChecked = scanned;
+			}
+			if (!pushed && !now.after(getGCDate(lastChecked, model.gcPeriod))
+					&& !isModifiedSince(repository, lastChecked)) {
+				return;
+			}
+
+			RepoStatistics stats = new GC((FileRepository) repository).getStatistics();
+			lastScan.put(key, now);
+
+			// determine if this is a scheduled GC
+			boolean shouldCollectGarbage = now.after(getGCDate(model.lastGC, model.gcPeriod));
+
+			// determine if filesize triggered GC
+			long gcThreshold = FileUtils.convertSizeToLong(model.gcThreshold, 500*1024L);
+			boolean hasEnoughGarbage = stats.sizeOfLooseObjects >= gcThreshold;
+
+			// if we satisfy one of the requirements, GC
+			boolean hasGarbage = stats.sizeOfLooseObjects > 0;
+			if (hasGarbage && (hasEnoughGarbage || shouldCollectGarbage)) {
+				queue.add(new GCCandidate(repositoryName, stats));
+			}
+		} catch (Exception e) {
+			logger.error("Error computing GC statistics for " + repositoryName, e);
+		} finally {
+			repository.close();
+		}
+	}
+
+	/**
+	 * Returns true if objects have been written to the repository since the
+	 * specified date. Writing a loose object modifies its fan-out folder and
+	 * writing a pack modifies the pack folder, so this detects every write,
+	 * including the writes before a restart, without reading the objects.
+	 * 
+	 * @param repository
+	 * @param date
+	 * @return true if the object folders have been modified since the date
+	 */
+	private boolean isModifiedSince(Repository repository, Date date) {
+		File objects = new File(repository.getDirectory(), "objects");
+		File [] folders = objects.listFiles();
+		if (folders == null) {
+			return false;
+		}
+		long time = date.getTime();
+		for (File folder : folders) {
+			String name = folder.getName();
+			if (folder.isDirectory() && (name.length() == 2 || "pack".equals(name))
+					&& folder.lastModified() > time) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects the garbage of a queued repository.
+	 * 
+	 * @param candidate
+	 */
+	private void collect(GCCandidate candidate) {
+		String repositoryName = candidate.repositoryName;
+		if (isCollectingGarbage(repositoryName)) {
+			logger.warn(MessageFormat.format("Already collecting garbage from {0}?!?", repositoryName));
+			// examine this repository again on the next scan
+			onPush(repositoryName);
+			return;
+		}
+		MetricsRegistry metrics = GitBlit.self().getMetrics();
+		boolean garbageCollected = false;
+		boolean locked = false;
+		RepositoryModel model = null;
+		FileRepository repository = null;
+		try {
+			model = GitBlit.self().getRepositoryModel(repositoryName);
+			repository = (FileRepository) GitBlit.self().getRepository(repositoryName);
+			if (repository == null) {
+				logger.warn(MessageFormat.format("GCExecutor is missing repository {0}?!?", repositoryName));
+				return;
+			}
+			
+			if (!isRepositoryIdle(repository)) {
+				logger.debug(MessageFormat.format("GCExecutor is skipping {0} because it is not idle", repositoryName));
+				// examine this repository again on the next scan
+				onPush(repositoryName);
+				return;
+			}
+
+			// By setting the GCStatus to COLLECTING we are
+			// disabling *all* access to this repository from Gitblit.
+			// Think of this as a clutch in a manual transmission vehicle.
+			//
+			// A non-blocking GC sets the GCStatus to REPACKING which only
+			// disables pushes and configuration changes.  Readers keep using
+			// the old packs until JGit swaps in the new pack.
+			boolean nonBlocking = settings.getBoolean(Keys.git.nonBlockingGarbageCollection, false);
+			if (nonBlocking && isWindows()) {
+				// open pack files can not be deleted on Windows
+				nonBlocking = false;
+			}
+			if (!setGCStatus(repositoryName, nonBlocking ? GCStatus.REPACKING : GCStatus.COLLECTING)) {
+				logger.warn(MessageFormat.format("Can not acquire GC lock for {0}, skipping", repositoryName));
+				// examine this repository again on the next scan
+				onPush(repositoryName);
+				return;
+			}
+			locked = true;
+			active.put(repositoryName.toLowerCase(), candidate);
+			
+			logger.debug(MessageFormat.format("GCExecutor locked idle repository {0}", repositoryName));
+			
+			long looseKB = candidate.sizeOfLooseObjects/1024L;
+			logger.info(MessageFormat.format("Collecting {1} KB of loose objects from {0}", repositoryName, looseKB));
+			
+			// do the deed
+			long start = System.nanoTime();
+			GC gc = new GC(repository);
+			if (nonBlocking) {
+				// write the new pack and delete the old packs and loose objects
+				gc.repack();
+				gc.prune(Collections.<ObjectId> emptySet());
+
+				// lock the repository to pack the refs
+				if (setGCStatus(repositoryName, GCStatus.REPACKING, GCStatus.COLLECTING)) {
+					gc.packRefs();
+				} else {
+					logger.warn(MessageFormat.format("Can not lock {0} to pack refs, skipping", repositoryName));
 				}
-				
+			} else {
+				gc.gc();
+			}
+			metrics.histogram("gitblit_gc_duration_seconds",
+					"Duration of repository garbage collections").observeSince(start);
+			metrics.counter("gitblit_gc_loose_bytes_total",
+					"Bytes of loose objects collected by the GC executor").inc(
+					candidate.sizeOfLooseObjects);
+			
+			garbageCollected = true;
+			collected.incrementAndGet();
+		} catch (Exception e) {
+			logger.error("Error collecting garbage in " + repositoryName, e);
+		} finally {
+			// cleanup
+			if (repository != null) {
+				if (garbageCollected) {
+					// update the last GC date
+					model.lastGC = new Date();
+					GitBlit.self().updateConfiguration(repository, model);
+				}
+			
+				repository.close();
+			}
+			
+			if (locked) {
 				// reset the GC lock 
+				active.remove(repositoryName.toLowerCase());
 				releaseLock(repositoryName);
 				logger.debug(MessageFormat.format("GCExecutor released GC lock for {0}", repositoryName));
 			}
 		}
-		
-		running.set(false);
+	}
+
+	/**
+	 * Returns the date at which the GC period that started on the specified
+	 * date elapses.
+	 * 
+	 * @param date
+	 * @param gcPeriod
+	 *            in days
+	 * @return the date of the next scheduled GC
+	 */
+	private Date getGCDate(Date date, int gcPeriod) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(date);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		cal.add(Calendar.DATE, gcPeriod);
+		return cal.getTime();
 	}
 	
+	private static boolean isWindows() {
+		return System.getProperty("os.name").toLowerCase().indexOf("windows") > -1;
+	}
+
 	private boolean isRepositoryIdle(FileRepository repository) {
 		try {
 			// Read the use count.
@@ -234,4 +546,34 @@ public class GCExecutor implements Runnable {
 		}
 		return false;
 	}
+
+	/**
+	 * A repository queued for garbage collection. Repositories with more loose
+	 * objects, and then more pack files, are collected first.
+	 */
+	private static class GCCandidate implements Comparable<GCCandidate> {
+
+		final String repositoryName;
+
+		final long sizeOfLooseObjects;
+
+		final long numberOfPackFiles;
+
+		GCCandidate(String repositoryName, RepoStatistics stats) {
+			this.repositoryName = repositoryName;
+			this.sizeOfLooseObjects = stats.sizeOfLooseObjects;
+			this.numberOfPackFiles = stats.numberOfPackFiles;
+		}
+
+		@Override
+		public int compareTo(GCCandidate o) {
+			if (sizeOfLooseObjects != o.sizeOfLooseObjects) {
+				return sizeOfLooseObjects > o.sizeOfLooseObjects ? -1 : 1;
+			}
+			if (numberOfPackFiles != o.numberOfPackFiles) {
+				return numberOfPackFiles > o.numberOfPackFiles ? -1 : 1;
+			}
+			return repositoryName.compareTo(o.repositoryName);
+		}
+	}
 }
@@ -22,8 +22,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.reflect.Field;
+import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.UnknownHostException;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -43,12 +45,15 @@ import java.util.Set;
 import java.util.TimeZone;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 
 import javax.mail.Message;
 import javax.mail.MessagingException;
@@ -81,9 +86,13 @@ import com.gitblit.Constants.FederationStrategy;
 import com.gitblit.Constants.FederationToken;
 import com.gitblit.Constants.PermissionType;
 import com.gitblit.Constants.RegistrantType;
+import com.gitblit.FederationJournal.ObjectType;
+import com.gitblit.models.CacheStats;
+import com.gitblit.models.FederationChanges;
 import com.gitblit.models.FederationModel;
 import com.gitblit.models.FederationProposal;
 import com.gitblit.models.FederationSet;
+import com.gitblit.models.FederationSubscription;
 import com.gitblit.models.ForkModel;
 import com.gitblit.models.Metric;
 import com.gitblit.models.ProjectModel;
@@ -96,15 +105,19 @@ import com.gitblit.models.SettingModel;
 import com.gitblit.models.TeamModel;
 import com.gitblit.models.UserModel;
 import com.gitblit.utils.ArrayUtils;
+import com.gitblit.utils.BranchMetrics;
 import com.gitblit.utils.ByteFormat;
 import com.gitblit.utils.ContainerUtils;
 import com.gitblit.utils.DeepCopier;
 import com.gitblit.utils.FederationUtils;
 import com.gitblit.utils.HttpUtils;
+import com.gitblit.utils.ICache;
+import com.gitblit.utils.IssueUtils;
 import com.gitblit.utils.JGitUtils;
 import com.gitblit.utils.JsonUtils;
+import com.gitblit.utils.MemoryCache;
 import com.gitblit.utils.MetricUtils;
-import com.gitblit.utils.ObjectCache;
+import com.gitblit.utils.MetricsRegistry;
 import com.gitblit.utils.StringUtils;
 import com.gitblit.utils.TimeUtils;
 import com.gitblit.wicket.WicketUtils;
@@ -133,20 +146,61 @@ public class GitBlit implements ServletContextListener {
 
 	private final ScheduledExecutorService scheduledExecutor = Executors.newScheduledThreadPool(5);
 
+	/**
+	 * Runs the federation pulls requested by push notifications so that they
+	 * do not occupy the shared scheduled executor.
+	 */
+	private final ThreadPoolExecutor federationExecutor = new ThreadPoolExecutor(2, 2, 60,
+			TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(100));
+
 	private final List<FederationModel> federationRegistrations = Collections
 			.synchronizedList(new ArrayList<FederationModel>());
 
 	private final Map<String, FederationModel> federationPullResults = new ConcurrentHashMap<String, FederationModel>();
 
-	private final ObjectCache<Long> repositorySizeCache = new ObjectCache<Long>();
+	private final Map<String, FederationSubscription> federationSubscriptions = new ConcurrentHashMap<String, FederationSubscription>();
+
+	private final Map<String, String> federationSubscriptionKeys = new ConcurrentHashMap<String, String>();
+
+	private final Map<String, Set<String>> federationNotifications = new HashMap<String, Set<String>>();
+
+	private ICache<String, Long> repositorySizeCache = new MemoryCache<String, Long>(
+			"repositorySize");
 
-	private final ObjectCache<List<Metric>> repositoryMetricsCache = new ObjectCache<List<Metric>>();
+	private ICache<String, List<Metric>> repositoryMetricsCache = new MemoryCache<String, List<Metric>>(
+			"repositoryMetrics");
+
+	private ICache<String, BranchMetrics> branchMetricsCache = new MemoryCache<String, BranchMetrics>(
+			"branchMetrics");
 	
-	private final Map<String, RepositoryModel> repositoryListCache = new ConcurrentHashMap<String, RepositoryModel>();
+	private final ICache<String, RepositoryModel> repositoryListCache = new MemoryCache<String, RepositoryModel>(
+			"repositoryList");
 	
-	private final Map<String, ProjectModel> projectCache = new ConcurrentHashMap<String, ProjectModel>();
+	private final ICache<String, ProjectModel> projectCache = new MemoryCache<String, ProjectModel>(
+			"projects");
+
+	/**
+	 * The names of the cached repositories grouped by the lowercase path of
+	 * their project. Each project maps the lowercase repository names to the
+	 * repository names. Root repositories are grouped by an empty path. The
+	 * index is maintained with the repository list cache.
+	 */
+	private final Map<String, Map<String, String>> projectIndex = new ConcurrentHashMap<String, Map<String, String>>();
+
+	private PagesCache pagesCache = new PagesCache(0);
+
+	private AvatarCache avatarCache;
+
+	private ForkGraph forkGraph;
+
+	private final MetricsRegistry metrics = new MetricsRegistry();
+
+	private final FederationJournal federationJournal = new FederationJournal();
 	
-	private final AtomicReference<String> repositoryListSettingsChecksum = new AtomicReference<String>("");
+	private static final List<String> REPOSITORY_LIST_SETTINGS = Arrays.asList(
+			Keys.git.cacheRepositoryList, Keys.git.onlyAccessBareRepositories,
+			Keys.git.searchRepositoriesSubfolders, Keys.git.searchRecursionDepth,
+			Keys.git.searchExclusions);
 
 	private ServletContext servletContext;
 
@@ -178,7 +232,8 @@ public class GitBlit implements ServletContextListener {
 	}
 
 	public GitBlit(final IUserService userService) {
-		this.userService = userService;
+		this.userService = userService == null ? null : new JournaledUserService(userService,
+				federationJournal);
 		gitblit = this;
 	}
 
@@ -430,9 +485,83 @@ public class GitBlit implements ServletContextListener {
 		// update heap memory status
 		serverStatus.heapAllocated = Runtime.getRuntime().totalMemory();
 		serverStatus.heapFree = Runtime.getRuntime().freeMemory();
+		serverStatus.metrics = metrics.getSnapshot();
 		return serverStatus;
 	}
 
+	/**
+	 * Returns the registry of server performance metrics.
+	 * 
+	 * @return the metrics registry
+	 */
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Registers the metrics of the server caches and executors.
+	 */
+	private void registerMetrics() {
+		for (final ICache<?, ?> cache : Arrays.asList(repositoryListCache, projectCache,
+				repositorySizeCache, repositoryMetricsCache, branchMetricsCache)) {
+			metrics.cache(new MetricsRegistry.CacheSource() {
+				@Override
+				public CacheStats getStats() {
+					return cache.getStats();
+				}
+			});
+		}
+		metrics.cache(new MetricsRegistry.CacheSource() {
+			@Override
+			public CacheStats getStats() {
+				return pagesCache.getStats();
+			}
+		});
+		metrics.cache(new MetricsRegistry.CacheSource() {
+			@Override
+			public CacheStats getStats() {
+				return avatarCache.getStats();
+			}
+		});
+		metrics.gauge("gitblit_repositories", "Number of repositories", new MetricsRegistry.Gauge() {
+			@Override
+			public double getValue() {
+				return repositoryListCache.size();
+			}
+		});
+		metrics.gauge("gitblit_lucene_last_run_timestamp_seconds",
+				"Time the Lucene executor last completed indexing", new MetricsRegistry.Gauge() {
+			@Override
+			public double getValue() {
+				return luceneExecutor.getLastRun() / 1000d;
+			}
+		});
+		metrics.gauge("gitblit_gc_running", "1 if the GC executor is running", new MetricsRegistry.Gauge() {
+			@Override
+			public double getValue() {
+				return gcExecutor.isRunning() ? 1 : 0;
+			}
+		});
+		metrics.gauge("gitblit_gc_queued", "Repositories waiting for garbage collection", new MetricsRegistry.Gauge() {
+			@Override
+			public double getValue() {
+				return gcExecutor.getQueuedCount();
+			}
+		});
+		metrics.gauge("gitblit_gc_active", "Repositories being garbage collected", new MetricsRegistry.Gauge() {
+			@Override
+			public double getValue() {
+				return gcExecutor.getActiveRepositories().size();
+			}
+		});
+		metrics.gauge("gitblit_gc_collected", "Repositories collected by the current or last GC scan", new MetricsRegistry.Gauge() {
+			@Override
+			public double getValue() {
+				return gcExecutor.getCollectedCount();
+			}
+		});
+	}
+
 	/**
 	 * Returns the list of non-Gitblit clone urls. This allows Gitblit to
 	 * advertise alternative urls for Git client repository access.
@@ -450,13 +579,14 @@ public class GitBlit implements ServletContextListener {
 
 	/**
 	 * Set the user service. The user service authenticates all users and is
-	 * responsible for managing user permissions.
+	 * responsible for managing user permissions. Its user and team writes are
+	 * recorded in the federation journal.
 	 * 
 	 * @param userService
 	 */
 	public void setUserService(IUserService userService) {
 		logger.info("Setting up user service " + userService.toString());
-		this.userService = userService;
+		this.userService = new JournaledUserService(userService, federationJournal);
 		this.userService.setup(settings);
 	}
 	
@@ -970,6 +1100,7 @@ public class GitBlit implements ServletContextListener {
 	private void addToCachedRepositoryList(RepositoryModel model) {
 		if (settings.getBoolean(Keys.git.cacheRepositoryList, true)) {
 			repositoryListCache.put(model.name.toLowerCase(), model);
+			indexProjectRepository(model.name, true);
 			
 			// update the fork origin repository with this repository clone
 			if (!StringUtils.isEmpty(model.originRepository)) {
@@ -991,19 +1122,132 @@ public class GitBlit implements ServletContextListener {
 		if (StringUtils.isEmpty(name)) {
 			return null;
 		}
+		indexProjectRepository(name, false);
 		return repositoryListCache.remove(name.toLowerCase());
 	}
 
+	/**
+	 * Adds or removes the repository from the project index.
+	 * 
+	 * @param name
+	 * @param add
+	 */
+	private void indexProjectRepository(String name, boolean add) {
+		String project = StringUtils.getRootPath(name).toLowerCase();
+		String key = name.toLowerCase();
+		synchronized (projectIndex) {
+			Map<String, String> repositories = projectIndex.get(project);
+			if (add) {
+				if (repositories == null) {
+					repositories = new ConcurrentHashMap<String, String>();
+					projectIndex.put(project, repositories);
+				}
+				// the name is kept, repositories are opened by name
+				repositories.put(key, name);
+			} else if (repositories != null) {
+				repositories.remove(key);
+				if (repositories.isEmpty()) {
+					projectIndex.remove(project);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the names of the repositories grouped by the lowercase path of
+	 * their project and keyed by their lowercase name.
+	 * 
+	 * @return the project index
+	 */
+	private Map<String, Map<String, String>> getProjectIndex() {
+		List<String> repositories = getRepositoryList();
+		if (settings.getBoolean(Keys.git.cacheRepositoryList, true)) {
+			return projectIndex;
+		}
+		// we are not caching, index the current list
+		Map<String, Map<String, String>> index = new HashMap<String, Map<String, String>>();
+		for (String repository : repositories) {
+			String project = StringUtils.getRootPath(repository).toLowerCase();
+			if (!index.containsKey(project)) {
+				index.put(project, new HashMap<String, String>());
+			}
+			index.get(project).put(repository.toLowerCase(), repository);
+		}
+		return index;
+	}
+
 	/**
 	 * Clears all the cached metadata for the specified repository.
 	 * 
 	 * @param repositoryName
 	 */
 	private void clearRepositoryMetadataCache(String repositoryName) {
-		repositorySizeCache.remove(repositoryName);
-		repositoryMetricsCache.remove(repositoryName);
+		clearRepositoryKeys(repositorySizeCache, repositoryName);
+		clearRepositoryKeys(repositoryMetricsCache, repositoryName);
+		clearRepositoryKeys(branchMetricsCache, repositoryName);
+		pagesCache.invalidate(repositoryName);
+	}
+
+	/**
+	 * Removes all keys of the form "repositoryName:..." from the cache.
+	 * 
+	 * @param cache
+	 * @param repositoryName
+	 */
+	private void clearRepositoryKeys(ICache<String, ?> cache, String repositoryName) {
+		String prefix = repositoryName + ":";
+		for (String key : cache.keys()) {
+			if (key.startsWith(prefix)) {
+				cache.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Returns the cache key of a value which is current until the repository
+	 * changes.
+	 * 
+	 * @param model
+	 * @return a cache key
+	 */
+	private String getCurrentKey(RepositoryModel model) {
+		return model.name + ":" + (model.lastChange == null ? 0 : model.lastChange.getTime());
+	}
+
+	/**
+	 * Returns the statistics of the server caches.
+	 * 
+	 * @return a list of cache statistics
+	 */
+	public List<CacheStats> getCacheStats() {
+		List<CacheStats> list = new ArrayList<CacheStats>();
+		list.add(repositoryListCache.getStats());
+		list.add(projectCache.getStats());
+		list.add(repositorySizeCache.getStats());
+		list.add(repositoryMetricsCache.getStats());
+		list.add(branchMetricsCache.getStats());
+		list.add(pagesCache.getStats());
+		return list;
 	}
 	
+	/**
+	 * Returns the gh-pages site cache.
+	 * 
+	 * @return the pages cache
+	 */
+	public PagesCache getPagesCache() {
+		return pagesCache;
+	}
+
+	/**
+	 * Returns the Gravatar avatar and profile cache.
+	 * 
+	 * @return the avatar cache
+	 */
+	public AvatarCache getAvatarCache() {
+		return avatarCache;
+	}
+
 	/**
 	 * Resets the repository list cache.
 	 * 
@@ -1011,38 +1255,21 @@ public class GitBlit implements ServletContextListener {
 	public void resetRepositoryListCache() {
 		logger.info("Repository cache manually reset");
 		repositoryListCache.clear();
+		projectIndex.clear();
 	}
 	
 	/**
-	 * Calculate the checksum of settings that affect the repository list cache.
-	 * @return a checksum
-	 */
-	private String getRepositoryListSettingsChecksum() {
-		StringBuilder ns = new StringBuilder();
-		ns.append(settings.getString(Keys.git.cacheRepositoryList, "")).append('\n');
-		ns.append(settings.getString(Keys.git.onlyAccessBareRepositories, "")).append('\n');
-		ns.append(settings.getString(Keys.git.searchRepositoriesSubfolders, "")).append('\n');
-		ns.append(settings.getString(Keys.git.searchRecursionDepth, "")).append('\n');
-		ns.append(settings.getString(Keys.git.searchExclusions, "")).append('\n');
-		String checksum = StringUtils.getSHA1(ns.toString());
-		return checksum;
-	}
-	
-	/**
-	 * Compare the last repository list setting checksum to the current checksum.
-	 * If different then clear the cache so that it may be rebuilt.
+	 * Clears the caches which depend on the changed settings.
 	 * 
-	 * @return true if the cached repository list is valid since the last check
+	 * @param keys
+	 *            the changed settings
 	 */
-	private boolean isValidRepositoryList() {
-		String newChecksum = getRepositoryListSettingsChecksum();
-		boolean valid = newChecksum.equals(repositoryListSettingsChecksum.get());
-		repositoryListSettingsChecksum.set(newChecksum);
-		if (!valid && settings.getBoolean(Keys.git.cacheRepositoryList,  true)) {
+	private void onSettingsChanged(Set<String> keys) {
+		if (!Collections.disjoint(keys, REPOSITORY_LIST_SETTINGS)) {
 			logger.info("Repository list settings have changed. Clearing repository list cache.");
 			repositoryListCache.clear();
+			projectIndex.clear();
 		}
-		return valid;
 	}
 
 	/**
@@ -1052,8 +1279,9 @@ public class GitBlit implements ServletContextListener {
 	 * @return list of all repositories
 	 */
 	public List<String> getRepositoryList() {
-		if (repositoryListCache.size() == 0 || !isValidRepositoryList()) {
-			// we are not caching OR we have not yet cached OR the cached list is invalid
+		if (repositoryListCache.size() == 0) {
+			// we are not caching OR we have not yet cached OR the cached list
+			// was cleared by a change of the repository list settings
 			long startTime = System.currentTimeMillis();
 			List<String> repositories = JGitUtils.getRepositoryList(repositoriesFolder, 
 					settings.getBoolean(Keys.git.onlyAccessBareRepositories, false),
@@ -1094,6 +1322,8 @@ public class GitBlit implements ServletContextListener {
 						}
 					}
 				}
+				forkGraph.retainAll(repositories);
+				forkGraph.save();
 				
 				long duration = System.currentTimeMillis() - startTime;
 				logger.info(MessageFormat.format(msg, repositoryListCache.size(), duration));
@@ -1101,7 +1331,7 @@ public class GitBlit implements ServletContextListener {
 		}
 		
 		// return sorted copy of cached list
-		List<String> list = new ArrayList<String>(repositoryListCache.keySet());		
+		List<String> list = repositoryListCache.keys();		
 		StringUtils.sortRepositorynames(list);
 		return list;
 	}
@@ -1303,7 +1533,7 @@ public class GitBlit implements ServletContextListener {
 			projectCache.clear();
 			projectCache.putAll(configs);
 		}
-		return projectCache;
+		return projectCache.asMap();
 	}
 	
 	/**
@@ -1319,22 +1549,25 @@ public class GitBlit implements ServletContextListener {
 		// per-user project lists, this accounts for security and visibility
 		Map<String, ProjectModel> map = new TreeMap<String, ProjectModel>();
 		// root project
-		map.put("", configs.get(""));
-		
-		for (RepositoryModel model : getRepositoryModels(user)) {
-			String rootPath = StringUtils.getRootPath(model.name).toLowerCase();			
-			if (!map.containsKey(rootPath)) {
-				ProjectModel project;
-				if (configs.containsKey(rootPath)) {
-					// clone the project model because it's repository list will
-					// be tailored for the requesting user
-					project = DeepCopier.copy(configs.get(rootPath));
-				} else {
-					project = new ProjectModel(rootPath);
+		map.put("", newProjectModel(configs, ""));
+
+		for (Map.Entry<String, Map<String, String>> entry : getProjectIndex().entrySet()) {
+			String rootPath = entry.getKey();
+			if (!includeUsers && rootPath.length() > 0 && rootPath.charAt(0) == '~') {
+				continue;
+			}
+			ProjectModel project = map.get(rootPath);
+			for (String repository : entry.getValue().values()) {
+				RepositoryModel model = getRepositoryModel(user, repository);
+				if (model == null) {
+					continue;
+				}
+				if (project == null) {
+					project = newProjectModel(configs, rootPath);
+					map.put(rootPath, project);
 				}
-				map.put(rootPath, project);
+				project.addRepository(model);
 			}
-			map.get(rootPath).addRepository(model);
 		}
 		
 		// sort projects, root project first
@@ -1368,12 +1601,48 @@ public class GitBlit implements ServletContextListener {
 	 * @return a project model, or null if it does not exist
 	 */
 	public ProjectModel getProjectModel(String name, UserModel user) {
-		for (ProjectModel project : getProjectModels(user, true)) {
-			if (project.name.equalsIgnoreCase(name)) {
-				return project;
+		Map<String, ProjectModel> configs = getProjectConfigs();
+		String rootPath = name.toLowerCase();
+		if (configs.get("").name.equalsIgnoreCase(name)) {
+			// root project
+			rootPath = "";
+		}
+		ProjectModel project = newProjectModel(configs, rootPath);
+		Map<String, String> repositories = getProjectIndex().get(rootPath);
+		if (repositories != null) {
+			for (String repository : repositories.values()) {
+				RepositoryModel model = getRepositoryModel(user, repository);
+				if (model != null) {
+					project.addRepository(model);
+				}
 			}
 		}
-		return null;
+		if (rootPath.length() > 0 && project.repositories.size() == 0) {
+			// no accessible repositories == no project
+			return null;
+		}
+		return project;
+	}
+
+	/**
+	 * Returns a new project model for the specified project path with the
+	 * configured title and description. The new model has no repositories so
+	 * that it may be tailored for the requesting user.
+	 * 
+	 * @param configs
+	 * @param rootPath
+	 *            the lowercase project path
+	 * @return a new project model
+	 */
+	private ProjectModel newProjectModel(Map<String, ProjectModel> configs, String rootPath) {
+		ProjectModel config = configs.get(rootPath);
+		if (config == null) {
+			return new ProjectModel(rootPath);
+		}
+		ProjectModel project = new ProjectModel(config.name, config.isRoot);
+		project.title = config.title;
+		project.description = config.description;
+		return project;
 	}
 	
 	/**
@@ -1398,19 +1667,20 @@ public class GitBlit implements ServletContextListener {
 			// clone the object
 			project = DeepCopier.copy(project);
 		}
+		Map<String, Map<String, String>> index = getProjectIndex();
 		if (StringUtils.isEmpty(name)) {
 			// get root repositories
-			for (String repository : getRepositoryList()) {
-				if (repository.indexOf('/') == -1) {
-					project.addRepository(repository);
-				}
+			Map<String, String> repositories = index.get("");
+			if (repositories != null) {
+				project.addRepositories(repositories.values());
 			}
 		} else {
-			// get repositories in subfolder
-			String folder = name.toLowerCase() + "/";
-			for (String repository : getRepositoryList()) {
-				if (repository.toLowerCase().startsWith(folder)) {
-					project.addRepository(repository);
+			// get repositories in the project folder and its subfolders
+			String path = name.toLowerCase();
+			String folder = path + "/";
+			for (Map.Entry<String, Map<String, String>> entry : index.entrySet()) {
+				if (entry.getKey().equals(path) || entry.getKey().startsWith(folder)) {
+					project.addRepositories(entry.getValue().values());
 				}
 			}
 		}
@@ -1537,6 +1807,9 @@ public class GitBlit implements ServletContextListener {
 				logger.error("Failed to determine fork for " + model, e);
 			}
 		}
+		if (forkGraph != null) {
+			forkGraph.setOrigin(model.name, model.originRepository);
+		}
 		return model;
 	}
 	
@@ -1581,58 +1854,14 @@ public class GitBlit implements ServletContextListener {
 	 * @return the name of the user's fork, null otherwise
 	 */
 	public String getFork(String username, String origin) {
-		String userProject = "~" + username.toLowerCase();
-		if (settings.getBoolean(Keys.git.cacheRepositoryList, true)) {
-			String userPath = userProject + "/";
-
-			// collect all origin nodes in fork network
-			Set<String> roots = new HashSet<String>();
-			roots.add(origin);
-			RepositoryModel originModel = repositoryListCache.get(origin);
-			while (originModel != null) {
-				if (!ArrayUtils.isEmpty(originModel.forks)) {
-					for (String fork : originModel.forks) {
-						if (!fork.startsWith(userPath)) {
-							roots.add(fork);
-						}
-					}
-				}
-				
-				if (originModel.originRepository != null) {
-					roots.add(originModel.originRepository);
-					originModel = repositoryListCache.get(originModel.originRepository);
-				} else {
-					// break
-					originModel = null;
-				}
-			}
-			
-			for (String repository : repositoryListCache.keySet()) {
-				if (repository.startsWith(userPath)) {
-					RepositoryModel model = repositoryListCache.get(repository);
-					if (!StringUtils.isEmpty(model.originRepository)) {
-						if (roots.contains(model.originRepository)) {
-							// user has a fork in this graph
-							return model.name;
-						}
-					}
-				}
-			}
-		} else {
-			// not caching
-			ProjectModel project = getProjectModel(userProject);
-			for (String repository : project.repositories) {
-				if (repository.startsWith(userProject)) {
-					RepositoryModel model = repositoryListCache.get(repository);
-					if (model.originRepository.equalsIgnoreCase(origin)) {
-						// user has a fork
-						return model.name;
-					}
-				}
-			}
+		String fork = forkGraph.getFork(username, origin);
+		if (fork != null && !new File(repositoriesFolder, fork).exists()) {
+			// the fork was deleted outside of Gitblit
+			forkGraph.remove(fork);
+			forkGraph.save();
+			return getFork(username, origin);
 		}
-		// user does not have a fork
-		return null;
+		return fork;
 	}
 	
 	/**
@@ -1643,24 +1872,24 @@ public class GitBlit implements ServletContextListener {
 	 * @return a ForkModel
 	 */
 	public ForkModel getForkNetwork(String repository) {
-		if (settings.getBoolean(Keys.git.cacheRepositoryList, true)) {
-			// find the root
-			RepositoryModel model = repositoryListCache.get(repository.toLowerCase());
-			while (model.originRepository != null) {
-				model = repositoryListCache.get(model.originRepository);
-			}
-			ForkModel root = getForkModel(model.name);
-			return root;
-		}
-		return null;
+		return getForkModel(forkGraph.getRoot(repository), new HashSet<String>());
 	}
 	
-	private ForkModel getForkModel(String repository) {
+	private ForkModel getForkModel(String repository, Set<String> visited) {
+		if (!visited.add(repository.toLowerCase())) {
+			return null;
+		}
 		RepositoryModel model = repositoryListCache.get(repository.toLowerCase());
+		if (model == null) {
+			model = getRepositoryModel(repository);
+			if (model == null) {
+				return null;
+			}
+		}
 		ForkModel fork = new ForkModel(model);
-		if (!ArrayUtils.isEmpty(model.forks)) {
-			for (String aFork : model.forks) {
-				ForkModel fm = getForkModel(aFork);
+		for (String aFork : forkGraph.getForks(repository)) {
+			ForkModel fm = getForkModel(aFork, visited);
+			if (fm != null) {
 				fork.forks.add(fm);
 			}
 		}
@@ -1676,14 +1905,15 @@ public class GitBlit implements ServletContextListener {
 	 * @param model
 	 * @return size in bytes
 	 */
-	public long calculateSize(RepositoryModel model) {
-		if (repositorySizeCache.hasCurrent(model.name, model.lastChange)) {
-			return repositorySizeCache.getObject(model.name);
-		}
-		File gitDir = FileKey.resolve(new File(repositoriesFolder, model.name), FS.DETECTED);
-		long size = com.gitblit.utils.FileUtils.folderSize(gitDir);
-		repositorySizeCache.updateObject(model.name, model.lastChange, size);
-		return size;
+	public long calculateSize(final RepositoryModel model) {
+		Long size = repositorySizeCache.get(getCurrentKey(model), new ICache.Loader<String, Long>() {
+			@Override
+			public Long load(String key) {
+				File gitDir = FileKey.resolve(new File(repositoriesFolder, model.name), FS.DETECTED);
+				return com.gitblit.utils.FileUtils.folderSize(gitDir);
+			}
+		});
+		return size == null ? 0 : size;
 	}
 
 	/**
@@ -1739,15 +1969,56 @@ public class GitBlit implements ServletContextListener {
 	 * @param repository
 	 * @return a new array list of metrics
 	 */
-	public List<Metric> getRepositoryDefaultMetrics(RepositoryModel model, Repository repository) {
-		if (repositoryMetricsCache.hasCurrent(model.name, model.lastChange)) {
-			return new ArrayList<Metric>(repositoryMetricsCache.getObject(model.name));
-		}
-		List<Metric> metrics = MetricUtils.getDateMetrics(repository, null, true, null, getTimezone());
-		repositoryMetricsCache.updateObject(model.name, model.lastChange, metrics);
+	public List<Metric> getRepositoryDefaultMetrics(final RepositoryModel model,
+			final Repository repository) {
+		List<Metric> metrics = repositoryMetricsCache.get(getCurrentKey(model),
+				new ICache.Loader<String, List<Metric>>() {
+					@Override
+					public List<Metric> load(String key) {
+						return getBranchMetrics(model, repository, null).getDateMetrics(true,
+								null, getTimezone());
+					}
+				});
 		return new ArrayList<Metric>(metrics);
 	}
 
+	/**
+	 * Returns the aggregated metrics for the specified branch or tag of the
+	 * repository. Metrics for refs are cached and incrementally extended from
+	 * the previously computed tip when the ref moves.
+	 * 
+	 * @param model
+	 * @param repository
+	 * @param objectId
+	 *            if null or empty, HEAD is assumed.
+	 * @return the branch metrics
+	 */
+	public BranchMetrics getBranchMetrics(RepositoryModel model, Repository repository,
+			String objectId) {
+		String key;
+		if (StringUtils.isEmpty(objectId)) {
+			key = model.name + ":" + org.eclipse.jgit.lib.Constants.HEAD;
+		} else {
+			try {
+				if (repository.getRef(objectId) == null) {
+					// commit ids and expressions are not cached
+					return MetricUtils.getBranchMetrics(repository, objectId, null);
+				}
+			} catch (IOException e) {
+				return MetricUtils.getBranchMetrics(repository, objectId, null);
+			}
+			key = model.name + ":" + objectId;
+		}
+		BranchMetrics metrics = branchMetricsCache.get(key,
+				new ICache.Loader<String, BranchMetrics>() {
+					@Override
+					public BranchMetrics load(String key) {
+						return new BranchMetrics();
+					}
+				});
+		return MetricUtils.getBranchMetrics(repository, objectId, metrics);
+	}
+
 	/**
 	 * Returns the gitblit string value for the specified key. If key is not
 	 * set, returns defaultValue.
@@ -1815,7 +2086,7 @@ public class GitBlit implements ServletContextListener {
 	 */
 	public void updateRepositoryModel(String repositoryName, RepositoryModel repository,
 			boolean isCreate) throws GitBlitException {
-		if (gcExecutor.isCollectingGarbage(repositoryName)) {
+		if (gcExecutor.isCollectingGarbage(repositoryName) || gcExecutor.isRepacking(repositoryName)) {
 			throw new GitBlitException(MessageFormat.format("sorry, Gitblit is busy collecting garbage in {0}",
 					repositoryName));
 		}
@@ -1871,6 +2142,7 @@ public class GitBlit implements ServletContextListener {
 							"Failed to rename repository ''{0}'' to ''{1}''.", repositoryName,
 							repository.name));
 				}
+				IssueUtils.clearIssueIndex(folder);
 				// rename the roles
 				if (!userService.renameRepositoryRole(repositoryName, repository.name)) {
 					throw new GitBlitException(MessageFormat.format(
@@ -1879,21 +2151,28 @@ public class GitBlit implements ServletContextListener {
 				}
 				
 				// rename fork origins in their configs
-				if (!ArrayUtils.isEmpty(repository.forks)) {
-					for (String fork : repository.forks) {
-						Repository rf = getRepository(fork);
-						try {
-							StoredConfig config = rf.getConfig();
-							String origin = config.getString("remote", "origin", "url");
-							origin = origin.replace(repositoryName, repository.name);
-							config.setString("remote", "origin", "url", origin);
-							config.save();
-						} catch (Exception e) {
-							logger.error("Failed to update repository fork config for " + fork, e);
-						}
-						rf.close();
+				for (String fork : forkGraph.getForks(repositoryName)) {
+					Repository rf = getRepository(fork);
+					if (rf == null) {
+						continue;
+					}
+					try {
+						StoredConfig config = rf.getConfig();
+						String origin = config.getString("remote", "origin", "url");
+						origin = origin.replace(repositoryName, repository.name);
+						config.setString("remote", "origin", "url", origin);
+						config.save();
+					} catch (Exception e) {
+						logger.error("Failed to update repository fork config for " + fork, e);
+					}
+					rf.close();
+					RepositoryModel forkModel = repositoryListCache.get(fork.toLowerCase());
+					if (forkModel != null) {
+						forkModel.originRepository = repository.name.toLowerCase();
 					}
 				}
+				forkGraph.rename(repositoryName, repository.name);
+				forkGraph.save();
 				
 				// remove this repository from any origin model's fork list
 				if (!StringUtils.isEmpty(repository.originRepository)) {
@@ -1935,6 +2214,11 @@ public class GitBlit implements ServletContextListener {
 		removeFromCachedRepositoryList(repositoryName);
 		// model will actually be replaced on next load because config is stale
 		addToCachedRepositoryList(repository);
+
+		if (!isCreate && !repositoryName.equalsIgnoreCase(repository.name)) {
+			federationJournal.deleted(ObjectType.REPOSITORY, repositoryName);
+		}
+		federationJournal.changed(ObjectType.REPOSITORY, repository.name);
 	}
 	
 	/**
@@ -2038,12 +2322,16 @@ public class GitBlit implements ServletContextListener {
 			if (model != null && !ArrayUtils.isEmpty(model.forks)) {
 				resetRepositoryListCache();
 			}
+			forkGraph.remove(repositoryName);
+			forkGraph.save();
 
 			File folder = new File(repositoriesFolder, repositoryName);
+			IssueUtils.clearIssueIndex(folder);
 			if (folder.exists() && folder.isDirectory()) {
 				FileUtils.delete(folder, FileUtils.RECURSIVE | FileUtils.RETRY);
 				if (userService.deleteRepositoryRole(repositoryName)) {
 					logger.info(MessageFormat.format("Repository \"{0}\" deleted", repositoryName));
+					federationJournal.deleted(ObjectType.REPOSITORY, repositoryName);
 					return true;
 				}
 			}
@@ -2256,6 +2544,7 @@ public class GitBlit implements ServletContextListener {
 		String jur = getFederationToken(FederationToken.REPOSITORIES);
 		switch (req) {
 		case PULL_REPOSITORIES:
+		case PULL_CHANGES:
 			return token.equals(all) || token.equals(unr) || token.equals(jur);
 		case PULL_USERS:
 		case PULL_TEAMS:
@@ -2289,6 +2578,208 @@ public class GitBlit implements ServletContextListener {
 		return true;
 	}
 
+	/**
+	 * Returns true if the url of the subscription may be notified. The url
+	 * must be the url of a pending proposal, be listed in
+	 * federation.notificationSubscribers, or address the host which requested
+	 * the subscription. This prevents a token holder from directing the
+	 * notifications of this Gitblit instance at arbitrary hosts.
+	 * 
+	 * @param subscription
+	 * @param remoteAddr
+	 *            the address of the host which requested the subscription
+	 * @return true if the subscription is allowed
+	 */
+	public boolean isAllowedFederationSubscription(FederationSubscription subscription,
+			String remoteAddr) {
+		if (StringUtils.isEmpty(subscription.url) || StringUtils.isEmpty(subscription.name)) {
+			return false;
+		}
+		URI uri;
+		try {
+			uri = new URI(subscription.url);
+		} catch (URISyntaxException e) {
+			return false;
+		}
+		if (uri.getHost() == null
+				|| !("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri
+						.getScheme()))) {
+			return false;
+		}
+		String url = subscription.url.toLowerCase();
+		for (String subscriber : settings.getStrings(Keys.federation.notificationSubscribers)) {
+			if (url.startsWith(subscriber.toLowerCase())) {
+				return true;
+			}
+		}
+		for (FederationProposal proposal : getPendingFederationProposals()) {
+			if (!StringUtils.isEmpty(proposal.url) && url.startsWith(proposal.url.toLowerCase())) {
+				return true;
+			}
+		}
+		try {
+			for (InetAddress address : InetAddress.getAllByName(uri.getHost())) {
+				if (address.getHostAddress().equals(remoteAddr)) {
+					return true;
+				}
+			}
+		} catch (UnknownHostException e) {
+			return false;
+		}
+		return false;
+	}
+
+	/**
+	 * Subscribes a pulling Gitblit instance to the push notifications of this
+	 * Gitblit instance. Subscriptions are kept in memory and are renewed by
+	 * each pull of the subscribed instance.
+	 * 
+	 * @param subscription
+	 */
+	public void subscribeFederation(FederationSubscription subscription) {
+		federationSubscriptions.put(subscription.url + "#" + subscription.name, subscription);
+		logger.info(MessageFormat.format("Federation subscription of {0} @ {1}",
+				subscription.name, subscription.url));
+	}
+
+	/**
+	 * Returns the list of federation subscriptions.
+	 * 
+	 * @return the list of federation subscriptions
+	 */
+	public List<FederationSubscription> getFederationSubscriptions() {
+		return new ArrayList<FederationSubscription>(federationSubscriptions.values());
+	}
+
+	/**
+	 * Asynchronously notifies the subscribed Gitblit instances which may pull
+	 * the repository that it has been pushed. A subscription is dropped if its
+	 * notification fails; the next pull of the subscribed instance renews it.
+	 * 
+	 * @param repositoryName
+	 */
+	private void notifyFederationSubscribers(final String repositoryName) {
+		if (federationSubscriptions.isEmpty()) {
+			return;
+		}
+		scheduledExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				List<String> names = Arrays.asList(repositoryName);
+				for (Map.Entry<String, FederationSubscription> entry : federationSubscriptions
+						.entrySet()) {
+					FederationSubscription subscription = entry.getValue();
+					if (!getFederationTokens().contains(subscription.token)) {
+						// token has been revoked
+						federationSubscriptions.remove(entry.getKey());
+						continue;
+					}
+					if (getRepositories("", subscription.token, names).isEmpty()) {
+						// token may not pull this repository
+						continue;
+					}
+					boolean notified = false;
+					try {
+						notified = FederationUtils.sendNotification(subscription, repositoryName);
+					} catch (Exception e) {
+						logger.warn(MessageFormat.format(
+								"Failed to send federation notification to {0}", subscription), e);
+					}
+					if (!notified) {
+						federationSubscriptions.remove(entry.getKey());
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the key which origin Gitblit instances must send with push
+	 * notifications for the registration.
+	 * 
+	 * @param registrationName
+	 * @return the notification key
+	 */
+	public String getFederationSubscriptionKey(String registrationName) {
+		String key = federationSubscriptionKeys.get(registrationName);
+		if (key == null) {
+			key = StringUtils.getSHA1(UUID.randomUUID().toString() + registrationName);
+			federationSubscriptionKeys.put(registrationName, key);
+		}
+		return key;
+	}
+
+	/**
+	 * Receives a push notification of an origin Gitblit instance and
+	 * schedules a pull of the pushed repository. Notifications which arrive
+	 * before the scheduled pull starts are pulled together.
+	 * 
+	 * @param registrationName
+	 *            the name of the registration of the origin
+	 * @param key
+	 *            the notification key of the registration
+	 * @param repositoryName
+	 *            the name of the pushed repository at the origin
+	 * @return true if the notification was accepted
+	 */
+	public boolean receiveFederationNotification(String registrationName, String key,
+			String repositoryName) {
+		if (StringUtils.isEmpty(registrationName) || StringUtils.isEmpty(key)
+				|| StringUtils.isEmpty(repositoryName)
+				|| !key.equals(federationSubscriptionKeys.get(registrationName))) {
+			return false;
+		}
+		FederationModel registration = null;
+		for (FederationModel model : getFederationRegistrations()) {
+			if (model.name.equals(registrationName)) {
+				registration = model;
+				break;
+			}
+		}
+		if (registration == null) {
+			return false;
+		}
+		synchronized (federationNotifications) {
+			Set<String> pending = federationNotifications.get(registration.name);
+			if (pending != null) {
+				// a pull of this registration is already scheduled
+				pending.add(repositoryName);
+				return true;
+			}
+			pending = new HashSet<String>();
+			pending.add(repositoryName);
+			federationNotifications.put(registration.name, pending);
+		}
+		final FederationModel pullRegistration = registration;
+		final Runnable pull = new Runnable() {
+			@Override
+			public void run() {
+				Set<String> names;
+				synchronized (federationNotifications) {
+					names = federationNotifications.remove(pullRegistration.name);
+				}
+				new FederationPullExecutor(pullRegistration, names).run();
+			}
+		};
+		// coalesce the notifications of the next seconds into one pull
+		scheduledExecutor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					federationExecutor.execute(pull);
+				} catch (RejectedExecutionException e) {
+					synchronized (federationNotifications) {
+						federationNotifications.remove(pullRegistration.name);
+					}
+					logger.warn(MessageFormat.format(
+							"Skipped notification pull of {0}, too many pending pulls",
+							pullRegistration.name));
+				}
+			}
+		}, 5, TimeUnit.SECONDS);
+		return true;
+	}
+
 	/**
 	 * Returns the list of registration results.
 	 * 
@@ -2376,6 +2867,23 @@ public class GitBlit implements ServletContextListener {
 	 * @return a map of <cloneurl, RepositoryModel>
 	 */
 	public Map<String, RepositoryModel> getRepositories(String gitblitUrl, String token) {
+		return getRepositories(gitblitUrl, token, null);
+	}
+
+	/**
+	 * Get the specified repositories for the specified token.
+	 * 
+	 * @param gitblitUrl
+	 *            the base url of this gitblit instance
+	 * @param token
+	 *            the federation token
+	 * @param repositoryNames
+	 *            the repositories to retrieve, if null all repositories are
+	 *            retrieved
+	 * @return a map of <cloneurl, RepositoryModel>
+	 */
+	public Map<String, RepositoryModel> getRepositories(String gitblitUrl, String token,
+			Collection<String> repositoryNames) {
 		Map<String, String> federationSets = new HashMap<String, String>();
 		for (String set : getStrings(Keys.federation.sets)) {
 			federationSets.put(getFederationToken(set), set);
@@ -2391,7 +2899,18 @@ public class GitBlit implements ServletContextListener {
 		// Retrieve all available repositories
 		UserModel user = new UserModel(Constants.FEDERATION_USER);
 		user.canAdmin = true;
-		List<RepositoryModel> list = getRepositoryModels(user);
+		List<RepositoryModel> list;
+		if (repositoryNames == null) {
+			list = getRepositoryModels(user);
+		} else {
+			list = new ArrayList<RepositoryModel>();
+			for (String repositoryName : repositoryNames) {
+				RepositoryModel model = getRepositoryModel(user, repositoryName);
+				if (model != null) {
+					list.add(model);
+				}
+			}
+		}
 
 		// create the [cloneurl, repositoryModel] map
 		Map<String, RepositoryModel> repositories = new HashMap<String, RepositoryModel>();
@@ -2426,6 +2945,233 @@ public class GitBlit implements ServletContextListener {
 		return repositories;
 	}
 
+	/**
+	 * Returns the repositories, users, and teams which have changed since the
+	 * specified federation journal version. If the version is unknown, all
+	 * repositories, users, and teams are returned.
+	 * 
+	 * @param gitblitUrl
+	 *            the base url of this gitblit instance
+	 * @param token
+	 *            the federation token
+	 * @param since
+	 *            the journal version of the previous pull, may be null
+	 * @return the federation changes
+	 */
+	public FederationChanges getFederationChanges(String gitblitUrl, String token, String since) {
+		// record objects created or deleted outside of Gitblit
+		federationJournal.reconcile(ObjectType.REPOSITORY, getRepositoryList());
+		federationJournal.reconcile(ObjectType.USER, getAllUsernames());
+		federationJournal.reconcile(ObjectType.TEAM, getAllTeamnames());
+
+		FederationChanges changes = new FederationChanges();
+		changes.version = federationJournal.getVersion();
+		long sequence = federationJournal.getSequence(since);
+		changes.full = sequence < 0;
+
+		// repositories
+		if (changes.full) {
+			changes.repositories = getRepositories(gitblitUrl, token);
+		} else {
+			boolean isSetToken = false;
+			for (String set : getStrings(Keys.federation.sets)) {
+				if (getFederationToken(set).equals(token)) {
+					isSetToken = true;
+					break;
+				}
+			}
+			List<String> names = new ArrayList<String>();
+			for (FederationJournal.Change change : federationJournal.getChanges(ObjectType.REPOSITORY, sequence)) {
+				if (!change.deleted) {
+					names.add(change.name);
+				} else if (!isSetToken) {
+					changes.deletedRepositories.add(change.name);
+				}
+			}
+			changes.repositories = getRepositories(gitblitUrl, token, names);
+		}
+
+		// users
+		if (validateFederationRequest(FederationRequest.PULL_USERS, token)) {
+			changes.users = new ArrayList<UserModel>();
+			List<String> names = new ArrayList<String>();
+			if (changes.full) {
+				names.addAll(getAllUsernames());
+			} else {
+				for (FederationJournal.Change change : federationJournal.getChanges(ObjectType.USER, sequence)) {
+					if (change.deleted) {
+						changes.deletedUsers.add(change.name);
+					} else {
+						names.add(change.name);
+					}
+				}
+			}
+			for (String username : names) {
+				UserModel model = getUserModel(username);
+				if (model == null || model.excludeFromFederation) {
+					if (!changes.full) {
+						changes.deletedUsers.add(username);
+					}
+				} else {
+					changes.users.add(model);
+				}
+			}
+		}
+
+		// teams
+		if (validateFederationRequest(FederationRequest.PULL_TEAMS, token)) {
+			changes.teams = new ArrayList<TeamModel>();
+			List<String> names = new ArrayList<String>();
+			if (changes.full) {
+				names.addAll(getAllTeamnames());
+			} else {
+				for (FederationJournal.Change change : federationJournal.getChanges(ObjectType.TEAM, sequence)) {
+					if (change.deleted) {
+						changes.deletedTeams.add(change.name);
+					} else {
+						names.add(change.name);
+					}
+				}
+			}
+			for (String teamname : names) {
+				TeamModel model = getTeamModel(teamname);
+				if (model == null) {
+					if (!changes.full) {
+						changes.deletedTeams.add(teamname);
+					}
+				} else {
+					changes.teams.add(model);
+				}
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * Returns the objects of the specified type which are visible to the user
+	 * and which have changed since the specified journal version. This allows
+	 * rpc clients to refresh only the changed objects. If the version is
+	 * unknown, or if the user or a team has changed since the version, all
+	 * objects are returned.
+	 * 
+	 * @param user
+	 * @param gitblitUrl
+	 *            the base url of this gitblit instance
+	 * @param type
+	 * @param since
+	 *            the journal version of the previous request, may be null
+	 * @return the changes
+	 */
+	public FederationChanges getChanges(UserModel user, String gitblitUrl, ObjectType type,
+			String since) {
+		// record objects created or deleted outside of Gitblit
+		switch (type) {
+		case REPOSITORY:
+			federationJournal.reconcile(ObjectType.REPOSITORY, getRepositoryList());
+			break;
+		case USER:
+			federationJournal.reconcile(ObjectType.USER, getAllUsernames());
+			break;
+		case TEAM:
+			federationJournal.reconcile(ObjectType.TEAM, getAllTeamnames());
+			break;
+		}
+
+		FederationChanges changes = new FederationChanges();
+		changes.version = federationJournal.getVersion();
+		long sequence = federationJournal.getSequence(since);
+		changes.full = sequence < 0;
+		if (!changes.full && type == ObjectType.REPOSITORY) {
+			// permission changes may change the visible repositories
+			changes.full = federationJournal.getChanges(ObjectType.TEAM, sequence).size() > 0;
+			if (user != null) {
+				for (FederationJournal.Change change : federationJournal.getChanges(ObjectType.USER, sequence)) {
+					if (change.name.equalsIgnoreCase(user.username)) {
+						changes.full = true;
+						break;
+					}
+				}
+			}
+		}
+
+		List<String> names = new ArrayList<String>();
+		List<String> deleted = new ArrayList<String>();
+		if (changes.full) {
+			switch (type) {
+			case REPOSITORY:
+				names.addAll(getRepositoryList());
+				break;
+			case USER:
+				names.addAll(getAllUsernames());
+				break;
+			case TEAM:
+				names.addAll(getAllTeamnames());
+				break;
+			}
+		} else {
+			for (FederationJournal.Change change : federationJournal.getChanges(type, sequence)) {
+				if (change.deleted) {
+					deleted.add(change.name);
+				} else {
+					names.add(change.name);
+				}
+			}
+		}
+
+		switch (type) {
+		case REPOSITORY:
+			changes.repositories = new HashMap<String, RepositoryModel>();
+			String cloneUrl = gitblitUrl + Constants.GIT_PATH;
+			boolean calculateSizes = getBoolean(Keys.web.showRepositorySizes, true);
+			ByteFormat byteFormat = new ByteFormat();
+			for (String name : names) {
+				RepositoryModel model = getRepositoryModel(user, name);
+				if (model == null) {
+					// deleted or no longer accessible
+					deleted.add(name);
+				} else {
+					if (calculateSizes && !model.skipSizeCalculation) {
+						model.size = byteFormat.format(calculateSize(model));
+					}
+					changes.repositories.put(cloneUrl + model.name, model);
+				}
+			}
+			if (!changes.full) {
+				changes.deletedRepositories.addAll(deleted);
+			}
+			break;
+		case USER:
+			changes.users = new ArrayList<UserModel>();
+			for (String name : names) {
+				UserModel model = getUserModel(name);
+				if (model == null) {
+					deleted.add(name);
+				} else {
+					changes.users.add(model);
+				}
+			}
+			if (!changes.full) {
+				changes.deletedUsers.addAll(deleted);
+			}
+			break;
+		case TEAM:
+			changes.teams = new ArrayList<TeamModel>();
+			for (String name : names) {
+				TeamModel model = getTeamModel(name);
+				if (model == null) {
+					deleted.add(name);
+				} else {
+					changes.teams.add(model);
+				}
+			}
+			if (!changes.full) {
+				changes.deletedTeams.addAll(deleted);
+			}
+			break;
+		}
+		return changes;
+	}
+
 	/**
 	 * Creates a proposal from the token.
 	 * 
@@ -2803,12 +3549,29 @@ public class GitBlit implements ServletContextListener {
 		logger.info("Git repositories folder " + repositoriesFolder.getAbsolutePath());
 
 		// prepare service executors
-		mailExecutor = new MailExecutor(settings);
+		mailExecutor = new MailExecutor(settings, getFileOrFolder(Keys.mail.queueFolder, "mailqueue"));
 		luceneExecutor = new LuceneExecutor(settings, repositoriesFolder);
 		gcExecutor = new GCExecutor(settings);
+		repositorySizeCache = new MemoryCache<String, Long>("repositorySize",
+				settings.getInteger(Keys.web.repositorySizeCacheSize, 10000), 0);
+		repositoryMetricsCache = new MemoryCache<String, List<Metric>>("repositoryMetrics",
+				settings.getInteger(Keys.web.metricsCacheSize, 1024), 0);
+		branchMetricsCache = new MemoryCache<String, BranchMetrics>("branchMetrics",
+				settings.getInteger(Keys.web.branchMetricsCacheSize, 256), 0);
+		pagesCache = new PagesCache(settings.getFilesize(Keys.web.pagesCacheSize, 16 * 1024 * 1024L));
+		avatarCache = new AvatarCache(getFileOrFolder(Keys.web.avatarFolder, "avatars"),
+				TimeUnit.DAYS.toMillis(Math.max(1, settings.getInteger(Keys.web.avatarExpiration, 7))),
+				settings.getFilesize(Keys.web.avatarFolderSize, 50 * 1024 * 1024L));
+		forkGraph = new ForkGraph(getFileOrFolder(Keys.git.forksFile, "forks.conf"));
+		registerMetrics();
 		
-		// calculate repository list settings checksum for future config changes
-		repositoryListSettingsChecksum.set(getRepositoryListSettingsChecksum());
+		// clear settings-dependent caches when the settings change
+		settings.addListener(new IStoredSettings.SettingsListener() {
+			@Override
+			public void settingsChanged(Set<String> keys) {
+				onSettingsChanged(keys);
+			}
+		});
 
 		// build initial repository list
 		if (settings.getBoolean(Keys.git.cacheRepositoryList,  true)) {
@@ -2846,6 +3609,14 @@ public class GitBlit implements ServletContextListener {
 			logger.warn("Mail server is not properly configured.  Mail services disabled.");
 		}
 		
+		// watch the settings for changes
+		scheduledExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				GitBlit.this.settings.refresh();
+			}
+		}, 5, 5, TimeUnit.SECONDS);
+
 		// schedule lucene engine
 		logger.info("Lucene executor is scheduled to process indexed branches every 2 minutes.");
 		scheduledExecutor.scheduleAtFixedRate(luceneExecutor, 1, 2, TimeUnit.MINUTES);
@@ -2974,8 +3745,10 @@ public class GitBlit implements ServletContextListener {
 	public void contextDestroyed(ServletContextEvent contextEvent) {
 		logger.info("Gitblit context destroyed by servlet container.");
 		scheduledExecutor.shutdownNow();
+		federationExecutor.shutdownNow();
 		luceneExecutor.close();
 		gcExecutor.close();
+		avatarCache.close();
 	}
 	
 	/**
@@ -2996,6 +3769,29 @@ public class GitBlit implements ServletContextListener {
 		return gcExecutor.isCollectingGarbage(repositoryName);
 	}
 
+	/**
+	 * Returns true if Gitblit is repacking this repository. The repository may
+	 * be read but pushes are rejected.
+	 * 
+	 * @param repositoryName
+	 * @return true if repacking
+	 */
+	public boolean isRepacking(String repositoryName) {
+		return gcExecutor.isRepacking(repositoryName);
+	}
+
+	/**
+	 * Notifies Gitblit that refs of the repository have been updated by a
+	 * push.
+	 * 
+	 * @param repositoryName
+	 */
+	public void onPush(String repositoryName) {
+		gcExecutor.onPush(repositoryName);
+		federationJournal.changed(ObjectType.REPOSITORY, repositoryName);
+		notifyFederationSubscribers(repositoryName);
+	}
+
 	/**
 	 * Creates a personal fork of the specified repository. The clone is view
 	 * restricted by default and the owner of the source repository is given
@@ -3060,8 +3856,10 @@ public class GitBlit implements ServletContextListener {
 		}
 		userService.updateTeamModels(cloneTeams);			
 
-		// add this clone to the cached model
+		// add this clone to the cached model and to the fork graph
 		addToCachedRepositoryList(cloneModel);
+		forkGraph.setOrigin(cloneModel.name, repository.name);
+		forkGraph.save();
 		return cloneModel;
 	}
 
@@ -16,6 +16,7 @@
 package com.gitblit;
 
 import groovy.lang.Binding;
+import groovy.lang.Script;
 import groovy.util.GroovyScriptEngine;
 
 import java.io.BufferedReader;
@@ -25,21 +26,34 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.eclipse.jgit.http.server.resolver.DefaultReceivePackFactory;
 import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.PostReceiveHook;
 import org.eclipse.jgit.transport.PreReceiveHook;
 import org.eclipse.jgit.transport.ReceiveCommand;
@@ -55,7 +69,6 @@ import com.gitblit.models.RepositoryModel;
 import com.gitblit.models.UserModel;
 import com.gitblit.utils.ClientLogger;
 import com.gitblit.utils.HttpUtils;
-import com.gitblit.utils.JGitUtils;
 import com.gitblit.utils.StringUtils;
 
 /**
@@ -78,9 +91,27 @@ public class GitServlet extends org.eclipse.jgit.http.server.GitServlet {
 
 	private File groovyDir;
 
+	private ExecutorService scriptExecutor;
+
+	private ThreadPoolExecutor postReceiveExecutor;
+
 	@Override
 	public void init(ServletConfig config) throws ServletException {
 		groovyDir = GitBlit.getGroovyScriptsFolder();
+
+		// scripts run on their own threads so that they may be timed out, the
+		// pool is bounded because a timed out script may ignore interruption
+		int scriptThreads = Math.max(1, GitBlit.getInteger(Keys.groovy.scriptThreads, 10));
+		scriptExecutor = new ThreadPoolExecutor(scriptThreads, scriptThreads, 60,
+				TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(scriptThreads * 10));
+		int postReceiveThreads = GitBlit.getInteger(Keys.groovy.postReceiveThreads, 0);
+		if (postReceiveThreads > 0) {
+			// bounded queue, a full queue runs the scripts on the pushing thread
+			int queueSize = Math.max(1, GitBlit.getInteger(Keys.groovy.postReceiveQueueSize, 100));
+			postReceiveExecutor = new ThreadPoolExecutor(postReceiveThreads, postReceiveThreads,
+					60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		}
 		try {
 			// set Grape root
 			File grapeRoot = new File(GitBlit.getString(Keys.groovy.grapeFolder, "groovy/grape")).getAbsoluteFile();
@@ -130,6 +161,15 @@ public class GitServlet extends org.eclipse.jgit.http.server.GitServlet {
 		super.init(new GitblitServletConfig(config));
 	}
 
+	@Override
+	public void destroy() {
+		super.destroy();
+		if (postReceiveExecutor != null) {
+			postReceiveExecutor.shutdown();
+		}
+		scriptExecutor.shutdownNow();
+	}
+
 	/**
 	 * Transitional wrapper class to configure the JGit 1.2 GitFilter. This
 	 * GitServlet will probably be replaced by a GitFilter so that Gitblit can
@@ -194,6 +234,16 @@ public class GitServlet extends org.eclipse.jgit.http.server.GitServlet {
 		 */
 		@Override
 		public void onPreReceive(ReceivePack rp, Collection<ReceiveCommand> commands) {
+			if (GitBlit.self().isRepacking(repositoryName)) {
+				// the repository is readable while it is repacked, but the
+				// refs may not change until the new pack has been swapped in
+				for (ReceiveCommand cmd : commands) {
+					cmd.setResult(Result.REJECTED_OTHER_REASON, MessageFormat.format(
+							"Gitblit is busy collecting garbage in {0}, please try again later",
+							repositoryName));
+				}
+				return;
+			}
 			RepositoryModel repository = GitBlit.self().getRepositoryModel(repositoryName);
 			UserModel user = getUserModel(rp);
 			
@@ -210,10 +260,80 @@ public class GitServlet extends org.eclipse.jgit.http.server.GitServlet {
 				// option to force a merge commit even if fast-forward is possible.
 				// This ensures that the chain of left parents has the commit
 				// identity of the merging user.
+				verifyCommitters(rp.getRepository(), user, commands);
+			}
+			
+			Set<String> scripts = new LinkedHashSet<String>();
+			scripts.addAll(GitBlit.self().getPreReceiveScriptsInherited(repository));
+			scripts.addAll(repository.preReceiveScripts);
+			if (!runGroovy(repository, user, commands, rp, scripts)) {
+				// fail closed, a pre-receive script which did not complete can
+				// not have vetted the commands
 				for (ReceiveCommand cmd : commands) {
+					if (Result.NOT_ATTEMPTED.equals(cmd.getResult())) {
+						cmd.setResult(Result.REJECTED_OTHER_REASON,
+								"Gitblit failed to run the pre-receive hook scripts");
+					}
+				}
+			}
+			for (ReceiveCommand cmd : commands) {
+				if (!Result.NOT_ATTEMPTED.equals(cmd.getResult())) {
+					logger.warn(MessageFormat.format("{0} {1} because \"{2}\"", cmd.getNewId()
+							.getName(), cmd.getResult(), cmd.getMessage()));
+				}
+			}
+
+			// Experimental
+			// runNativeScript(rp, "hooks/pre-receive", commands);
+		}
+
+		/**
+		 * Verifies that the pushing account committed the new commits of the
+		 * commands. Commits reachable from an existing ref have been verified
+		 * by an earlier push and are not walked again. One walk is shared by
+		 * all commands so parsed commits are reused. Only the new commits are
+		 * walked, so the walk retains their bodies to read the committers.
+		 * A command whose commits can not be read is rejected.
+		 * 
+		 * @param r
+		 * @param user
+		 * @param commands
+		 */
+		private void verifyCommitters(Repository r, UserModel user, Collection<ReceiveCommand> commands) {
+			RevWalk walk = new RevWalk(r);
+			try {
+				List<RevCommit> verified = new ArrayList<RevCommit>();
+				for (Ref ref : r.getAllRefs().values()) {
+					if (ref.getObjectId() == null) {
+						continue;
+					}
 					try {
-						List<RevCommit> commits = JGitUtils.getRevLog(rp.getRepository(), cmd.getOldId().name(), cmd.getNewId().name());
-						for (RevCommit commit : commits) {
+						RevObject obj = walk.peel(walk.parseAny(ref.getObjectId()));
+						if (obj instanceof RevCommit) {
+							verified.add((RevCommit) obj);
+						}
+					} catch (IOException e) {
+						// ignore broken refs
+					}
+				}
+
+				for (ReceiveCommand cmd : commands) {
+					if (ReceiveCommand.Type.DELETE.equals(cmd.getType())) {
+						continue;
+					}
+					try {
+						RevObject tip = walk.peel(walk.parseAny(cmd.getNewId()));
+						if (!(tip instanceof RevCommit)) {
+							continue;
+						}
+						walk.reset();
+						walk.markStart((RevCommit) tip);
+						for (RevCommit commit : verified) {
+							walk.markUninteresting(commit);
+						}
+						boolean accepted = true;
+						RevCommit commit;
+						while ((commit = walk.next()) != null) {
 							PersonIdent committer = commit.getCommitterIdent();
 							if (!user.is(committer.getName(), committer.getEmailAddress())) {
 								String reason;
@@ -225,28 +345,23 @@ public class GitServlet extends org.eclipse.jgit.http.server.GitServlet {
 									reason = MessageFormat.format("{0} by {1} <{2}> was not committed by {3} ({4}) <{5}>", commit.getId().name(), committer.getName(), StringUtils.isEmpty(committer.getEmailAddress()) ? "?":committer.getEmailAddress(), user.getDisplayName(), user.username, user.emailAddress);
 								}
 								cmd.setResult(Result.REJECTED_OTHER_REASON, reason);
+								accepted = false;
 								break;
 							}
 						}
-					} catch (Exception e) {
+						if (accepted) {
+							// later commands need not walk this history again
+							verified.add((RevCommit) tip);
+						}
+					} catch (IOException e) {
 						logger.error("Failed to verify commits were made by pushing user", e);
+						cmd.setResult(Result.REJECTED_OTHER_REASON, MessageFormat.format(
+								"Gitblit failed to verify the committers of {0}", cmd.getRefName()));
 					}
 				}
+			} finally {
+				walk.release();
 			}
-			
-			Set<String> scripts = new LinkedHashSet<String>();
-			scripts.addAll(GitBlit.self().getPreReceiveScriptsInherited(repository));
-			scripts.addAll(repository.preReceiveScripts);
-			runGroovy(repository, user, commands, rp, scripts);
-			for (ReceiveCommand cmd : commands) {
-				if (!Result.NOT_ATTEMPTED.equals(cmd.getResult())) {
-					logger.warn(MessageFormat.format("{0} {1} because \"{2}\"", cmd.getNewId()
-							.getName(), cmd.getResult(), cmd.getMessage()));
-				}
-			}
-
-			// Experimental
-			// runNativeScript(rp, "hooks/pre-receive", commands);
 		}
 
 		/**
@@ -260,14 +375,39 @@ public class GitServlet extends org.eclipse.jgit.http.server.GitServlet {
 				logger.info("skipping post-receive hooks, no refs created, updated, or removed");
 				return;
 			}
-			RepositoryModel repository = GitBlit.self().getRepositoryModel(repositoryName);
-			Set<String> scripts = new LinkedHashSet<String>();
+			final RepositoryModel repository = GitBlit.self().getRepositoryModel(repositoryName);
+			final Set<String> scripts = new LinkedHashSet<String>();
 			scripts.addAll(GitBlit.self().getPostReceiveScriptsInherited(repository));
 			scripts.addAll(repository.postReceiveScripts);
-			UserModel user = getUserModel(rp);
-			runGroovy(repository, user, commands, rp, scripts);
+			final UserModel user = getUserModel(rp);
+			if (postReceiveExecutor == null || scripts.isEmpty()) {
+				runGroovy(repository, user, commands, rp, scripts);
+			} else {
+				// do not keep the pushing client waiting for the scripts. the
+				// receive pack is released when the push completes so the
+				// scripts are given a snapshot of the commands instead.
+				final List<ReceiveCommand> receivedCommands = new ArrayList<ReceiveCommand>();
+				for (ReceiveCommand cmd : commands) {
+					ReceiveCommand copy = new ReceiveCommand(cmd.getOldId(), cmd.getNewId(),
+							cmd.getRefName(), cmd.getType());
+					copy.setResult(cmd.getResult(), cmd.getMessage());
+					receivedCommands.add(copy);
+				}
+				postReceiveExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						runGroovy(repository, user, receivedCommands, null, scripts,
+								new ClientLogger(null));
+					}
+				});
+			}
+			GitBlit.self().onPush(repositoryName);
 			for (ReceiveCommand cmd : commands) {
 				if (Result.OK.equals(cmd.getResult())) {
+					if (cmd.getRefName().equals(org.eclipse.jgit.lib.Constants.R_HEADS + "gh-pages")) {
+						// discard the cached gh-pages site
+						GitBlit.self().getPagesCache().invalidate(repositoryName);
+					}
 					// add some logging for important ref changes
 					switch (cmd.getType()) {
 					case DELETE:
@@ -313,23 +453,47 @@ public class GitServlet extends org.eclipse.jgit.http.server.GitServlet {
 		 * @param user
 		 * @param commands
 		 * @param scripts
+		 * @return true if all scripts completed
 		 */
-		protected void runGroovy(RepositoryModel repository, UserModel user,
+		protected boolean runGroovy(RepositoryModel repository, UserModel user,
 				Collection<ReceiveCommand> commands, ReceivePack rp, Set<String> scripts) {
+			return runGroovy(repository, user, commands, rp, scripts, new ClientLogger(rp));
+		}
+
+		/**
+		 * Runs the specified Groovy hook scripts. The remaining scripts are
+		 * aborted if a script fails, throws an exception, or exceeds the script
+		 * timeout.
+		 * 
+		 * @param repository
+		 * @param user
+		 * @param commands
+		 * @param rp
+		 *            the receive pack or null if the push has completed
+		 * @param scripts
+		 * @param clientLogger
+		 * @return true if all scripts completed, false if a script threw an
+		 *         exception or timed out
+		 */
+		protected boolean runGroovy(RepositoryModel repository, UserModel user,
+				Collection<ReceiveCommand> commands, ReceivePack rp, Set<String> scripts,
+				ClientLogger clientLogger) {
 			if (scripts == null || scripts.size() == 0) {
 				// no Groovy scripts to execute
-				return;
+				return true;
 			}
 
+			int timeout = GitBlit.getInteger(Keys.groovy.scriptTimeout, 60);
 			Binding binding = new Binding();
 			binding.setVariable("gitblit", GitBlit.self());
 			binding.setVariable("repository", repository);
 			binding.setVariable("receivePack", rp);
+			binding.setVariable("repositoryName", repositoryName);
 			binding.setVariable("user", user);
 			binding.setVariable("commands", commands);
 			binding.setVariable("url", gitblitUrl);
 			binding.setVariable("logger", logger);
-			binding.setVariable("clientLogger", new ClientLogger(rp));
+			binding.setVariable("clientLogger", clientLogger);
 			for (String script : scripts) {
 				if (StringUtils.isEmpty(script)) {
 					continue;
@@ -343,8 +507,20 @@ public class GitServlet extends org.eclipse.jgit.http.server.GitServlet {
 						script = file.getName();
 					}
 				}
+				long start = System.nanoTime();
+				Future<Object> future = null;
 				try {
-					Object result = gse.run(script, binding);
+					// the engine caches the compiled script until its source changes
+					final Script instance = InvokerHelper.createScript(
+							gse.loadScriptByName(script), binding);
+					future = scriptExecutor.submit(new Callable<Object>() {
+						@Override
+						public Object call() throws Exception {
+							return instance.run();
+						}
+					});
+					Object result = timeout > 0 ? future.get(timeout, TimeUnit.SECONDS) : future
+							.get();
 					if (result instanceof Boolean) {
 						if (!((Boolean) result)) {
 							logger.error(MessageFormat.format(
@@ -352,11 +528,33 @@ public class GitServlet extends org.eclipse.jgit.http.server.GitServlet {
 							break;
 						}
 					}
+				} catch (TimeoutException e) {
+					future.cancel(true);
+					GitBlit.self().getMetrics()
+							.counter("gitblit_groovy_timeouts_total",
+									"Groovy hook scripts which exceeded the script timeout",
+									"script", script).inc();
+					logger.error(MessageFormat.format(
+							"Groovy script {0} timed out after {1} seconds!  Hook scripts aborted.",
+							script, timeout));
+					return false;
+				} catch (ExecutionException e) {
+					logger.error(
+							MessageFormat.format("Failed to execute Groovy script {0}", script),
+							e.getCause());
+					return false;
 				} catch (Exception e) {
 					logger.error(
 							MessageFormat.format("Failed to execute Groovy script {0}", script), e);
+					return false;
+				} finally {
+					GitBlit.self().getMetrics()
+							.histogram("gitblit_groovy_duration_seconds",
+									"Execution time of Groovy hook scripts", "script", script)
+							.observeSince(start);
 				}
 			}
+			return true;
 		}
 
 		/**
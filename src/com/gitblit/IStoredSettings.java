@@ -16,10 +16,16 @@
 package com.gitblit;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,25 +35,161 @@ import com.gitblit.utils.StringUtils;
 /**
  * Base class for stored settings implementations.
  * 
+ * Settings are served from an immutable snapshot of the stored settings which
+ * is replaced by {@link #refresh()}. Reading a setting does not lock or touch
+ * the backing store and parsed values are cached in the snapshot. Listeners
+ * are notified of the keys which changed between snapshots.
+ * 
  * @author James Moger
  * 
  */
 public abstract class IStoredSettings {
 
+	/**
+	 * Listener for changes of the stored settings.
+	 */
+	public static interface SettingsListener {
+
+		/**
+		 * Called after a refresh of the settings changed the values of the
+		 * specified keys.
+		 * 
+		 * @param keys
+		 *            the added, removed, or changed keys
+		 */
+		void settingsChanged(Set<String> keys);
+	}
+
+	/**
+	 * An immutable snapshot of the settings and a cache of their parsed
+	 * values.
+	 */
+	private static final class Snapshot {
+
+		final Map<String, String> values;
+
+		final Map<String, Object> parsed = new ConcurrentHashMap<String, Object>();
+
+		Snapshot(Map<String, String> values) {
+			this.values = Collections.unmodifiableMap(values);
+		}
+	}
+
+	/**
+	 * Marker for a missing or unparseable value in the parsed value cache.
+	 */
+	private static final Object NONE = new Object();
+
 	protected final Logger logger;
 
 	protected final Properties overrides = new Properties();
 
+	private final List<SettingsListener> listeners = new CopyOnWriteArrayList<SettingsListener>();
+
+	private volatile Snapshot snapshot;
+
 	public IStoredSettings(Class<? extends IStoredSettings> clazz) {
 		logger = LoggerFactory.getLogger(clazz);
 	}
 
 	protected abstract Properties read();
 
-	private Properties getSettings() {
-		Properties props = read();
-		props.putAll(overrides);
-		return props;
+	/**
+	 * Reads the stored settings and, if they have changed, replaces the
+	 * snapshot and notifies the listeners of the changed keys.
+	 * 
+	 * @return true if the settings have changed
+	 */
+	public boolean refresh() {
+		Set<String> changed;
+		synchronized (this) {
+			Properties props = read();
+			Map<String, String> values = new HashMap<String, String>();
+			for (String key : props.stringPropertyNames()) {
+				values.put(key, props.getProperty(key));
+			}
+			for (String key : overrides.stringPropertyNames()) {
+				values.put(key, overrides.getProperty(key));
+			}
+			Snapshot current = snapshot;
+			if (current != null && current.values.equals(values)) {
+				return false;
+			}
+			changed = new HashSet<String>();
+			if (current != null) {
+				Set<String> keys = new HashSet<String>(values.keySet());
+				keys.addAll(current.values.keySet());
+				for (String key : keys) {
+					String value = values.get(key);
+					if (value == null ? current.values.get(key) != null : !value
+							.equals(current.values.get(key))) {
+						changed.add(key);
+					}
+				}
+			}
+			snapshot = new Snapshot(values);
+			if (current == null) {
+				// initial snapshot
+				return true;
+			}
+		}
+		for (SettingsListener listener : listeners) {
+			try {
+				listener.settingsChanged(changed);
+			} catch (Throwable t) {
+				logger.error("Failed to notify settings listener", t);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a listener for changes of the settings.
+	 * 
+	 * @param listener
+	 */
+	public void addListener(SettingsListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a settings listener.
+	 * 
+	 * @param listener
+	 */
+	public void removeListener(SettingsListener listener) {
+		listeners.remove(listener);
+	}
+
+	private Snapshot getSnapshot() {
+		Snapshot current = snapshot;
+		if (current == null) {
+			refresh();
+			current = snapshot;
+		}
+		return current;
+	}
+
+	private Map<String, String> getSettings() {
+		return getSnapshot().values;
+	}
+
+	/**
+	 * Returns the parsed value of a setting from the snapshot cache.
+	 * 
+	 * @param current
+	 *            the snapshot
+	 * @param type
+	 *            the prefix of the type of the value
+	 * @param name
+	 * @return the parsed value, null if it has not been parsed yet, or NONE
+	 */
+	private Object getParsed(Snapshot current, String type, String name) {
+		return current.parsed.get(type + name);
+	}
+
+	private void putParsed(Snapshot current, String type, String name, Object value) {
+		current.parsed.put(type + name, value == null ? NONE : value);
 	}
 
 	/**
@@ -59,9 +201,9 @@ public abstract class IStoredSettings {
 	 */
 	public List<String> getAllKeys(String startingWith) {
 		List<String> keys = new ArrayList<String>();
-		Properties props = getSettings();
+		Map<String, String> props = getSettings();
 		if (StringUtils.isEmpty(startingWith)) {
-			keys.addAll(props.stringPropertyNames());
+			keys.addAll(props.keySet());
 		} else {
 			startingWith = startingWith.toLowerCase();
 			for (Object o : props.keySet()) {
@@ -84,14 +226,16 @@ public abstract class IStoredSettings {
 	 * @return key value or defaultValue
 	 */
 	public boolean getBoolean(String name, boolean defaultValue) {
-		Properties props = getSettings();
-		if (props.containsKey(name)) {
-			String value = props.getProperty(name);
+		Snapshot current = getSnapshot();
+		Object parsed = getParsed(current, "b:", name);
+		if (parsed == null) {
+			String value = current.values.get(name);
 			if (!StringUtils.isEmpty(value)) {
-				return Boolean.parseBoolean(value.trim());
+				parsed = Boolean.parseBoolean(value.trim());
 			}
+			putParsed(current, "b:", name, parsed);
 		}
-		return defaultValue;
+		return parsed == null || parsed == NONE ? defaultValue : (Boolean) parsed;
 	}
 
 	/**
@@ -104,19 +248,21 @@ public abstract class IStoredSettings {
 	 * @return key value or defaultValue
 	 */
 	public int getInteger(String name, int defaultValue) {
-		Properties props = getSettings();
-		if (props.containsKey(name)) {
+		Snapshot current = getSnapshot();
+		Object parsed = getParsed(current, "i:", name);
+		if (parsed == null) {
+			String value = current.values.get(name);
 			try {
-				String value = props.getProperty(name);
 				if (!StringUtils.isEmpty(value)) {
-					return Integer.parseInt(value.trim());
+					parsed = Integer.parseInt(value.trim());
 				}
 			} catch (NumberFormatException e) {
 				logger.warn("Failed to parse integer for " + name + " using default of "
 						+ defaultValue);
 			}
+			putParsed(current, "i:", name, parsed);
 		}
-		return defaultValue;
+		return parsed == null || parsed == NONE ? defaultValue : (Integer) parsed;
 	}
 
 	/**
@@ -129,19 +275,21 @@ public abstract class IStoredSettings {
 	 * @return key value or defaultValue
 	 */
 	public long getLong(String name, long defaultValue) {
-		Properties props = getSettings();
-		if (props.containsKey(name)) {
+		Snapshot current = getSnapshot();
+		Object parsed = getParsed(current, "l:", name);
+		if (parsed == null) {
+			String value = current.values.get(name);
 			try {
-				String value = props.getProperty(name);
 				if (!StringUtils.isEmpty(value)) {
-					return Long.parseLong(value.trim());
+					parsed = Long.parseLong(value.trim());
 				}
 			} catch (NumberFormatException e) {
 				logger.warn("Failed to parse long for " + name + " using default of "
 						+ defaultValue);
 			}
+			putParsed(current, "l:", name, parsed);
 		}
-		return defaultValue;
+		return parsed == null || parsed == NONE ? defaultValue : (Long) parsed;
 	}
 	
 	/**
@@ -184,12 +332,9 @@ public abstract class IStoredSettings {
 	 * @return key value or defaultValue
 	 */
 	public char getChar(String name, char defaultValue) {
-		Properties props = getSettings();
-		if (props.containsKey(name)) {
-			String value = props.getProperty(name);
-			if (!StringUtils.isEmpty(value)) {
-				return value.trim().charAt(0);
-			}
+		String value = getSettings().get(name);
+		if (!StringUtils.isEmpty(value)) {
+			return value.trim().charAt(0);
 		}
 		return defaultValue;
 	}
@@ -204,14 +349,14 @@ public abstract class IStoredSettings {
 	 * @return key value or defaultValue
 	 */
 	public String getString(String name, String defaultValue) {
-		Properties props = getSettings();
-		if (props.containsKey(name)) {
-			String value = props.getProperty(name);
-			if (value != null) {
-				return value.trim();
-			}
+		Snapshot current = getSnapshot();
+		Object parsed = getParsed(current, "s:", name);
+		if (parsed == null) {
+			String value = current.values.get(name);
+			parsed = value == null ? null : value.trim();
+			putParsed(current, "s:", name, parsed);
 		}
-		return defaultValue;
+		return parsed == null || parsed == NONE ? defaultValue : (String) parsed;
 	}
 	
 	/**
@@ -222,13 +367,10 @@ public abstract class IStoredSettings {
 	 * @return key value
 	 */
 	public String getRequiredString(String name) {
-		Properties props = getSettings();
-		if (props.containsKey(name)) {
-			String value = props.getProperty(name);
-			if (value != null) {
-				return value.trim();
-			}
-		}		
+		String value = getSettings().get(name);
+		if (value != null) {
+			return value.trim();
+		}
 		throw new RuntimeException("Property (" + name + ") does not exist");
 	}
 
@@ -250,14 +392,24 @@ public abstract class IStoredSettings {
 	 * @param separator
 	 * @return list of strings
 	 */
+	@SuppressWarnings("unchecked")
 	public List<String> getStrings(String name, String separator) {
-		List<String> strings = new ArrayList<String>();
-		Properties props = getSettings();
-		if (props.containsKey(name)) {
-			String value = props.getProperty(name);
-			strings = StringUtils.getStringsFromValue(value, separator);
+		Snapshot current = getSnapshot();
+		String type = "[" + separator + "]:";
+		Object parsed = getParsed(current, type, name);
+		if (parsed == null) {
+			String value = current.values.get(name);
+			if (value != null) {
+				parsed = Collections.unmodifiableList(StringUtils.getStringsFromValue(value,
+						separator));
+			}
+			putParsed(current, type, name, parsed);
+		}
+		if (parsed == null || parsed == NONE) {
+			return new ArrayList<String>();
 		}
-		return strings;
+		// callers may modify the returned list
+		return new ArrayList<String>((List<String>) parsed);
 	}
 	
 	/**
@@ -285,6 +437,7 @@ public abstract class IStoredSettings {
 	 */
 	public void overrideSetting(String key, String value) {
 		overrides.put(key, value);
+		refresh();
 	}
 
 	/**
@@ -296,4 +449,4 @@ public abstract class IStoredSettings {
 	 * @return true if successful
 	 */
 	public abstract boolean saveSettings(Map<String, String> updatedSettings);
-}
\ No newline at end of file
+}
\ No newline at end of file
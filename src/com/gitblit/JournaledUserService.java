@@ -0,0 +1,313 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.gitblit.FederationJournal.ObjectType;
+import com.gitblit.models.TeamModel;
+import com.gitblit.models.UserModel;
+
+/**
+ * JournaledUserService wraps the user service of Gitblit and records every
+ * successful user and team write in the federation journal. This includes
+ * writes which only change the repository permissions of users and teams
+ * so that federation pulls and Manager refreshes see them as changes.
+ *
+ * Team memberships are stored on both sides, so a write to a user journals
+ * the teams of the user and a write to a team journals its members.
+ *
+ * @author James Moger
+ *
+ */
+public class JournaledUserService implements IUserService {
+
+	private final IUserService serviceImpl;
+
+	private final FederationJournal journal;
+
+	public JournaledUserService(IUserService serviceImpl, FederationJournal journal) {
+		this.serviceImpl = serviceImpl;
+		this.journal = journal;
+	}
+
+	@Override
+	public void setup(IStoredSettings settings) {
+		serviceImpl.setup(settings);
+	}
+
+	@Override
+	public boolean supportsCredentialChanges() {
+		return serviceImpl.supportsCredentialChanges();
+	}
+
+	@Override
+	public boolean supportsDisplayNameChanges() {
+		return serviceImpl.supportsDisplayNameChanges();
+	}
+
+	@Override
+	public boolean supportsEmailAddressChanges() {
+		return serviceImpl.supportsEmailAddressChanges();
+	}
+
+	@Override
+	public boolean supportsTeamMembershipChanges() {
+		return serviceImpl.supportsTeamMembershipChanges();
+	}
+
+	@Override
+	public boolean supportsCookies() {
+		return serviceImpl.supportsCookies();
+	}
+
+	@Override
+	public String getCookie(UserModel model) {
+		return serviceImpl.getCookie(model);
+	}
+
+	@Override
+	public UserModel authenticate(char[] cookie) {
+		return serviceImpl.authenticate(cookie);
+	}
+
+	@Override
+	public UserModel authenticate(String username, char[] password) {
+		return serviceImpl.authenticate(username, password);
+	}
+
+	@Override
+	public void logout(UserModel user) {
+		serviceImpl.logout(user);
+	}
+
+	@Override
+	public UserModel getUserModel(String username) {
+		return serviceImpl.getUserModel(username);
+	}
+
+	@Override
+	public boolean updateUserModel(UserModel model) {
+		if (serviceImpl.updateUserModel(model)) {
+			userChanged(model);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean updateUserModels(List<UserModel> models) {
+		if (serviceImpl.updateUserModels(models)) {
+			for (UserModel model : models) {
+				userChanged(model);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean updateUserModel(String username, UserModel model) {
+		if (serviceImpl.updateUserModel(username, model)) {
+			if (!username.equalsIgnoreCase(model.username)) {
+				journal.deleted(ObjectType.USER, username);
+			}
+			userChanged(model);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean deleteUserModel(UserModel model) {
+		return deleteUser(model.username);
+	}
+
+	@Override
+	public boolean deleteUser(String username) {
+		UserModel model = serviceImpl.getUserModel(username);
+		if (serviceImpl.deleteUser(username)) {
+			journal.deleted(ObjectType.USER, username);
+			if (model != null) {
+				for (TeamModel team : model.teams) {
+					journal.changed(ObjectType.TEAM, team.name);
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public List<String> getAllUsernames() {
+		return serviceImpl.getAllUsernames();
+	}
+
+	@Override
+	public List<UserModel> getAllUsers() {
+		return serviceImpl.getAllUsers();
+	}
+
+	@Override
+	public List<String> getAllTeamNames() {
+		return serviceImpl.getAllTeamNames();
+	}
+
+	@Override
+	public List<TeamModel> getAllTeams() {
+		return serviceImpl.getAllTeams();
+	}
+
+	@Override
+	public List<String> getTeamnamesForRepositoryRole(String role) {
+		return serviceImpl.getTeamnamesForRepositoryRole(role);
+	}
+
+	@Override
+	public boolean setTeamnamesForRepositoryRole(String role, List<String> teamnames) {
+		List<String> previous = serviceImpl.getTeamnamesForRepositoryRole(role);
+		if (serviceImpl.setTeamnamesForRepositoryRole(role, teamnames)) {
+			changed(ObjectType.TEAM, previous);
+			changed(ObjectType.TEAM, teamnames);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public TeamModel getTeamModel(String teamname) {
+		return serviceImpl.getTeamModel(teamname);
+	}
+
+	@Override
+	public boolean updateTeamModel(TeamModel model) {
+		if (serviceImpl.updateTeamModel(model)) {
+			teamChanged(model);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean updateTeamModels(List<TeamModel> models) {
+		if (serviceImpl.updateTeamModels(models)) {
+			for (TeamModel model : models) {
+				teamChanged(model);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean updateTeamModel(String teamname, TeamModel model) {
+		if (serviceImpl.updateTeamModel(teamname, model)) {
+			if (!teamname.equalsIgnoreCase(model.name)) {
+				journal.deleted(ObjectType.TEAM, teamname);
+			}
+			teamChanged(model);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean deleteTeamModel(TeamModel model) {
+		return deleteTeam(model.name);
+	}
+
+	@Override
+	public boolean deleteTeam(String teamname) {
+		TeamModel model = serviceImpl.getTeamModel(teamname);
+		if (serviceImpl.deleteTeam(teamname)) {
+			journal.deleted(ObjectType.TEAM, teamname);
+			if (model != null) {
+				changed(ObjectType.USER, model.users);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public List<String> getUsernamesForRepositoryRole(String role) {
+		return serviceImpl.getUsernamesForRepositoryRole(role);
+	}
+
+	@Override
+	public boolean setUsernamesForRepositoryRole(String role, List<String> usernames) {
+		List<String> previous = serviceImpl.getUsernamesForRepositoryRole(role);
+		if (serviceImpl.setUsernamesForRepositoryRole(role, usernames)) {
+			changed(ObjectType.USER, previous);
+			changed(ObjectType.USER, usernames);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean renameRepositoryRole(String oldRole, String newRole) {
+		List<String> users = serviceImpl.getUsernamesForRepositoryRole(oldRole);
+		List<String> teams = serviceImpl.getTeamnamesForRepositoryRole(oldRole);
+		if (serviceImpl.renameRepositoryRole(oldRole, newRole)) {
+			changed(ObjectType.USER, users);
+			changed(ObjectType.TEAM, teams);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean deleteRepositoryRole(String role) {
+		List<String> users = serviceImpl.getUsernamesForRepositoryRole(role);
+		List<String> teams = serviceImpl.getTeamnamesForRepositoryRole(role);
+		if (serviceImpl.deleteRepositoryRole(role)) {
+			changed(ObjectType.USER, users);
+			changed(ObjectType.TEAM, teams);
+			return true;
+		}
+		return false;
+	}
+
+	private void userChanged(UserModel model) {
+		journal.changed(ObjectType.USER, model.username);
+		for (TeamModel team : model.teams) {
+			// team memberships are stored in the team
+			journal.changed(ObjectType.TEAM, team.name);
+		}
+	}
+
+	private void teamChanged(TeamModel model) {
+		journal.changed(ObjectType.TEAM, model.name);
+		// team memberships are reported by the users
+		changed(ObjectType.USER, model.users);
+	}
+
+	private void changed(ObjectType type, Collection<String> names) {
+		if (names == null) {
+			return;
+		}
+		for (String name : names) {
+			journal.changed(type, name);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return serviceImpl.toString();
+	}
+}
@@ -16,9 +16,13 @@
 package com.gitblit;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.text.MessageFormat;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -29,7 +33,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.gitblit.utils.JsonUtils;
-import com.gitblit.utils.StringUtils;
 
 /**
  * Servlet class for interpreting json requests.
@@ -79,51 +82,74 @@ public abstract class JsonServlet extends HttpServlet {
 
 	protected <X> X deserialize(HttpServletRequest request, HttpServletResponse response,
 			Class<X> clazz) throws IOException {
-		String json = readJson(request, response);
-		if (StringUtils.isEmpty(json)) {
-			return null;
-		}
-
-		X object = JsonUtils.fromJsonString(json.toString(), clazz);
-		return object;
+		return deserialize(request, response, (Type) clazz);
 	}
 
+	/**
+	 * Deserializes the json request body. The body is parsed as it is read
+	 * and is not buffered as a string.
+	 * 
+	 * @param request
+	 * @param response
+	 * @param type
+	 * @return the object or null if the request has no body
+	 * @throws IOException
+	 */
 	protected <X> X deserialize(HttpServletRequest request, HttpServletResponse response, Type type)
 			throws IOException {
-		String json = readJson(request, response);
-		if (StringUtils.isEmpty(json)) {
-			return null;
-		}
-
-		X object = JsonUtils.fromJsonString(json.toString(), type);
-		return object;
-	}
-
-	private String readJson(HttpServletRequest request, HttpServletResponse response)
-			throws IOException {
 		BufferedReader reader = request.getReader();
-		StringBuilder json = new StringBuilder();
-		String line = null;
-		while ((line = reader.readLine()) != null) {
-			json.append(line);
+		try {
+			reader.mark(1);
+			if (reader.read() == -1) {
+				logger.error(MessageFormat.format("Failed to receive json data from {0}",
+						request.getRemoteAddr()));
+				response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+				return null;
+			}
+			reader.reset();
+			X object = JsonUtils.fromJson(reader, type);
+			return object;
+		} finally {
+			reader.close();
 		}
-		reader.close();
-
-		if (json.length() == 0) {
-			logger.error(MessageFormat.format("Failed to receive json data from {0}",
-					request.getRemoteAddr()));
-			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-			return null;
-		}
-		return json.toString();
 	}
 
 	protected void serialize(HttpServletResponse response, Object o) throws IOException {
 		if (o != null) {
 			// Send JSON response
-			String json = JsonUtils.toJsonString(o);
 			response.setCharacterEncoding(Constants.ENCODING);
-			response.getWriter().append(json);
+			response.setContentType("application/json");
+			JsonUtils.toJson(o, response.getWriter());
+		}
+	}
+
+	/**
+	 * Serializes the object as a json response. The json is written directly
+	 * to the response and is gzip compressed if the client accepts gzip
+	 * encoding.
+	 * 
+	 * @param request
+	 * @param response
+	 * @param o
+	 * @throws IOException
+	 */
+	protected void serialize(HttpServletRequest request, HttpServletResponse response, Object o)
+			throws IOException {
+		response.setHeader("Vary", "Accept-Encoding");
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		if (o == null || acceptEncoding == null || acceptEncoding.indexOf("gzip") == -1) {
+			serialize(response, o);
+			return;
+		}
+		response.setCharacterEncoding(Constants.ENCODING);
+		response.setContentType("application/json");
+		response.setHeader("Content-Encoding", "gzip");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(
+				response.getOutputStream(), 8192), Constants.ENCODING));
+		try {
+			JsonUtils.toJson(o, writer);
+		} finally {
+			writer.close();
 		}
 	}
 }
@@ -25,6 +25,7 @@ import java.lang.reflect.Method;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -95,6 +96,7 @@ import com.gitblit.models.SearchResult;
 import com.gitblit.utils.ArrayUtils;
 import com.gitblit.utils.IssueUtils;
 import com.gitblit.utils.JGitUtils;
+import com.gitblit.utils.MetricsRegistry;
 import com.gitblit.utils.StringUtils;
 
 /**
@@ -141,6 +143,8 @@ public class LuceneExecutor implements Runnable {
 	
 	private final String luceneIgnoreExtensions = "7z arc arj bin bmp dll doc docx exe gif gz jar jpg lib lzh odg odf odt pdf ppt png so swf xcf xls xlsx zip";
 	private Set<String> excludedExtensions;
+
+	private volatile long lastRun;
 	
 	public LuceneExecutor(IStoredSettings settings, File repositoriesFolder) {
 		this.storedSettings = settings;
@@ -187,6 +191,40 @@ public class LuceneExecutor implements Runnable {
 				System.gc();
 			}
 		}
+		lastRun = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the time the executor last completed indexing all repositories.
+	 * 
+	 * @return the time in milliseconds or 0 if the executor has not run
+	 */
+	public long getLastRun() {
+		return lastRun;
+	}
+
+	/**
+	 * Records the duration of an index update and, if new commits were
+	 * indexed, the lag between the repository change and the index update.
+	 * 
+	 * @param model
+	 * @param result
+	 */
+	private void recordMetrics(RepositoryModel model, IndexResult result) {
+		MetricsRegistry metrics = GitBlit.self().getMetrics();
+		metrics.histogram("gitblit_lucene_index_duration_seconds",
+				"Duration of Lucene index updates").observe(
+				(result.endTime - result.startTime) * 1000000L);
+		if (result.commitCount > 0) {
+			metrics.counter("gitblit_lucene_indexed_commits_total", "Commits indexed by Lucene")
+					.inc(result.commitCount);
+			if (model.lastChange != null) {
+				long lag = Math.max(0, result.endTime - model.lastChange.getTime());
+				metrics.histogram("gitblit_lucene_index_lag_seconds",
+						"Time from a repository change to its Lucene index update").observe(
+						lag * 1000000L);
+			}
+		}
 	}
 
 	/**
@@ -205,6 +243,7 @@ public class LuceneExecutor implements Runnable {
 				IndexResult result = reindex(model, repository);
 
 				if (result.success) {
+					recordMetrics(model, result);
 					if (result.commitCount > 0) {
 						String msg = "Built {0} Lucene index from {1} commits and {2} files across {3} branches in {4} secs";
 						logger.info(MessageFormat.format(msg, model.name, result.commitCount,
@@ -218,6 +257,7 @@ public class LuceneExecutor implements Runnable {
 				// update the index with latest commits
 				IndexResult result = updateIndex(model, repository);
 				if (result.success) {
+					recordMetrics(model, result);
 					if (result.commitCount > 0) {
 						String msg = "Updated {0} Lucene index with {1} commits and {2} files across {3} branches in {4} secs";
 						logger.info(MessageFormat.format(msg, model.name, result.commitCount,
@@ -743,19 +783,62 @@ public class LuceneExecutor implements Runnable {
 	}
 	
 	/**
-	 * Delete an issue from the repository index.
+	 * Incrementally update the index with the current state of the specified
+	 * issues. Deleted issues are removed from the index. All changes are
+	 * committed to the index at once.
 	 * 
 	 * @param repositoryName
+	 * @param repository
+	 * @param issueIds
+	 * @return the number of indexed issues
+	 */
+	private int index(String repositoryName, Repository repository, Collection<String> issueIds) {
+		int count = 0;
+		try {
+			IndexWriter writer = getIndexWriter(repositoryName);
+			for (String issueId : issueIds) {
+				// delete the old issue from the index, if exists
+				writer.deleteDocuments(getIssueQuery(issueId));
+				IssueModel issue = IssueUtils.getIssue(repository, issueId);
+				if (issue != null) {
+					// issue was created or updated
+					writer.addDocument(createDocument(issue));
+					count++;
+				}
+			}
+			writer.commit();
+			resetIndexSearcher(repositoryName);
+		} catch (Exception e) {
+			logger.error(MessageFormat.format("Exception while incrementally updating {0} issues in Lucene index", repositoryName), e);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns a query which matches the specified issue.
+	 * 
 	 * @param issueId
-	 * @throws Exception
-	 * @return true, if deleted, false if no record was deleted
+	 * @return a query
 	 */
-	private boolean deleteIssue(String repositoryName, String issueId) throws Exception {
+	private BooleanQuery getIssueQuery(String issueId) {
 		BooleanQuery query = new BooleanQuery();
 		Term objectTerm = new Term(FIELD_OBJECT_TYPE, SearchObjectType.issue.name());
 		query.add(new TermQuery(objectTerm), Occur.MUST);
 		Term issueidTerm = new Term(FIELD_ISSUE, issueId);
 		query.add(new TermQuery(issueidTerm), Occur.MUST);
+		return query;
+	}
+
+	/**
+	 * Delete an issue from the repository index.
+	 * 
+	 * @param repositoryName
+	 * @param issueId
+	 * @throws Exception
+	 * @return true, if deleted, false if no record was deleted
+	 */
+	private boolean deleteIssue(String repositoryName, String issueId) throws Exception {
+		BooleanQuery query = getIssueQuery(issueId);
 		
 		IndexWriter writer = getIndexWriter(repositoryName);
 		int numDocsBefore = writer.numDocs();
@@ -870,7 +953,7 @@ public class LuceneExecutor implements Runnable {
 						&& branch.equals(defaultBranch)) {
 					// indexing "default" branch
 					indexBranch = true;
-				} else if (IssueUtils.GB_ISSUES.equals(branch)) {
+				} else if (IssueUtils.GB_ISSUES.equals(branchName)) {
 					// update issues modified on the GB_ISSUES branch
 					// note: this is different than reindex
 					indexBranch = true;
@@ -904,37 +987,26 @@ public class LuceneExecutor implements Runnable {
 					result.branchCount += 1;
 				}
 				
-				// track the issue ids that we have already indexed
-				Set<String> indexedIssues = new TreeSet<String>();
+				// collect the issue ids changed on the GB_ISSUES branch
+				Set<String> changedIssues = new TreeSet<String>();
 				
 				// reverse the list of commits so we start with the first commit				
 				Collections.reverse(revs);
 				for (RevCommit commit : revs) {					
-					if (IssueUtils.GB_ISSUES.equals(branch)) {
-						// only index an issue once during updateIndex
-						String issueId = commit.getShortMessage().substring(2).trim();
-						if (indexedIssues.contains(issueId)) {
-							continue;
-						}
-						indexedIssues.add(issueId);
-						
-						IssueModel issue = IssueUtils.getIssue(repository, issueId);
-						if (issue == null) {
-							// issue was deleted, remove from index
-							if (!deleteIssue(model.name, issueId)) {
-								logger.error(MessageFormat.format("Failed to delete issue {0} from Lucene index!", issueId));
-							}
-						} else {
-							// issue was updated
-							index(model.name, issue);
-							result.issueCount++;
-						}
+					if (IssueUtils.GB_ISSUES.equals(branchName)) {
+						// a commit may change several issues
+						changedIssues.addAll(IssueUtils.getIssueIds(commit));
 					} else {
 						// index a commit
 						result.add(index(model.name, repository, branchName, commit));
 					}
 				}
 
+				if (changedIssues.size() > 0) {
+					// update all changed issues in a single index commit
+					result.issueCount += index(model.name, repository, changedIssues);
+				}
+
 				// update the config
 				config.setInt(CONF_INDEX, null, CONF_VERSION, INDEX_VERSION);
 				config.setString(CONF_ALIAS, null, keyName, branchName);
@@ -951,7 +1023,7 @@ public class LuceneExecutor implements Runnable {
 					writer.commit();
 				}
 			}
-			result.success = true;
+			result.success();
 		} catch (Throwable t) {
 			logger.error(MessageFormat.format("Exception while updating {0} Lucene index", model.name), t);
 		}
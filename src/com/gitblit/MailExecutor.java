@@ -15,17 +15,28 @@
  */
 package com.gitblit;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Queue;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
+import javax.mail.Address;
 import javax.mail.Authenticator;
 import javax.mail.Message;
 import javax.mail.PasswordAuthentication;
@@ -42,21 +53,63 @@ import com.gitblit.utils.StringUtils;
 /**
  * The mail executor handles sending email messages asynchronously from queue.
  * 
+ * Each cycle sends the due messages over a single SMTP connection. Plain text
+ * messages of the same kind to the same recipients may be coalesced into one
+ * digest message.
+ * Failed messages are retried with an exponential backoff. If a queue folder
+ * is specified, queued messages are written to that folder and are reloaded
+ * on restart.
+ * 
  * @author James Moger
  * 
  */
 public class MailExecutor implements Runnable {
 
+	/**
+	 * A message in the queue and its delivery attempts.
+	 */
+	private static class QueuedMessage {
+
+		final Message message;
+
+		final File file;
+
+		int attempts;
+
+		long nextAttempt;
+
+		QueuedMessage(Message message, File file) {
+			this.message = message;
+			this.file = file;
+		}
+	}
+
 	private final Logger logger = LoggerFactory.getLogger(MailExecutor.class);
 
-	private final Queue<Message> queue = new ConcurrentLinkedQueue<Message>();
+	private final Queue<QueuedMessage> queue = new ConcurrentLinkedQueue<QueuedMessage>();
+
+	private final AtomicLong sequence = new AtomicLong();
 
 	private final Session session;
 
 	private final IStoredSettings settings;
 
+	private final File queueFolder;
+
 	public MailExecutor(IStoredSettings settings) {
+		this(settings, null);
+	}
+
+	/**
+	 * Constructor for a mail executor which persists its queue.
+	 * 
+	 * @param settings
+	 * @param queueFolder
+	 *            the folder of the queued messages, may be null
+	 */
+	public MailExecutor(IStoredSettings settings, File queueFolder) {
 		this.settings = settings;
+		this.queueFolder = queueFolder;
 
 		final String mailUser = settings.getString(Keys.mail.username, null);
 		final String mailPassword = settings.getString(Keys.mail.password, null);
@@ -99,6 +152,69 @@ public class MailExecutor implements Runnable {
 			// SMTP does not require authentication
 			session = Session.getInstance(props);
 		}
+
+		load();
+	}
+
+	/**
+	 * Loads the messages which were queued before a restart.
+	 */
+	private void load() {
+		if (queueFolder == null || !queueFolder.exists()) {
+			return;
+		}
+		File[] files = queueFolder.listFiles();
+		if (files == null) {
+			return;
+		}
+		Set<File> sorted = new TreeSet<File>(Arrays.asList(files));
+		for (File file : sorted) {
+			if (!file.getName().endsWith(".eml")) {
+				continue;
+			}
+			try {
+				InputStream is = new FileInputStream(file);
+				try {
+					queue.add(new QueuedMessage(new MimeMessage(session, is), file));
+				} finally {
+					is.close();
+				}
+			} catch (Exception e) {
+				logger.error(MessageFormat.format("Failed to load queued message {0}", file), e);
+				file.delete();
+			}
+		}
+		if (!queue.isEmpty()) {
+			logger.info(MessageFormat.format("Loaded {0} queued messages", queue.size()));
+		}
+	}
+
+	/**
+	 * Writes the message to the queue folder.
+	 * 
+	 * @param message
+	 * @return the file of the message or null if the queue is not persisted
+	 */
+	private File persist(Message message) {
+		if (queueFolder == null) {
+			return null;
+		}
+		File file = new File(queueFolder, MessageFormat.format("{0,number,0}-{1,number,0}.eml",
+				System.currentTimeMillis(), sequence.incrementAndGet()));
+		try {
+			queueFolder.mkdirs();
+			OutputStream os = new FileOutputStream(file);
+			try {
+				message.writeTo(os);
+			} finally {
+				os.close();
+			}
+			return file;
+		} catch (Exception e) {
+			logger.error(MessageFormat.format("Failed to persist queued message {0}", file), e);
+			file.delete();
+			return null;
+		}
 	}
 
 	/**
@@ -203,32 +319,206 @@ public class MailExecutor implements Runnable {
 		} catch (Throwable t) {
 			logger.error("Failed to save changes to message!", t);
 		}
-		queue.add(message);
+		queue.add(new QueuedMessage(message, persist(message)));
 		return true;
 	}
 
 	@Override
 	public void run() {
-		if (!queue.isEmpty()) {
-			if (session != null) {
-				// send message via mail server
-				List<Message> failures = new ArrayList<Message>();
-				Message message = null;
-				while ((message = queue.poll()) != null) {
-					try {
-						if (settings.getBoolean(Keys.mail.debug, false)) {
-							logger.info("send: " + StringUtils.trimString(message.getSubject(), 60));
+		if (queue.isEmpty() || session == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		List<QueuedMessage> due = new ArrayList<QueuedMessage>();
+		List<QueuedMessage> pending = new ArrayList<QueuedMessage>();
+		QueuedMessage queued = null;
+		while ((queued = queue.poll()) != null) {
+			if (queued.nextAttempt <= now) {
+				due.add(queued);
+			} else {
+				pending.add(queued);
+			}
+		}
+		if (settings.getBoolean(Keys.mail.coalesce, false)) {
+			due = coalesce(due);
+		}
+
+		// send the messages via one connection to the mail server
+		List<QueuedMessage> failures = new ArrayList<QueuedMessage>();
+		Transport transport = null;
+		try {
+			transport = session.getTransport("smtp");
+			for (QueuedMessage qm : due) {
+				Message message = qm.message;
+				try {
+					Address[] recipients = message.getAllRecipients();
+					if (recipients == null || recipients.length == 0) {
+						logger.warn("Dropping message without recipients: "
+								+ StringUtils.trimString(message.getSubject(), 60));
+						delete(qm);
+						continue;
+					}
+					if (settings.getBoolean(Keys.mail.debug, false)) {
+						logger.info("send: " + StringUtils.trimString(message.getSubject(), 60));
+					}
+					if (!transport.isConnected()) {
+						transport.connect();
+					}
+					transport.sendMessage(message, recipients);
+					delete(qm);
+				} catch (Throwable e) {
+					logger.error("Failed to send message", e);
+					retry(qm, failures);
+				}
+			}
+		} catch (Throwable t) {
+			logger.error("Failed to open mail transport", t);
+			for (QueuedMessage qm : due) {
+				retry(qm, failures);
+			}
+		} finally {
+			if (transport != null) {
+				try {
+					transport.close();
+				} catch (Exception e) {
+				}
+			}
+		}
+
+		// push the pending messages and the failures back onto the queue for
+		// the next cycles
+		queue.addAll(pending);
+		queue.addAll(failures);
+	}
+
+	/**
+	 * Coalesces the plain text messages of the same kind to the same
+	 * recipients into one digest message. Messages are of the same kind if
+	 * their subjects have the same bracketed prefix, e.g. [Gitblit], or the
+	 * same subject if there is no prefix.
+	 * 
+	 * @param messages
+	 * @return the messages to send
+	 */
+	private List<QueuedMessage> coalesce(List<QueuedMessage> messages) {
+		Map<String, List<QueuedMessage>> groups = new LinkedHashMap<String, List<QueuedMessage>>();
+		List<QueuedMessage> list = new ArrayList<QueuedMessage>();
+		for (QueuedMessage qm : messages) {
+			String key = null;
+			try {
+				if (qm.attempts == 0 && qm.message.isMimeType("text/plain")) {
+					Address[] recipients = qm.message.getAllRecipients();
+					if (recipients != null) {
+						Set<String> addresses = new TreeSet<String>();
+						for (Address address : recipients) {
+							addresses.add(address.toString().toLowerCase());
 						}
-						Transport.send(message);
-					} catch (Throwable e) {
-						logger.error("Failed to send message", e);
-						failures.add(message);
+						key = getSubjectPrefix(qm.message.getSubject()) + " "
+								+ addresses.toString();
 					}
 				}
-				
-				// push the failures back onto the queue for the next cycle
-				queue.addAll(failures);
+			} catch (Exception e) {
 			}
+			if (key == null) {
+				list.add(qm);
+				continue;
+			}
+			if (!groups.containsKey(key)) {
+				groups.put(key, new ArrayList<QueuedMessage>());
+			}
+			groups.get(key).add(qm);
+		}
+
+		for (List<QueuedMessage> group : groups.values()) {
+			if (group.size() == 1) {
+				list.add(group.get(0));
+				continue;
+			}
+			try {
+				Message first = group.get(0).message;
+				Message digest = new MimeMessage(session);
+				digest.setFrom(first.getFrom()[0]);
+				digest.setRecipients(Message.RecipientType.BCC, first.getAllRecipients());
+				digest.setSentDate(new Date());
+				digest.setSubject(MessageFormat.format("{0} (+{1} more)", first.getSubject(),
+						group.size() - 1));
+				StringBuilder sb = new StringBuilder();
+				for (QueuedMessage qm : group) {
+					if (sb.length() > 0) {
+						sb.append("\n\n----\n\n");
+					}
+					sb.append(qm.message.getSubject()).append("\n\n");
+					sb.append(qm.message.getContent());
+				}
+				digest.setText(sb.toString());
+				digest.saveChanges();
+
+				// replace the coalesced messages by the digest
+				QueuedMessage coalesced = new QueuedMessage(digest, persist(digest));
+				for (QueuedMessage qm : group) {
+					delete(qm);
+				}
+				list.add(coalesced);
+			} catch (Exception e) {
+				logger.error("Failed to coalesce messages", e);
+				list.addAll(group);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the bracketed prefix of the subject or the subject.
+	 * 
+	 * @param subject
+	 * @return the prefix
+	 */
+	private String getSubjectPrefix(String subject) {
+		if (StringUtils.isEmpty(subject)) {
+			return "";
+		}
+		int end = subject.indexOf(']');
+		if (subject.charAt(0) == '[' && end > 0) {
+			return subject.substring(0, end + 1);
+		}
+		return subject;
+	}
+
+	/**
+	 * Schedules the next attempt to send a failed message or drops the
+	 * message if it has exceeded the maximum number of retries.
+	 * 
+	 * @param qm
+	 * @param failures
+	 */
+	private void retry(QueuedMessage qm, List<QueuedMessage> failures) {
+		qm.attempts++;
+		int maxRetries = settings.getInteger(Keys.mail.maxRetries, 10);
+		if (qm.attempts > maxRetries) {
+			String subject = null;
+			try {
+				subject = qm.message.getSubject();
+			} catch (Exception e) {
+			}
+			logger.error(MessageFormat.format("Dropping message \"{0}\" after {1} attempts",
+					subject, qm.attempts));
+			delete(qm);
+			return;
+		}
+		// 2, 4, 8, ... minutes up to an hour
+		long backoff = Math.min(60, 2L << Math.min(qm.attempts - 1, 5)) * 60 * 1000L;
+		qm.nextAttempt = System.currentTimeMillis() + backoff;
+		failures.add(qm);
+	}
+
+	/**
+	 * Removes a sent or dropped message from the queue folder.
+	 * 
+	 * @param qm
+	 */
+	private void delete(QueuedMessage qm) {
+		if (qm.file != null) {
+			qm.file.delete();
 		}
 	}
 	
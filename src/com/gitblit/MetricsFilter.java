@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.gitblit.models.UserModel;
+
+/**
+ * The MetricsFilter is a servlet filter that secures the MetricsServlet.
+ *
+ * The metrics include repository names so, by default, the metrics may only
+ * be read by an administrator. If no credentials are stored in the
+ * "Authorization" header, then a basic authentication challenge is issued.
+ *
+ * @author James Moger
+ *
+ */
+public class MetricsFilter extends AuthenticationFilter {
+
+	/**
+	 * doFilter does the actual work of preprocessing the request to ensure that
+	 * the user may proceed.
+	 *
+	 * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest,
+	 *      javax.servlet.ServletResponse, javax.servlet.FilterChain)
+	 */
+	@Override
+	public void doFilter(final ServletRequest request, final ServletResponse response,
+			final FilterChain chain) throws IOException, ServletException {
+
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+		// conditionally reject all metrics requests
+		if (!GitBlit.getBoolean(Keys.web.enableMetricsServlet, true)) {
+			logger.warn(Keys.web.enableMetricsServlet + " must be set TRUE for metrics requests.");
+			httpResponse.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+
+		if (!GitBlit.getBoolean(Keys.web.authenticateMetricsServlet, true)) {
+			// unauthenticated request permitted.
+			chain.doFilter(request, response);
+			return;
+		}
+
+		UserModel user = getUser(httpRequest);
+		if (user == null) {
+			// challenge client to provide credentials. send 401.
+			if (GitBlit.isDebugMode()) {
+				logger.info(MessageFormat.format("METRICS: CHALLENGE {0}", getFullUrl(httpRequest)));
+			}
+			httpResponse.setHeader("WWW-Authenticate", CHALLENGE);
+			httpResponse.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+			return;
+		}
+		if (!user.canAdmin()) {
+			// valid user, but not an administrator. send 403.
+			if (GitBlit.isDebugMode()) {
+				logger.info(MessageFormat.format("METRICS: {0} forbidden to access {1}",
+						user.username, getFullUrl(httpRequest)));
+			}
+			httpResponse.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+
+		// authenticated request permitted.
+		AuthenticatedRequest authenticatedRequest = new AuthenticatedRequest(httpRequest);
+		authenticatedRequest.setUser(user);
+		chain.doFilter(authenticatedRequest, httpResponse);
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import com.gitblit.models.CacheStats;
+import com.gitblit.utils.ICache;
+import com.gitblit.utils.MemoryCache;
+
+/**
+ * Caches the resolved resources of gh-pages sites. Each resource is keyed by
+ * the tip of the gh-pages branch so a site is implicitly invalidated when the
+ * branch moves. Pushes to the gh-pages branch explicitly invalidate the site
+ * to release memory early.
+ *
+ * Resource paths are mapped to blob ids and small text resources, including
+ * transformed markdown, are retained in memory within the configured budget.
+ * The least-recently used resources are evicted when the budget is exceeded.
+ *
+ * @author James Moger
+ *
+ */
+public class PagesCache {
+
+	/**
+	 * The maximum number of resources, including not-found resources, cached
+	 * for all sites.
+	 */
+	private static final int MAX_RESOURCES = 16384;
+
+	private final ICache<String, PageResource> resources;
+
+	private final Map<String, ObjectId> tips = new ConcurrentHashMap<String, ObjectId>();
+
+	private final long maxWeight;
+
+	/**
+	 * A resolved gh-pages resource.
+	 */
+	public static class PageResource {
+
+		public final String path;
+
+		public final ObjectId blobId;
+
+		public final String contentType;
+
+		public final long lastModified;
+
+		public final byte[] content;
+
+		public final String etag;
+
+		public PageResource(String path, ObjectId blobId, String contentType, long lastModified,
+				byte[] content, String etag) {
+			this.path = path;
+			this.blobId = blobId;
+			this.contentType = contentType;
+			this.lastModified = lastModified;
+			this.content = content;
+			this.etag = etag;
+		}
+
+		public boolean isFound() {
+			return blobId != null;
+		}
+
+		/**
+		 * Returns a copy of this resource without the retained content.
+		 */
+		PageResource withoutContent() {
+			return new PageResource(path, blobId, contentType, lastModified, null, etag);
+		}
+
+		long weigh() {
+			return 2L * path.length() + (content == null ? 0 : content.length) + 128;
+		}
+	}
+
+	/**
+	 * Creates a pages cache.
+	 *
+	 * @param maxWeight
+	 *            the approximate maximum number of bytes of content to retain,
+	 *            if <= 0 only the resource mappings are cached
+	 */
+	public PagesCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+		this.resources = new MemoryCache<String, PageResource>("pages", MAX_RESOURCES,
+				Math.max(0, maxWeight), 0, new ICache.Weigher<String, PageResource>() {
+					@Override
+					public long weigh(String key, PageResource resource) {
+						return 2L * key.length() + resource.weigh();
+					}
+				});
+	}
+
+	/**
+	 * Returns the cached resource for the specified gh-pages tip and path or
+	 * null if the resource has not been resolved for that tip.
+	 *
+	 * @param repository
+	 * @param tip
+	 * @param path
+	 * @return a resource or null
+	 */
+	public PageResource get(String repository, ObjectId tip, String path) {
+		return resources.get(getKey(repository, tip, path));
+	}
+
+	/**
+	 * Caches a resolved resource for the specified gh-pages tip. If the
+	 * content of a found resource does not fit the memory budget, only the
+	 * mapping of the path to the blob is cached. Not-found resources always
+	 * retain their content because it can not be read from a blob.
+	 *
+	 * @param repository
+	 * @param tip
+	 * @param path
+	 *            the requested path
+	 * @param resource
+	 */
+	public void put(String repository, ObjectId tip, String path, PageResource resource) {
+		ObjectId previous = tips.put(repository.toLowerCase(), tip.copy());
+		if (previous != null && !previous.equals(tip)) {
+			// moved gh-pages branch, discard the resources of the previous tip
+			invalidate(repository, previous);
+		}
+		if (resource.isFound() && resource.content != null
+				&& (maxWeight <= 0 || resource.weigh() > maxWeight / 4)) {
+			resource = resource.withoutContent();
+		}
+		resources.put(getKey(repository, tip, path), resource);
+	}
+
+	/**
+	 * Discards the cached site of the repository.
+	 *
+	 * @param repository
+	 */
+	public void invalidate(String repository) {
+		tips.remove(repository.toLowerCase());
+		invalidate(repository, null);
+	}
+
+	private void invalidate(String repository, ObjectId tip) {
+		String prefix = repository.toLowerCase() + ":" + (tip == null ? "" : (tip.getName() + ":"));
+		for (String key : resources.keys()) {
+			if (key.startsWith(prefix)) {
+				resources.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Discards all cached sites.
+	 */
+	public void clear() {
+		tips.clear();
+		resources.clear();
+	}
+
+	public long getWeight() {
+		return resources.getStats().weight;
+	}
+
+	public CacheStats getStats() {
+		return resources.getStats();
+	}
+
+	private String getKey(String repository, ObjectId tip, String path) {
+		return repository.toLowerCase() + ":" + tip.getName() + ":" + path;
+	}
+}
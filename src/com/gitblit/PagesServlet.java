@@ -25,14 +25,18 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.gitblit.PagesCache.PageResource;
 import com.gitblit.models.RefModel;
 import com.gitblit.utils.ArrayUtils;
+import com.gitblit.utils.HttpUtils;
 import com.gitblit.utils.JGitUtils;
 import com.gitblit.utils.MarkdownUtils;
 import com.gitblit.utils.StringUtils;
@@ -47,6 +51,8 @@ public class PagesServlet extends HttpServlet {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final String GH_PAGES = "gh-pages";
+
 	private transient Logger logger = LoggerFactory.getLogger(PagesServlet.class);
 
 	public PagesServlet() {
@@ -103,7 +109,9 @@ public class PagesServlet extends HttpServlet {
 			} else {
 				repository = path.substring(0, slash);
 			}
-			r = GitBlit.self().getRepository(repository, false);
+			if (GitBlit.self().hasRepository(repository)) {
+				r = GitBlit.self().getRepository(repository, false);
+			}
 			offset = slash + 1;
 			if (offset > 0) {
 				resource = path.substring(offset);
@@ -114,8 +122,6 @@ public class PagesServlet extends HttpServlet {
 			}
 		}
 
-		ServletContext context = request.getSession().getServletContext();
-
 		try {
 			if (r == null) {
 				// repository not found!
@@ -126,11 +132,19 @@ public class PagesServlet extends HttpServlet {
 				return;
 			}
 
-			// retrieve the content from the repository
-			RefModel pages = JGitUtils.getPagesBranch(r);
-			RevCommit commit = JGitUtils.getCommit(r, pages.getObjectId().getName());
+			// identify the tip of the gh-pages branch
+			ObjectId tip = null;
+			Ref ref = r.getRef(org.eclipse.jgit.lib.Constants.R_HEADS + GH_PAGES);
+			if (ref != null) {
+				tip = ref.getObjectId();
+			} else {
+				RefModel pages = JGitUtils.getPagesBranch(r);
+				if (pages != null) {
+					tip = pages.getObjectId();
+				}
+			}
 
-			if (commit == null) {
+			if (tip == null) {
 				// branch not found!
 				String mkd = MessageFormat.format(
 						"# Error\nSorry, the repository {0} does not have a **gh-pages** branch!",
@@ -139,84 +153,78 @@ public class PagesServlet extends HttpServlet {
 				r.close();
 				return;
 			}
-			response.setDateHeader("Last-Modified", JGitUtils.getCommitDate(commit).getTime());
 
-			String [] encodings = GitBlit.getEncodings();
-
-			RevTree tree = commit.getTree();
-			byte[] content = null;
-			if (StringUtils.isEmpty(resource)) {
-				// find resource
-				String[] files = { "index.html", "index.htm", "index.mkd" };
-				for (String file : files) {
-					content = JGitUtils.getStringContent(r, tree, file, encodings)
-							.getBytes(Constants.ENCODING);
-					if (content != null) {
-						resource = file;
-						// assume text/html unless the servlet container
-						// overrides
-						response.setContentType("text/html; charset=" + Constants.ENCODING);
-						break;
-					}
-				}
-			} else {
-				// specific resource
-				try {
-					String contentType = context.getMimeType(resource);
-					if (contentType == null) {
-						contentType = "text/plain";
-					}
-					if (contentType.startsWith("text")) {
-						content = JGitUtils.getStringContent(r, tree, resource, encodings).getBytes(
-								Constants.ENCODING);
-					} else {
-						content = JGitUtils.getByteContent(r, tree, resource);
-					}
-					response.setContentType(contentType);
-				} catch (Exception e) {
+			PagesCache cache = GitBlit.self().getPagesCache();
+			PageResource page = cache.get(repository, tip, resource);
+			if (page == null) {
+				ServletContext context = request.getSession().getServletContext();
+				page = resolve(context, r, tip, resource);
+				if (page == null) {
+					// branch not found!
+					String mkd = MessageFormat.format(
+							"# Error\nSorry, the repository {0} does not have a **gh-pages** branch!",
+							repository);
+					error(response, mkd);
+					r.close();
+					return;
 				}
+				cache.put(repository, tip, resource, page);
 			}
 
-			// no content, try custom 404 page
-			if (ArrayUtils.isEmpty(content)) {
-				String custom404 = JGitUtils.getStringContent(r, tree, "404.html", encodings);
-				if (!StringUtils.isEmpty(custom404)) {
-					content = custom404.getBytes(Constants.ENCODING);
-				}
-
-				// still no content
-				if (ArrayUtils.isEmpty(content)) {
-					String str = MessageFormat.format(
-							"# Error\nSorry, the requested resource **{0}** was not found.",
-							resource);
-					content = MarkdownUtils.transformMarkdown(str).getBytes(Constants.ENCODING);
+			// no content
+			if (!page.isFound()) {
+				if (page.content == null) {
+					// not-found page without content, render it again
+					ServletContext context = request.getSession().getServletContext();
+					page = resolve(context, r, tip, resource);
 				}
-
 				try {
 					// output the content
-					logger.warn("Pages 404: " + resource);
+					logger.warn("Pages 404: " + page.path);
 					response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-					response.getOutputStream().write(content);
+					response.setContentType("text/html; charset=" + Constants.ENCODING);
+					response.getOutputStream().write(page.content);
 					response.flushBuffer();
 				} catch (Throwable t) {
 					logger.error("Failed to write page to client", t);
 				}
+				r.close();
 				return;
 			}
 
-			// check to see if we should transform markdown files
-			for (String ext : GitBlit.getStrings(Keys.web.markdownExtensions)) {
-				if (resource.endsWith(ext)) {
-					String mkd = new String(content, Constants.ENCODING);
-					content = MarkdownUtils.transformMarkdown(mkd).getBytes(Constants.ENCODING);
-					break;
+			if (page.content == null) {
+				// stream binary, large, and uncached resources directly from
+				// the object database
+				try {
+					if (page.etag == null) {
+						HttpUtils.sendBlob(request, response, r, page.blobId, page.contentType,
+								page.lastModified);
+					} else {
+						// text or markdown that did not fit the cache
+						if (!HttpUtils.checkNotModified(request, response, page.etag,
+								page.lastModified)) {
+							byte[] content = render(r, page.path, page.blobId, isMarkdown(page.path));
+							response.setContentType(page.contentType);
+							response.setContentLength(content.length);
+							response.getOutputStream().write(content);
+							response.flushBuffer();
+						}
+					}
+				} catch (Throwable t) {
+					logger.error("Failed to write page to client", t);
 				}
+				r.close();
+				return;
 			}
 
 			try {
 				// output the content
-				response.getOutputStream().write(content);
-				response.flushBuffer();
+				if (!HttpUtils.checkNotModified(request, response, page.etag, page.lastModified)) {
+					response.setContentType(page.contentType);
+					response.setContentLength(page.content.length);
+					response.getOutputStream().write(page.content);
+					response.flushBuffer();
+				}
 			} catch (Throwable t) {
 				logger.error("Failed to write page to client", t);
 			}
@@ -228,6 +236,111 @@ public class PagesServlet extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Resolves the requested resource from the specified gh-pages tip. Text
+	 * resources are decoded and markdown resources are transformed so that
+	 * they may be cached.
+	 * 
+	 * @param context
+	 * @param r
+	 * @param tip
+	 * @param resource
+	 * @return the resolved resource or null if the tip is not a commit
+	 * @throws Exception
+	 */
+	private PageResource resolve(ServletContext context, Repository r, ObjectId tip,
+			String resource) throws Exception {
+		RevCommit commit = JGitUtils.getCommit(r, tip.getName());
+		if (commit == null) {
+			return null;
+		}
+		long lastModified = JGitUtils.getCommitDate(commit).getTime();
+		String [] encodings = GitBlit.getEncodings();
+
+		RevTree tree = commit.getTree();
+		ObjectId blobId = null;
+		String path = resource;
+		String contentType = null;
+		if (StringUtils.isEmpty(resource)) {
+			// find resource
+			String[] files = { "index.html", "index.htm", "index.mkd" };
+			for (String file : files) {
+				blobId = JGitUtils.getBlobId(r, tree, file);
+				if (blobId != null) {
+					path = file;
+					// assume text/html unless the servlet container
+					// overrides
+					contentType = "text/html; charset=" + Constants.ENCODING;
+					break;
+				}
+			}
+		} else {
+			// specific resource
+			blobId = JGitUtils.getBlobId(r, tree, resource);
+			contentType = context.getMimeType(resource);
+			if (contentType == null) {
+				contentType = "text/plain";
+			}
+		}
+
+		// no content, try custom 404 page
+		if (blobId == null) {
+			byte[] content = null;
+			String custom404 = JGitUtils.getStringContent(r, tree, "404.html", encodings);
+			if (!StringUtils.isEmpty(custom404)) {
+				content = custom404.getBytes(Constants.ENCODING);
+			}
+
+			// still no content
+			if (ArrayUtils.isEmpty(content)) {
+				String str = MessageFormat.format(
+						"# Error\nSorry, the requested resource **{0}** was not found.",
+						path);
+				content = MarkdownUtils.transformMarkdown(str).getBytes(Constants.ENCODING);
+			}
+			return new PageResource(path, null, contentType, lastModified, content, null);
+		}
+
+		boolean isMarkdown = isMarkdown(path);
+		if (!isMarkdown && (!contentType.startsWith("text")
+				|| r.open(blobId, org.eclipse.jgit.lib.Constants.OBJ_BLOB).isLarge())) {
+			// binary and large resources are streamed
+			return new PageResource(path, blobId, contentType, lastModified, null, null);
+		}
+
+		byte[] content = render(r, path, blobId, isMarkdown);
+		String etag = HttpUtils.getETag(blobId.getName(), isMarkdown ? "mkd" : "utf8");
+		return new PageResource(path, blobId, contentType, lastModified, content, etag);
+	}
+
+	/**
+	 * Decodes a text resource and optionally transforms markdown.
+	 * 
+	 * @param r
+	 * @param path
+	 * @param blobId
+	 * @param isMarkdown
+	 * @return the UTF-8 content
+	 * @throws Exception
+	 */
+	private byte[] render(Repository r, String path, ObjectId blobId, boolean isMarkdown)
+			throws Exception {
+		String text = JGitUtils.getStringContent(r, blobId.getName(), GitBlit.getEncodings());
+		if (isMarkdown) {
+			text = MarkdownUtils.transformMarkdown(text);
+		}
+		return text.getBytes(Constants.ENCODING);
+	}
+
+	private boolean isMarkdown(String path) {
+		for (String ext : GitBlit.getStrings(Keys.web.markdownExtensions)) {
+			if (path.endsWith(ext)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private void error(HttpServletResponse response, String mkd) throws ServletException,
 			IOException, ParseException {
 		String content = MarkdownUtils.transformMarkdown(mkd);
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import com.gitblit.utils.MetricsRegistry;
+
+/**
+ * The RequestMetricsFilter records the latency of the requests of the servlet
+ * it is mapped to. For git fetch and push requests it also records the pack
+ * bytes transferred and the duration per repository.
+ *
+ * The filter must be mapped before the access restriction filters so that
+ * authentication is included in the recorded latency.
+ *
+ * @author James Moger
+ *
+ */
+public class RequestMetricsFilter implements Filter {
+
+	@Override
+	public void init(FilterConfig config) throws ServletException {
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		HttpServletResponse httpResponse = (HttpServletResponse) response;
+		MetricsRegistry metrics = GitBlit.self().getMetrics();
+		String servlet = trimSlashes(httpRequest.getServletPath());
+		long start = System.nanoTime();
+
+		String operation = null;
+		String pathInfo = httpRequest.getPathInfo();
+		if (Constants.GIT_PATH.equals(httpRequest.getServletPath() + "/") && pathInfo != null) {
+			if (pathInfo.endsWith(GitFilter.gitUploadPack)) {
+				operation = "fetch";
+			} else if (pathInfo.endsWith(GitFilter.gitReceivePack)) {
+				operation = "push";
+			}
+		}
+
+		if (operation == null) {
+			try {
+				chain.doFilter(request, response);
+			} finally {
+				metrics.histogram("gitblit_request_duration_seconds",
+						"Latency of servlet requests", "servlet", servlet).observeSince(start);
+			}
+			return;
+		}
+
+		// count the pack bytes of a git fetch or push
+		CountingRequest countingRequest = new CountingRequest(httpRequest);
+		CountingResponse countingResponse = new CountingResponse(httpResponse);
+		try {
+			chain.doFilter(countingRequest, countingResponse);
+		} finally {
+			metrics.histogram("gitblit_request_duration_seconds", "Latency of servlet requests",
+					"servlet", servlet).observeSince(start);
+			String repository = GitFilter.getRepositoryName(trimSlashes(pathInfo));
+			if (GitBlit.self().hasRepository(repository)) {
+				metrics.histogram("gitblit_git_duration_seconds",
+						"Duration of git fetches and pushes", "repository", repository,
+						"operation", operation).observeSince(start);
+				metrics.counter("gitblit_git_received_bytes_total",
+						"Bytes received by git fetches and pushes", "repository", repository,
+						"operation", operation).inc(countingRequest.count);
+				metrics.counter("gitblit_git_sent_bytes_total",
+						"Bytes sent by git fetches and pushes", "repository", repository,
+						"operation", operation).inc(countingResponse.count);
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+	}
+
+	private static String trimSlashes(String path) {
+		String value = path == null ? "" : path;
+		while (value.startsWith("/")) {
+			value = value.substring(1);
+		}
+		while (value.endsWith("/")) {
+			value = value.substring(0, value.length() - 1);
+		}
+		return value;
+	}
+
+	private static class CountingRequest extends HttpServletRequestWrapper {
+
+		long count;
+
+		ServletInputStream in;
+
+		CountingRequest(HttpServletRequest request) {
+			super(request);
+		}
+
+		@Override
+		public ServletInputStream getInputStream() throws IOException {
+			if (in == null) {
+				final ServletInputStream delegate = super.getInputStream();
+				in = new ServletInputStream() {
+					@Override
+					public int read() throws IOException {
+						int b = delegate.read();
+						if (b > -1) {
+							count++;
+						}
+						return b;
+					}
+
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException {
+						int n = delegate.read(b, off, len);
+						if (n > 0) {
+							count += n;
+						}
+						return n;
+					}
+
+					@Override
+					public void close() throws IOException {
+						delegate.close();
+					}
+				};
+			}
+			return in;
+		}
+	}
+
+	private static class CountingResponse extends HttpServletResponseWrapper {
+
+		long count;
+
+		ServletOutputStream out;
+
+		CountingResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (out == null) {
+				final ServletOutputStream delegate = super.getOutputStream();
+				out = new ServletOutputStream() {
+					@Override
+					public void write(int b) throws IOException {
+						delegate.write(b);
+						count++;
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						delegate.write(b, off, len);
+						count += len;
+					}
+
+					@Override
+					public void flush() throws IOException {
+						delegate.flush();
+					}
+
+					@Override
+					public void close() throws IOException {
+						delegate.close();
+					}
+				};
+			}
+			return out;
+		}
+	}
+}
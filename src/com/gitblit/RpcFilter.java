@@ -138,9 +138,11 @@ public class RpcFilter extends AuthenticationFilter {
 		case GET_PROTOCOL:
 			return true;
 		case LIST_REPOSITORIES:
+		case LIST_REPOSITORIES_PAGE:
+		case LIST_CHANGES:
 			return true;
 		default:
 			return user.canAdmin();
 		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
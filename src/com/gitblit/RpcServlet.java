@@ -19,7 +19,9 @@ import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -30,15 +32,19 @@ import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jgit.lib.Repository;
 
 import com.gitblit.Constants.RpcRequest;
+import com.gitblit.FederationJournal.ObjectType;
+import com.gitblit.models.ListPage;
 import com.gitblit.models.RegistrantAccessPermission;
 import com.gitblit.models.RefModel;
 import com.gitblit.models.RepositoryModel;
 import com.gitblit.models.ServerSettings;
 import com.gitblit.models.TeamModel;
 import com.gitblit.models.UserModel;
+import com.gitblit.utils.ByteFormat;
 import com.gitblit.utils.HttpUtils;
 import com.gitblit.utils.JGitUtils;
 import com.gitblit.utils.RpcUtils;
+import com.gitblit.utils.StringUtils;
 
 /**
  * Handles remote procedure calls.
@@ -50,7 +56,11 @@ public class RpcServlet extends JsonServlet {
 
 	private static final long serialVersionUID = 1L;
 
-	public static final int PROTOCOL_VERSION = 5;
+	public static final int PROTOCOL_VERSION = 6;
+
+	public static final int DEFAULT_PAGE_SIZE = 100;
+
+	public static final int MAX_PAGE_SIZE = 1000;
 
 	public RpcServlet() {
 		super();
@@ -148,6 +158,104 @@ public class RpcServlet extends JsonServlet {
 				teams.add(GitBlit.self().getTeamModel(name));
 			}
 			result = teams;
+		} else if (RpcRequest.LIST_REPOSITORIES_PAGE.equals(reqType)) {
+			// list a page of repositories
+			String cloneUrl = HttpUtils.getGitblitURL(request) + Constants.GIT_PATH;
+			ListPage page = new ListPage();
+			page.repositories = new LinkedHashMap<String, RepositoryModel>();
+			int size = getPageSize(request);
+			List<RepositoryModel> models = getRepositoryPage(request, user, size + 1, false);
+			if (models.size() > size) {
+				models = models.subList(0, size);
+				page.cursor = models.get(size - 1).name;
+			}
+			for (RepositoryModel model : models) {
+				page.repositories.put(cloneUrl + model.name, model);
+			}
+			result = page;
+		} else if (RpcRequest.LIST_BRANCHES_PAGE.equals(reqType)) {
+			// list a page of the local branches of the accessible repositories
+			ListPage page = new ListPage();
+			page.branches = new LinkedHashMap<String, List<String>>();
+			int size = getPageSize(request);
+			List<RepositoryModel> models = getRepositoryPage(request, user, size + 1, true);
+			if (models.size() > size) {
+				models = models.subList(0, size);
+				page.cursor = models.get(size - 1).name;
+			}
+			for (RepositoryModel model : models) {
+				List<String> branches = new ArrayList<String>();
+				// read the refs, the cached models are not refreshed by pushes
+				Repository repository = GitBlit.self().getRepository(model.name);
+				if (repository != null) {
+					for (RefModel ref : JGitUtils.getLocalBranches(repository, false, -1)) {
+						branches.add(ref.getName());
+					}
+					if (model.showRemoteBranches) {
+						for (RefModel ref : JGitUtils.getRemoteBranches(repository, false, -1)) {
+							branches.add(ref.getName());
+						}
+					}
+					repository.close();
+				}
+				if (branches.size() > 0) {
+					page.branches.put(model.name, branches);
+				}
+			}
+			result = page;
+		} else if (RpcRequest.LIST_USERS_PAGE.equals(reqType)) {
+			// list a page of users
+			ListPage page = new ListPage();
+			page.users = new ArrayList<UserModel>();
+			int size = getPageSize(request);
+			List<String> names = getPageNames(request, GitBlit.self().getAllUsernames(), false);
+			if (names.size() > size) {
+				names = names.subList(0, size);
+				page.cursor = names.get(size - 1);
+			}
+			for (String name : names) {
+				UserModel model = GitBlit.self().getUserModel(name);
+				if (model != null) {
+					page.users.add(model);
+				}
+			}
+			result = page;
+		} else if (RpcRequest.LIST_TEAMS_PAGE.equals(reqType)) {
+			// list a page of teams
+			ListPage page = new ListPage();
+			page.teams = new ArrayList<TeamModel>();
+			int size = getPageSize(request);
+			List<String> names = getPageNames(request, GitBlit.self().getAllTeamnames(), false);
+			if (names.size() > size) {
+				names = names.subList(0, size);
+				page.cursor = names.get(size - 1);
+			}
+			for (String name : names) {
+				TeamModel model = GitBlit.self().getTeamModel(name);
+				if (model != null) {
+					page.teams.add(model);
+				}
+			}
+			result = page;
+		} else if (RpcRequest.LIST_CHANGES.equals(reqType)) {
+			// list the repositories, users, or teams changed since a version
+			ObjectType type = ObjectType.REPOSITORY;
+			if (!StringUtils.isEmpty(objectName)) {
+				try {
+					type = ObjectType.valueOf(objectName.toUpperCase());
+				} catch (IllegalArgumentException e) {
+					type = null;
+				}
+			}
+			if (type == null) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			} else if (type != ObjectType.REPOSITORY && !allowManagement) {
+				// users and teams may only be listed by administrators
+				response.sendError(notAllowedCode);
+			} else {
+				result = GitBlit.self().getChanges(user, HttpUtils.getGitblitURL(request), type,
+						request.getParameter("since"));
+			}
 		} else if (RpcRequest.CREATE_REPOSITORY.equals(reqType)) {
 			// create repository
 			RepositoryModel model = deserialize(request, response, RepositoryModel.class);
@@ -343,6 +451,112 @@ public class RpcServlet extends JsonServlet {
 		}
 
 		// send the result of the request
-		serialize(response, result);
+		serialize(request, response, result);
+	}
+
+	/**
+	 * Returns the page size of a paged list request.
+	 * 
+	 * @param request
+	 * @return the page size
+	 */
+	private int getPageSize(HttpServletRequest request) {
+		String value = request.getParameter("size");
+		if (StringUtils.isEmpty(value)) {
+			return DEFAULT_PAGE_SIZE;
+		}
+		try {
+			return Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(value)));
+		} catch (NumberFormatException e) {
+			return DEFAULT_PAGE_SIZE;
+		}
+	}
+
+	/**
+	 * Returns the names which match the <i>prefix</i> parameter, and
+	 * optionally the <i>project</i> parameter, and which sort after the
+	 * <i>cursor</i> parameter. The names are sorted case-insensitively.
+	 * 
+	 * @param request
+	 * @param names
+	 * @param filterProject
+	 * @return the candidate names of the page
+	 */
+	private List<String> getPageNames(HttpServletRequest request, List<String> names,
+			boolean filterProject) {
+		String prefix = request.getParameter("prefix");
+		String cursor = request.getParameter("cursor");
+		String project = filterProject ? request.getParameter("project") : null;
+		if (project != null) {
+			if (project.equalsIgnoreCase(GitBlit.getString(Keys.web.repositoryRootGroupName, "main"))) {
+				project = "";
+			} else if (project.endsWith("/")) {
+				project = project.substring(0, project.length() - 1);
+			}
+		}
+		List<String> list = new ArrayList<String>();
+		for (String name : names) {
+			if (!StringUtils.isEmpty(prefix) && !name.toLowerCase().startsWith(prefix.toLowerCase())) {
+				continue;
+			}
+			if (!StringUtils.isEmpty(cursor) && String.CASE_INSENSITIVE_ORDER.compare(name, cursor) <= 0) {
+				continue;
+			}
+			if (project != null && !StringUtils.getRootPath(name).equalsIgnoreCase(project)) {
+				continue;
+			}
+			list.add(name);
+		}
+		Collections.sort(list, String.CASE_INSENSITIVE_ORDER);
+		return list;
+	}
+
+	/**
+	 * Returns the cached models of the accessible repositories which match the
+	 * paged list parameters. The <i>since</i> parameter, in milliseconds since
+	 * the epoch, excludes repositories which have not changed since then.
+	 * Only the models of the requested page are loaded.
+	 * 
+	 * @param request
+	 * @param user
+	 * @param limit
+	 *            the maximum number of models to return
+	 * @param branchesOnly
+	 *            if true, empty and garbage collecting repositories are skipped
+	 * @return the repository models
+	 */
+	private List<RepositoryModel> getRepositoryPage(HttpServletRequest request, UserModel user,
+			int limit, boolean branchesOnly) {
+		long since = 0;
+		try {
+			String value = request.getParameter("since");
+			since = StringUtils.isEmpty(value) ? 0 : Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			logger.warn(MessageFormat.format("Ignoring invalid since parameter from {0}",
+					request.getRemoteAddr()));
+		}
+		boolean calculateSizes = GitBlit.getBoolean(Keys.web.showRepositorySizes, true);
+		ByteFormat byteFormat = new ByteFormat();
+		List<RepositoryModel> models = new ArrayList<RepositoryModel>();
+		for (String name : getPageNames(request, GitBlit.self().getRepositoryList(), true)) {
+			if (models.size() == limit) {
+				break;
+			}
+			RepositoryModel model = GitBlit.self().getRepositoryModel(user, name);
+			if (model == null) {
+				continue;
+			}
+			if (since > 0 && (model.lastChange == null || model.lastChange.getTime() <= since)) {
+				continue;
+			}
+			if (branchesOnly && (!model.hasCommits || model.isCollectingGarbage)) {
+				continue;
+			}
+			if (calculateSizes && !model.skipSizeCalculation) {
+				model.size = byteFormat.format(GitBlit.self().calculateSize(model));
+			}
+			models.add(model);
+		}
+		return models;
 	}
 }
@@ -205,6 +205,14 @@ public class SyndicationServlet extends HttpServlet {
 		String gitblitUrl = HttpUtils.getGitblitURL(request);
 		char fsc = GitBlit.getChar(Keys.web.forwardSlashCharacter, '/');
 
+		if (StringUtils.isEmpty(searchString)) {
+			// a log feed only changes when the tips of its repositories change
+			String etag = getETag(repositories, objectId, request.getQueryString());
+			if (HttpUtils.checkNotModified(request, response, etag, 0)) {
+				return;
+			}
+		}
+
 		List<FeedEntryModel> entries = new ArrayList<FeedEntryModel>();
 
 		for (String name : repositories) {
@@ -308,6 +316,38 @@ public class SyndicationServlet extends HttpServlet {
 		}
 	}
 
+	/**
+	 * Returns the entity tag of a log feed which is derived from the resolved
+	 * tips of the feed's repositories.
+	 * 
+	 * @param repositories
+	 * @param objectId
+	 *            the feed's object id, HEAD if empty
+	 * @param queryString
+	 * @return the entity tag or null if a repository is not available
+	 */
+	private String getETag(List<String> repositories, String objectId, String queryString) {
+		String revision = StringUtils.isEmpty(objectId) ? org.eclipse.jgit.lib.Constants.HEAD
+				: objectId;
+		StringBuilder sb = new StringBuilder();
+		sb.append(queryString);
+		for (String name : repositories) {
+			Repository repository = GitBlit.self().getRepository(name);
+			if (repository == null) {
+				return null;
+			}
+			try {
+				ObjectId tip = repository.resolve(revision);
+				sb.append(':').append(name).append('=').append(tip == null ? "" : tip.getName());
+			} catch (Exception e) {
+				return null;
+			} finally {
+				repository.close();
+			}
+		}
+		return HttpUtils.getETag(StringUtils.getSHA1(sb.toString()));
+	}
+
 	@Override
 	protected void doPost(javax.servlet.http.HttpServletRequest request,
 			javax.servlet.http.HttpServletResponse response) throws javax.servlet.ServletException,
@@ -98,6 +98,7 @@ public class WebXmlSettings extends IStoredSettings {
 
 			// override current runtime settings
 			properties.putAll(settings);
+			refresh();
 			return true;
 		} catch (Throwable t) {
 			logger.error("Failed to save settings!", t);
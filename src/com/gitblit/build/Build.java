@@ -66,6 +66,10 @@ public class Build {
 	private static DownloadListener downloadListener;
 
 	public static void main(String... args) {
+		if (args.length > 0 && "benchmarks".equals(args[0])) {
+			benchmarks();
+			return;
+		}
 		runtime();
 		compiletime();
 		buildSettingKeys();
@@ -151,6 +155,17 @@ public class Build {
 		downloadFromApache(MavenObject.COMMONSNET, BuildType.RUNTIME);
 	}
 	
+	/**
+	 * Downloads the JMH harness for the benchmarks. These jars are not part of
+	 * any distribution.
+	 */
+	public static void benchmarks() {
+		downloadFromApache(MavenObject.JOPT_SIMPLE, BuildType.RUNTIME);
+		downloadFromApache(MavenObject.COMMONS_MATH3, BuildType.RUNTIME);
+		downloadFromApache(MavenObject.JMH_CORE, BuildType.RUNTIME);
+		downloadFromApache(MavenObject.JMH_GENERATOR, BuildType.RUNTIME);
+	}
+
 	private static void delete(String... files) {
 		for (String name : files) {
 			File file = new File("ext", name);
@@ -779,6 +794,30 @@ public class Build {
                 127000, 0, 0,
                 "323a672aeacb5f5f4461be3b7f7d9d3e4bda80d4",
 				null, "");
+
+		public static final MavenObject JMH_CORE = new MavenObject(
+                "JMH Core", "org/openjdk/jmh", "jmh-core", "1.21",
+                513000, 0, 0,
+                "442447101f63074c61063858033fbfde8a076873",
+				null, "");
+
+		public static final MavenObject JMH_GENERATOR = new MavenObject(
+                "JMH Generators", "org/openjdk/jmh", "jmh-generator-annprocess", "1.21",
+                31000, 0, 0,
+                "7aac374614a8a76cad16b91f1a4419d31a7dcda3",
+				null, "");
+
+		public static final MavenObject JOPT_SIMPLE = new MavenObject(
+                "JOpt Simple", "net/sf/jopt-simple", "jopt-simple", "4.6",
+                62000, 0, 0,
+                "306816fb57cf94f108a43c95731b08934dcae15c",
+				null, "");
+
+		public static final MavenObject COMMONS_MATH3 = new MavenObject(
+                "commons-math3", "org/apache/commons", "commons-math3", "3.2",
+                1690000, 0, 0,
+                "ec2544ab27e110d2d431bdad7d538ed509b21e62",
+				null, "");
 		
 		public final String name;
 		public final String group;
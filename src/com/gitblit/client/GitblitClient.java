@@ -21,11 +21,18 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.gitblit.Constants;
 import com.gitblit.Constants.AccessPermission;
@@ -38,6 +45,7 @@ import com.gitblit.GitBlitException.NotAllowedException;
 import com.gitblit.GitBlitException.UnauthorizedException;
 import com.gitblit.GitBlitException.UnknownRequestException;
 import com.gitblit.Keys;
+import com.gitblit.models.FederationChanges;
 import com.gitblit.models.FederationModel;
 import com.gitblit.models.FeedEntryModel;
 import com.gitblit.models.FeedModel;
@@ -65,6 +73,13 @@ public class GitblitClient implements Serializable {
 
 	private static final Date NEVER = new Date(0);
 
+	/**
+	 * The first rpc protocol version which supports LIST_CHANGES.
+	 */
+	private static final int CHANGES_PROTOCOL = 6;
+
+	private static final int MAX_FEED_THREADS = 4;
+
 	protected final GitblitRegistration reg;
 
 	public final String url;
@@ -97,6 +112,15 @@ public class GitblitClient implements Serializable {
 
 	private ServerStatus status;
 
+	private volatile String repositoriesVersion;
+
+	private volatile String usersVersion;
+
+	private volatile String teamsVersion;
+
+	// previously read subscribed feeds keyed by repository, branch, and page
+	private final Map<String, SyndicationUtils.Feed> feedCache;
+
 	public GitblitClient(GitblitRegistration reg) {
 		this.reg = reg;
 		this.url = reg.url;
@@ -110,6 +134,7 @@ public class GitblitClient implements Serializable {
 		this.availableFeeds = new ArrayList<FeedModel>();
 		this.syndicatedEntries = new ArrayList<FeedEntryModel>();
 		this.subscribedRepositories = new HashSet<String>();
+		this.feedCache = new ConcurrentHashMap<String, SyndicationUtils.Feed>();
 	}
 
 	public void login() throws IOException {
@@ -327,29 +352,111 @@ public class GitblitClient implements Serializable {
 		return settings.get(key).description;
 	}
 
+	/**
+	 * Refreshes the repositories. If the server supports it, only the
+	 * repositories which have changed since the previous refresh are
+	 * retrieved.
+	 * 
+	 * @return the repositories
+	 * @throws IOException
+	 */
 	public List<RepositoryModel> refreshRepositories() throws IOException {
-		Map<String, RepositoryModel> repositories = RpcUtils
-				.getRepositories(url, account, password);
-		allRepositories.clear();
-		allRepositories.addAll(repositories.values());
+		if (protocolVersion < CHANGES_PROTOCOL) {
+			Map<String, RepositoryModel> repositories = RpcUtils.getRepositories(url, account,
+					password);
+			allRepositories.clear();
+			allRepositories.addAll(repositories.values());
+		} else {
+			FederationChanges changes = RpcUtils.getChanges(url, "repository",
+					repositoriesVersion, account, password);
+			Set<String> names = new HashSet<String>();
+			for (String name : changes.deletedRepositories) {
+				names.add(name.toLowerCase());
+			}
+			for (RepositoryModel model : changes.repositories.values()) {
+				names.add(model.name.toLowerCase());
+			}
+			Iterator<RepositoryModel> iterator = allRepositories.iterator();
+			while (iterator.hasNext()) {
+				if (changes.full || names.contains(iterator.next().name.toLowerCase())) {
+					iterator.remove();
+				}
+			}
+			allRepositories.addAll(changes.repositories.values());
+			repositoriesVersion = changes.version;
+		}
 		Collections.sort(allRepositories);
 		markSubscribedFeeds();
 		return allRepositories;
 	}
 
+	/**
+	 * Refreshes the users. If the server supports it, only the users which
+	 * have changed since the previous refresh are retrieved.
+	 * 
+	 * @return the users
+	 * @throws IOException
+	 */
 	public List<UserModel> refreshUsers() throws IOException {
-		List<UserModel> users = RpcUtils.getUsers(url, account, password);
-		allUsers.clear();
-		allUsers.addAll(users);
-		Collections.sort(users);
+		if (protocolVersion < CHANGES_PROTOCOL) {
+			List<UserModel> users = RpcUtils.getUsers(url, account, password);
+			allUsers.clear();
+			allUsers.addAll(users);
+		} else {
+			FederationChanges changes = RpcUtils.getChanges(url, "user", usersVersion, account,
+					password);
+			Set<String> names = new HashSet<String>();
+			for (String name : changes.deletedUsers) {
+				names.add(name.toLowerCase());
+			}
+			for (UserModel model : changes.users) {
+				names.add(model.username.toLowerCase());
+			}
+			Iterator<UserModel> iterator = allUsers.iterator();
+			while (iterator.hasNext()) {
+				if (changes.full || names.contains(iterator.next().username.toLowerCase())) {
+					iterator.remove();
+				}
+			}
+			allUsers.addAll(changes.users);
+			usersVersion = changes.version;
+		}
+		Collections.sort(allUsers);
 		return allUsers;
 	}
 
+	/**
+	 * Refreshes the teams. If the server supports it, only the teams which
+	 * have changed since the previous refresh are retrieved.
+	 * 
+	 * @return the teams
+	 * @throws IOException
+	 */
 	public List<TeamModel> refreshTeams() throws IOException {
-		List<TeamModel> teams = RpcUtils.getTeams(url, account, password);
-		allTeams.clear();
-		allTeams.addAll(teams);
-		Collections.sort(teams);
+		if (protocolVersion < CHANGES_PROTOCOL) {
+			List<TeamModel> teams = RpcUtils.getTeams(url, account, password);
+			allTeams.clear();
+			allTeams.addAll(teams);
+		} else {
+			FederationChanges changes = RpcUtils.getChanges(url, "team", teamsVersion, account,
+					password);
+			Set<String> names = new HashSet<String>();
+			for (String name : changes.deletedTeams) {
+				names.add(name.toLowerCase());
+			}
+			for (TeamModel model : changes.teams) {
+				names.add(model.name.toLowerCase());
+			}
+			Iterator<TeamModel> iterator = allTeams.iterator();
+			while (iterator.hasNext()) {
+				if (changes.full || names.contains(iterator.next().name.toLowerCase())) {
+					iterator.remove();
+				}
+			}
+			allTeams.addAll(changes.teams);
+			teamsVersion = changes.version;
+		}
+		Collections.sort(allTeams);
 		return allTeams;
 	}
 
@@ -402,15 +509,49 @@ public class GitblitClient implements Serializable {
 		return availableFeeds;
 	}
 
-	public List<FeedEntryModel> refreshSubscribedFeeds(int page) throws IOException {
+	/**
+	 * Refreshes the subscribed feeds. The feeds are read concurrently and a
+	 * feed which has not changed since it was previously read is not
+	 * transferred again.
+	 * 
+	 * @param page
+	 * @return the entries of the subscribed feeds
+	 * @throws IOException
+	 */
+	public List<FeedEntryModel> refreshSubscribedFeeds(final int page) throws IOException {
 		Set<FeedEntryModel> allEntries = new HashSet<FeedEntryModel>();
 		if (reg.feeds.size() > 0) {
-			for (FeedModel feed : reg.feeds) {
-				feed.lastRefreshDate = feed.currentRefreshDate;
-				feed.currentRefreshDate = new Date();
-				List<FeedEntryModel> entries = SyndicationUtils.readFeed(url, feed.repository,
-						feed.branch, -1, page, account, password);
-				allEntries.addAll(entries);
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_FEED_THREADS,
+					reg.feeds.size()));
+			try {
+				List<Future<SyndicationUtils.Feed>> results = new ArrayList<Future<SyndicationUtils.Feed>>();
+				for (final FeedModel feed : reg.feeds) {
+					feed.lastRefreshDate = feed.currentRefreshDate;
+					feed.currentRefreshDate = new Date();
+					final String key = feed.repository + ":" + feed.branch + ":" + page;
+					results.add(executor.submit(new Callable<SyndicationUtils.Feed>() {
+						@Override
+						public SyndicationUtils.Feed call() throws IOException {
+							SyndicationUtils.Feed result = SyndicationUtils.readFeed(url,
+									feed.repository, feed.branch, -1, page, feedCache.get(key),
+									account, password);
+							feedCache.put(key, result);
+							return result;
+						}
+					}));
+				}
+				for (Future<SyndicationUtils.Feed> result : results) {
+					allEntries.addAll(result.get().entries);
+				}
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			} finally {
+				executor.shutdownNow();
 			}
 		}
 		reg.cacheFeeds();
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.models;
+
+import java.io.Serializable;
+
+/**
+ * CacheStats is a serializable snapshot of the statistics of a cache.
+ *
+ * @author James Moger
+ *
+ */
+public class CacheStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public final String name;
+
+	public long size;
+
+	public long weight;
+
+	public long hits;
+
+	public long misses;
+
+	public long loads;
+
+	public long evictions;
+
+	public long expirations;
+
+	public CacheStats(String name) {
+		this.name = name;
+	}
+
+	public double getHitRatio() {
+		long requests = hits + misses;
+		if (requests == 0) {
+			return 0;
+		}
+		return ((double) hits) / requests;
+	}
+
+	@Override
+	public String toString() {
+		return name + ": size=" + size + ", weight=" + weight + ", hits=" + hits + ", misses="
+				+ misses + ", loads=" + loads + ", evictions=" + evictions + ", expirations="
+				+ expirations;
+	}
+}
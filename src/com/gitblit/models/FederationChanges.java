@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.models;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FederationChanges is the response to a federation changes request and to
+ * an rpc LIST_CHANGES request. It contains the repositories, users, and teams
+ * which have changed or have been deleted since the version acknowledged by
+ * the pulling Gitblit instance or rpc client.
+ *
+ * If the requested version is unknown to the origin Gitblit instance, e.g. the
+ * origin has restarted since the version was issued, the response is a full
+ * snapshot and <i>full</i> is true.
+ *
+ * @author James Moger
+ *
+ */
+public class FederationChanges implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The version of the origin at the time of this response. The version is
+	 * passed as the <i>since</i> parameter of the next changes request.
+	 */
+	public String version;
+
+	public boolean full;
+
+	/**
+	 * Changed repositories keyed by clone url.
+	 */
+	public Map<String, RepositoryModel> repositories;
+
+	public List<String> deletedRepositories = new ArrayList<String>();
+
+	/**
+	 * Changed users, null if the token does not permit pulling users.
+	 */
+	public List<UserModel> users;
+
+	public List<String> deletedUsers = new ArrayList<String>();
+
+	/**
+	 * Changed teams, null if the token does not permit pulling teams.
+	 */
+	public List<TeamModel> teams;
+
+	public List<String> deletedTeams = new ArrayList<String>();
+}
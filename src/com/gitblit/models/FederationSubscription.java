@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.models;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Represents the subscription of a pulling Gitblit instance to the push
+ * notifications of an origin Gitblit instance.
+ *
+ * @author James Moger
+ *
+ */
+public class FederationSubscription implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The url of the pulling Gitblit instance.
+	 */
+	public String url;
+
+	/**
+	 * The name of the registration at the pulling Gitblit instance.
+	 */
+	public String name;
+
+	/**
+	 * The key which the origin must send with each notification.
+	 */
+	public String key;
+
+	/**
+	 * The federation token of the pulling Gitblit instance. This is set by
+	 * the origin and is not serialized.
+	 */
+	public transient String token;
+
+	public Date subscribed;
+
+	public FederationSubscription() {
+	}
+
+	/**
+	 * The constructor for a federation subscription.
+	 *
+	 * @param url
+	 *            the url of the pulling Gitblit instance
+	 * @param name
+	 *            the name of the registration at the pulling Gitblit instance
+	 * @param key
+	 *            the notification key
+	 */
+	public FederationSubscription(String url, String name, String key) {
+		this.url = url;
+		this.name = name;
+		this.key = key;
+		this.subscribed = new Date();
+	}
+
+	@Override
+	public String toString() {
+		return "Federation Subscription (" + name + " @ " + url + ")";
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.models;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ListPage is the response to a paged list rpc request. Only the list of the
+ * requested type is set.
+ *
+ * Pages are ordered by name. The cursor of a page is passed as the
+ * <i>cursor</i> parameter of the request for the next page.
+ *
+ * @author James Moger
+ *
+ */
+public class ListPage implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The cursor of the next page, null if this is the last page.
+	 */
+	public String cursor;
+
+	/**
+	 * Repositories keyed by clone url.
+	 */
+	public Map<String, RepositoryModel> repositories;
+
+	/**
+	 * Local branches keyed by repository name.
+	 */
+	public Map<String, List<String>> branches;
+
+	public List<UserModel> users;
+
+	public List<TeamModel> teams;
+}
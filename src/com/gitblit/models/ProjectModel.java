@@ -18,8 +18,8 @@ package com.gitblit.models;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 import com.gitblit.utils.StringUtils;
 
@@ -37,7 +37,8 @@ public class ProjectModel implements Serializable, Comparable<ProjectModel> {
 	public final String name;
 	public String title;
 	public String description;
-	public final Set<String> repositories = new HashSet<String>();
+	// repository names are compared case-insensitively but keep their case
+	public final Set<String> repositories = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
 	
 	public Date lastChange;
 	public final boolean isRoot;
@@ -59,15 +60,15 @@ public class ProjectModel implements Serializable, Comparable<ProjectModel> {
 	}
 
 	public boolean hasRepository(String name) {
-		return repositories.contains(name.toLowerCase());
+		return repositories.contains(name);
 	}
 
 	public void addRepository(String name) {
-		repositories.add(name.toLowerCase());
+		repositories.add(name);
 	}
 
 	public void addRepository(RepositoryModel model) {
-		repositories.add(model.name.toLowerCase());
+		repositories.add(model.name);
 		if (lastChange.before(model.lastChange)) {
 			lastChange = model.lastChange;
 		}
@@ -75,12 +76,12 @@ public class ProjectModel implements Serializable, Comparable<ProjectModel> {
 
 	public void addRepositories(Collection<String> names) {
 		for (String name:names) {
-			repositories.add(name.toLowerCase());
+			repositories.add(name);
 		}
 	}	
 
 	public void removeRepository(String name) {
-		repositories.remove(name.toLowerCase());
+		repositories.remove(name);
 	}
 	
 	public String getDisplayName() {
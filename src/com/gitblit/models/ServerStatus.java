@@ -51,6 +51,12 @@ public class ServerStatus implements Serializable {
 
 	public String servletContainer;
 
+	/**
+	 * Snapshot of the server performance metrics keyed by metric name and
+	 * labels.
+	 */
+	public volatile Map<String, Double> metrics;
+
 	public ServerStatus(boolean isGO) {
 		this.bootDate = new Date();
 		this.version = Constants.VERSION;
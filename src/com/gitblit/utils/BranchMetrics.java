@@ -0,0 +1,299 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.utils;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import com.gitblit.models.Metric;
+
+/**
+ * Compact aggregates of the history of a branch from which date, day-of-week,
+ * author, and tag metrics are derived.
+ *
+ * Commits are counted in 15 minute buckets of commit time so that date
+ * metrics may be rendered for any timezone and date format without walking
+ * the history again. The aggregates remember the tip they were computed from
+ * and are extended by walking only the new commits when the branch
+ * fast-forwards. A rewritten branch is walked in full.
+ *
+ * @author James Moger
+ *
+ */
+public class BranchMetrics {
+
+	private static final int BUCKET_SECONDS = 15 * 60;
+
+	private final Map<Integer, Integer> buckets = new HashMap<Integer, Integer>();
+
+	private final Map<String, Integer> authorsByEmail = new HashMap<String, Integer>();
+
+	private final Map<String, Integer> authorsByName = new HashMap<String, Integer>();
+
+	private final Map<ObjectId, Integer> taggedCommits = new HashMap<ObjectId, Integer>();
+
+	private final Set<ObjectId> tagTargets = new HashSet<ObjectId>();
+
+	private ObjectId tip;
+
+	private int tipTime;
+
+	private int firstTime;
+
+	private int commitCount;
+
+	/**
+	 * Updates the aggregates to the specified tip of the branch.
+	 *
+	 * @param repository
+	 * @param branchObject
+	 *            the current tip of the branch
+	 * @param tagTargets
+	 *            the ids of the objects referenced by tags
+	 * @throws IOException
+	 */
+	public synchronized void update(Repository repository, ObjectId branchObject,
+			Set<ObjectId> tagTargets) throws IOException {
+		RevWalk rw = new RevWalk(repository);
+		try {
+			RevCommit head = rw.parseCommit(branchObject);
+			ObjectId previous = null;
+			if (tip != null && !tip.equals(head)) {
+				try {
+					RevCommit last = rw.parseCommit(tip);
+					if (rw.isMergedInto(last, head)) {
+						previous = last;
+					}
+				} catch (MissingObjectException e) {
+					// previous tip was pruned
+				}
+				rw.reset();
+				if (previous == null) {
+					// branch was rewritten
+					clear();
+				}
+			}
+
+			boolean fullWalk = tip == null;
+			if (tip == null || !tip.equals(head)) {
+				// walk the full history or only the new commits
+				rw.markStart(head);
+				if (previous != null) {
+					rw.markUninteresting(rw.parseCommit(previous));
+				}
+				if (tip == null) {
+					firstTime = head.getCommitTime();
+				}
+				for (RevCommit rev : rw) {
+					add(rev, tagTargets);
+				}
+				tip = head.copy();
+				tipTime = head.getCommitTime();
+			}
+
+			// account for tags deleted from walked commits
+			Iterator<ObjectId> itr = taggedCommits.keySet().iterator();
+			while (itr.hasNext()) {
+				if (!tagTargets.contains(itr.next())) {
+					itr.remove();
+				}
+			}
+			if (!fullWalk) {
+				// account for new tags on previously walked commits
+				for (ObjectId id : tagTargets) {
+					if (this.tagTargets.contains(id) || taggedCommits.containsKey(id)) {
+						continue;
+					}
+					try {
+						rw.reset();
+						RevCommit tagged = rw.parseCommit(id);
+						if (rw.isMergedInto(tagged, head)) {
+							taggedCommits.put(tagged.copy(), bucket(tagged));
+						}
+					} catch (IOException e) {
+						// tag does not reference a commit
+					}
+				}
+			}
+			this.tagTargets.clear();
+			this.tagTargets.addAll(tagTargets);
+		} finally {
+			rw.dispose();
+		}
+	}
+
+	private void clear() {
+		buckets.clear();
+		authorsByEmail.clear();
+		authorsByName.clear();
+		taggedCommits.clear();
+		tagTargets.clear();
+		tip = null;
+		commitCount = 0;
+	}
+
+	private void add(RevCommit rev, Set<ObjectId> tagTargets) {
+		int bucket = bucket(rev);
+		Integer count = buckets.get(bucket);
+		buckets.put(bucket, count == null ? 1 : count + 1);
+		commitCount++;
+		if (rev.getCommitTime() < firstTime) {
+			firstTime = rev.getCommitTime();
+		}
+		if (tagTargets.contains(rev)) {
+			taggedCommits.put(rev.copy(), bucket);
+		}
+
+		String email = rev.getAuthorIdent().getEmailAddress().toLowerCase();
+		String name = rev.getAuthorIdent().getName().toLowerCase();
+		increment(authorsByEmail, StringUtils.isEmpty(email) ? name : email);
+		increment(authorsByName, StringUtils.isEmpty(name) ? email : name);
+	}
+
+	private static int bucket(RevCommit rev) {
+		return rev.getCommitTime() / BUCKET_SECONDS;
+	}
+
+	private static void increment(Map<String, Integer> map, String key) {
+		Integer count = map.get(key);
+		map.put(key, count == null ? 1 : count + 1);
+	}
+
+	/**
+	 * Returns the tip of the branch for these metrics.
+	 *
+	 * @return the tip or null if the metrics have not been computed
+	 */
+	public synchronized ObjectId getTip() {
+		return tip;
+	}
+
+	/**
+	 * Returns the list of date metrics. If includeTotal is true, the total of
+	 * all the metrics will be included as the first element in the returned
+	 * list.
+	 *
+	 * If the dateformat is unspecified an appropriate date format is
+	 * determined by the time difference between the first commit on the
+	 * branch and the most recent commit.
+	 *
+	 * @param includeTotal
+	 * @param dateFormat
+	 * @param timezone
+	 * @return list of metrics
+	 */
+	public synchronized List<Metric> getDateMetrics(boolean includeTotal, String dateFormat,
+			TimeZone timezone) {
+		Metric total = new Metric("TOTAL");
+		DateFormat df;
+		if (StringUtils.isEmpty(dateFormat)) {
+			// dynamically determine date format
+			int diffDays = (tipTime - firstTime) / (60 * 60 * 24);
+			total.duration = diffDays;
+			if (diffDays <= 365) {
+				// Days
+				df = new SimpleDateFormat("yyyy-MM-dd");
+			} else {
+				// Months
+				df = new SimpleDateFormat("yyyy-MM");
+			}
+		} else {
+			// use specified date format
+			df = new SimpleDateFormat(dateFormat);
+		}
+		df.setTimeZone(timezone);
+
+		Map<String, Metric> metricMap = new HashMap<String, Metric>();
+		for (Map.Entry<Integer, Integer> entry : buckets.entrySet()) {
+			String p = format(df, entry.getKey());
+			Metric m = metricMap.get(p);
+			if (m == null) {
+				m = new Metric(p);
+				metricMap.put(p, m);
+			}
+			m.count += entry.getValue();
+			total.count += entry.getValue();
+		}
+		for (Integer bucket : taggedCommits.values()) {
+			Metric m = metricMap.get(format(df, bucket));
+			if (m != null) {
+				m.tag++;
+				total.tag++;
+			}
+		}
+
+		List<String> keys = new ArrayList<String>(metricMap.keySet());
+		Collections.sort(keys);
+		List<Metric> metrics = new ArrayList<Metric>();
+		for (String key : keys) {
+			metrics.add(metricMap.get(key));
+		}
+		if (includeTotal) {
+			metrics.add(0, total);
+		}
+		return metrics;
+	}
+
+	private String format(DateFormat df, int bucket) {
+		return df.format(new Date(bucket * (long) BUCKET_SECONDS * 1000L));
+	}
+
+	/**
+	 * Returns a list of author metrics sorted by author.
+	 *
+	 * @param byEmailAddress
+	 *            group metrics by author email address otherwise by author name
+	 * @return list of metrics
+	 */
+	public synchronized List<Metric> getAuthorMetrics(boolean byEmailAddress) {
+		Map<String, Integer> map = byEmailAddress ? authorsByEmail : authorsByName;
+		List<String> keys = new ArrayList<String>(map.keySet());
+		Collections.sort(keys);
+		List<Metric> metrics = new ArrayList<Metric>();
+		for (String key : keys) {
+			Metric m = new Metric(key);
+			m.count = map.get(key);
+			metrics.add(m);
+		}
+		return metrics;
+	}
+
+	/**
+	 * Returns the number of commits on the branch.
+	 *
+	 * @return the number of commits
+	 */
+	public synchronized int getCommitCount() {
+		return commitCount;
+	}
+}
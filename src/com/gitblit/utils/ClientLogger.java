@@ -27,6 +27,9 @@ import org.slf4j.LoggerFactory;
  * Class to log messages to the pushing Git client. Intended to be used by the
  * Groovy Hooks.
  * 
+ * Hooks which run after the push has completed have no client to log to and
+ * their messages are logged by Gitblit instead.
+ * 
  * @author John Crygier
  * 
  */
@@ -45,6 +48,10 @@ public class ClientLogger {
 	 * @param message
 	 */
 	public void info(String message) {
+		if (rp == null) {
+			logger.info(message);
+			return;
+		}
 		rp.sendMessage(message);
 	}
 
@@ -54,6 +61,10 @@ public class ClientLogger {
 	 * @param message
 	 */
 	public void error(String message) {
+		if (rp == null) {
+			logger.error(message);
+			return;
+		}
 		rp.sendError(message);
 	}
 
@@ -65,6 +76,10 @@ public class ClientLogger {
 	 *            an exception
 	 */
 	public void error(String message, Throwable t) {
+		if (rp == null) {
+			logger.error(message, t);
+			return;
+		}
 		PrintWriter writer = new PrintWriter(new StringWriter());
 		if (!StringUtils.isEmpty(message)) {
 			writer.append(message);
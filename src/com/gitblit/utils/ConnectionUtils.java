@@ -76,6 +76,7 @@ public class ConnectionUtils {
 			throws IOException {
 		URLConnection conn = openConnection(url, username, password);
 		conn.setRequestProperty("Accept-Charset", ConnectionUtils.CHARSET);
+		conn.setRequestProperty("Accept-Encoding", "gzip");
 		return conn;
 	}
 
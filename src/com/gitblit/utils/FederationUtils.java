@@ -35,8 +35,10 @@ import com.gitblit.Constants.FederationRequest;
 import com.gitblit.Constants.FederationToken;
 import com.gitblit.IStoredSettings;
 import com.gitblit.Keys;
+import com.gitblit.models.FederationChanges;
 import com.gitblit.models.FederationModel;
 import com.gitblit.models.FederationProposal;
+import com.gitblit.models.FederationSubscription;
 import com.gitblit.models.RepositoryModel;
 import com.gitblit.models.TeamModel;
 import com.gitblit.models.UserModel;
@@ -121,11 +123,18 @@ public class FederationUtils {
 		keys.remove(Keys.federation.proposalsFolder);
 		keys.remove(Keys.federation.defaultFrequency);
 		keys.remove(Keys.federation.sets);
+		keys.remove(Keys.federation.pullThreads);
+		keys.remove(Keys.federation.maxConnectionsPerHost);
+		keys.remove(Keys.federation.notificationUrl);
 		Collections.sort(keys);
 		Map<String, FederationModel> federatedModels = new HashMap<String, FederationModel>();
 		for (String key : keys) {
 			String value = key.substring(Keys.federation._ROOT.length() + 1);
 			List<String> values = StringUtils.getStringsFromValue(value, "\\.");
+			if (values.size() < 2) {
+				// not a registration setting
+				continue;
+			}
 			String server = values.get(0);
 			if (!federatedModels.containsKey(server)) {
 				federatedModels.put(server, new FederationModel(server));
@@ -270,6 +279,26 @@ public class FederationUtils {
 		return models;
 	}
 
+	/**
+	 * Retrieves the repositories, users, and teams which have changed at the
+	 * remote gitblit instance since the specified version. An origin which
+	 * does not support change requests returns a response without a version.
+	 * 
+	 * @param registration
+	 * @param since
+	 *            the version of the previous pull, may be null
+	 * @return the changes since the version
+	 * @throws Exception
+	 */
+	public static FederationChanges getChanges(FederationModel registration, String since)
+			throws Exception {
+		String url = asLink(registration.url, registration.token, FederationRequest.PULL_CHANGES);
+		if (!StringUtils.isEmpty(since)) {
+			url += "&since=" + StringUtils.encodeURL(since);
+		}
+		return JsonUtils.retrieveJson(url, FederationChanges.class);
+	}
+
 	/**
 	 * Tries to pull the gitblit user accounts from the remote gitblit instance.
 	 * 
@@ -326,6 +355,46 @@ public class FederationUtils {
 		return scripts;
 	}
 
+	/**
+	 * Subscribes to the push notifications of the origin Gitblit instance of
+	 * the registration.
+	 * 
+	 * @param registration
+	 *            the origin Gitblit instance to subscribe to
+	 * @param subscription
+	 *            the url, registration name, and key of this Gitblit instance
+	 * @return true, if the origin Gitblit instance accepted the subscription
+	 * @throws Exception
+	 */
+	public static boolean subscribe(FederationModel registration,
+			FederationSubscription subscription) throws Exception {
+		String url = asLink(registration.url, registration.token, FederationRequest.SUBSCRIBE);
+		String json = JsonUtils.toJsonString(subscription);
+		int status = JsonUtils.sendJsonString(url, json);
+		return status == HttpServletResponse.SC_OK;
+	}
+
+	/**
+	 * Notifies a subscribed Gitblit instance that a repository has been pushed.
+	 * 
+	 * @param subscription
+	 *            the subscribed Gitblit instance
+	 * @param repository
+	 *            the name of the pushed repository
+	 * @return true, if the subscribed Gitblit instance accepted the
+	 *         notification
+	 * @throws Exception
+	 */
+	public static boolean sendNotification(FederationSubscription subscription, String repository)
+			throws Exception {
+		String url = asLink(subscription.url, null, FederationRequest.NOTIFY) + "&name="
+				+ StringUtils.encodeURL(subscription.name) + "&key=" + subscription.key
+				+ "&repository=" + StringUtils.encodeURL(repository);
+		String json = JsonUtils.toJsonString("NOTIFY");
+		int status = JsonUtils.sendJsonString(url, json);
+		return status == HttpServletResponse.SC_OK;
+	}
+
 	/**
 	 * Send an status acknowledgment to the remote Gitblit server.
 	 * 
@@ -15,6 +15,7 @@
  */
 package com.gitblit.utils;
 
+import java.io.IOException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
@@ -24,7 +25,12 @@ import java.util.HashMap;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.Repository;
 import org.slf4j.LoggerFactory;
 
 import com.gitblit.models.UserModel;
@@ -184,6 +190,205 @@ public class HttpUtils {
 		return user;
 	}
 	
+	/**
+	 * Returns a strong, quoted entity tag composed of the specified parts.
+	 * 
+	 * @param parts
+	 * @return a quoted entity tag
+	 */
+	public static String getETag(String... parts) {
+		StringBuilder sb = new StringBuilder();
+		sb.append('"');
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0) {
+				sb.append('-');
+			}
+			sb.append(parts[i]);
+		}
+		sb.append('"');
+		return sb.toString();
+	}
+
+	/**
+	 * Determines if the client already has the current representation of the
+	 * resource based on the If-None-Match and If-Modified-Since request
+	 * headers. If-None-Match takes precedence over If-Modified-Since.
+	 * 
+	 * @param request
+	 * @param etag
+	 *            the quoted entity tag of the resource, may be null
+	 * @param lastModified
+	 *            the last modified date of the resource, ignored if <= 0
+	 * @return true if the client representation is current
+	 */
+	public static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (!StringUtils.isEmpty(ifNoneMatch)) {
+			if (etag == null) {
+				return false;
+			}
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.startsWith("W/")) {
+					tag = tag.substring(2);
+				}
+				if ("*".equals(tag) || etag.equals(tag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (lastModified > 0) {
+			try {
+				long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+				// http dates have a precision of seconds
+				if (ifModifiedSince > -1 && (lastModified / 1000) <= (ifModifiedSince / 1000)) {
+					return true;
+				}
+			} catch (IllegalArgumentException e) {
+				// unparseable date header
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sets the validator headers and, if the client representation is still
+	 * current, responds with 304 Not Modified.
+	 * 
+	 * @param request
+	 * @param response
+	 * @param etag
+	 *            the quoted entity tag of the resource, may be null
+	 * @param lastModified
+	 *            the last modified date of the resource, ignored if <= 0
+	 * @return true if a 304 response was sent and no body should be written
+	 */
+	public static boolean checkNotModified(HttpServletRequest request,
+			HttpServletResponse response, String etag, long lastModified) {
+		if (etag != null) {
+			response.setHeader("ETag", etag);
+		}
+		if (lastModified > 0) {
+			response.setDateHeader("Last-Modified", lastModified);
+		}
+		if (isNotModified(request, etag, lastModified)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Parses a single byte range from the Range request header. Multiple
+	 * ranges are not supported and result in the full entity being served. If
+	 * an If-Range header is present and does not match the entity tag the full
+	 * entity is served.
+	 * 
+	 * @param request
+	 * @param etag
+	 * @param length
+	 *            the length of the entity
+	 * @return {first, last} byte positions (inclusive), null if the full entity
+	 *         should be served, or an empty array if the range is not
+	 *         satisfiable
+	 */
+	public static long[] getRange(HttpServletRequest request, String etag, long length) {
+		String range = request.getHeader("Range");
+		if (StringUtils.isEmpty(range) || !range.startsWith("bytes=")) {
+			return null;
+		}
+		String ifRange = request.getHeader("If-Range");
+		if (!StringUtils.isEmpty(ifRange) && (etag == null || !etag.equals(ifRange.trim()))) {
+			// entity has changed, serve the full entity
+			return null;
+		}
+		String spec = range.substring("bytes=".length()).trim();
+		if (spec.indexOf(',') > -1) {
+			// multipart ranges are not supported
+			return null;
+		}
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return null;
+		}
+		try {
+			long first;
+			long last;
+			if (dash == 0) {
+				// suffix range, last n bytes
+				long n = Long.parseLong(spec.substring(1));
+				if (n <= 0) {
+					return new long[0];
+				}
+				first = Math.max(0, length - n);
+				last = length - 1;
+			} else {
+				first = Long.parseLong(spec.substring(0, dash));
+				String end = spec.substring(dash + 1);
+				last = StringUtils.isEmpty(end) ? length - 1 : Math.min(Long.parseLong(end), length - 1);
+			}
+			if (first >= length || first > last) {
+				return new long[0];
+			}
+			return new long[] { first, last };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Streams the raw content of a blob to the response. The blob content is
+	 * never completely loaded into memory. The blob id is used as a strong
+	 * entity tag so conditional requests and single byte-range requests are
+	 * supported.
+	 * 
+	 * @param request
+	 * @param response
+	 * @param repository
+	 * @param blobId
+	 * @param contentType
+	 * @param lastModified
+	 *            the last modified date of the blob, ignored if <= 0
+	 * @throws IOException
+	 */
+	public static void sendBlob(HttpServletRequest request, HttpServletResponse response,
+			Repository repository, ObjectId blobId, String contentType, long lastModified)
+			throws IOException {
+		String etag = getETag(blobId.getName());
+		response.setHeader("Accept-Ranges", "bytes");
+		if (checkNotModified(request, response, etag, lastModified)) {
+			return;
+		}
+
+		ObjectLoader ldr = repository.open(blobId, Constants.OBJ_BLOB);
+		long length = ldr.getSize();
+		response.setContentType(contentType);
+
+		long[] range = null;
+		if ("GET".equals(request.getMethod())) {
+			range = getRange(request, etag, length);
+		}
+		if (range == null) {
+			// full entity
+			response.setHeader("Content-Length", String.valueOf(length));
+			ldr.copyTo(response.getOutputStream());
+		} else if (range.length == 0) {
+			// unsatisfiable range
+			response.setHeader("Content-Range", "bytes */" + length);
+			response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			return;
+		} else {
+			// partial content
+			long count = range[1] - range[0] + 1;
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+			response.setHeader("Content-Length", String.valueOf(count));
+			JGitUtils.copyBlob(repository, blobId, range[0], count, response.getOutputStream());
+		}
+		response.flushBuffer();
+	}
+
 	private static String getOIDValue(String oid, Map<String, String> oids) {
 		if (oids.containsKey(oid)) {
 			return oids.get(oid);
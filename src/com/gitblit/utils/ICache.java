@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.utils;
+
+import java.util.List;
+import java.util.Map;
+
+import com.gitblit.models.CacheStats;
+
+/**
+ * A named key-value cache. Implementations may bound the cache by entry count
+ * or by weight, may expire entries, and must load missing values atomically
+ * so that concurrent misses for the same key trigger a single load.
+ *
+ * Null values are never cached.
+ *
+ * @author James Moger
+ *
+ */
+public interface ICache<K, V> {
+
+	/**
+	 * Loads the value for a missing key.
+	 */
+	public static interface Loader<K, V> {
+		V load(K key);
+	}
+
+	/**
+	 * Determines the weight of a cache entry, usually an approximation of its
+	 * memory footprint in bytes.
+	 */
+	public static interface Weigher<K, V> {
+		long weigh(K key, V value);
+	}
+
+	String getName();
+
+	/**
+	 * Returns the cached value or null.
+	 *
+	 * @param key
+	 * @return the value or null
+	 */
+	V get(K key);
+
+	/**
+	 * Returns the cached value or loads, caches, and returns the value. Only
+	 * one load is executed for concurrent misses of the same key, the other
+	 * callers wait for and share the loaded value.
+	 *
+	 * @param key
+	 * @param loader
+	 * @return the value or null if the loader returned null
+	 */
+	V get(K key, Loader<K, V> loader);
+
+	void put(K key, V value);
+
+	void putAll(Map<K, V> map);
+
+	V remove(K key);
+
+	boolean containsKey(K key);
+
+	void clear();
+
+	int size();
+
+	boolean isEmpty();
+
+	/**
+	 * @return a snapshot of the cached keys
+	 */
+	List<K> keys();
+
+	/**
+	 * @return a snapshot of the cached values
+	 */
+	List<V> values();
+
+	/**
+	 * @return a snapshot of the cache as a map
+	 */
+	Map<K, V> asMap();
+
+	/**
+	 * @return the current statistics of the cache
+	 */
+	CacheStats getStats();
+}
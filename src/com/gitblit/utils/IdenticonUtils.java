@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.utils;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Utility methods for generating identicons. An identicon is a symmetric 5x5
+ * pattern whose cells and color are derived from a hash so that the same hash
+ * always renders the same image. Identicons are rendered locally and do not
+ * require a connection to Gravatar.
+ *
+ * @author James Moger
+ *
+ */
+public class IdenticonUtils {
+
+	private static final int CELLS = 5;
+
+	private static final Color BACKGROUND = new Color(0xf0, 0xf0, 0xf0);
+
+	/**
+	 * Renders the identicon of the hash as a png image.
+	 *
+	 * @param hash
+	 *            a hex string of at least 16 characters, e.g. an md5 hash
+	 * @param size
+	 *            the width and height of the image in pixels
+	 * @return the png image
+	 */
+	public static byte[] render(String hash, int size) {
+		int[] nibbles = new int[hash.length()];
+		for (int i = 0; i < nibbles.length; i++) {
+			nibbles[i] = Character.digit(hash.charAt(i), 16) & 0xf;
+		}
+
+		// the last three nibbles determine the hue
+		float hue = ((nibbles[nibbles.length - 3] << 8) | (nibbles[nibbles.length - 2] << 4) | nibbles[nibbles.length - 1]) / 4096f;
+		Color foreground = Color.getHSBColor(hue, 0.55f, 0.75f);
+
+		int cell = Math.max(1, size / (CELLS + 1));
+		int margin = (size - cell * CELLS) / 2;
+
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setColor(BACKGROUND);
+			g.fillRect(0, 0, size, size);
+			g.setColor(foreground);
+			// fill the left three columns and mirror them to the right
+			for (int column = 0; column < (CELLS + 1) / 2; column++) {
+				for (int row = 0; row < CELLS; row++) {
+					if (nibbles[column * CELLS + row] % 2 == 0) {
+						g.fillRect(margin + column * cell, margin + row * cell, cell, cell);
+						g.fillRect(margin + (CELLS - 1 - column) * cell, margin + row * cell, cell, cell);
+					}
+				}
+			}
+		} finally {
+			g.dispose();
+		}
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try {
+			ImageIO.write(image, "png", os);
+		} catch (IOException e) {
+			// writing to memory
+		}
+		return os.toByteArray();
+	}
+}
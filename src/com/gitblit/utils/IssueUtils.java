@@ -15,18 +15,22 @@
  */
 package com.gitblit.utils;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.jgit.api.errors.ConcurrentRefUpdateException;
 import org.eclipse.jgit.api.errors.JGitInternalException;
@@ -44,13 +48,11 @@ import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.RefUpdate.Result;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.TreeWalk;
-import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
-import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
-import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,6 +80,11 @@ public class IssueUtils {
 
 	public static final String GB_ISSUES = "refs/heads/gb-issues";
 
+	/**
+	 * Commit code of a commit which records changes to several issues.
+	 */
+	private static final char BATCH_CODE = '*';
+
 	static final Logger LOGGER = LoggerFactory.getLogger(JGitUtils.class);
 
 	/**
@@ -115,10 +122,9 @@ public class IssueUtils {
 	}
 
 	/**
-	 * Returns all the issues in the repository. Querying issues from the
-	 * repository requires deserializing all changes for all issues. This is an
-	 * expensive process and not recommended. Issues should be indexed by Lucene
-	 * and queries should be executed against that index.
+	 * Returns all the issues in the repository. Issues are read from an
+	 * in-memory index of the gb-issues branch which is incrementally updated
+	 * from the branch history when the branch changes.
 	 * 
 	 * @param repository
 	 * @param filter
@@ -132,79 +138,10 @@ public class IssueUtils {
 			return list;
 		}
 
-		// Collect the set of all issue paths
-		Set<String> issuePaths = new HashSet<String>();
-		final TreeWalk tw = new TreeWalk(repository);
-		try {
-			RevCommit head = JGitUtils.getCommit(repository, GB_ISSUES);
-			tw.addTree(head.getTree());
-			tw.setRecursive(false);
-			while (tw.next()) {
-				if (tw.getDepth() < 2 && tw.isSubtree()) {
-					tw.enterSubtree();
-					if (tw.getDepth() == 2) {
-						issuePaths.add(tw.getPathString());
-					}
-				}
-			}
-		} catch (IOException e) {
-			error(e, repository, "{0} failed to query issues");
-		} finally {
-			tw.release();
-		}
-
 		// Build each issue and optionally filter out unwanted issues
-
-		for (String issuePath : issuePaths) {
-			RevWalk rw = new RevWalk(repository);
-			try {
-				RevCommit start = rw.parseCommit(repository.resolve(GB_ISSUES));
-				rw.markStart(start);
-			} catch (Exception e) {
-				error(e, repository, "Failed to find {1} in {0}", GB_ISSUES);
-			}
-			TreeFilter treeFilter = AndTreeFilter.create(
-					PathFilterGroup.createFromStrings(issuePath), TreeFilter.ANY_DIFF);
-			rw.setTreeFilter(treeFilter);
-			Iterator<RevCommit> revlog = rw.iterator();
-
-			List<RevCommit> commits = new ArrayList<RevCommit>();
-			while (revlog.hasNext()) {
-				commits.add(revlog.next());
-			}
-
-			// release the revwalk
-			rw.release();
-
-			if (commits.size() == 0) {
-				LOGGER.warn("Failed to find changes for issue " + issuePath);
-				continue;
-			}
-
-			// sort by commit order, first commit first
-			Collections.reverse(commits);
-
-			StringBuilder sb = new StringBuilder("[");
-			boolean first = true;
-			for (RevCommit commit : commits) {
-				if (!first) {
-					sb.append(',');
-				}
-				String message = commit.getFullMessage();
-				// commit message is formatted: C ISSUEID\n\nJSON
-				// C is an single char commit code
-				// ISSUEID is an SHA-1 hash
-				String json = message.substring(43);
-				sb.append(json);
-				first = false;
-			}
-			sb.append(']');
-
-			// Deserialize the JSON array as a Collection<Change>, this seems
-			// slightly faster than deserializing each change by itself.
-			Collection<Change> changes = JsonUtils.fromJsonString(sb.toString(),
-					new TypeToken<Collection<Change>>() {
-					}.getType());
+		for (List<Change> changes : IssueIndex.get(repository).getAllChanges()) {
+			// copy the indexed changes so that the issue may be safely modified
+			changes = DeepCopier.copy(changes);
 
 			// create an issue object form the changes
 			IssueModel issue = buildIssue(changes, true);
@@ -257,35 +194,13 @@ public class IssueUtils {
 			return null;
 		}
 
-		String issuePath = getIssuePath(issueId);
-
-		// Collect all changes as JSON array from commit messages
-		List<RevCommit> commits = JGitUtils.getRevLog(repository, GB_ISSUES, issuePath, 0, -1);
-
-		// sort by commit order, first commit first
-		Collections.reverse(commits);
+		List<Change> changes = IssueIndex.get(repository).getChanges(issueId);
+		if (changes == null) {
+			return null;
+		}
 
-		StringBuilder sb = new StringBuilder("[");
-		boolean first = true;
-		for (RevCommit commit : commits) {
-			if (!first) {
-				sb.append(',');
-			}
-			String message = commit.getFullMessage();
-			// commit message is formatted: C ISSUEID\n\nJSON
-			// C is an single char commit code
-			// ISSUEID is an SHA-1 hash
-			String json = message.substring(43);
-			sb.append(json);
-			first = false;
-		}
-		sb.append(']');
-
-		// Deserialize the JSON array as a Collection<Change>, this seems
-		// slightly faster than deserializing each change by itself.
-		Collection<Change> changes = JsonUtils.fromJsonString(sb.toString(),
-				new TypeToken<Collection<Change>>() {
-				}.getType());
+		// copy the indexed changes so that the issue may be safely modified
+		changes = DeepCopier.copy(changes);
 
 		// create an issue object and apply the changes to it
 		IssueModel issue = buildIssue(changes, effective);
@@ -342,6 +257,17 @@ public class IssueUtils {
 		return issue;
 	}
 
+	/**
+	 * Discards the issue indexes of the repository folder. The index of a
+	 * repository is keyed by its folder so it must be discarded when the
+	 * repository is deleted or renamed.
+	 * 
+	 * @param repositoryFolder
+	 */
+	public static void clearIssueIndex(File repositoryFolder) {
+		IssueIndex.clear(repositoryFolder.getAbsolutePath());
+	}
+
 	/**
 	 * Retrieves the specified attachment from an issue.
 	 * 
@@ -363,6 +289,9 @@ public class IssueUtils {
 
 		// deserialize the issue model so that we have the attachment metadata
 		IssueModel issue = getIssue(repository, issueId, true);
+		if (issue == null) {
+			return null;
+		}
 		Attachment attachment = issue.getAttachment(filename);
 
 		// attachment not found
@@ -397,6 +326,55 @@ public class IssueUtils {
 			JGitUtils.createOrphanBranch(repository, "gb-issues", null);
 		}
 
+		String issueId = prepareCreation(change);
+		boolean success = commit(repository, issueId, change);
+		if (success) {
+			return getIssue(repository, issueId, false);
+		}
+		return null;
+	}
+
+	/**
+	 * Creates many issues in a single commit on the gb-issues branch of the
+	 * repository. The branch is automatically created if it does not already
+	 * exist. Each change must include an author, summary, and description, at
+	 * a minimum.
+	 * 
+	 * @param repository
+	 * @param author
+	 *            the author of the commit
+	 * @param changes
+	 *            the creation changes, one per issue
+	 * @return the created issues, or null if the commit failed
+	 */
+	public static List<IssueModel> createIssues(Repository repository, String author,
+			List<Change> changes) {
+		RefModel issuesBranch = getIssuesBranch(repository);
+		if (issuesBranch == null) {
+			JGitUtils.createOrphanBranch(repository, "gb-issues", null);
+		}
+
+		List<BatchEntry> batch = new ArrayList<BatchEntry>();
+		for (Change change : changes) {
+			batch.add(new BatchEntry(prepareCreation(change), change));
+		}
+		if (!commit(repository, author, batch)) {
+			return null;
+		}
+		List<IssueModel> issues = new ArrayList<IssueModel>();
+		for (BatchEntry entry : batch) {
+			issues.add(getIssue(repository, entry.issueId, false));
+		}
+		return issues;
+	}
+
+	/**
+	 * Validates a creation change and assigns the issue id.
+	 * 
+	 * @param change
+	 * @return the issue id
+	 */
+	private static String prepareCreation(Change change) {
 		if (StringUtils.isEmpty(change.author)) {
 			throw new RuntimeException("Must specify a change author!");
 		}
@@ -413,12 +391,7 @@ public class IssueUtils {
 				+ change.getString(Field.Summary) + change.getField(Field.Description));
 		change.setField(Field.Id, issueId);
 		change.code = '+';
-
-		boolean success = commit(repository, issueId, change);
-		if (success) {
-			return getIssue(repository, issueId, false);
-		}
-		return null;
+		return issueId;
 	}
 
 	/**
@@ -437,6 +410,49 @@ public class IssueUtils {
 			throw new RuntimeException("gb-issues branch does not exist!");
 		}
 
+		prepareUpdate(change);
+		success = commit(repository, issueId, change);
+		return success;
+	}
+
+	/**
+	 * Updates many issues in a single commit on the gb-issues branch of the
+	 * repository.
+	 * 
+	 * @param repository
+	 * @param author
+	 *            the author of the commit
+	 * @param changes
+	 *            map of issue id to the ordered changes for that issue
+	 * @return true if successful
+	 */
+	public static boolean updateIssues(Repository repository, String author,
+			Map<String, List<Change>> changes) {
+		RefModel issuesBranch = getIssuesBranch(repository);
+
+		if (issuesBranch == null) {
+			throw new RuntimeException("gb-issues branch does not exist!");
+		}
+
+		List<BatchEntry> batch = new ArrayList<BatchEntry>();
+		for (Map.Entry<String, List<Change>> entry : changes.entrySet()) {
+			for (Change change : entry.getValue()) {
+				prepareUpdate(change);
+				batch.add(new BatchEntry(entry.getKey(), change));
+			}
+		}
+		if (batch.size() == 0) {
+			return true;
+		}
+		return commit(repository, author, batch);
+	}
+
+	/**
+	 * Validates an update change and determines the update code.
+	 * 
+	 * @param change
+	 */
+	private static void prepareUpdate(Change change) {
 		if (change == null) {
 			throw new RuntimeException("change can not be null!");
 		}
@@ -455,8 +471,6 @@ public class IssueUtils {
 				change.code = 'x';
 			}
 		}
-		success = commit(repository, issueId, change);
-		return success;
 	}
 
 	/**
@@ -568,6 +582,10 @@ public class IssueUtils {
 		} catch (Throwable t) {
 			error(t, repository, "Failed to delete issue {1} to {0}", issueId);
 		}
+		if (success) {
+			// update the issue index with the new commit
+			IssueIndex.get(repository);
+		}
 		return success;
 	}
 
@@ -624,38 +642,81 @@ public class IssueUtils {
 	 * @return true, if the change was committed
 	 */
 	private static boolean commit(Repository repository, String issueId, Change change) {
-		boolean success = false;
+		// include the json change in the commit message
+		String json = prepareCommit(change);
+		String message = change.code + " " + issueId + "\n\n" + json;
+		addPlaceholder(change, json);
+		List<BatchEntry> entries = new ArrayList<BatchEntry>();
+		entries.add(new BatchEntry(issueId, change));
+		return commit(repository, change.author, message, entries);
+	}
 
-		try {
-			// assign ids to new attachments
-			// attachments are stored by an SHA1 id
-			if (change.hasAttachments()) {
-				for (Attachment attachment : change.attachments) {
-					if (!ArrayUtils.isEmpty(attachment.content)) {
-						byte[] prefix = (change.created.toString() + change.author).getBytes();
-						byte[] bytes = new byte[prefix.length + attachment.content.length];
-						System.arraycopy(prefix, 0, bytes, 0, prefix.length);
-						System.arraycopy(attachment.content, 0, bytes, prefix.length,
-								attachment.content.length);
-						attachment.id = "attachment-" + StringUtils.getSHA1(bytes);
-					}
+	/**
+	 * Commit a batch of changes to the repository in a single commit. The
+	 * commit message is formatted as:
+	 * 
+	 * <pre>
+	 * * COUNT changes
+	 * 
+	 * JSON ARRAY OF {issueId, change}
+	 * </pre>
+	 * 
+	 * @param repository
+	 * @param author
+	 * @param batch
+	 * @return true, if the changes were committed
+	 */
+	private static boolean commit(Repository repository, String author, List<BatchEntry> batch) {
+		for (BatchEntry entry : batch) {
+			prepareCommit(entry.change);
+		}
+		String json = issueGson().toJson(batch);
+		String message = BATCH_CODE + " " + batch.size() + " changes\n\n" + json;
+		for (BatchEntry entry : batch) {
+			addPlaceholder(entry.change, issueGson().toJson(entry.change));
+		}
+		return commit(repository, author, message, batch);
+	}
+
+	/**
+	 * Assigns ids to new attachments and serializes the change as json.
+	 * 
+	 * @param change
+	 * @return the json change
+	 */
+	private static String prepareCommit(Change change) {
+		// assign ids to new attachments
+		// attachments are stored by an SHA1 id
+		if (change.hasAttachments()) {
+			for (Attachment attachment : change.attachments) {
+				if (!ArrayUtils.isEmpty(attachment.content)) {
+					byte[] prefix = (change.created.toString() + change.author).getBytes();
+					byte[] bytes = new byte[prefix.length + attachment.content.length];
+					System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+					System.arraycopy(attachment.content, 0, bytes, prefix.length,
+							attachment.content.length);
+					attachment.id = "attachment-" + StringUtils.getSHA1(bytes);
 				}
 			}
+		}
 
-			// serialize the change as json
-			// exclude any attachment from json serialization
-			Gson gson = JsonUtils.gson(new ExcludeField(
-					"com.gitblit.models.IssueModel$Attachment.content"));
-			String json = gson.toJson(change);
-
-			// include the json change in the commit message
-			String issuePath = getIssuePath(issueId);
-			String message = change.code + " " + issueId + "\n\n" + json;
+		// serialize the change as json
+		// exclude any attachment from json serialization
+		return issueGson().toJson(change);
+	}
 
-			// Create a commit file. This is required for a proper commit and
-			// ensures we can retrieve the commit log of the issue path.
-			//
-			// This file is NOT serialized as part of the Change object.
+	/**
+	 * Create a commit file. This is required for a proper commit and ensures
+	 * we can retrieve the commit log of the issue path.
+	 * 
+	 * This file is NOT serialized as part of the Change object.
+	 * 
+	 * @param change
+	 * @param json
+	 *            the serialized change
+	 */
+	private static void addPlaceholder(Change change, String json) {
+		try {
 			switch (change.code) {
 			case '+': {
 				// New Issue.
@@ -675,16 +736,53 @@ public class IssueUtils {
 				break;
 			}
 			}
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
 
+	/**
+	 * Serializes changes without the content of their attachments.
+	 */
+	private static final Gson ISSUE_GSON;
+
+	static {
+		try {
+			ISSUE_GSON = JsonUtils.gson(new ExcludeField(
+					"com.gitblit.models.IssueModel$Attachment.content"));
+		} catch (Exception e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	private static Gson issueGson() {
+		return ISSUE_GSON;
+	}
+
+	/**
+	 * Writes the attachments of the changes to the tree and commits the
+	 * message to the gb-issues branch.
+	 * 
+	 * @param repository
+	 * @param author
+	 * @param message
+	 * @param entries
+	 * @return true, if the commit succeeded
+	 */
+	private static boolean commit(Repository repository, String author, String message,
+			List<BatchEntry> entries) {
+		boolean success = false;
+
+		try {
 			ObjectId headId = repository.resolve(GB_ISSUES + "^{commit}");
 			ObjectInserter odi = repository.newObjectInserter();
 			try {
-				// Create the in-memory index of the new/updated issue
-				DirCache index = createIndex(repository, headId, issuePath, change);
+				// Create the in-memory index of the new/updated issues
+				DirCache index = createIndex(repository, headId, entries);
 				ObjectId indexTreeId = index.writeTree(odi);
 
 				// Create a commit object
-				PersonIdent ident = new PersonIdent(change.author, "gitblit@localhost");
+				PersonIdent ident = new PersonIdent(author, "gitblit@localhost");
 				CommitBuilder commit = new CommitBuilder();
 				commit.setAuthor(ident);
 				commit.setCommitter(ident);
@@ -727,11 +825,81 @@ public class IssueUtils {
 				odi.release();
 			}
 		} catch (Throwable t) {
-			error(t, repository, "Failed to commit issue {1} to {0}", issueId);
+			List<String> ids = new ArrayList<String>();
+			for (BatchEntry entry : entries) {
+				ids.add(entry.issueId);
+			}
+			error(t, repository, "Failed to commit issue {1} to {0}", StringUtils.flattenStrings(ids, ", "));
+		}
+		if (success) {
+			// update the issue index with the new commit
+			IssueIndex.get(repository);
 		}
 		return success;
 	}
 
+	/**
+	 * Returns the ids of the issues changed by a gb-issues commit.
+	 * 
+	 * @param commit
+	 * @return the changed issue ids
+	 */
+	public static Set<String> getIssueIds(RevCommit commit) {
+		Set<String> ids = new LinkedHashSet<String>();
+		for (BatchEntry entry : parseChanges(commit)) {
+			ids.add(entry.issueId);
+		}
+		return ids;
+	}
+
+	/**
+	 * Parses the changes recorded in the message of a gb-issues commit. A
+	 * deletion is returned as an entry without a change.
+	 * 
+	 * @param commit
+	 * @return the changes of the commit
+	 */
+	private static List<BatchEntry> parseChanges(RevCommit commit) {
+		List<BatchEntry> list = new ArrayList<BatchEntry>();
+		String message = commit.getFullMessage();
+		if (message.length() < 2 || message.charAt(1) != ' ') {
+			return list;
+		}
+		if (message.charAt(0) == BATCH_CODE) {
+			// commit message is formatted: * COUNT changes\n\nJSON
+			int json = message.indexOf("\n\n");
+			if (json > -1) {
+				List<BatchEntry> batch = issueGson().fromJson(message.substring(json + 2),
+						new TypeToken<List<BatchEntry>>() {
+						}.getType());
+				if (batch != null) {
+					list.addAll(batch);
+				}
+			}
+			return list;
+		}
+		// commit message is formatted: C ISSUEID\n\nJSON
+		// C is an single char commit code
+		// ISSUEID is an SHA-1 hash
+		if (message.length() < 42) {
+			return list;
+		}
+		String issueId = message.substring(2, 42);
+		if (!ObjectId.isId(issueId)) {
+			return list;
+		}
+		if (message.charAt(0) == '-') {
+			// deleted issue
+			list.add(new BatchEntry(issueId, null));
+		} else if (message.length() > 43) {
+			Change change = JsonUtils.fromJsonString(message.substring(43), Change.class);
+			if (change != null) {
+				list.add(new BatchEntry(issueId, change));
+			}
+		}
+		return list;
+	}
+
 	/**
 	 * Returns the issue path. This follows the same scheme as Git's object
 	 * store path where the first two characters of the hash id are the root
@@ -745,16 +913,16 @@ public class IssueUtils {
 	}
 
 	/**
-	 * Creates an in-memory index of the issue change.
+	 * Creates an in-memory index of the issue changes.
 	 * 
 	 * @param repo
 	 * @param headId
-	 * @param change
+	 * @param entries
 	 * @return an in-memory index
 	 * @throws IOException
 	 */
-	private static DirCache createIndex(Repository repo, ObjectId headId, String issuePath,
-			Change change) throws IOException {
+	private static DirCache createIndex(Repository repo, ObjectId headId,
+			List<BatchEntry> entries) throws IOException {
 
 		DirCache inCoreIndex = DirCache.newInCore();
 		DirCacheBuilder dcBuilder = inCoreIndex.builder();
@@ -763,11 +931,19 @@ public class IssueUtils {
 		Set<String> ignorePaths = new TreeSet<String>();
 		try {
 			// Add any attachments to the temporary index
-			if (change.hasAttachments()) {
+			for (BatchEntry entry : entries) {
+				Change change = entry.change;
+				if (!change.hasAttachments()) {
+					continue;
+				}
+				String issuePath = getIssuePath(entry.issueId);
 				for (Attachment attachment : change.attachments) {
 					// build a path name for the attachment and mark as ignored
 					String path = issuePath + "/" + attachment.id;
-					ignorePaths.add(path);
+					if (!ignorePaths.add(path)) {
+						// same attachment in the batch
+						continue;
+					}
 
 					// create an index entry for this attachment
 					final DirCacheEntry dcEntry = new DirCacheEntry(path);
@@ -820,4 +996,169 @@ public class IssueUtils {
 		}
 		return inCoreIndex;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * A change of a specific issue, as recorded in a batch commit.
+	 */
+	private static class BatchEntry {
+
+		final String issueId;
+
+		final Change change;
+
+		BatchEntry(String issueId, Change change) {
+			this.issueId = issueId;
+			this.change = change;
+		}
+	}
+
+	/**
+	 * In-memory index of the changes of all issues on the gb-issues branch of
+	 * a repository. The index is built by a single walk of the branch history
+	 * and is incrementally updated by walking only the commits added since the
+	 * last indexed tip.
+	 */
+	private static class IssueIndex {
+
+		private static final ConcurrentMap<String, IssueIndex> INDEXES = new ConcurrentHashMap<String, IssueIndex>();
+
+		private final Map<String, List<Change>> issues = new LinkedHashMap<String, List<Change>>();
+
+		private ObjectId tip;
+
+		/**
+		 * Returns the current issue index for the repository.
+		 * 
+		 * @param repository
+		 * @return the issue index
+		 */
+		static IssueIndex get(Repository repository) {
+			String key = repository.getDirectory().getAbsolutePath();
+			IssueIndex index = INDEXES.get(key);
+			if (index == null) {
+				index = new IssueIndex();
+				IssueIndex existing = INDEXES.putIfAbsent(key, index);
+				if (existing != null) {
+					index = existing;
+				}
+			}
+			index.refresh(repository);
+			return index;
+		}
+
+		/**
+		 * Discards the indexes of the repository folder.
+		 * 
+		 * @param folder
+		 *            the absolute path of the repository folder
+		 */
+		static void clear(String folder) {
+			for (String key : INDEXES.keySet()) {
+				if (key.equals(folder) || key.startsWith(folder + File.separator)) {
+					INDEXES.remove(key);
+				}
+			}
+		}
+
+		synchronized List<List<Change>> getAllChanges() {
+			List<List<Change>> list = new ArrayList<List<Change>>(issues.size());
+			for (List<Change> changes : issues.values()) {
+				list.add(new ArrayList<Change>(changes));
+			}
+			return list;
+		}
+
+		synchronized List<Change> getChanges(String issueId) {
+			List<Change> changes = issues.get(issueId);
+			if (changes == null) {
+				return null;
+			}
+			return new ArrayList<Change>(changes);
+		}
+
+		/**
+		 * Brings the index up to date with the tip of the gb-issues branch.
+		 * 
+		 * @param repository
+		 */
+		private synchronized void refresh(Repository repository) {
+			RevWalk rw = new RevWalk(repository);
+			try {
+				ObjectId head = repository.resolve(GB_ISSUES + "^{commit}");
+				if (head == null) {
+					issues.clear();
+					tip = null;
+					return;
+				}
+				if (head.equals(tip)) {
+					return;
+				}
+				RevCommit start = rw.parseCommit(head);
+				ObjectId last = null;
+				if (tip != null) {
+					last = getIndexedAncestor(repository, start);
+				}
+				if (last == null) {
+					// full (re)build
+					issues.clear();
+				}
+				rw.sort(RevSort.TOPO);
+				rw.sort(RevSort.REVERSE, true);
+				rw.markStart(start);
+				if (last != null) {
+					rw.markUninteresting(rw.parseCommit(last));
+				}
+				for (RevCommit commit : rw) {
+					apply(commit);
+				}
+				tip = head.copy();
+			} catch (Exception e) {
+				error(e, repository, "{0} failed to index issues");
+				issues.clear();
+				tip = null;
+			} finally {
+				rw.release();
+			}
+		}
+
+		/**
+		 * Returns the indexed tip if it is an ancestor of the current tip,
+		 * otherwise null.
+		 */
+		private ObjectId getIndexedAncestor(Repository repository, RevCommit start) {
+			RevWalk rw = new RevWalk(repository);
+			try {
+				RevCommit indexed = rw.parseCommit(tip);
+				if (rw.isMergedInto(indexed, rw.parseCommit(start))) {
+					return tip;
+				}
+			} catch (IOException e) {
+				// indexed tip is missing, rebuild
+			} finally {
+				rw.release();
+			}
+			return null;
+		}
+
+		/**
+		 * Applies the changes recorded in a gb-issues commit message.
+		 * 
+		 * @param commit
+		 */
+		private void apply(RevCommit commit) {
+			for (BatchEntry entry : parseChanges(commit)) {
+				if (entry.change == null) {
+					// deleted issue
+					issues.remove(entry.issueId);
+					continue;
+				}
+				List<Change> changes = issues.get(entry.issueId);
+				if (changes == null) {
+					changes = new ArrayList<Change>();
+					issues.put(entry.issueId, changes);
+				}
+				changes.add(entry.change);
+			}
+		}
+	}
+}
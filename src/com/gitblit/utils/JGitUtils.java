@@ -648,6 +648,100 @@ public class JGitUtils {
 		return StringUtils.decodeString(content, charsets);
 	}
 
+	/**
+	 * Returns the object id of the blob at the specified path in the tree.
+	 * This method does not load the blob content so it is suitable for
+	 * identifying large blobs which will be streamed.
+	 *
+	 * @param repository
+	 * @param tree
+	 *            if null, the RevTree from HEAD is assumed.
+	 * @param path
+	 * @return the blob id or null if the path is not a blob in the tree
+	 */
+	public static ObjectId getBlobId(Repository repository, RevTree tree, String path) {
+		if (StringUtils.isEmpty(path)) {
+			return null;
+		}
+		RevWalk rw = new RevWalk(repository);
+		TreeWalk tw = null;
+		ObjectId blobId = null;
+		try {
+			if (tree == null) {
+				ObjectId object = getDefaultBranch(repository);
+				if (object == null) {
+					return null;
+				}
+				RevCommit commit = rw.parseCommit(object);
+				tree = commit.getTree();
+			}
+			tw = TreeWalk.forPath(repository, path, tree);
+			if (tw != null && tw.getFileMode(0).getObjectType() == Constants.OBJ_BLOB) {
+				blobId = tw.getObjectId(0);
+			}
+		} catch (Throwable t) {
+			error(t, repository, "{0} can't find {1} in tree {2}", path, tree == null ? "HEAD" : tree.name());
+		} finally {
+			rw.dispose();
+			if (tw != null) {
+				tw.release();
+			}
+		}
+		return blobId;
+	}
+
+	/**
+	 * Copies the specified range of the raw blob content to the output stream.
+	 * The blob is streamed from the object database and is never completely
+	 * loaded into memory.
+	 *
+	 * @param repository
+	 * @param blobId
+	 * @param offset
+	 *            the first byte to copy
+	 * @param length
+	 *            the number of bytes to copy, if < 0 the remainder of the blob
+	 *            is copied
+	 * @param os
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 */
+	public static long copyBlob(Repository repository, ObjectId blobId, long offset, long length,
+			OutputStream os) throws IOException {
+		ObjectLoader ldr = repository.open(blobId, Constants.OBJ_BLOB);
+		if (offset <= 0 && length < 0) {
+			// whole blob
+			ldr.copyTo(os);
+			return ldr.getSize();
+		}
+		InputStream in = ldr.openStream();
+		try {
+			long skipped = 0;
+			while (skipped < offset) {
+				long n = in.skip(offset - skipped);
+				if (n <= 0) {
+					return 0;
+				}
+				skipped += n;
+			}
+			long remaining = length < 0 ? (ldr.getSize() - offset) : length;
+			long copied = 0;
+			byte[] tmp = new byte[8192];
+			while (remaining > 0) {
+				int n = in.read(tmp, 0, (int) Math.min(tmp.length, remaining));
+				if (n < 0) {
+					break;
+				}
+				os.write(tmp, 0, n);
+				remaining -= n;
+				copied += n;
+			}
+			return copied;
+		} finally {
+			in.close();
+		}
+	}
+
 	/**
 	 * Returns the list of files in the specified folder at the specified
 	 * commit. If the repository does not exist or is empty, an empty list is
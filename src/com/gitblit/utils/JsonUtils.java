@@ -20,6 +20,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
 import java.net.URLConnection;
@@ -31,6 +33,7 @@ import java.util.Date;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
 
 import com.gitblit.Constants.AccessPermission;
 import com.gitblit.GitBlitException.ForbiddenException;
@@ -51,6 +54,7 @@ import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Utility methods for json calls to a Gitblit server.
@@ -77,6 +81,32 @@ public class JsonUtils {
 		return json;
 	}
 
+	/**
+	 * Writes the specified object as compact JSON to the writer without first
+	 * building the JSON as a string. The writer is flushed but not closed.
+	 * 
+	 * @param o
+	 * @param writer
+	 * @throws IOException
+	 */
+	public static void toJson(Object o, Writer writer) throws IOException {
+		JsonWriter jsonWriter = new JsonWriter(writer);
+		gson().toJson(o, o.getClass(), jsonWriter);
+		jsonWriter.flush();
+	}
+
+	/**
+	 * Reads an object of the specified type from the JSON of the reader
+	 * without first reading the JSON into a string.
+	 * 
+	 * @param reader
+	 * @param type
+	 * @return an object or null if the reader is empty
+	 */
+	public static <X> X fromJson(Reader reader, Type type) {
+		return gson().fromJson(reader, type);
+	}
+
 	/**
 	 * Convert a json string to an object of the specified type.
 	 * 
@@ -175,6 +205,9 @@ public class JsonUtils {
 		try {
 			URLConnection conn = ConnectionUtils.openReadConnection(url, username, password);
 			InputStream is = conn.getInputStream();
+			if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+				is = new GZIPInputStream(is);
+			}
 			BufferedReader reader = new BufferedReader(new InputStreamReader(is,
 					ConnectionUtils.CHARSET));
 			StringBuilder json = new StringBuilder();
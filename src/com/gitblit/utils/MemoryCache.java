@@ -0,0 +1,341 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.utils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.gitblit.models.CacheStats;
+
+/**
+ * In-memory, least-recently-used cache optionally bounded by the number of
+ * entries and by the total weight of the entries. Entries may optionally
+ * expire after a fixed time-to-live.
+ *
+ * @author James Moger
+ *
+ */
+public class MemoryCache<K, V> implements ICache<K, V> {
+
+	private final String name;
+
+	private final int maxEntries;
+
+	private final long maxWeight;
+
+	private final long ttl;
+
+	private final Weigher<K, V> weigher;
+
+	private final LinkedHashMap<K, Entry<V>> entries;
+
+	private final ConcurrentMap<K, FutureTask<V>> loading;
+
+	// loads whose key has been removed or cleared while loading
+	private final Set<FutureTask<V>> invalidated;
+
+	private long weight;
+
+	private long hits;
+
+	private long misses;
+
+	private long loads;
+
+	private long evictions;
+
+	private long expirations;
+
+	private static class Entry<V> {
+
+		final V value;
+
+		final long weight;
+
+		final long created;
+
+		Entry(V value, long weight) {
+			this.value = value;
+			this.weight = weight;
+			this.created = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Creates an unbounded cache.
+	 *
+	 * @param name
+	 */
+	public MemoryCache(String name) {
+		this(name, 0, 0, 0, null);
+	}
+
+	/**
+	 * Creates a cache bounded by the number of entries.
+	 *
+	 * @param name
+	 * @param maxEntries
+	 *            if <= 0 the number of entries is unbounded
+	 * @param ttl
+	 *            the time-to-live of an entry in milliseconds, if <= 0
+	 *            entries do not expire
+	 */
+	public MemoryCache(String name, int maxEntries, long ttl) {
+		this(name, maxEntries, 0, ttl, null);
+	}
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param name
+	 * @param maxEntries
+	 *            if <= 0 the number of entries is unbounded
+	 * @param maxWeight
+	 *            if <= 0 the total weight is unbounded
+	 * @param ttl
+	 *            the time-to-live of an entry in milliseconds, if <= 0
+	 *            entries do not expire
+	 * @param weigher
+	 *            if null each entry weighs 1
+	 */
+	public MemoryCache(String name, int maxEntries, long maxWeight, long ttl,
+			Weigher<K, V> weigher) {
+		this.name = name;
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.ttl = ttl;
+		this.weigher = weigher;
+		this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+		this.loading = new ConcurrentHashMap<K, FutureTask<V>>();
+		this.invalidated = new HashSet<FutureTask<V>>();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public synchronized V get(K key) {
+		Entry<V> entry = getEntry(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+
+	@Override
+	public V get(final K key, final Loader<K, V> loader) {
+		V value = get(key);
+		if (value != null) {
+			return value;
+		}
+
+		FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+			@Override
+			public V call() throws Exception {
+				return loader.load(key);
+			}
+		});
+		FutureTask<V> pending = loading.putIfAbsent(key, task);
+		if (pending == null) {
+			// this thread loads the value
+			try {
+				synchronized (this) {
+					// a concurrent load may have completed since the miss
+					Entry<V> entry = getEntry(key);
+					if (entry != null) {
+						return entry.value;
+					}
+				}
+				task.run();
+				value = await(task);
+				synchronized (this) {
+					loads++;
+					// do not resurrect a key removed while loading and do not
+					// replace a value put while loading
+					if (!invalidated.remove(task) && value != null && getEntry(key) == null) {
+						put(key, value);
+					}
+				}
+			} finally {
+				synchronized (this) {
+					invalidated.remove(task);
+				}
+				loading.remove(key, task);
+			}
+			return value;
+		}
+		// another thread is loading the value
+		return await(pending);
+	}
+
+	private V await(FutureTask<V> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	@Override
+	public synchronized void put(K key, V value) {
+		if (value == null) {
+			remove(key);
+			return;
+		}
+		long w = weigher == null ? 1 : weigher.weigh(key, value);
+		if (maxWeight > 0 && w > maxWeight) {
+			// entry can never fit
+			remove(key);
+			return;
+		}
+		Entry<V> old = entries.put(key, new Entry<V>(value, w));
+		if (old != null) {
+			weight -= old.weight;
+		}
+		weight += w;
+
+		// evict least-recently used entries
+		Iterator<Map.Entry<K, Entry<V>>> itr = entries.entrySet().iterator();
+		while (itr.hasNext() && ((maxEntries > 0 && entries.size() > maxEntries)
+				|| (maxWeight > 0 && weight > maxWeight))) {
+			Entry<V> eldest = itr.next().getValue();
+			weight -= eldest.weight;
+			itr.remove();
+			evictions++;
+		}
+	}
+
+	@Override
+	public synchronized void putAll(Map<K, V> map) {
+		for (Map.Entry<K, V> entry : map.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public synchronized V remove(K key) {
+		FutureTask<V> task = loading.get(key);
+		if (task != null) {
+			invalidated.add(task);
+		}
+		Entry<V> entry = entries.remove(key);
+		if (entry == null) {
+			return null;
+		}
+		weight -= entry.weight;
+		return entry.value;
+	}
+
+	@Override
+	public synchronized boolean containsKey(K key) {
+		return getEntry(key) != null;
+	}
+
+	@Override
+	public synchronized void clear() {
+		invalidated.addAll(loading.values());
+		entries.clear();
+		weight = 0;
+	}
+
+	@Override
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	@Override
+	public synchronized boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	@Override
+	public synchronized List<K> keys() {
+		return new ArrayList<K>(entries.keySet());
+	}
+
+	@Override
+	public synchronized List<V> values() {
+		List<V> list = new ArrayList<V>(entries.size());
+		for (Entry<V> entry : entries.values()) {
+			list.add(entry.value);
+		}
+		return list;
+	}
+
+	@Override
+	public synchronized Map<K, V> asMap() {
+		Map<K, V> map = new LinkedHashMap<K, V>();
+		for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+			map.put(entry.getKey(), entry.getValue().value);
+		}
+		return map;
+	}
+
+	@Override
+	public synchronized CacheStats getStats() {
+		CacheStats stats = new CacheStats(name);
+		stats.size = entries.size();
+		stats.weight = weight;
+		stats.hits = hits;
+		stats.misses = misses;
+		stats.loads = loads;
+		stats.evictions = evictions;
+		stats.expirations = expirations;
+		return stats;
+	}
+
+	/**
+	 * Returns the live entry for the key, removing it if it has expired.
+	 */
+	private Entry<V> getEntry(K key) {
+		Entry<V> entry = entries.get(key);
+		if (entry != null && ttl > 0 && System.currentTimeMillis() - entry.created > ttl) {
+			entries.remove(key);
+			weight -= entry.weight;
+			expirations++;
+			return null;
+		}
+		return entry;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ": " + name;
+	}
+}
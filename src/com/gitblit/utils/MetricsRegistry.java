@@ -0,0 +1,427 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.gitblit.models.CacheStats;
+
+/**
+ * Registry of server performance metrics: counters, gauges, and latency
+ * histograms. A metric is identified by its name and optional label pairs.
+ * The registry is rendered in the Prometheus text exposition format.
+ *
+ * All metrics are lock-free to record.
+ *
+ * @author James Moger
+ *
+ */
+public class MetricsRegistry {
+
+	/**
+	 * The upper bounds, in seconds, of the histogram buckets.
+	 */
+	private static final double[] BUCKETS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5,
+			5, 10, 30, 60, 300 };
+
+	private static enum Type {
+		COUNTER, GAUGE, HISTOGRAM;
+
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	/**
+	 * A gauge reports a value when the metrics are read.
+	 */
+	public static interface Gauge {
+		double getValue();
+	}
+
+	/**
+	 * Provides the current statistics of a cache.
+	 */
+	public static interface CacheSource {
+		CacheStats getStats();
+	}
+
+	/**
+	 * A monotonically increasing count.
+	 */
+	public static class Counter {
+
+		private final AtomicLong count = new AtomicLong();
+
+		public void inc() {
+			count.incrementAndGet();
+		}
+
+		public void inc(long n) {
+			count.addAndGet(n);
+		}
+
+		public long get() {
+			return count.get();
+		}
+	}
+
+	/**
+	 * A histogram of durations with fixed bucket bounds.
+	 */
+	public static class Histogram {
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length);
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong sumNanos = new AtomicLong();
+
+		/**
+		 * Records a duration.
+		 *
+		 * @param nanos
+		 *            the duration in nanoseconds
+		 */
+		public void observe(long nanos) {
+			double seconds = nanos / 1e9d;
+			for (int i = 0; i < BUCKETS.length; i++) {
+				if (seconds <= BUCKETS[i]) {
+					buckets.incrementAndGet(i);
+					break;
+				}
+			}
+			count.incrementAndGet();
+			sumNanos.addAndGet(nanos);
+		}
+
+		/**
+		 * Records the duration since the start time.
+		 *
+		 * @param startNanos
+		 *            a start time from System.nanoTime()
+		 */
+		public void observeSince(long startNanos) {
+			observe(System.nanoTime() - startNanos);
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * @return the sum of all the recorded durations in seconds
+		 */
+		public double getSum() {
+			return sumNanos.get() / 1e9d;
+		}
+	}
+
+	private static class Family {
+
+		final String name;
+
+		final String help;
+
+		final Type type;
+
+		final ConcurrentMap<String, Object> series = new ConcurrentSkipListMap<String, Object>();
+
+		Family(String name, String help, Type type) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+	}
+
+	private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<String, Family>();
+
+	/**
+	 * Returns the counter for the name and labels, creating it if necessary.
+	 *
+	 * @param name
+	 * @param help
+	 * @param labels
+	 *            alternating label names and values
+	 * @return a counter
+	 */
+	public Counter counter(String name, String help, String... labels) {
+		return (Counter) getSeries(name, help, Type.COUNTER, labels);
+	}
+
+	/**
+	 * Registers a counter whose count is maintained elsewhere, e.g. the hits
+	 * of a cache.
+	 *
+	 * @param name
+	 * @param help
+	 * @param count
+	 * @param labels
+	 *            alternating label names and values
+	 */
+	public void counter(String name, String help, Gauge count, String... labels) {
+		family(name, help, Type.COUNTER).series.put(labels(labels), count);
+	}
+
+	/**
+	 * Registers a gauge.
+	 *
+	 * @param name
+	 * @param help
+	 * @param gauge
+	 * @param labels
+	 *            alternating label names and values
+	 */
+	public void gauge(String name, String help, Gauge gauge, String... labels) {
+		family(name, help, Type.GAUGE).series.put(labels(labels), gauge);
+	}
+
+	/**
+	 * Returns the histogram for the name and labels, creating it if
+	 * necessary.
+	 *
+	 * @param name
+	 * @param help
+	 * @param labels
+	 *            alternating label names and values
+	 * @return a histogram
+	 */
+	public Histogram histogram(String name, String help, String... labels) {
+		return (Histogram) getSeries(name, help, Type.HISTOGRAM, labels);
+	}
+
+	/**
+	 * Registers the size, weight, hit, miss, load, and eviction metrics of a
+	 * cache.
+	 *
+	 * @param source
+	 */
+	public void cache(final CacheSource source) {
+		String cache = source.getStats().name;
+		gauge("gitblit_cache_size", "Number of cache entries", new Gauge() {
+			@Override
+			public double getValue() {
+				return source.getStats().size;
+			}
+		}, "cache", cache);
+		gauge("gitblit_cache_weight", "Weight of the cache entries", new Gauge() {
+			@Override
+			public double getValue() {
+				return source.getStats().weight;
+			}
+		}, "cache", cache);
+		counter("gitblit_cache_hits_total", "Cache hits", new Gauge() {
+			@Override
+			public double getValue() {
+				return source.getStats().hits;
+			}
+		}, "cache", cache);
+		counter("gitblit_cache_misses_total", "Cache misses", new Gauge() {
+			@Override
+			public double getValue() {
+				return source.getStats().misses;
+			}
+		}, "cache", cache);
+		counter("gitblit_cache_loads_total", "Cache loads", new Gauge() {
+			@Override
+			public double getValue() {
+				return source.getStats().loads;
+			}
+		}, "cache", cache);
+		counter("gitblit_cache_evictions_total", "Cache evictions", new Gauge() {
+			@Override
+			public double getValue() {
+				return source.getStats().evictions;
+			}
+		}, "cache", cache);
+	}
+
+	private Object getSeries(String name, String help, Type type, String[] labels) {
+		Family family = family(name, help, type);
+		String key = labels(labels);
+		Object series = family.series.get(key);
+		if (series == null) {
+			Object metric = type == Type.HISTOGRAM ? new Histogram() : new Counter();
+			series = family.series.putIfAbsent(key, metric);
+			if (series == null) {
+				series = metric;
+			}
+		}
+		return series;
+	}
+
+	private Family family(String name, String help, Type type) {
+		Family family = families.get(name);
+		if (family == null) {
+			Family f = new Family(name, help, type);
+			family = families.putIfAbsent(name, f);
+			if (family == null) {
+				family = f;
+			}
+		}
+		if (family.type != type) {
+			throw new IllegalArgumentException(name + " is already registered as a "
+					+ family.type);
+		}
+		return family;
+	}
+
+	/**
+	 * Formats the label pairs as a Prometheus label set.
+	 */
+	private static String labels(String... labels) {
+		if (labels == null || labels.length == 0) {
+			return "";
+		}
+		if (labels.length % 2 != 0) {
+			throw new IllegalArgumentException("labels must be name and value pairs");
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append('{');
+		for (int i = 0; i < labels.length; i += 2) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(labels[i]).append("=\"");
+			String value = labels[i + 1] == null ? "" : labels[i + 1];
+			for (char c : value.toCharArray()) {
+				switch (c) {
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '"':
+					sb.append("\\\"");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				default:
+					sb.append(c);
+				}
+			}
+			sb.append('"');
+		}
+		sb.append('}');
+		return sb.toString();
+	}
+
+	/**
+	 * Adds a label to a label set.
+	 */
+	private static String label(String labels, String name, String value) {
+		String label = name + "=\"" + value + "\"";
+		if (labels.length() == 0) {
+			return "{" + label + "}";
+		}
+		return labels.substring(0, labels.length() - 1) + "," + label + "}";
+	}
+
+	private static double value(Object series) {
+		if (series instanceof Counter) {
+			return ((Counter) series).get();
+		}
+		try {
+			return ((Gauge) series).getValue();
+		} catch (Exception e) {
+			return Double.NaN;
+		}
+	}
+
+	private static String format(double value) {
+		if (Double.isNaN(value)) {
+			return "NaN";
+		} else if (Double.isInfinite(value)) {
+			return value > 0 ? "+Inf" : "-Inf";
+		} else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	/**
+	 * Writes the metrics in the Prometheus text exposition format, version
+	 * 0.0.4.
+	 *
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void write(Writer writer) throws IOException {
+		for (Family family : families.values()) {
+			if (family.series.isEmpty()) {
+				continue;
+			}
+			writer.append("# HELP ").append(family.name).append(' ');
+			writer.append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+			writer.append("# TYPE ").append(family.name).append(' ');
+			writer.append(family.type.toString()).append('\n');
+			for (Map.Entry<String, Object> entry : family.series.entrySet()) {
+				String labels = entry.getKey();
+				if (family.type == Type.HISTOGRAM) {
+					Histogram histogram = (Histogram) entry.getValue();
+					long cumulative = 0;
+					for (int i = 0; i < BUCKETS.length; i++) {
+						cumulative += histogram.buckets.get(i);
+						writer.append(family.name).append("_bucket");
+						writer.append(label(labels, "le", Double.toString(BUCKETS[i])));
+						writer.append(' ').append(Long.toString(cumulative)).append('\n');
+					}
+					long count = histogram.getCount();
+					writer.append(family.name).append("_bucket").append(label(labels, "le", "+Inf"));
+					writer.append(' ').append(Long.toString(count)).append('\n');
+					writer.append(family.name).append("_sum").append(labels);
+					writer.append(' ').append(format(histogram.getSum())).append('\n');
+					writer.append(family.name).append("_count").append(labels);
+					writer.append(' ').append(Long.toString(count)).append('\n');
+				} else {
+					writer.append(family.name).append(labels);
+					writer.append(' ').append(format(value(entry.getValue()))).append('\n');
+				}
+			}
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Returns a snapshot of the current metric values keyed by name and label
+	 * set. Histograms are summarized by their count and sum.
+	 *
+	 * @return a sorted map of metric values
+	 */
+	public Map<String, Double> getSnapshot() {
+		Map<String, Double> snapshot = new TreeMap<String, Double>();
+		for (Family family : families.values()) {
+			for (Map.Entry<String, Object> entry : family.series.entrySet()) {
+				String labels = entry.getKey();
+				if (family.type == Type.HISTOGRAM) {
+					Histogram histogram = (Histogram) entry.getValue();
+					snapshot.put(family.name + "_count" + labels, (double) histogram.getCount());
+					snapshot.put(family.name + "_sum" + labels, histogram.getSum());
+				} else {
+					snapshot.put(family.name + labels, value(entry.getValue()));
+				}
+			}
+		}
+		return snapshot;
+	}
+}
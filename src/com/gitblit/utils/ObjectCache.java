@@ -27,8 +27,10 @@ import java.util.concurrent.ConcurrentHashMap;
  * is just fine.
  * 
  * @author James Moger
+ * @deprecated use {@link MemoryCache} keyed by name and date
  * 
  */
+@Deprecated
 public class ObjectCache<X> implements Serializable {
 
 	private static final long serialVersionUID = 1L;
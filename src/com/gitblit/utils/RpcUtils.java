@@ -26,10 +26,12 @@ import com.gitblit.Constants;
 import com.gitblit.Constants.RpcRequest;
 import com.gitblit.GitBlitException.UnknownRequestException;
 import com.gitblit.models.RegistrantAccessPermission;
+import com.gitblit.models.FederationChanges;
 import com.gitblit.models.FederationModel;
 import com.gitblit.models.FederationProposal;
 import com.gitblit.models.FederationSet;
 import com.gitblit.models.FeedModel;
+import com.gitblit.models.ListPage;
 import com.gitblit.models.RepositoryModel;
 import com.gitblit.models.ServerSettings;
 import com.gitblit.models.ServerStatus;
@@ -590,6 +592,64 @@ public class RpcUtils {
 		return branches;
 	}
 
+	/**
+	 * Retrieves a page of a paged list request, e.g. LIST_REPOSITORIES_PAGE.
+	 * Pages are ordered by name. Pass the cursor of the returned page to
+	 * retrieve the next page.
+	 * 
+	 * @param serverUrl
+	 * @param req
+	 *            the paged list request
+	 * @param prefix
+	 *            the name prefix of the listed objects, may be null
+	 * @param cursor
+	 *            the cursor of the previous page, null for the first page
+	 * @param size
+	 *            the page size, if <= 0 the server default is used
+	 * @param account
+	 * @param password
+	 * @return the page
+	 * @throws IOException
+	 */
+	public static ListPage getPage(String serverUrl, RpcRequest req, String prefix,
+			String cursor, int size, String account, char[] password) throws IOException {
+		StringBuilder url = new StringBuilder(asLink(serverUrl, req));
+		if (!StringUtils.isEmpty(prefix)) {
+			url.append("&prefix=").append(StringUtils.encodeURL(prefix));
+		}
+		if (!StringUtils.isEmpty(cursor)) {
+			url.append("&cursor=").append(StringUtils.encodeURL(cursor));
+		}
+		if (size > 0) {
+			url.append("&size=").append(size);
+		}
+		return JsonUtils.retrieveJson(url.toString(), ListPage.class, account, password);
+	}
+
+	/**
+	 * Retrieves the repositories, users, or teams which have changed since the
+	 * specified version. If the version is unknown to the server, e.g. the
+	 * server has restarted, all objects are returned and <i>full</i> is set.
+	 * 
+	 * @param serverUrl
+	 * @param type
+	 *            repository, user, or team
+	 * @param since
+	 *            the version of the previous changes, null for all objects
+	 * @param account
+	 * @param password
+	 * @return the changes
+	 * @throws IOException
+	 */
+	public static FederationChanges getChanges(String serverUrl, String type, String since,
+			String account, char[] password) throws IOException {
+		String url = asLink(serverUrl, RpcRequest.LIST_CHANGES, type);
+		if (!StringUtils.isEmpty(since)) {
+			url += "&since=" + StringUtils.encodeURL(since);
+		}
+		return JsonUtils.retrieveJson(url, FederationChanges.class, account, password);
+	}
+
 	/**
 	 * Retrieves a list of available branch feeds in the Gitblit server.
 	 * 
@@ -19,10 +19,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.net.HttpURLConnection;
 import java.net.URLConnection;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import com.gitblit.Constants;
 import com.gitblit.GitBlitException;
@@ -116,6 +119,26 @@ public class SyndicationUtils {
 		writer.close();
 	}
 
+	/**
+	 * A feed which has been read from a Gitblit server.
+	 */
+	public static class Feed implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The entity tag of the feed, null if the server did not send one.
+		 */
+		public final String etag;
+
+		public final List<FeedEntryModel> entries;
+
+		Feed(String etag, List<FeedEntryModel> entries) {
+			this.etag = etag;
+			this.entries = entries;
+		}
+	}
+
 	/**
 	 * Reads a Gitblit RSS feed.
 	 * 
@@ -137,6 +160,34 @@ public class SyndicationUtils {
 	 */
 	public static List<FeedEntryModel> readFeed(String url, String repository, String branch,
 			int numberOfEntries, int page, String username, char[] password) throws IOException {
+		return readFeed(url, repository, branch, numberOfEntries, page, null, username, password).entries;
+	}
+
+	/**
+	 * Reads a Gitblit RSS feed unless it has not changed since it was
+	 * previously read.
+	 * 
+	 * @param url
+	 *            the url of the Gitblit server
+	 * @param repository
+	 *            the repository name
+	 * @param branch
+	 *            the branch name (optional)
+	 * @param numberOfEntries
+	 *            the number of entries to retrieve. if <= 0 the server default
+	 *            is used.
+	 * @param page
+	 *            0-indexed. used to paginate the results.
+	 * @param previous
+	 *            the previously read feed, may be null
+	 * @param username
+	 * @param password
+	 * @return the feed, which is the previous feed if it has not changed
+	 * @throws {@link IOException}
+	 */
+	public static Feed readFeed(String url, String repository, String branch,
+			int numberOfEntries, int page, Feed previous, String username, char[] password)
+			throws IOException {
 		// build feed url
 		List<String> parameters = new ArrayList<String>();
 		if (numberOfEntries > 0) {
@@ -148,7 +199,7 @@ public class SyndicationUtils {
 		if (!StringUtils.isEmpty(branch)) {
 			parameters.add("h=" + branch);
 		}
-		return readFeed(url, parameters, repository, branch, username, password);
+		return readFeed(url, parameters, repository, branch, previous, username, password);
 	}
 
 	/**
@@ -190,7 +241,7 @@ public class SyndicationUtils {
 		if (searchType != null) {
 			parameters.add("st=" + searchType.name());
 		}
-		return readFeed(url, parameters, repository, branch, username, password);
+		return readFeed(url, parameters, repository, branch, null, username, password).entries;
 	}
 
 	/**
@@ -202,13 +253,15 @@ public class SyndicationUtils {
 	 *            the list of RSS parameters
 	 * @param repository
 	 *            the repository name
+	 * @param previous
+	 *            the previously read feed, may be null
 	 * @param username
 	 * @param password
-	 * @return a list of SyndicationModel entries
+	 * @return the feed, which is the previous feed if it has not changed
 	 * @throws {@link IOException}
 	 */
-	private static List<FeedEntryModel> readFeed(String url, List<String> parameters,
-			String repository, String branch, String username, char[] password) throws IOException {
+	private static Feed readFeed(String url, List<String> parameters, String repository,
+			String branch, Feed previous, String username, char[] password) throws IOException {
 		// build url
 		StringBuilder sb = new StringBuilder();
 		sb.append(MessageFormat.format("{0}" + Constants.SYNDICATION_PATH + "{1}", url, repository));
@@ -226,7 +279,17 @@ public class SyndicationUtils {
 		}
 		String feedUrl = sb.toString();
 		URLConnection conn = ConnectionUtils.openReadConnection(feedUrl, username, password);
+		if (previous != null && previous.etag != null) {
+			conn.setRequestProperty("If-None-Match", previous.etag);
+		}
+		if (previous != null && conn instanceof HttpURLConnection
+				&& ((HttpURLConnection) conn).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			return previous;
+		}
 		InputStream is = conn.getInputStream();
+		if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+			is = new GZIPInputStream(is);
+		}
 		SyndFeedInput input = new SyndFeedInput();
 		SyndFeed feed = null;
 		try {
@@ -257,6 +320,6 @@ public class SyndicationUtils {
 			}
 			entries.add(model);
 		}
-		return entries;
+		return new Feed(conn.getHeaderField("ETag"), entries);
 	}
 }
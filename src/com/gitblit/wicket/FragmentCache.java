@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.wicket;
+
+import com.gitblit.models.CacheStats;
+import com.gitblit.utils.ICache;
+import com.gitblit.utils.MemoryCache;
+
+/**
+ * Memory-bounded, least-recently-used cache of rendered html fragments.
+ *
+ * Fragments are keyed by the immutable objects they were rendered from (e.g.
+ * a commit id and a path) so a cached fragment never needs to be invalidated,
+ * it is only evicted when the cache exceeds its memory budget.
+ *
+ * @author James Moger
+ *
+ */
+public class FragmentCache {
+
+	private final long maxWeight;
+
+	private final ICache<String, String> fragments;
+
+	/**
+	 * Creates a fragment cache.
+	 *
+	 * @param maxWeight
+	 *            the approximate maximum number of bytes to retain, if <= 0
+	 *            the cache is disabled
+	 */
+	public FragmentCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+		this.fragments = new MemoryCache<String, String>("fragments", 0, Math.max(1, maxWeight),
+				0, new ICache.Weigher<String, String>() {
+					@Override
+					public long weigh(String key, String fragment) {
+						return FragmentCache.weigh(key, fragment);
+					}
+				});
+	}
+
+	public boolean isEnabled() {
+		return maxWeight > 0;
+	}
+
+	/**
+	 * Returns the cached fragment or null.
+	 *
+	 * @param key
+	 * @return the fragment or null
+	 */
+	public String get(String key) {
+		if (!isEnabled()) {
+			return null;
+		}
+		return fragments.get(key);
+	}
+
+	/**
+	 * Caches a fragment, evicting the least-recently used fragments if the
+	 * memory budget is exceeded. Fragments larger than a quarter of the budget
+	 * are not cached.
+	 *
+	 * @param key
+	 * @param fragment
+	 */
+	public void put(String key, String fragment) {
+		if (!isEnabled() || fragment == null) {
+			return;
+		}
+		if (weigh(key, fragment) > maxWeight / 4) {
+			return;
+		}
+		fragments.put(key, fragment);
+	}
+
+	public void clear() {
+		fragments.clear();
+	}
+
+	public int size() {
+		return fragments.size();
+	}
+
+	public long getWeight() {
+		return fragments.getStats().weight;
+	}
+
+	public CacheStats getStats() {
+		return fragments.getStats();
+	}
+
+	private static long weigh(String key, String fragment) {
+		// chars are 2 bytes plus a rough per-entry overhead
+		return 2L * (key.length() + fragment.length()) + 64;
+	}
+}
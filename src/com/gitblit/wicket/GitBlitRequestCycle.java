@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.wicket;
+
+import org.apache.wicket.Page;
+import org.apache.wicket.protocol.http.WebApplication;
+import org.apache.wicket.protocol.http.WebRequest;
+import org.apache.wicket.protocol.http.WebRequestCycle;
+import org.apache.wicket.protocol.http.WebResponse;
+
+import com.gitblit.GitBlit;
+
+/**
+ * Request cycle which records the latency of page requests by page class.
+ *
+ * @author James Moger
+ *
+ */
+public class GitBlitRequestCycle extends WebRequestCycle {
+
+	private long start;
+
+	public GitBlitRequestCycle(WebApplication application, WebRequest request,
+			WebResponse response) {
+		super(application, request, response);
+	}
+
+	@Override
+	protected void onBeginRequest() {
+		super.onBeginRequest();
+		start = System.nanoTime();
+	}
+
+	@Override
+	protected void onEndRequest() {
+		super.onEndRequest();
+		String page;
+		Page responsePage = getResponsePage();
+		if (responsePage != null) {
+			page = responsePage.getClass().getSimpleName();
+		} else if (getResponsePageClass() != null) {
+			page = getResponsePageClass().getSimpleName();
+		} else {
+			// shared resources, e.g. css and images
+			page = "resource";
+		}
+		GitBlit.self().getMetrics()
+				.histogram("gitblit_page_duration_seconds", "Latency of web page requests",
+						"page", page).observeSince(start);
+	}
+}
@@ -18,13 +18,18 @@ package com.gitblit.wicket;
 import org.apache.wicket.Application;
 import org.apache.wicket.Page;
 import org.apache.wicket.Request;
+import org.apache.wicket.RequestCycle;
 import org.apache.wicket.Response;
 import org.apache.wicket.Session;
 import org.apache.wicket.markup.html.WebPage;
 import org.apache.wicket.protocol.http.WebApplication;
+import org.apache.wicket.protocol.http.WebRequest;
+import org.apache.wicket.protocol.http.WebResponse;
 
 import com.gitblit.GitBlit;
 import com.gitblit.Keys;
+import com.gitblit.models.CacheStats;
+import com.gitblit.utils.MetricsRegistry;
 import com.gitblit.wicket.pages.ActivityPage;
 import com.gitblit.wicket.pages.BlamePage;
 import com.gitblit.wicket.pages.BlobDiffPage;
@@ -60,10 +65,34 @@ import com.gitblit.wicket.pages.UsersPage;
 
 public class GitBlitWebApp extends WebApplication {
 
+	private FragmentCache fragmentCache;
+
+	private MarkdownCache markdownCache;
+
 	@Override
 	public void init() {
 		super.init();
 
+		// rendered fragment cache for commit-addressed pages
+		fragmentCache = new FragmentCache(GitBlit.getFilesize(Keys.web.fragmentCacheSize,
+				32 * 1024 * 1024L));
+		GitBlit.self().getMetrics().cache(new MetricsRegistry.CacheSource() {
+			@Override
+			public CacheStats getStats() {
+				return fragmentCache.getStats();
+			}
+		});
+
+		// transformed markdown cache for readmes, documents, and messages
+		markdownCache = new MarkdownCache(GitBlit.getFilesize(Keys.web.markdownCacheSize,
+				8 * 1024 * 1024L));
+		GitBlit.self().getMetrics().cache(new MetricsRegistry.CacheSource() {
+			@Override
+			public CacheStats getStats() {
+				return markdownCache.getStats();
+			}
+		});
+
 		// Setup page authorization mechanism
 		boolean useAuthentication = GitBlit.getBoolean(Keys.web.authenticateViewPages, false)
 				|| GitBlit.getBoolean(Keys.web.authenticateAdminPages, false);
@@ -139,6 +168,11 @@ public class GitBlitWebApp extends WebApplication {
 		return RepositoriesPage.class;
 	}
 	
+	@Override
+	public RequestCycle newRequestCycle(Request request, Response response) {
+		return new GitBlitRequestCycle(this, (WebRequest) request, (WebResponse) response);
+	}
+
 	@Override
 	public final Session newSession(Request request, Response response) {
 		return new GitBlitWebSession(request);
@@ -152,6 +186,24 @@ public class GitBlitWebApp extends WebApplication {
 		return Application.DEPLOYMENT;
 	}
 
+	/**
+	 * Returns the cache of rendered html fragments.
+	 * 
+	 * @return the fragment cache
+	 */
+	public FragmentCache getFragmentCache() {
+		return fragmentCache;
+	}
+
+	/**
+	 * Returns the cache of transformed markdown.
+	 * 
+	 * @return the markdown cache
+	 */
+	public MarkdownCache getMarkdownCache() {
+		return markdownCache;
+	}
+
 	public static GitBlitWebApp get() {
 		return (GitBlitWebApp) WebApplication.get();
 	}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.wicket;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.text.ParseException;
+
+import org.apache.wicket.util.resource.ResourceStreamNotFoundException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+import com.gitblit.GitBlit;
+import com.gitblit.models.CacheStats;
+import com.gitblit.utils.ICache;
+import com.gitblit.utils.JGitUtils;
+import com.gitblit.utils.MarkdownUtils;
+import com.gitblit.utils.MemoryCache;
+
+/**
+ * Memory-bounded, least-recently-used cache of transformed markdown.
+ *
+ * Markdown blobs are keyed by their blob id so the html of a README or
+ * document is shared by all commits, branches, and forks which contain the
+ * same blob. Server-side files are keyed by their path, modification date,
+ * and length, and web application resources by their name. Markdown which
+ * fails to transform is not cached.
+ *
+ * @author James Moger
+ *
+ */
+public class MarkdownCache {
+
+	private final long maxWeight;
+
+	private final ICache<String, String> documents;
+
+	/**
+	 * Creates a markdown cache.
+	 *
+	 * @param maxWeight
+	 *            the approximate maximum number of bytes to retain, if <= 0
+	 *            the cache is disabled
+	 */
+	public MarkdownCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+		this.documents = new MemoryCache<String, String>("markdown", 0, Math.max(1, maxWeight),
+				0, new ICache.Weigher<String, String>() {
+					@Override
+					public long weigh(String key, String html) {
+						return MarkdownCache.weigh(key, html);
+					}
+				});
+	}
+
+	public boolean isEnabled() {
+		return maxWeight > 0;
+	}
+
+	/**
+	 * Returns the html of a markdown blob. The blob is only read and
+	 * transformed if its html is not cached.
+	 *
+	 * @param repository
+	 * @param blobId
+	 * @param encodings
+	 * @return the html of the blob
+	 * @throws ParseException
+	 */
+	public String transform(Repository repository, ObjectId blobId, String... encodings)
+			throws ParseException {
+		if (blobId == null) {
+			throw new ParseException("Markdown blob not found!", 0);
+		}
+		String key = "blob:" + blobId.getName();
+		String html = get(key);
+		if (html == null) {
+			String markdown = JGitUtils.getStringContent(repository, blobId.getName(), encodings);
+			html = MarkdownUtils.transformMarkdown(markdown);
+			put(key, html);
+		}
+		return html;
+	}
+
+	/**
+	 * Returns the html of a markdown file. The file is only read and
+	 * transformed if it has changed since it was cached.
+	 *
+	 * @param file
+	 * @return the html of the file
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public String transform(File file) throws IOException, ParseException {
+		String key = "file:" + file.getAbsolutePath() + ":" + file.lastModified() + ":"
+				+ file.length();
+		String html = get(key);
+		if (html == null) {
+			html = transform(new FileInputStream(file));
+			put(key, html);
+		}
+		return html;
+	}
+
+	/**
+	 * Returns the html of a markdown resource of the web application.
+	 *
+	 * @param resource
+	 * @return the html of the resource
+	 * @throws ResourceStreamNotFoundException
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public String transformResource(String resource) throws ResourceStreamNotFoundException,
+			IOException, ParseException {
+		String key = "resource:" + resource;
+		String html = get(key);
+		if (html == null) {
+			html = transform(GitBlit.self().getResourceAsStream(resource));
+			put(key, html);
+		}
+		return html;
+	}
+
+	public void clear() {
+		documents.clear();
+	}
+
+	public int size() {
+		return documents.size();
+	}
+
+	public CacheStats getStats() {
+		return documents.getStats();
+	}
+
+	private String get(String key) {
+		if (!isEnabled()) {
+			return null;
+		}
+		return documents.get(key);
+	}
+
+	private void put(String key, String html) {
+		if (!isEnabled() || html == null) {
+			return;
+		}
+		if (weigh(key, html) > maxWeight / 4) {
+			// do not let one huge document flush the cache
+			return;
+		}
+		documents.put(key, html);
+	}
+
+	private static String transform(InputStream is) throws IOException, ParseException {
+		InputStreamReader reader = new InputStreamReader(is, Constants.CHARACTER_ENCODING);
+		try {
+			return MarkdownUtils.transformMarkdown(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static long weigh(String key, String html) {
+		// chars are 2 bytes plus a rough per-entry overhead
+		return 2L * (key.length() + html.length()) + 64;
+	}
+}
@@ -48,13 +48,26 @@ public class BlobDiffPage extends RepositoryPage {
 		String diff;
 		if (StringUtils.isEmpty(baseObjectId)) {
 			// use first parent
-			diff = DiffUtils.getDiff(r, commit, blobPath, diffType);
+			String diffKey = "blobdiff:" + diffType.name() + ":" + commit.getName() + ":" + blobPath;
+			diff = getCachedFragment(diffKey);
+			if (diff == null) {
+				diff = DiffUtils.getDiff(r, commit, blobPath, diffType);
+				cacheFragment(diffKey, diff);
+			}
 			add(new BookmarkablePageLink<Void>("patchLink", PatchPage.class,
 					WicketUtils.newPathParameter(repositoryName, objectId, blobPath)));
 		} else {
 			// base commit specified
 			RevCommit baseCommit = JGitUtils.getCommit(r, baseObjectId);
-			diff = DiffUtils.getDiff(r, baseCommit, commit, blobPath, diffType);
+			// an unresolved base is diffed against the first parent
+			String diffKey = "blobdiff:" + diffType.name() + ":"
+					+ (baseCommit == null ? "" : (baseCommit.getName() + ".."))
+					+ commit.getName() + ":" + blobPath;
+			diff = getCachedFragment(diffKey);
+			if (diff == null) {
+				diff = DiffUtils.getDiff(r, baseCommit, commit, blobPath, diffType);
+				cacheFragment(diffKey, diff);
+			}
 			add(new BookmarkablePageLink<Void>("patchLink", PatchPage.class,
 					WicketUtils.newBlobDiffParameter(repositoryName, baseObjectId, objectId,
 							blobPath)));
@@ -82,4 +95,9 @@ public class BlobDiffPage extends RepositoryPage {
 	protected String getPageName() {
 		return getString("gb.diff");
 	}
+
+	@Override
+	protected boolean isCommitAddressed() {
+		return true;
+	}
 }
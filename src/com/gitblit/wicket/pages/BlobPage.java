@@ -16,6 +16,7 @@
 package com.gitblit.wicket.pages;
 
 import java.text.MessageFormat;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -123,21 +124,36 @@ public class BlobPage extends RepositoryPage {
 					break;
 				default:
 					// plain text
-					String source = JGitUtils.getStringContent(r, commit.getTree(), blobPath, encodings);
-					String table = generateSourceView(source, type == 1);
+					String table = getSourceView(r, commit, blobPath, encodings, type == 1);
 					add(new Label("blobText", table).setEscapeModelStrings(false));
 					add(new Image("blobImage").setVisible(false));
 				}
 			} else {
 				// plain text
-				String source = JGitUtils.getStringContent(r, commit.getTree(), blobPath, encodings);
-				String table = generateSourceView(source, false);
+				String table = getSourceView(r, commit, blobPath, encodings, false);
 				add(new Label("blobText", table).setEscapeModelStrings(false));
 				add(new Image("blobImage").setVisible(false));
 			}
 		}
 	}
 	
+	/**
+	 * Returns the rendered source view of the blob, using the fragment cache
+	 * if the blob has already been rendered at this commit.
+	 */
+	private String getSourceView(Repository r, RevCommit commit, String blobPath,
+			String [] encodings, boolean prettyPrint) {
+		String key = "blob:" + commit.getName() + ":" + blobPath + ":" + prettyPrint + ":"
+				+ StringUtils.flattenStrings(Arrays.asList(encodings), ",");
+		String table = getCachedFragment(key);
+		if (table == null) {
+			String source = JGitUtils.getStringContent(r, commit.getTree(), blobPath, encodings);
+			table = generateSourceView(source, prettyPrint);
+			cacheFragment(key, table);
+		}
+		return table;
+	}
+
 	protected String generateSourceView(String source, boolean prettyPrint) {
 		String [] lines = source.split("\n");
 		
@@ -191,4 +207,9 @@ public class BlobPage extends RepositoryPage {
 	protected String getPageName() {
 		return getString("gb.view");
 	}
+
+	@Override
+	protected boolean isCommitAddressed() {
+		return true;
+	}
 }
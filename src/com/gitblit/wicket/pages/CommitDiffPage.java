@@ -65,15 +65,20 @@ public class CommitDiffPage extends RepositoryPage {
 			commit = getCommit();
 		}
 
-		String diff;
-
-		if(otherCommit == null)
-		{
-			diff = DiffUtils.getCommitDiff(r, commit, diffType);
-		}
-		else
-		{
-			diff = DiffUtils.getDiff(r, commit, otherCommit, diffType);
+		String diffKey = "commitdiff:" + diffType.name() + ":" + commit.getName()
+				+ (otherCommit == null ? "" : (".." + otherCommit.getName()));
+		String diff = getCachedFragment(diffKey);
+
+		if (diff == null) {
+			if(otherCommit == null)
+			{
+				diff = DiffUtils.getCommitDiff(r, commit, diffType);
+			}
+			else
+			{
+				diff = DiffUtils.getDiff(r, commit, otherCommit, diffType);
+			}
+			cacheFragment(diffKey, diff);
 		}
 
 		List<String> parents = new ArrayList<String>();
@@ -184,6 +189,11 @@ public class CommitDiffPage extends RepositoryPage {
 		return getString("gb.commitdiff");
 	}
 
+	@Override
+	protected boolean isCommitAddressed() {
+		return true;
+	}
+
 	private RevCommit getCommit(Repository r, String rev)
 	{
 		RevCommit otherCommit = JGitUtils.getCommit(r, rev);
@@ -217,4 +217,9 @@ public class CommitPage extends RepositoryPage {
 	protected String getPageName() {
 		return getString("gb.commit");
 	}
+
+	@Override
+	protected boolean isCommitAddressed() {
+		return true;
+	}
 }
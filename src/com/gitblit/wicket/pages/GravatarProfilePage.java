@@ -22,8 +22,11 @@ import org.apache.wicket.PageParameters;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.link.ExternalLink;
 
+import com.gitblit.AvatarServlet;
+import com.gitblit.GitBlit;
+import com.gitblit.Keys;
 import com.gitblit.models.GravatarProfile;
-import com.gitblit.utils.ActivityUtils;
+import com.gitblit.utils.StringUtils;
 import com.gitblit.wicket.ExternalImage;
 import com.gitblit.wicket.WicketUtils;
 
@@ -41,11 +44,11 @@ public class GravatarProfilePage extends RootPage {
 		String object = WicketUtils.getObject(params);
 		GravatarProfile profile = null;
 		try {
+			String hash = object;
 			if (object.indexOf('@') > -1) {
-				profile = ActivityUtils.getGravatarProfileFromAddress(object);
-			} else {
-				profile = ActivityUtils.getGravatarProfile(object);
+				hash = StringUtils.getMD5(object.toLowerCase());
 			}
+			profile = GitBlit.self().getAvatarCache().getProfile(hash);
 		} catch (IOException e) {
 			error(MessageFormat.format(getString("gb.failedToFindGravatarProfile"), object), e, true);
 		}
@@ -57,7 +60,14 @@ public class GravatarProfilePage extends RootPage {
 		add(new Label("username", profile.preferredUsername));
 		add(new Label("location", profile.currentLocation));
 		add(new Label("aboutMe", profile.aboutMe));
-		ExternalImage image = new ExternalImage("profileImage", profile.thumbnailUrl + "?s=256&d=identicon");
+		String imageUrl;
+		if (GitBlit.getBoolean(Keys.web.avatarProxy, true) && !StringUtils.isEmpty(profile.hash)) {
+			imageUrl = AvatarServlet.asLink(getRequest().getRelativePathPrefixToContextRoot(),
+					profile.hash, 256);
+		} else {
+			imageUrl = profile.thumbnailUrl + "?s=256&d=identicon";
+		}
+		ExternalImage image = new ExternalImage("profileImage", imageUrl);
 		add(image);
 		add(new ExternalLink("profileLink", profile.profileUrl));
 	}
@@ -38,8 +38,9 @@ import org.wicketstuff.googlecharts.LineStyle;
 import org.wicketstuff.googlecharts.MarkerType;
 import org.wicketstuff.googlecharts.ShapeMarker;
 
+import com.gitblit.GitBlit;
 import com.gitblit.models.Metric;
-import com.gitblit.utils.MetricUtils;
+import com.gitblit.utils.BranchMetrics;
 import com.gitblit.utils.StringUtils;
 import com.gitblit.wicket.WicketUtils;
 
@@ -53,8 +54,12 @@ public class MetricsPage extends RepositoryPage {
 		} else {
 			add(new Label("branchTitle", objectId));
 		}
+		// date, day-of-week, and author metrics are derived from the same
+		// aggregates of the branch history
+		BranchMetrics branchMetrics = GitBlit.self().getBranchMetrics(getRepositoryModel(), r,
+				objectId);
 		Metric metricsTotal = null;
-		List<Metric> metrics = MetricUtils.getDateMetrics(r, objectId, true, null, getTimeZone());
+		List<Metric> metrics = branchMetrics.getDateMetrics(true, null, getTimeZone());
 		metricsTotal = metrics.remove(0);
 		if (metricsTotal == null) {
 			add(new Label("branchStats", ""));
@@ -64,8 +69,8 @@ public class MetricsPage extends RepositoryPage {
 							metricsTotal.tag, getTimeUtils().duration(metricsTotal.duration))));
 		}
 		insertLinePlot("commitsChart", metrics);
-		insertBarPlot("dayOfWeekChart", getDayOfWeekMetrics(r, objectId));
-		insertPieChart("authorsChart", getAuthorMetrics(r, objectId));
+		insertBarPlot("dayOfWeekChart", getDayOfWeekMetrics(branchMetrics));
+		insertPieChart("authorsChart", getAuthorMetrics(branchMetrics));
 	}
 
 	private void insertLinePlot(String wicketId, List<Metric> metrics) {
@@ -133,8 +138,8 @@ public class MetricsPage extends RepositoryPage {
 		}
 	}
 
-	private List<Metric> getDayOfWeekMetrics(Repository repository, String objectId) {
-		List<Metric> list = MetricUtils.getDateMetrics(repository, objectId, false, "E", getTimeZone());
+	private List<Metric> getDayOfWeekMetrics(BranchMetrics branchMetrics) {
+		List<Metric> list = branchMetrics.getDateMetrics(false, "E", getTimeZone());
 		SimpleDateFormat sdf = new SimpleDateFormat("E");
 		Calendar cal = Calendar.getInstance();
 
@@ -158,8 +163,8 @@ public class MetricsPage extends RepositoryPage {
 		return sorted;
 	}
 
-	private List<Metric> getAuthorMetrics(Repository repository, String objectId) {
-		List<Metric> authors = MetricUtils.getAuthorMetrics(repository, objectId, true);
+	private List<Metric> getAuthorMetrics(BranchMetrics branchMetrics) {
+		List<Metric> authors = branchMetrics.getAuthorMetrics(true);
 		Collections.sort(authors, new Comparator<Metric>() {
 			@Override
 			public int compare(Metric o1, Metric o2) {
@@ -16,8 +16,6 @@
 package com.gitblit.wicket.pages;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -37,7 +35,6 @@ import org.apache.wicket.markup.html.link.ExternalLink;
 import org.apache.wicket.markup.repeater.Item;
 import org.apache.wicket.markup.repeater.data.DataView;
 import org.apache.wicket.markup.repeater.data.ListDataProvider;
-import org.eclipse.jgit.lib.Constants;
 
 import com.gitblit.GitBlit;
 import com.gitblit.Keys;
@@ -48,7 +45,6 @@ import com.gitblit.models.ProjectModel;
 import com.gitblit.models.RepositoryModel;
 import com.gitblit.models.UserModel;
 import com.gitblit.utils.ActivityUtils;
-import com.gitblit.utils.MarkdownUtils;
 import com.gitblit.utils.StringUtils;
 import com.gitblit.wicket.GitBlitWebApp;
 import com.gitblit.wicket.GitBlitWebSession;
@@ -359,11 +355,7 @@ public class ProjectPage extends RootPage {
 		if (projectMessage.exists()) {
 			// Read user-supplied message
 			try {
-				FileInputStream fis = new FileInputStream(projectMessage);
-				InputStreamReader reader = new InputStreamReader(fis,
-						Constants.CHARACTER_ENCODING);
-				message = MarkdownUtils.transformMarkdown(reader);
-				reader.close();
+				message = GitBlitWebApp.get().getMarkdownCache().transform(projectMessage);
 			} catch (Throwable t) {
 				message = getString("gb.failedToRead") + " " + projectMessage;
 				warn(message, t);
@@ -16,9 +16,6 @@
 package com.gitblit.wicket.pages;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,16 +26,14 @@ import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.repeater.Item;
 import org.apache.wicket.markup.repeater.data.DataView;
 import org.apache.wicket.markup.repeater.data.ListDataProvider;
-import org.apache.wicket.resource.ContextRelativeResource;
 import org.apache.wicket.util.resource.ResourceStreamNotFoundException;
-import org.eclipse.jgit.lib.Constants;
 
 import com.gitblit.GitBlit;
 import com.gitblit.Keys;
 import com.gitblit.models.ProjectModel;
 import com.gitblit.models.UserModel;
-import com.gitblit.utils.MarkdownUtils;
 import com.gitblit.utils.StringUtils;
+import com.gitblit.wicket.GitBlitWebApp;
 import com.gitblit.wicket.GitBlitWebSession;
 import com.gitblit.wicket.PageRegistration;
 import com.gitblit.wicket.PageRegistration.DropDownMenuItem;
@@ -176,11 +171,7 @@ public class ProjectsPage extends RootPage {
 				File file = new File(messageSource);
 				if (file.exists()) {
 					try {
-						FileInputStream fis = new FileInputStream(file);
-						InputStreamReader reader = new InputStreamReader(fis,
-								Constants.CHARACTER_ENCODING);
-						message = MarkdownUtils.transformMarkdown(reader);
-						reader.close();
+						message = GitBlitWebApp.get().getMarkdownCache().transform(file);
 					} catch (Throwable t) {
 						message = getString("gb.failedToRead") + " " + file;
 						warn(message, t);
@@ -209,11 +200,7 @@ public class ProjectsPage extends RootPage {
 		}
 		String message;
 		try {
-			ContextRelativeResource res = WicketUtils.getResource(file);
-			InputStream is = res.getResourceStream().getInputStream();
-			InputStreamReader reader = new InputStreamReader(is, Constants.CHARACTER_ENCODING);
-			message = MarkdownUtils.transformMarkdown(reader);
-			reader.close();
+			message = GitBlitWebApp.get().getMarkdownCache().transformResource(file);
 		} catch (ResourceStreamNotFoundException t) {
 			if (lc == null) {
 				// could not find default language resource
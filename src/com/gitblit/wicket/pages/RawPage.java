@@ -15,15 +15,20 @@
  */
 package com.gitblit.wicket.pages;
 
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import org.apache.wicket.IRequestTarget;
 import org.apache.wicket.PageParameters;
 import org.apache.wicket.RequestCycle;
 import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.protocol.http.WebRequest;
 import org.apache.wicket.protocol.http.WebResponse;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.slf4j.Logger;
@@ -31,6 +36,7 @@ import org.slf4j.LoggerFactory;
 
 import com.gitblit.GitBlit;
 import com.gitblit.Keys;
+import com.gitblit.utils.HttpUtils;
 import com.gitblit.utils.JGitUtils;
 import com.gitblit.utils.StringUtils;
 import com.gitblit.wicket.WicketUtils;
@@ -68,93 +74,81 @@ public class RawPage extends WebPage {
 					return;
 				}
 
-				if (StringUtils.isEmpty(blobPath)) {
-					// objectid referenced raw view
-					byte [] binary = JGitUtils.getByteContent(r, objectId);
-					response.setContentType("application/octet-stream");
-					response.setContentLength(binary.length);
-					try {
-						response.getOutputStream().write(binary);
-					} catch (Exception e) {
-						logger.error("Failed to write binary response", e);
-					}
-				} else {
-					// standard raw blob view
-					RevCommit commit = JGitUtils.getCommit(r, objectId);
+				HttpServletRequest request = ((WebRequest) requestCycle.getRequest()).getHttpServletRequest();
+				HttpServletResponse httpResponse = response.getHttpServletResponse();
+				try {
+					if (StringUtils.isEmpty(blobPath)) {
+						// objectid referenced raw view
+						ObjectId blobId = ObjectId.fromString(objectId);
+						HttpUtils.sendBlob(request, httpResponse, r, blobId, "application/octet-stream", 0);
+					} else {
+						// standard raw blob view
+						RevCommit commit = JGitUtils.getCommit(r, objectId);
+						ObjectId blobId = commit == null ? null : JGitUtils.getBlobId(r, commit.getTree(), blobPath);
+						if (blobId == null) {
+							httpResponse.sendError(HttpServletResponse.SC_NOT_FOUND);
+							return;
+						}
+						long lastModified = JGitUtils.getCommitDate(commit).getTime();
 
-					String filename = blobPath;
-					if (blobPath.indexOf('/') > -1) {
-						filename = blobPath.substring(blobPath.lastIndexOf('/') + 1);
-					}
+						String filename = blobPath;
+						if (blobPath.indexOf('/') > -1) {
+							filename = blobPath.substring(blobPath.lastIndexOf('/') + 1);
+						}
 
-					String extension = null;
-					if (blobPath.lastIndexOf('.') > -1) {
-						extension = blobPath.substring(blobPath.lastIndexOf('.') + 1);
-					}
+						String extension = null;
+						if (blobPath.lastIndexOf('.') > -1) {
+							extension = blobPath.substring(blobPath.lastIndexOf('.') + 1);
+						}
 
-					// Map the extensions to types
-					Map<String, Integer> map = new HashMap<String, Integer>();
-					for (String ext : GitBlit.getStrings(Keys.web.imageExtensions)) {
-						map.put(ext.toLowerCase(), 2);
-					}
-					for (String ext : GitBlit.getStrings(Keys.web.binaryExtensions)) {
-						map.put(ext.toLowerCase(), 3);
-					}
+						// Map the extensions to types
+						Map<String, Integer> map = new HashMap<String, Integer>();
+						for (String ext : GitBlit.getStrings(Keys.web.imageExtensions)) {
+							map.put(ext.toLowerCase(), 2);
+						}
+						for (String ext : GitBlit.getStrings(Keys.web.binaryExtensions)) {
+							map.put(ext.toLowerCase(), 3);
+						}
 
-					if (extension != null) {
 						int type = 0;
-						if (map.containsKey(extension)) {
+						if (extension != null && map.containsKey(extension)) {
 							type = map.get(extension);
 						}
 						switch (type) {
 						case 2:
 							// image blobs
-							byte[] image = JGitUtils.getByteContent(r, commit.getTree(), blobPath);
-							response.setContentType("image/" + extension.toLowerCase());
-							response.setContentLength(image.length);
-							try {
-								response.getOutputStream().write(image);
-							} catch (IOException e) {
-								logger.error("Failed to write image response", e);
-							}
+							HttpUtils.sendBlob(request, httpResponse, r, blobId,
+									"image/" + extension.toLowerCase(), lastModified);
 							break;
 						case 3:
 							// binary blobs (download)
-							byte[] binary = JGitUtils.getByteContent(r, commit.getTree(), blobPath);
-							response.setContentLength(binary.length);
-							response.setContentType("application/octet-stream");
-							response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
-							try {
-								response.getOutputStream().write(binary);
-							} catch (IOException e) {
-								logger.error("Failed to write binary response", e);
-							}
+							httpResponse.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+							HttpUtils.sendBlob(request, httpResponse, r, blobId,
+									"application/octet-stream", lastModified);
 							break;
 						default:
 							// plain text
-							String content = JGitUtils.getStringContent(r, commit.getTree(),
-									blobPath, encodings);
-							response.setContentType("text/plain; charset=UTF-8");
-							try {
+							if (r.open(blobId, Constants.OBJ_BLOB).isLarge()) {
+								// too large to transcode, stream the raw bytes
+								HttpUtils.sendBlob(request, httpResponse, r, blobId, "text/plain", lastModified);
+							} else {
+								String etag = HttpUtils.getETag(blobId.getName(), "utf8");
+								if (HttpUtils.checkNotModified(request, httpResponse, etag, lastModified)) {
+									break;
+								}
+								String content = JGitUtils.getStringContent(r, blobId.getName(), encodings);
+								response.setContentType("text/plain; charset=UTF-8");
 								response.getOutputStream().write(content.getBytes("UTF-8"));
-							} catch (Exception e) {
-								logger.error("Failed to write text response", e);
 							}
 						}
-
-					} else {
-						// plain text
-						String content = JGitUtils.getStringContent(r, commit.getTree(), blobPath,
-								encodings);
-						response.setContentType("text/plain; charset=UTF-8");
-						try {
-							response.getOutputStream().write(content.getBytes("UTF-8"));
-						} catch (Exception e) {
-							logger.error("Failed to write text response", e);
-						}
 					}
+				} catch (IllegalArgumentException e) {
+					logger.error("Invalid object id " + objectId, e);
+				} catch (Exception e) {
+					logger.error("Failed to write raw response", e);
+				} finally {
+					r.close();
 				}
-				r.close();
 			}
 		});
 	}
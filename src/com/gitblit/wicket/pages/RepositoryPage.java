@@ -17,8 +17,10 @@ package com.gitblit.wicket.pages;
 
 import java.io.Serializable;
 import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -26,6 +28,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import org.apache.wicket.Component;
 import org.apache.wicket.PageParameters;
 import org.apache.wicket.markup.html.basic.Label;
@@ -36,8 +41,12 @@ import org.apache.wicket.markup.html.panel.Fragment;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
 import org.apache.wicket.protocol.http.RequestUtils;
+import org.apache.wicket.protocol.http.WebRequest;
+import org.apache.wicket.protocol.http.WebResponse;
+import org.apache.wicket.protocol.http.servlet.AbortWithWebErrorCodeException;
 import org.apache.wicket.request.target.basic.RedirectRequestTarget;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
@@ -53,9 +62,11 @@ import com.gitblit.models.RepositoryModel;
 import com.gitblit.models.SubmoduleModel;
 import com.gitblit.models.UserModel;
 import com.gitblit.utils.ArrayUtils;
+import com.gitblit.utils.HttpUtils;
 import com.gitblit.utils.JGitUtils;
 import com.gitblit.utils.StringUtils;
 import com.gitblit.utils.TicgitUtils;
+import com.gitblit.wicket.GitBlitWebApp;
 import com.gitblit.wicket.GitBlitWebSession;
 import com.gitblit.wicket.PageRegistration;
 import com.gitblit.wicket.PageRegistration.OtherPageLink;
@@ -80,6 +91,7 @@ public abstract class RepositoryPage extends BasePage {
 	private final Map<String, PageRegistration> registeredPages;
 	private boolean showAdmin;
 	private boolean isOwner;
+	private String etag;
 	
 	public RepositoryPage(PageParameters params) {
 		super(params);
@@ -120,6 +132,18 @@ public abstract class RepositoryPage extends BasePage {
 			}
 		}
 
+		if (isCommitAddressed() && objectId != null && ObjectId.isId(objectId)) {
+			// pages addressed by a full commit id render identically for the
+			// same user, respond 304 if the client has the current page
+			etag = getCommitAddressedETag();
+			HttpServletRequest request = ((WebRequest) getRequest()).getHttpServletRequest();
+			if (HttpUtils.isNotModified(request, etag, 0)) {
+				HttpServletResponse response = ((WebResponse) getResponse()).getHttpServletResponse();
+				response.setHeader("ETag", etag);
+				throw new AbortWithWebErrorCodeException(HttpServletResponse.SC_NOT_MODIFIED);
+			}
+		}
+
 		// register the available page links for this page and user
 		registeredPages = registerPages();
 
@@ -194,6 +218,77 @@ public abstract class RepositoryPage extends BasePage {
 		return true;
 	}
 
+	/**
+	 * Pages whose content is completely determined by a commit id (and
+	 * optionally a path) override this method to participate in conditional
+	 * requests when they are addressed by a full commit id.
+	 * 
+	 * @return true if the page is commit-addressed
+	 */
+	protected boolean isCommitAddressed() {
+		return false;
+	}
+
+	/**
+	 * Returns a strong entity tag for a commit-addressed page. The tag is
+	 * derived from the requested url, the user's permission class for the
+	 * repository, the repository's last change (refs and navigation links), the
+	 * locale and timezone, and the Gitblit version. The current date is
+	 * included so that relative dates are refreshed daily.
+	 * 
+	 * @return a quoted entity tag
+	 */
+	private String getCommitAddressedETag() {
+		UserModel user = GitBlitWebSession.get().getUser();
+		if (user == null) {
+			user = UserModel.ANONYMOUS;
+		}
+		RepositoryModel model = getRepositoryModel();
+		StringBuilder sb = new StringBuilder();
+		sb.append(getRequest().getURL()).append('\n');
+		sb.append(user.isAuthenticated ? user.username : "anonymous").append(':');
+		sb.append(user.getRepositoryPermission(model).permission.code).append(':');
+		sb.append(user.canAdmin()).append('\n');
+		sb.append(model.lastChange == null ? 0 : model.lastChange.getTime()).append('\n');
+		sb.append(getLanguageCode()).append(':').append(getTimeZone().getID()).append('\n');
+		sb.append(new SimpleDateFormat("yyyyMMdd").format(new Date())).append('\n');
+		sb.append(Constants.VERSION);
+		return HttpUtils.getETag(StringUtils.getSHA1(sb.toString()));
+	}
+
+	@Override
+	protected void setHeaders(WebResponse response) {
+		if (etag == null) {
+			super.setHeaders(response);
+			return;
+		}
+		// private, revalidated commit-addressed page
+		response.setHeader("Cache-Control", "private, max-age=0, must-revalidate");
+		response.setHeader("ETag", etag);
+	}
+
+	/**
+	 * Returns a previously rendered html fragment or null.
+	 * 
+	 * @param key
+	 *            a key composed of immutable object ids
+	 * @return a rendered fragment or null
+	 */
+	protected String getCachedFragment(String key) {
+		return GitBlitWebApp.get().getFragmentCache().get(repositoryName + ":" + key);
+	}
+
+	/**
+	 * Caches a rendered html fragment.
+	 * 
+	 * @param key
+	 *            a key composed of immutable object ids
+	 * @param fragment
+	 */
+	protected void cacheFragment(String key, String fragment) {
+		GitBlitWebApp.get().getFragmentCache().put(repositoryName + ":" + key, fragment);
+	}
+
 	@Override
 	protected void setupPage(String repositoryName, String pageName) {
 		String projectName = StringUtils.getFirstPathElement(repositoryName);
@@ -597,4 +692,4 @@ public abstract class RepositoryPage extends BasePage {
 			getRequestCycle().setRequestTarget(new RedirectRequestTarget(absoluteUrl));
 		}
 	}
-}
+}
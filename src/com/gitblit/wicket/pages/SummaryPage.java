@@ -27,6 +27,7 @@ import org.apache.wicket.PageParameters;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.link.BookmarkablePageLink;
 import org.apache.wicket.markup.html.panel.Fragment;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.wicketstuff.googlecharts.Chart;
@@ -48,8 +49,8 @@ import com.gitblit.models.RepositoryModel;
 import com.gitblit.models.UserModel;
 import com.gitblit.utils.ArrayUtils;
 import com.gitblit.utils.JGitUtils;
-import com.gitblit.utils.MarkdownUtils;
 import com.gitblit.utils.StringUtils;
+import com.gitblit.wicket.GitBlitWebApp;
 import com.gitblit.wicket.WicketUtils;
 import com.gitblit.wicket.panels.BranchesPanel;
 import com.gitblit.wicket.panels.LinkPanel;
@@ -150,6 +151,8 @@ public class SummaryPage extends RepositoryPage {
 			String htmlText = null;
 			String markdownText = null;
 			String readme = null;
+			ObjectId readmeId = null;
+			String [] encodings = GitBlit.getEncodings();
 			try {
 				RevCommit head = JGitUtils.getCommit(r, null);
 				List<String> markdownExtensions = GitBlit.getStrings(Keys.web.markdownExtensions);
@@ -163,6 +166,7 @@ public class SummaryPage extends RepositoryPage {
 								String ext = name.substring(name.lastIndexOf('.') + 1);
 								if (markdownExtensions.contains(ext)) {
 									readme = path.name;
+									readmeId = ObjectId.fromString(path.objectId);
 									break;
 								}
 							}
@@ -170,11 +174,10 @@ public class SummaryPage extends RepositoryPage {
 					}
 				}
 				if (!StringUtils.isEmpty(readme)) {
-					String [] encodings = GitBlit.getEncodings();
-					markdownText = JGitUtils.getStringContent(r, head.getTree(), readme, encodings);
-					htmlText = MarkdownUtils.transformMarkdown(markdownText);
+					htmlText = GitBlitWebApp.get().getMarkdownCache().transform(r, readmeId, encodings);
 				}
 			} catch (ParseException p) {
+				markdownText = JGitUtils.getStringContent(r, readmeId.getName(), encodings);
 				markdownText = MessageFormat.format("<div class=\"alert alert-error\"><strong>{0}:</strong> {1}</div>{2}", getString("gb.error"), getString("gb.markdownFailure"), markdownText);
 				htmlText = StringUtils.breakLinesForHtml(markdownText);
 			}
@@ -182,4 +182,9 @@ public class TreePage extends RepositoryPage {
 	protected String getPageName() {
 		return getString("gb.tree");
 	}
+
+	@Override
+	protected boolean isCommitAddressed() {
+		return true;
+	}
 }
@@ -23,6 +23,7 @@ import org.apache.wicket.markup.html.link.Link;
 import org.apache.wicket.markup.html.panel.Panel;
 import org.eclipse.jgit.lib.PersonIdent;
 
+import com.gitblit.AvatarServlet;
 import com.gitblit.GitBlit;
 import com.gitblit.Keys;
 import com.gitblit.utils.ActivityUtils;
@@ -57,7 +58,12 @@ public class GravatarImage extends Panel {
 		Link<Void> link = new BookmarkablePageLink<Void>("link", GravatarProfilePage.class,
 				WicketUtils.newObjectParameter(hash));
 		link.add(new SimpleAttributeModifier("target", "_blank"));
-		String url = ActivityUtils.getGravatarThumbnailUrl(email, width);
+		String url;
+		if (GitBlit.getBoolean(Keys.web.avatarProxy, true)) {
+			url = AvatarServlet.asLink(getRequest().getRelativePathPrefixToContextRoot(), hash, width);
+		} else {
+			url = ActivityUtils.getGravatarThumbnailUrl(email, width);
+		}
 		ExternalImage image = new ExternalImage("image", url);
 		WicketUtils.setCssClass(image, "gravatar");
 		link.add(image);
@@ -70,4 +76,4 @@ public class GravatarImage extends Panel {
 		add(link.setEnabled(linked));
 		setVisible(GitBlit.getBoolean(Keys.web.allowGravatar, true));
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.Test;
+
+import com.gitblit.AvatarCache;
+import com.gitblit.AvatarCache.Avatar;
+import com.gitblit.utils.IdenticonUtils;
+import com.gitblit.utils.StringUtils;
+
+public class AvatarCacheTest {
+
+	private final String hash = StringUtils.getMD5("james.moger@gitblit.com");
+
+	@Test
+	public void testIdenticon() throws Exception {
+		byte[] png = IdenticonUtils.render(hash, 50);
+		assertTrue(png.length > 0);
+		assertEquals(0x89, png[0] & 0xff);
+		assertEquals('P', png[1]);
+		assertArrayEquals(png, IdenticonUtils.render(hash, 50));
+	}
+
+	@Test
+	public void testPendingAvatar() throws Exception {
+		File folder = new File(System.getProperty("java.io.tmpdir"), "gitblit-avatars");
+		if (folder.exists()) {
+			FileUtils.delete(folder, FileUtils.RECURSIVE);
+		}
+		final List<Runnable> fetches = new ArrayList<Runnable>();
+		AvatarCache cache = new AvatarCache(folder, TimeUnit.DAYS.toMillis(1), 0, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				fetches.add(command);
+			}
+		});
+
+		// an unknown avatar is served as an identicon while it is fetched
+		Avatar avatar = cache.get(hash, 50);
+		assertTrue(avatar.identicon);
+		assertEquals("image/png", avatar.contentType);
+		assertEquals(1, fetches.size());
+
+		// the pending fetch is not repeated
+		cache.get(hash, 50);
+		assertEquals(1, fetches.size());
+	}
+
+	@Test
+	public void testPersistedAvatar() throws Exception {
+		File folder = new File(System.getProperty("java.io.tmpdir"), "gitblit-avatars");
+		if (folder.exists()) {
+			FileUtils.delete(folder, FileUtils.RECURSIVE);
+		}
+		byte[] jpeg = new byte[] { (byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0 };
+		write(new File(folder, hash.substring(0, 2) + "/" + hash + "_80"), jpeg);
+		write(new File(folder, hash.substring(0, 2) + "/" + hash + "_20"), new byte[0]);
+
+		final List<Runnable> fetches = new ArrayList<Runnable>();
+		AvatarCache cache = new AvatarCache(folder, TimeUnit.DAYS.toMillis(1), 0, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				fetches.add(command);
+			}
+		});
+
+		Avatar avatar = cache.get(hash, 80);
+		assertFalse(avatar.identicon);
+		assertEquals("image/jpeg", avatar.contentType);
+		assertArrayEquals(jpeg, avatar.content);
+
+		// an address without a Gravatar is served as an identicon
+		avatar = cache.get(hash, 20);
+		assertTrue(avatar.identicon);
+		assertEquals(0, fetches.size());
+
+		FileUtils.delete(folder, FileUtils.RECURSIVE);
+	}
+
+	@Test
+	public void testSizes() throws Exception {
+		assertEquals(AvatarCache.DEFAULT_SIZE, AvatarCache.getSize(0));
+		assertEquals(20, AvatarCache.getSize(20));
+		assertEquals(32, AvatarCache.getSize(25));
+		assertEquals(AvatarCache.MAX_SIZE, AvatarCache.getSize(100000));
+	}
+
+	@Test
+	public void testPrune() throws Exception {
+		File folder = new File(System.getProperty("java.io.tmpdir"), "gitblit-avatars");
+		if (folder.exists()) {
+			FileUtils.delete(folder, FileUtils.RECURSIVE);
+		}
+		File older = new File(folder, hash.substring(0, 2) + "/" + hash + "_40");
+		File newer = new File(folder, hash.substring(0, 2) + "/" + hash + "_50");
+		write(older, new byte[600]);
+		write(newer, new byte[600]);
+		older.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1));
+
+		// the least recently written avatars are deleted first
+		AvatarCache cache = new AvatarCache(folder, TimeUnit.DAYS.toMillis(1), 1000);
+		cache.prune();
+		cache.close();
+		assertFalse(older.exists());
+		assertTrue(newer.exists());
+
+		FileUtils.delete(folder, FileUtils.RECURSIVE);
+	}
+
+	private void write(File file, byte[] content) throws Exception {
+		file.getParentFile().mkdirs();
+		FileOutputStream os = new FileOutputStream(file);
+		os.write(content);
+		os.close();
+	}
+}
@@ -16,6 +16,7 @@
 package com.gitblit.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -33,8 +34,10 @@ import com.gitblit.Constants.AccessRestrictionType;
 import com.gitblit.Constants.FederationProposalResult;
 import com.gitblit.Constants.FederationRequest;
 import com.gitblit.Constants.FederationToken;
+import com.gitblit.models.FederationChanges;
 import com.gitblit.models.FederationModel;
 import com.gitblit.models.FederationProposal;
+import com.gitblit.models.FederationSubscription;
 import com.gitblit.models.RepositoryModel;
 import com.gitblit.models.TeamModel;
 import com.gitblit.models.UserModel;
@@ -157,6 +160,57 @@ public class FederationTests {
 		assertTrue(teams.size() > 0);
 	}
 	
+	@Test
+	public void testPullChanges() throws Exception {
+		// first pull is a full pull
+		FederationChanges changes = FederationUtils.getChanges(getRegistration(), null);
+		assertNotNull(changes);
+		assertNotNull(changes.version);
+		assertTrue(changes.full);
+		assertTrue(changes.repositories.size() > 0);
+
+		// nothing has changed since the first pull
+		FederationChanges delta = FederationUtils.getChanges(getRegistration(), changes.version);
+		assertNotNull(delta);
+		assertFalse(delta.full);
+		assertEquals(0, delta.repositories.size());
+		assertEquals(0, delta.deletedRepositories.size());
+
+		// a created user is a change
+		UserModel newUser = new UserModel("testchanges");
+		newUser.password = "whocares";
+		assertTrue(RpcUtils.createUser(newUser, url, account, password.toCharArray()));
+		delta = FederationUtils.getChanges(getRegistration(), delta.version);
+		assertFalse(delta.full);
+		assertEquals(1, delta.users.size());
+		assertEquals("testchanges", delta.users.get(0).username);
+
+		// a deleted user is a change
+		assertTrue(RpcUtils.deleteUser(newUser, url, account, password.toCharArray()));
+		delta = FederationUtils.getChanges(getRegistration(), delta.version);
+		assertEquals(0, delta.users.size());
+		assertTrue(delta.deletedUsers.contains("testchanges"));
+
+		// an unknown version is a full pull
+		delta = FederationUtils.getChanges(getRegistration(), "unknown:0");
+		assertTrue(delta.full);
+	}
+
+	@Test
+	public void testSubscribe() throws Exception {
+		FederationSubscription subscription = new FederationSubscription(url, "localhost",
+				"testkey");
+		assertTrue(FederationUtils.subscribe(getRegistration(), subscription));
+	}
+
+	@Test
+	public void testNotificationRejected() throws Exception {
+		// unknown registration and key
+		FederationSubscription subscription = new FederationSubscription(url, "unknown",
+				"testkey");
+		assertFalse(FederationUtils.sendNotification(subscription, "helloworld.git"));
+	}
+
 	@Test
 	public void testPullScripts() throws Exception {
 		Map<String, String> scripts = FederationUtils.getScripts(getRegistration());
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.gitblit.ForkGraph;
+
+public class ForkGraphTest {
+
+	@Test
+	public void testForkNetwork() throws Exception {
+		ForkGraph graph = new ForkGraph(null);
+		graph.setOrigin("helloworld.git", null);
+		graph.setOrigin("~james/helloworld.git", "helloworld.git");
+		graph.setOrigin("~john/helloworld.git", "~james/helloworld.git");
+
+		assertEquals("helloworld.git", graph.getRoot("~john/helloworld.git"));
+		assertEquals(Arrays.asList("~james/helloworld.git"), graph.getForks("helloworld.git"));
+		assertEquals("~john/helloworld.git", graph.getFork("john", "helloworld.git"));
+		assertEquals("~james/helloworld.git", graph.getFork("JAMES", "~john/helloworld.git"));
+		assertNull(graph.getFork("jane", "helloworld.git"));
+		assertNull(graph.getFork("james", "ticgit.git"));
+
+		graph.rename("~james/helloworld.git", "~james/hello.git");
+		assertEquals("~james/hello.git", graph.getOrigin("~john/helloworld.git"));
+		assertEquals("helloworld.git", graph.getOrigin("~james/hello.git"));
+
+		graph.remove("~james/hello.git");
+		assertNull(graph.getOrigin("~john/helloworld.git"));
+		assertEquals(0, graph.size());
+	}
+
+	@Test
+	public void testPersistence() throws Exception {
+		File file = new File(System.getProperty("java.io.tmpdir"), "gitblit-forks.conf");
+		file.delete();
+		ForkGraph graph = new ForkGraph(file);
+		graph.setOrigin("~james/helloworld.git", "helloworld.git");
+		graph.setOrigin("~james/ticgit.git", "ticgit.git");
+		graph.save();
+		assertTrue(file.exists());
+
+		graph = new ForkGraph(file);
+		assertEquals(2, graph.size());
+		assertEquals("ticgit.git", graph.getOrigin("~james/ticgit.git"));
+
+		graph.retainAll(Arrays.asList("helloworld.git", "~james/helloworld.git"));
+		assertEquals(1, graph.size());
+		file.delete();
+	}
+}
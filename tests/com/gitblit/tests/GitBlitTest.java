@@ -20,15 +20,22 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 
 import com.gitblit.Constants.AccessRestrictionType;
 import com.gitblit.FileSettings;
 import com.gitblit.GitBlit;
+import com.gitblit.IStoredSettings;
+import com.gitblit.models.ProjectModel;
 import com.gitblit.models.RepositoryModel;
 import com.gitblit.models.UserModel;
+import com.gitblit.tests.mock.MemorySettings;
 
 public class GitBlitTest {
 
@@ -151,6 +158,40 @@ public class GitBlitTest {
 		assertTrue(settings.getChar("web.forwardSlashCharacter", ' ') == '/');
 	}
 
+	@Test
+	public void testSettingsSnapshot() throws Exception {
+		MemorySettings settings = new MemorySettings(new HashMap<String, Object>());
+		settings.put("a.number", "5");
+		settings.put("a.list", "x y");
+		assertEquals(5, settings.getInteger("a.number", 0));
+		assertEquals(2, settings.getStrings("a.list").size());
+
+		// returned lists may be modified by the caller
+		settings.getStrings("a.list").clear();
+		assertEquals(2, settings.getStrings("a.list").size());
+
+		final Set<String> changed = new HashSet<String>();
+		settings.addListener(new IStoredSettings.SettingsListener() {
+			@Override
+			public void settingsChanged(Set<String> keys) {
+				changed.addAll(keys);
+			}
+		});
+		settings.put("a.number", "6");
+		assertEquals(6, settings.getInteger("a.number", 0));
+		assertTrue(changed.contains("a.number"));
+		assertFalse(changed.contains("a.list"));
+
+		// an unchanged refresh does not notify
+		changed.clear();
+		assertFalse(settings.refresh());
+		assertTrue(changed.isEmpty());
+
+		settings.overrideSetting("a.list", "z");
+		assertEquals(1, settings.getStrings("a.list").size());
+		assertTrue(changed.contains("a.list"));
+	}
+
 	@Test
 	public void testGitblitSettings() throws Exception {
 		// These are already tested by above test method.
@@ -184,4 +225,40 @@ public class GitBlitTest {
 		assertTrue(GitBlit.self().getRepository("missing") == null);
 		assertTrue(GitBlit.self().getRepositoryModel("missing") == null);
 	}
+
+	@Test
+	public void testProjectIndex() throws Exception {
+		// a mixed-case repository must keep its name in the index
+		RepositoryModel mixedCase = new RepositoryModel("test/ProjectIndex.git", "", "admin", new Date());
+		GitBlit.self().updateRepositoryModel(mixedCase.name, mixedCase, true);
+		try {
+			// the project index agrees with the repository list
+			Set<String> expected = new HashSet<String>();
+			for (String repository : GitBlit.self().getRepositoryList()) {
+				if (repository.toLowerCase().startsWith("test/")) {
+					expected.add(repository);
+				}
+			}
+			assertTrue("Mixed-case repository not listed!", expected.contains(mixedCase.name));
+			ProjectModel project = GitBlit.self().getProjectModel("test");
+			assertEquals(expected, project.repositories);
+
+			UserModel admin = GitBlit.self().getUserModel("admin");
+			ProjectModel userProject = GitBlit.self().getProjectModel("test", admin);
+			assertEquals(expected, userProject.repositories);
+			assertTrue(userProject.hasRepository("test/projectindex.git"));
+
+			boolean found = false;
+			for (ProjectModel model : GitBlit.self().getProjectModels(admin, true)) {
+				if (model.name.equalsIgnoreCase("test")) {
+					assertEquals(expected, model.repositories);
+					found = true;
+				}
+			}
+			assertTrue("Test project not listed!", found);
+			assertTrue(GitBlit.self().getProjectModel("missing") == null);
+		} finally {
+			GitBlit.self().deleteRepositoryModel(mixedCase);
+		}
+	}
 }
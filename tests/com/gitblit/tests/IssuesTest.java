@@ -18,12 +18,18 @@ package com.gitblit.tests;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.bouncycastle.util.Arrays;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.junit.Test;
 
 import com.gitblit.LuceneExecutor;
@@ -37,6 +43,7 @@ import com.gitblit.models.SearchResult;
 import com.gitblit.utils.FileUtils;
 import com.gitblit.utils.IssueUtils;
 import com.gitblit.utils.IssueUtils.IssueFilter;
+import com.gitblit.utils.JGitUtils;
 
 /**
  * Tests the mechanics of distributed issue management on the gb-issues branch.
@@ -96,6 +103,7 @@ public class IssuesTest {
 		Attachment a1 = IssueUtils.getIssueAttachment(repository, issue.id, a.name);
 		assertEquals(a.content.length, a1.content.length);
 		assertTrue(Arrays.areEqual(a.content, a1.content));
+		assertNull(IssueUtils.getIssueAttachment(repository, "0000000000000000000000000000000000000000", a.name));
 
 		// C5: close the issue
 		Change c5 = new Change("C5");
@@ -126,6 +134,16 @@ public class IssuesTest {
 		assertTrue(allIssues.size() > 0);
 		assertEquals(1, openIssues.size());
 		assertEquals(1, closedIssues.size());
+
+		// modifying a listed issue must not modify the indexed changes
+		closedIssues.get(0).changes.get(0).id = "modified";
+		IssueModel closed = IssueUtils.getIssues(repository, new IssueFilter() {
+			@Override
+			public boolean accept(IssueModel issue) {
+				return issue.status.isClosed();
+			}
+		}).get(0);
+		assertFalse("modified".equals(closed.changes.get(0).id));
 		
 		// build a new Lucene index
 		LuceneExecutor lucene = new LuceneExecutor(null, GitBlitSuite.REPOSITORIES);
@@ -200,6 +218,50 @@ public class IssuesTest {
 		repository.close();
 	}
 
+	@Test
+	public void testBatch() throws Exception {
+		Repository repository = GitBlitSuite.getIssuesTestRepository();
+		ObjectId head = repository.resolve(IssueUtils.GB_ISSUES);
+
+		// create several issues in a single commit
+		List<Change> creations = new ArrayList<Change>();
+		for (int i = 0; i < 3; i++) {
+			creations.add(newChange("testBatch() " + i + " " + Long.toHexString(System.currentTimeMillis())));
+		}
+		List<IssueModel> issues = IssueUtils.createIssues(repository, "B", creations);
+		assertEquals(3, issues.size());
+		if (head != null) {
+			RevCommit commit = JGitUtils.getCommit(repository, IssueUtils.GB_ISSUES);
+			assertEquals(head, commit.getParent(0).getId());
+		}
+
+		// relabel and close all issues in a single commit
+		Map<String, List<Change>> updates = new LinkedHashMap<String, List<Change>>();
+		for (IssueModel issue : issues) {
+			Change relabel = new Change("B");
+			relabel.setField(Field.Labels, "batch");
+			Change close = new Change("B");
+			close.comment("closing in batch");
+			close.setField(Field.Status, Status.Fixed);
+			updates.put(issue.id, java.util.Arrays.asList(relabel, close));
+		}
+		head = repository.resolve(IssueUtils.GB_ISSUES);
+		assertTrue(IssueUtils.updateIssues(repository, "B", updates));
+		RevCommit commit = JGitUtils.getCommit(repository, IssueUtils.GB_ISSUES);
+		assertEquals(head, commit.getParent(0).getId());
+		assertEquals(3, IssueUtils.getIssueIds(commit).size());
+
+		for (IssueModel issue : issues) {
+			IssueModel constructed = IssueUtils.getIssue(repository, issue.id);
+			assertEquals(3, constructed.changes.size());
+			assertTrue(constructed.hasLabel("batch"));
+			assertTrue(constructed.status.isClosed());
+			assertTrue(IssueUtils.deleteIssue(repository, issue.id, "D"));
+		}
+
+		repository.close();
+	}
+
 	private Change newChange(String summary) {
 		Change change = new Change("C1");
 		change.setField(Field.Summary, summary);
@@ -228,4 +290,4 @@ public class IssuesTest {
 
 		assertTrue(issue.hasLabel("helpdesk"));
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
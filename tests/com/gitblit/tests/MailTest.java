@@ -15,14 +15,21 @@
  */
 package com.gitblit.tests;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.util.HashMap;
+
 import javax.mail.Message;
 
 import org.junit.Test;
 
 import com.gitblit.FileSettings;
+import com.gitblit.Keys;
 import com.gitblit.MailExecutor;
+import com.gitblit.tests.mock.MemorySettings;
 
 public class MailTest {
 
@@ -38,4 +45,26 @@ public class MailTest {
 
 		assertTrue("mail queue is not empty!", mail.hasEmptyQueue());
 	}
+
+	@Test
+	public void testPersistedQueue() throws Exception {
+		File folder = new File(System.getProperty("java.io.tmpdir"), "gitblit-mailqueue");
+		MemorySettings settings = new MemorySettings(new HashMap<String, Object>());
+		settings.put(Keys.mail.server, "localhost");
+		MailExecutor mail = new MailExecutor(settings, folder);
+		Message message = mail.createMessage("user@gitblit.com");
+		message.setSubject("Test");
+		message.setText("this is a test");
+		assertTrue(mail.queue(message));
+		assertEquals(1, folder.listFiles().length);
+
+		// the queued message survives a restart
+		MailExecutor restarted = new MailExecutor(settings, folder);
+		assertFalse("mail queue is empty!", restarted.hasEmptyQueue());
+
+		for (File file : folder.listFiles()) {
+			file.delete();
+		}
+		folder.delete();
+	}
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.gitblit.models.CacheStats;
+import com.gitblit.utils.ICache;
+import com.gitblit.utils.MemoryCache;
+
+public class MemoryCacheTest {
+
+	@Test
+	public void testLeastRecentlyUsed() throws Exception {
+		ICache<String, String> cache = new MemoryCache<String, String>("test", 2, 0);
+		cache.put("a", "alpha");
+		cache.put("b", "beta");
+		assertEquals("alpha", cache.get("a"));
+		cache.put("c", "gamma");
+		assertEquals(2, cache.size());
+		assertTrue(cache.containsKey("a"));
+		assertFalse("least-recently used entry was not evicted", cache.containsKey("b"));
+		assertTrue(cache.containsKey("c"));
+
+		CacheStats stats = cache.getStats();
+		assertEquals(1, stats.hits);
+		assertEquals(1, stats.evictions);
+
+		assertEquals("alpha", cache.remove("a"));
+		assertNull(cache.get("a"));
+		cache.clear();
+		assertTrue(cache.isEmpty());
+	}
+
+	@Test
+	public void testWeight() throws Exception {
+		ICache<String, String> cache = new MemoryCache<String, String>("test", 0, 10, 0,
+				new ICache.Weigher<String, String>() {
+					@Override
+					public long weigh(String key, String value) {
+						return value.length();
+					}
+				});
+		cache.put("a", "1234");
+		cache.put("b", "1234");
+		assertEquals(8, cache.getStats().weight);
+		cache.put("c", "1234");
+		assertEquals(8, cache.getStats().weight);
+		assertFalse(cache.containsKey("a"));
+		cache.put("d", "12345678901");
+		assertFalse("oversized entry was cached", cache.containsKey("d"));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testExpiration() throws Exception {
+		ICache<String, String> cache = new MemoryCache<String, String>("test", 0, 20);
+		cache.put("a", "alpha");
+		assertEquals("alpha", cache.get("a"));
+		Thread.sleep(50);
+		assertNull("entry did not expire", cache.get("a"));
+		assertEquals(1, cache.getStats().expirations);
+	}
+
+	@Test
+	public void testLoader() throws Exception {
+		final ICache<String, String> cache = new MemoryCache<String, String>("test");
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		final ICache.Loader<String, String> loader = new ICache.Loader<String, String>() {
+			@Override
+			public String load(String key) {
+				loads.incrementAndGet();
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+				return key.toUpperCase();
+			}
+		};
+
+		final List<String> values = new ArrayList<String>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			Thread t = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+					}
+					String value = cache.get("key", loader);
+					synchronized (values) {
+						values.add(value);
+					}
+				}
+			};
+			t.start();
+			threads.add(t);
+		}
+		start.countDown();
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		assertEquals("concurrent misses triggered multiple loads", 1, loads.get());
+		assertEquals(8, values.size());
+		for (String value : values) {
+			assertEquals("KEY", value);
+		}
+		assertEquals("KEY", cache.get("key", loader));
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getStats().loads);
+	}
+
+	@Test
+	public void testRemoveWhileLoading() throws Exception {
+		final ICache<String, String> cache = new MemoryCache<String, String>("test");
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch removed = new CountDownLatch(1);
+		final ICache.Loader<String, String> loader = new ICache.Loader<String, String>() {
+			@Override
+			public String load(String key) {
+				loading.countDown();
+				try {
+					removed.await();
+				} catch (InterruptedException e) {
+				}
+				return "stale";
+			}
+		};
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				cache.get("key", loader);
+			}
+		};
+		t.start();
+		loading.await();
+		cache.remove("key");
+		removed.countDown();
+		t.join();
+		assertFalse("removed key was cached by a pending load", cache.containsKey("key"));
+
+		// a value put while loading is not replaced by the load
+		final CountDownLatch loading2 = new CountDownLatch(1);
+		final CountDownLatch put = new CountDownLatch(1);
+		final ICache.Loader<String, String> loader2 = new ICache.Loader<String, String>() {
+			@Override
+			public String load(String key) {
+				loading2.countDown();
+				try {
+					put.await();
+				} catch (InterruptedException e) {
+				}
+				return "stale";
+			}
+		};
+		t = new Thread() {
+			@Override
+			public void run() {
+				cache.get("key", loader2);
+			}
+		};
+		t.start();
+		loading2.await();
+		cache.put("key", "fresh");
+		put.countDown();
+		t.join();
+		assertEquals("fresh", cache.get("key"));
+	}
+}
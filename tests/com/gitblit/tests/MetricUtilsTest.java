@@ -25,6 +25,7 @@ import org.eclipse.jgit.lib.Repository;
 import org.junit.Test;
 
 import com.gitblit.models.Metric;
+import com.gitblit.utils.BranchMetrics;
 import com.gitblit.utils.MetricUtils;
 
 public class MetricUtilsTest {
@@ -51,4 +52,32 @@ public class MetricUtilsTest {
 		assertEquals("No author metrics found!", 9, byEmail.size());
 		assertEquals("No author metrics found!", 8, byName.size());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testIncrementalMetrics() throws Exception {
+		Repository repository = GitBlitSuite.getHelloworldRepository();
+		TimeZone tz = TimeZone.getDefault();
+		BranchMetrics full = MetricUtils.getBranchMetrics(repository, null, null);
+
+		// compute metrics for an older tip and then extend to HEAD
+		BranchMetrics metrics = MetricUtils.getBranchMetrics(repository, "HEAD~5", null);
+		assertTrue(metrics.getCommitCount() < full.getCommitCount());
+		MetricUtils.getBranchMetrics(repository, null, metrics);
+		repository.close();
+
+		assertEquals(full.getTip(), metrics.getTip());
+		assertEquals(full.getCommitCount(), metrics.getCommitCount());
+		assertMetricsEqual(full.getDateMetrics(true, null, tz), metrics.getDateMetrics(true, null, tz));
+		assertMetricsEqual(full.getDateMetrics(false, "E", tz), metrics.getDateMetrics(false, "E", tz));
+		assertMetricsEqual(full.getAuthorMetrics(true), metrics.getAuthorMetrics(true));
+	}
+
+	private void assertMetricsEqual(List<Metric> expected, List<Metric> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).name, actual.get(i).name);
+			assertEquals(expected.get(i).count, actual.get(i).count, 0);
+			assertEquals(expected.get(i).tag, actual.get(i).tag, 0);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 gitblit.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gitblit.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.gitblit.utils.MetricsRegistry;
+
+public class MetricsRegistryTest {
+
+	@Test
+	public void testRegistry() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("test_total", "test counter", "repository", "a.git").inc();
+		registry.counter("test_total", "test counter", "repository", "a.git").inc(2);
+		registry.counter("test_total", "test counter", "repository", "b\"c.git").inc();
+		registry.gauge("test_gauge", "test gauge", new MetricsRegistry.Gauge() {
+			@Override
+			public double getValue() {
+				return 1.5;
+			}
+		});
+		MetricsRegistry.Histogram histogram = registry.histogram("test_seconds", "test histogram");
+		histogram.observe(2000000L); // 2 msecs
+		histogram.observe(2000000000L); // 2 secs
+
+		Map<String, Double> snapshot = registry.getSnapshot();
+		assertEquals(3d, snapshot.get("test_total{repository=\"a.git\"}"), 0d);
+		assertEquals(1.5d, snapshot.get("test_gauge"), 0d);
+		assertEquals(2d, snapshot.get("test_seconds_count"), 0d);
+		assertEquals(2.002d, snapshot.get("test_seconds_sum"), 0.0001d);
+
+		StringWriter writer = new StringWriter();
+		registry.write(writer);
+		String text = writer.toString();
+		assertTrue(text.contains("# TYPE test_total counter\n"));
+		assertTrue(text.contains("test_total{repository=\"a.git\"} 3\n"));
+		assertTrue(text.contains("test_total{repository=\"b\\\"c.git\"} 1\n"));
+		assertTrue(text.contains("test_gauge 1.5\n"));
+		assertTrue(text.contains("# TYPE test_seconds histogram\n"));
+		assertTrue(text.contains("test_seconds_bucket{le=\"0.005\"} 1\n"));
+		assertTrue(text.contains("test_seconds_bucket{le=\"1.0\"} 1\n"));
+		assertTrue(text.contains("test_seconds_bucket{le=\"2.5\"} 2\n"));
+		assertTrue(text.contains("test_seconds_bucket{le=\"+Inf\"} 2\n"));
+		assertTrue(text.contains("test_seconds_count 2\n"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTypeConflict() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("test", "test");
+		registry.histogram("test", "test");
+	}
+}
@@ -37,13 +37,16 @@ import com.gitblit.Constants.AccessRestrictionType;
 import com.gitblit.Constants.AuthorizationControl;
 import com.gitblit.Constants.PermissionType;
 import com.gitblit.Constants.RegistrantType;
+import com.gitblit.Constants.RpcRequest;
 import com.gitblit.GitBlitException.UnauthorizedException;
 import com.gitblit.Keys;
 import com.gitblit.RpcServlet;
 import com.gitblit.models.RegistrantAccessPermission;
+import com.gitblit.models.FederationChanges;
 import com.gitblit.models.FederationModel;
 import com.gitblit.models.FederationProposal;
 import com.gitblit.models.FederationSet;
+import com.gitblit.models.ListPage;
 import com.gitblit.models.RepositoryModel;
 import com.gitblit.models.ServerSettings;
 import com.gitblit.models.ServerStatus;
@@ -90,6 +93,50 @@ public class RpcTests {
 		assertTrue("Repository list is empty!", map.size() > 0);
 	}
 
+	@Test
+	public void testListRepositoriesPage() throws IOException {
+		Map<String, RepositoryModel> map = RpcUtils.getRepositories(url, null, null);
+		Map<String, RepositoryModel> paged = new HashMap<String, RepositoryModel>();
+		String cursor = null;
+		do {
+			ListPage page = RpcUtils.getPage(url, RpcRequest.LIST_REPOSITORIES_PAGE, null, cursor,
+					2, null, null);
+			assertTrue("Page is too large!", page.repositories.size() <= 2);
+			paged.putAll(page.repositories);
+			cursor = page.cursor;
+		} while (cursor != null);
+		assertEquals(map.keySet(), paged.keySet());
+
+		ListPage page = RpcUtils.getPage(url, RpcRequest.LIST_REPOSITORIES_PAGE, "test/", null, 0,
+				null, null);
+		assertTrue("Repository page is empty!", page.repositories.size() > 0);
+		for (RepositoryModel model : page.repositories.values()) {
+			assertTrue(model.name.startsWith("test/"));
+		}
+	}
+
+	@Test
+	public void testListChanges() throws IOException {
+		FederationChanges changes = RpcUtils.getChanges(url, "repository", null, null, null);
+		assertTrue("Changes are not full!", changes.full);
+		assertTrue("Repository list is empty!", changes.repositories.size() > 0);
+
+		// nothing has changed since the previous request
+		changes = RpcUtils.getChanges(url, "repository", changes.version, null, null);
+		assertEquals(false, changes.full);
+		assertEquals(0, changes.repositories.size());
+
+		changes = null;
+		try {
+			changes = RpcUtils.getChanges(url, "user", null, null, null);
+		} catch (IOException e) {
+		}
+		assertNull("Server allows anyone to list users!", changes);
+
+		changes = RpcUtils.getChanges(url, "user", null, account, password.toCharArray());
+		assertTrue("User list is empty!", changes.users.size() > 0);
+	}
+
 	@Test
 	public void testListUsers() throws IOException {
 		List<UserModel> list = null;
@@ -21,13 +21,18 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 
 import com.gitblit.ConfigUserService;
 import com.gitblit.Constants.AccessRestrictionType;
+import com.gitblit.FederationJournal;
+import com.gitblit.FederationJournal.ObjectType;
 import com.gitblit.FileUserService;
 import com.gitblit.IUserService;
+import com.gitblit.JournaledUserService;
 import com.gitblit.models.RepositoryModel;
 import com.gitblit.models.TeamModel;
 import com.gitblit.models.UserModel;
@@ -54,6 +59,41 @@ public class UserServiceTest {
 		file.delete();
 	}
 
+	@Test
+	public void testJournaledUserService() throws IOException {
+		File file = new File("us-test.conf");
+		file.delete();
+		FederationJournal journal = new FederationJournal();
+		IUserService service = new JournaledUserService(new ConfigUserService(file), journal);
+		testUsers(service);
+		testTeams(service);
+
+		// permission changes are journaled for the users and teams
+		UserModel user = new UserModel("journaled");
+		user.addRepositoryPermission("journal.git");
+		service.updateUserModel(user);
+		TeamModel team = new TeamModel("journaled");
+		team.addRepositoryPermission("journal.git");
+		service.updateTeamModel(team);
+		long since = journal.getSequence(journal.getVersion());
+		assertTrue(service.renameRepositoryRole("journal.git", "renamed.git"));
+		assertEquals("[journaled]", getNames(journal.getChanges(ObjectType.USER, since)));
+		assertEquals("[journaled]", getNames(journal.getChanges(ObjectType.TEAM, since)));
+
+		since = journal.getSequence(journal.getVersion());
+		assertTrue(service.deleteUser("journaled"));
+		assertTrue(journal.getChanges(ObjectType.USER, since).get(0).deleted);
+		file.delete();
+	}
+
+	private String getNames(List<FederationJournal.Change> changes) {
+		List<String> names = new ArrayList<String>();
+		for (FederationJournal.Change change : changes) {
+			names.add(change.name);
+		}
+		return names.toString();
+	}
+
 	protected void testUsers(IUserService service) {
 
 		UserModel admin = service.getUserModel("admin");
@@ -242,4 +282,4 @@ public class UserServiceTest {
 		assertEquals(1, team.mailingLists.size());
 		assertTrue(team.mailingLists.contains("admins@localhost.com"));
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -40,6 +40,7 @@ public class MemorySettings extends IStoredSettings {
 	
 	public void put(Object key, Object value) {
 		backingMap.put(key.toString(), value);
+		refresh();
 	}
 
 	@Override